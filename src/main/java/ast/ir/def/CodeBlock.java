@@ -1,16 +1,18 @@
 package ast.ir.def;
 
+import ast.ir.helper.InstructionCounter;
 import ast.ir.helper.ScopeHelper;
 import ast.ir.instruction.Instruction;
+import ast.ir.instruction.misc.LineNumber;
+import ast.ir.optimize.MethodSplitter;
+import ast.ir.optimize.PeepholeOptimizer;
 import ast.typed.def.method.MethodDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-import runtime.SnuggleInstance;
-import runtime.SnuggleRuntime;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A sequence of instructions to be executed in order.
@@ -20,42 +22,112 @@ public class CodeBlock {
     //The instructions in the array
     private final ArrayList<Instruction> instructions = new ArrayList<>();
     private long cost = 0;
+    //Set when the method this is the body of is written
+    private volatile MethodSplitter.Split split;
 
     //The scope for this code block
     public final ScopeHelper env;
     //The MethodDef this code block is for. If not for any MethodDef, then null.
     public final MethodDef methodDef;
+    //The methods whose bodies are being inlined here, innermost last.
+    //Shared with the inner blocks, like the scope.
+    private final ArrayList<MethodDef> inlining;
+    //Optimizes instructions as they're emitted. Shared with the inner blocks too.
+    private final PeepholeOptimizer optimizer;
+
+    //How deep inlined calls can nest inside each other
+    private static final int MAX_INLINING_DEPTH = 8;
 
     public CodeBlock(MethodDef methodDef) {
+        this(methodDef, PeepholeOptimizer.standard());
+    }
+
+    public CodeBlock(MethodDef methodDef, PeepholeOptimizer optimizer) {
         env = new ScopeHelper();
         this.methodDef = methodDef;
+        this.optimizer = optimizer;
+        inlining = new ArrayList<>();
     }
 
     public CodeBlock(CodeBlock other) {
         env = other.env;
         methodDef = other.methodDef;
+        inlining = other.inlining;
+        optimizer = other.optimizer;
         cost = 0; //Cost is tracked independently
     }
 
+    //Whether the body of this method can be inlined here. It can't if we're already
+    //compiling or inlining it, since it's recursive, or if inlining is too deep.
+    public boolean canInline(MethodDef method) {
+        return inlining.size() < MAX_INLINING_DEPTH && method != methodDef && !inlining.contains(method);
+    }
+
+    //Call around compiling the body of an inlined method
+    public void startInlining(MethodDef method) {
+        inlining.add(method);
+    }
+    public void finishInlining() {
+        inlining.remove(inlining.size() - 1);
+    }
+
     public CodeBlock emit(Instruction instruction) throws CompilationException {
-        //TODO: Peephole-optimize while we add instructions, so we don't have to copy lots of things backwards in memory
+        //Line numbers inside an inlined body are lines of the other method's file,
+        //so drop them and leave the line of the call in effect.
+        if (instruction instanceof LineNumber && !inlining.isEmpty())
+            return this;
         instructions.add(instruction);
         cost += instruction.cost();
+        //Peephole-optimize while we add instructions, so we don't have to copy lots of things backwards in memory
+        cost -= optimizer.optimize(instructions);
         return this;
     }
 
     //Get cost
     public long cost() { return cost; }
 
-    //Returns the "cost" of the script as calculated by the IR
+    public boolean isEmpty() { return instructions.isEmpty(); }
+
+    //What the peephole optimizer removed from the method this block is in
+    public PeepholeOptimizer.Stats peepholeStats() { return optimizer.stats(); }
+
+    //The instructions of this block, in order. Blocks nested in it are InnerCodeBlock instructions.
+    public List<Instruction> instructions() { return Collections.unmodifiableList(instructions); }
+
+    //How the method this is the body of was split the last time it was written, or null if it wasn't
+    public MethodSplitter.Split split() { return split; }
+    public void setSplit(MethodSplitter.Split split) { this.split = split; }
+
+    //Write the bytecode of a method body, which this is the outermost block of.
+    //If counting instructions, the method's cost is added up as it runs; see InstructionCounter.
+    public void writeMethodBytecode(MethodVisitor jvmBytecode, boolean countInstructions) throws CompilationException {
+        writeMethodStart(jvmBytecode, countInstructions);
+        for (Instruction i : instructions)
+            i.accept(this, jvmBytecode);
+    }
+
+    //Write the start of a method body, which this is the outermost block of: what comes before its instructions
+    public void writeMethodStart(MethodVisitor jvmBytecode, boolean countInstructions) {
+        if (countInstructions)
+            InstructionCounter.start(this, jvmBytecode);
+        else
+            env.countCost(false);
+        if (cost > 0)
+            InstructionCounter.add(this, jvmBytecode, cost);
+    }
+
+    //Write the bytecode of this block into the code of another method, which the given block
+    //is part of. Its temporary locals go after the other method's, so they don't overwrite them.
+    //Synchronized, since the other methods may be in classes being generated on other threads.
+    public synchronized void writeJvmBytecodeInto(CodeBlock other, MethodVisitor jvmBytecode) throws CompilationException {
+        env.reserveLocalsOf(other.env);
+        writeJvmBytecode(jvmBytecode);
+    }
+
+    //Write the bytecode of this block, adding its cost to the count first
     public void writeJvmBytecode(MethodVisitor jvmBytecode) throws CompilationException {
-        //TODO: Make this not just be some random static field
-        if (cost > 0) {
-            jvmBytecode.visitLdcInsn(cost);
-            jvmBytecode.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(SnuggleInstance.class), "INSTRUCTIONS", "J");
-            jvmBytecode.visitInsn(Opcodes.LADD);
-            jvmBytecode.visitFieldInsn(Opcodes.PUTSTATIC, Type.getInternalName(SnuggleInstance.class), "INSTRUCTIONS", "J");
-        }
+        if (cost > 0)
+            InstructionCounter.add(this, jvmBytecode, cost);
         for (Instruction i : instructions)
             i.accept(this, jvmBytecode);
     }
@@ -1,14 +1,25 @@
 package ast.ir.def;
 
+import ast.ir.helper.NameHelper;
 import ast.typed.def.field.FieldDef;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
 import util.GenericStringUtil;
 
-public record GeneratedField(boolean isMemberOfPluralType, FieldDef fieldDef) {
+//Non-static fields of plural types are the fields of its carrier, see ReturnHelper.
+//Static fields belong to each instance, so they're fields of the runtime class, see RuntimeHelper.
+public record GeneratedField(FieldDef fieldDef) {
 
+    //Add the field to its type's class, if it's not static
     public void compile(ClassVisitor writer) {
-        compileRecursive(writer, "", fieldDef);
+        if (!fieldDef.isStatic())
+            compileRecursive(writer, "", fieldDef);
+    }
+
+    //Add the field to the runtime class, if it's static
+    public void compileStatic(ClassVisitor runtimeWriter) {
+        if (fieldDef.isStatic())
+            compileRecursive(runtimeWriter, "", fieldDef);
     }
 
     //If plural, recurse and add smaller fields
@@ -20,9 +31,10 @@ public record GeneratedField(boolean isMemberOfPluralType, FieldDef fieldDef) {
             }
         } else {
             //If non-plural, add the field.
-            int access = Opcodes.ACC_PUBLIC;
-            if (this.fieldDef.isStatic() || isMemberOfPluralType) access |= Opcodes.ACC_STATIC;
-            writer.visitField(access, GenericStringUtil.mangleSlashes(namePrefix + curFieldDef.name()), curFieldDef.type().getDescriptor().get(0), null, null).visitEnd();
+            String name = fieldDef.isStatic() ?
+                    NameHelper.getStaticFieldName(fieldDef.owningType().runtimeName(), namePrefix + curFieldDef.name()) :
+                    GenericStringUtil.mangleSlashes(namePrefix + curFieldDef.name());
+            writer.visitField(Opcodes.ACC_PUBLIC, name, curFieldDef.type().getDescriptor().get(0), null, null).visitEnd();
         }
     }
 
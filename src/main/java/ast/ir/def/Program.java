@@ -1,26 +1,39 @@
 package ast.ir.def;
 
+import ast.ir.def.method.GeneratedMethod;
+import ast.ir.def.method.GeneratedSnuggleMethod;
 import ast.ir.def.type.GeneratedType;
+import ast.ir.helper.FrameChecker;
+import ast.ir.helper.InstructionCounter;
 import ast.ir.helper.NameHelper;
-import ast.ir.instruction.stack.Pop;
+import ast.ir.helper.RuntimeHelper;
+import ast.ir.optimize.MethodSplitter;
+import ast.ir.optimize.PeepholeOptimizer;
 import ast.typed.def.method.MethodDef;
+import ast.typed.def.type.TypeDef;
 import ast.typed.expr.TypedExpr;
 import ast.typed.prog.TypedAST;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import runtime.LoadedProgram;
 import runtime.SnuggleInstance;
 import runtime.SnuggleRuntime;
+import util.CompileOptions;
 import util.GenericStringUtil;
 import util.ListUtils;
 import util.MapUtils;
+import util.throwing_interfaces.ThrowingSupplier;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -33,14 +46,8 @@ import java.util.jar.Manifest;
 public record Program(List<GeneratedType> generatedClasses, Map<String, CodeBlock> topLevelCode) {
 
     public static Program of(TypedAST typedAST) throws CompilationException {
-        //Create the generatedClasses:
-        ListUtils.insertionSort(typedAST.typeDefs(), (a, b) -> {
-            if (a.isSubtype(b))
-                return 1;
-            if (b.isSubtype(a))
-                return -1;
-            return 0;
-        });
+        //Create the generatedClasses, with supertypes before their subtypes:
+        ListUtils.topologicalSort(typedAST.typeDefs(), TypeDef::get, TypeDef::typeCheckingSupertypes);
         List<GeneratedType> classes = ListUtils.filter(ListUtils.map(
                 typedAST.typeDefs(),
                 GeneratedType::of
@@ -50,37 +57,136 @@ public record Program(List<GeneratedType> generatedClasses, Map<String, CodeBloc
         Map<String, CodeBlock> topLevelCode = MapUtils.mapValues(typedAST.files(), file -> {
             CodeBlock codeBlock = new CodeBlock((MethodDef) null);
             //Run the top-level code
-            for (TypedExpr expr : file.code()) {
-                expr.compile(codeBlock, null);
-                codeBlock.emit(new Pop(expr.type().get()));
-            }
+            for (TypedExpr expr : file.code())
+                expr.compileAndPop(codeBlock);
             return codeBlock;
         });
 
         return new Program(classes, topLevelCode);
     }
 
-    private CompileResult compile() throws CompilationException {
-        CompiledClass runtimeClass = createRuntime();
-        List<CompiledClass> otherClasses = new ArrayList<>();
-        otherClasses.add(createFiles());
+    /**
+     * What the peephole optimizer removed from each method, and from the top-level
+     * code of each file, leaving out the ones it removed nothing from.
+     */
+    public Map<String, PeepholeOptimizer.Stats> peepholeStats() {
+        Map<String, PeepholeOptimizer.Stats> result = new LinkedHashMap<>();
+        for (GeneratedType generatedClass : generatedClasses)
+            for (GeneratedMethod method : generatedClass.methods())
+                if (method instanceof GeneratedSnuggleMethod snuggleMethod)
+                    addPeepholeStats(result, generatedClass.name() + "." + snuggleMethod.methodDef().dedupName(), snuggleMethod.body());
+        for (Map.Entry<String, CodeBlock> code : topLevelCode.entrySet())
+            addPeepholeStats(result, "file " + code.getKey(), code.getValue());
+        return result;
+    }
+
+    /**
+     * The methods, and the top-level code of files, that were split into helpers the last
+     * time the program was compiled, because they were over CompileOptions.maxMethodSize(),
+     * or had loops hoisted out of their top-level code.
+     */
+    public Map<String, MethodSplitter.Split> splitMethods() {
+        Map<String, MethodSplitter.Split> result = new LinkedHashMap<>();
+        for (GeneratedType generatedClass : generatedClasses)
+            for (GeneratedMethod method : generatedClass.methods())
+                if (method instanceof GeneratedSnuggleMethod snuggleMethod && snuggleMethod.body().split() != null)
+                    result.put(generatedClass.name() + "." + snuggleMethod.methodDef().dedupName(), snuggleMethod.body().split());
+        for (Map.Entry<String, CodeBlock> code : topLevelCode.entrySet())
+            if (code.getValue().split() != null)
+                result.put("file " + code.getKey(), code.getValue().split());
+        return result;
+    }
+
+    private static void addPeepholeStats(Map<String, PeepholeOptimizer.Stats> result, String name, CodeBlock code) {
+        PeepholeOptimizer.Stats stats = code.peepholeStats();
+        if (stats.removedInstructions() != 0 || stats.removedBytes() != 0)
+            result.put(name, stats);
+    }
+
+    private CompileResult compile(CompileOptions options) throws CompilationException {
+        //Each class is written by its own ClassWriter, so they can be generated in parallel
+        List<ThrowingSupplier<CompiledClass, CompilationException>> tasks = new ArrayList<>(generatedClasses.size() + 2);
+        tasks.add(() -> createRuntime(options));
+        tasks.add(() -> createFiles(options));
         for (GeneratedType generatedClass : generatedClasses)
-            otherClasses.add(generatedClass.compile());
-        return new CompileResult(runtimeClass, otherClasses);
+            tasks.add(() -> generatedClass.compile(options));
+        List<CompiledClass> classes = generateClasses(tasks, options.executor());
+        if (options.verifyBytecode())
+            FrameChecker.check(ListUtils.map(classes, CompiledClass::bytes));
+        return new CompileResult(classes.get(0), classes.subList(1, classes.size()));
+    }
+
+    /**
+     * Runs the tasks on the executor, or one at a time if it's null. The results
+     * are in the same order as the tasks, and if several fail, the error from the
+     * first of them is the one reported, so neither depends on how the tasks
+     * happened to be scheduled.
+     */
+    private static List<CompiledClass> generateClasses(List<ThrowingSupplier<CompiledClass, CompilationException>> tasks, ExecutorService executor) throws CompilationException {
+        List<CompiledClass> result = new ArrayList<>(tasks.size());
+        if (executor == null) {
+            for (ThrowingSupplier<CompiledClass, CompilationException> task : tasks)
+                result.add(task.get());
+            return result;
+        }
+        List<Future<CompiledClass>> futures = new ArrayList<>(tasks.size());
+        for (ThrowingSupplier<CompiledClass, CompilationException> task : tasks)
+            futures.add(executor.submit(task::get));
+        //Wait for every task, even after an error
+        Throwable firstFailure = null;
+        for (Future<CompiledClass> future : futures) {
+            try {
+                result.add(future.get());
+            } catch (ExecutionException e) {
+                if (firstFailure == null)
+                    firstFailure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating classes", e);
+            }
+        }
+        if (firstFailure instanceof CompilationException compilationException)
+            throw compilationException;
+        if (firstFailure instanceof RuntimeException runtimeException)
+            throw runtimeException;
+        if (firstFailure instanceof Error error)
+            throw error;
+        if (firstFailure != null)
+            throw new IllegalStateException("Unexpected exception while generating classes", firstFailure);
+        return result;
     }
 
     public SnuggleInstance compileToInstance() throws CompilationException {
-        return new SnuggleInstance(compile());
+        return compileToInstance(CompileOptions.PRODUCTION);
+    }
+
+    /**
+     * If options.countInstructions() is false, the code doesn't count the instructions it runs,
+     * so the instance's instruction cap does nothing. Only for trusted code.
+     */
+    public SnuggleInstance compileToInstance(CompileOptions options) throws CompilationException {
+        return compileToLoadedProgram(options).newInstance();
     }
 
+    /**
+     * Compile and load the classes once, to make any number of instances from,
+     * which can run at the same time. See LoadedProgram.
+     */
+    public LoadedProgram compileToLoadedProgram(CompileOptions options) throws CompilationException {
+        return new LoadedProgram(compile(options), options);
+    }
 
     public void compileToJar(File targetFile) throws IOException, CompilationException {
+        compileToJar(targetFile, CompileOptions.PRODUCTION);
+    }
+
+    public void compileToJar(File targetFile, CompileOptions options) throws IOException, CompilationException {
 
         FileOutputStream fos = new FileOutputStream(targetFile);
         Manifest manifest = new Manifest();
         JarOutputStream jos = new JarOutputStream(fos, manifest);
 
-        CompileResult res = compile();
+        CompileResult res = compile(options);
 
         for (CompiledClass compiled : ListUtils.join(List.of(res.runtime), res.otherClasses)) {
             //Add the .class file to the jar
@@ -95,35 +201,24 @@ public record Program(List<GeneratedType> generatedClasses, Map<String, CodeBloc
     public record CompileResult(CompiledClass runtime, List<CompiledClass> otherClasses) {}
     public record CompiledClass(String name, byte[] bytes) {}
 
-    private CompiledClass createFiles() throws CompilationException {
-        ClassVisitor filesWriter = NameHelper.generateClassWriter(NameHelper.getFilesClassName(), false);
+    private CompiledClass createFiles(CompileOptions options) throws CompilationException {
+        ClassVisitor filesWriter = NameHelper.generateClassWriter(options, NameHelper.getFilesClassName(), false);
         for (Map.Entry<String, CodeBlock> code : topLevelCode.entrySet())
-            createFile(filesWriter, code.getKey(), code.getValue());
+            createFile(filesWriter, code.getKey(), code.getValue(), options);
         filesWriter.visitEnd();
-        ClassWriter asWriter = filesWriter instanceof ClassWriter w ? w : (ClassWriter) filesWriter.getDelegate();
-        return new CompiledClass(NameHelper.getFilesClassName(), asWriter.toByteArray());
+        return new CompiledClass(NameHelper.getFilesClassName(), NameHelper.toByteArray(filesWriter));
     }
 
-    private void createFile(ClassVisitor filesWriter, String fileName, CodeBlock code) throws CompilationException {
-        //Create the field
-        filesWriter.visitField(
-                Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC,
-                NameHelper.getImportFieldName(fileName),
-                "Z",
-                null, null
-        ).visitEnd();
+    private void createFile(ClassVisitor filesWriter, String fileName, CodeBlock code, CompileOptions options) throws CompilationException {
         //Create the method
-        MethodVisitor methodVisitor = filesWriter.visitMethod(
-                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
-                NameHelper.getImportMethodName(fileName),
-                "()V",
-                null,
-                null
-        );
+        int access = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC;
+        String name = NameHelper.getImportMethodName(fileName);
+        MethodVisitor methodVisitor = filesWriter.visitMethod(access, name, "()V", null, null);
         methodVisitor.visitCode();
         //Emit bytecode into the method
-        code.writeJvmBytecode(methodVisitor);
+        new MethodSplitter(filesWriter, NameHelper.getFilesClassName(), access, name, "()V").writeTopLevel(code, methodVisitor, options);
         //Return
+        InstructionCounter.flush(code, methodVisitor);
         methodVisitor.visitInsn(Opcodes.RETURN);
         //End the method
         methodVisitor.visitMaxs(0, 0); //Auto compute
@@ -131,8 +226,31 @@ public record Program(List<GeneratedType> generatedClasses, Map<String, CodeBloc
     }
 
 
-    private CompiledClass createRuntime() {
-        ClassVisitor runtimeWriter = NameHelper.generateClassWriter(NameHelper.getRuntimeClassName(), true, SnuggleRuntime.class);
+    private CompiledClass createRuntime(CompileOptions options) {
+        String runtime = NameHelper.getRuntimeClassName();
+        ClassVisitor runtimeWriter = NameHelper.generateClassWriter(options, runtime, false, SnuggleRuntime.class);
+
+        //Each instance has its own runtime object, holding what it's imported and the static fields of its types
+        for (String fileName : topLevelCode.keySet())
+            runtimeWriter.visitField(Opcodes.ACC_PUBLIC, NameHelper.getImportFieldName(fileName), "Z", null, null).visitEnd();
+        for (GeneratedType generatedClass : generatedClasses)
+            for (GeneratedField field : generatedClass.fields())
+                field.compileStatic(runtimeWriter);
+        //Finding the runtime object of the running instance
+        RuntimeHelper.generateRuntimeMembers(runtimeWriter);
+        //Counting instructions, and the methods to read and cap the count
+        InstructionCounter.generateRuntimeMembers(runtimeWriter);
+
+        //Default constructor is needed in order to instantiate it
+        MethodVisitor constructor = runtimeWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        InstructionCounter.initRuntimeMembers(constructor);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0); //Auto compute
+        constructor.visitEnd();
+
         //Add necessary methods
         MethodVisitor runMethod = runtimeWriter.visitMethod(
                 Opcodes.ACC_PUBLIC,
@@ -142,18 +260,29 @@ public record Program(List<GeneratedType> generatedClasses, Map<String, CodeBloc
                 null
         );
         runMethod.visitCode();
-        //Run method simply imports main
+        //Run method simply imports main, while this is the current runtime object
         String filesClass = NameHelper.getFilesClassName();
+        Label start = new Label(), end = new Label(), handler = new Label();
+        runMethod.visitTryCatchBlock(start, end, handler, null);
+        RuntimeHelper.enter(runMethod, 1);
+        runMethod.visitLabel(start);
+        runMethod.visitVarInsn(Opcodes.ALOAD, 0);
         runMethod.visitInsn(Opcodes.ICONST_1);
-        runMethod.visitFieldInsn(Opcodes.PUTSTATIC, filesClass, NameHelper.getImportFieldName("main"), "Z");
+        runMethod.visitFieldInsn(Opcodes.PUTFIELD, runtime, NameHelper.getImportFieldName("main"), "Z");
         runMethod.visitMethodInsn(Opcodes.INVOKESTATIC, filesClass, NameHelper.getImportMethodName("main"), "()V", false);
+        runMethod.visitLabel(end);
+        RuntimeHelper.exit(runMethod, 1);
         runMethod.visitInsn(Opcodes.RETURN);
+        //Restore the previous one even if it throws
+        runMethod.visitLabel(handler);
+        runMethod.visitVarInsn(Opcodes.ASTORE, 2);
+        RuntimeHelper.exit(runMethod, 1);
+        runMethod.visitVarInsn(Opcodes.ALOAD, 2);
+        runMethod.visitInsn(Opcodes.ATHROW);
         runMethod.visitMaxs(0, 0); //Auto compute
         runMethod.visitEnd();
 
-        //Default constructor is needed in order to instantiate it
-        ClassWriter asWriter = runtimeWriter instanceof ClassWriter w ? w : (ClassWriter) runtimeWriter.getDelegate();
-        return new CompiledClass(NameHelper.getRuntimeClassName(), asWriter.toByteArray());
+        return new CompiledClass(runtime, NameHelper.toByteArray(runtimeWriter));
     }
 
 }
@@ -7,6 +7,7 @@ import ast.typed.def.method.SnuggleMethodDef;
 import ast.typed.def.method.InterfaceMethodDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.ClassVisitor;
+import util.CompileOptions;
 
 public interface GeneratedMethod {
 
@@ -23,6 +24,6 @@ public interface GeneratedMethod {
         }
     }
 
-    void compile(ClassVisitor classWriter) throws CompilationException;
+    void compile(ClassVisitor classWriter, String owner, CompileOptions options) throws CompilationException;
 
 }
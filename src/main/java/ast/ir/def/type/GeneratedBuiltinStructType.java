@@ -8,7 +8,7 @@ import ast.typed.def.method.MethodDef;
 import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
+import util.CompileOptions;
 import util.ListUtils;
 
 import java.util.List;
@@ -23,19 +23,19 @@ public record GeneratedBuiltinStructType(String name, List<GeneratedField> field
             return null;
         return new GeneratedBuiltinStructType(
                 builtin.runtimeName(),
-                ListUtils.map(builtin.fields(), f -> new GeneratedField(true, f)),
+                ListUtils.map(builtin.fields(), GeneratedField::new),
                 ListUtils.filter(ListUtils.map(builtin.methods(), GeneratedMethod::of), Objects::nonNull)
         );
     }
 
     @Override
-    public Program.CompiledClass compile() throws CompilationException {
-        ClassVisitor writer = NameHelper.generateClassWriter(name, false);
+    public Program.CompiledClass compile(CompileOptions options) throws CompilationException {
+        //Constructor is for making carriers to return these in, see ReturnHelper
+        ClassVisitor writer = NameHelper.generateClassWriter(options, name, true);
         for (GeneratedField field : fields)
             field.compile(writer);
         for (GeneratedMethod method : methods)
-            method.compile(writer);
-        ClassWriter asWriter = writer instanceof ClassWriter w ? w : (ClassWriter) writer.getDelegate();
-        return new Program.CompiledClass(name, asWriter.toByteArray());
+            method.compile(writer, name, options);
+        return new Program.CompiledClass(name, NameHelper.toByteArray(writer));
     }
 }
@@ -10,8 +10,8 @@ import ast.typed.def.type.FuncTypeDef;
 import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Type;
+import util.CompileOptions;
 import util.ListUtils;
 
 import java.util.List;
@@ -26,7 +26,7 @@ public record GeneratedClass(String name, TypeDef supertype, List<GeneratedField
                 c.inheritanceSupertype(),
                 ListUtils.map(
                         c.fields(),
-                        f -> new GeneratedField(false, f)
+                        GeneratedField::new
                 ),
                 ListUtils.filter(ListUtils.map(
                         c.methods(),
@@ -37,20 +37,19 @@ public record GeneratedClass(String name, TypeDef supertype, List<GeneratedField
 
 
     //Compile this into a CompiledClass
-    public Program.CompiledClass compile() throws CompilationException {
+    public Program.CompiledClass compile(CompileOptions options) throws CompilationException {
         String superName = supertype == null ? Type.getInternalName(Object.class) : supertype.runtimeName();
         ClassVisitor writer;
         if (supertype.get() instanceof FuncTypeDef)
-            writer = NameHelper.generateWriter(name, "java/lang/Object", false, false, superName);
+            writer = NameHelper.generateWriter(options, name, "java/lang/Object", false, false, superName);
         else
-            writer = NameHelper.generateClassWriter(name, superName, false);
+            writer = NameHelper.generateClassWriter(options, name, superName, false);
         for (GeneratedField field : fields)
             field.compile(writer);
         for (GeneratedMethod method : methods)
-            method.compile(writer);
+            method.compile(writer, name, options);
 
-        ClassWriter asWriter = writer instanceof ClassWriter w ? w : (ClassWriter) writer.getDelegate();
-        return new Program.CompiledClass(name, asWriter.toByteArray());
+        return new Program.CompiledClass(name, NameHelper.toByteArray(writer));
     }
 
 }
@@ -7,7 +7,7 @@ import ast.ir.helper.NameHelper;
 import ast.typed.def.type.FuncTypeDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
+import util.CompileOptions;
 import util.ListUtils;
 
 import java.util.List;
@@ -25,14 +25,19 @@ public record GeneratedFuncDef(String name, List<GeneratedMethod> methods) imple
         );
     }
 
+    //Interfaces have no fields
+    @Override
+    public List<GeneratedField> fields() {
+        return List.of();
+    }
+
     //Compiles to an interface
     @Override
-    public Program.CompiledClass compile() throws CompilationException {
-        ClassVisitor writer = NameHelper.generateInterfaceWriter(name);
+    public Program.CompiledClass compile(CompileOptions options) throws CompilationException {
+        ClassVisitor writer = NameHelper.generateInterfaceWriter(options, name);
         for (GeneratedMethod method : methods)
-            method.compile(writer);
+            method.compile(writer, name, options);
 
-        ClassWriter asWriter = writer instanceof ClassWriter w ? w : (ClassWriter) writer.getDelegate();
-        return new Program.CompiledClass(name, asWriter.toByteArray());
+        return new Program.CompiledClass(name, NameHelper.toByteArray(writer));
     }
 }
@@ -1,12 +1,21 @@
 package ast.ir.def.type;
 
+import ast.ir.def.GeneratedField;
 import ast.ir.def.Program;
+import ast.ir.def.method.GeneratedMethod;
 import ast.typed.def.type.*;
 import exceptions.compile_time.CompilationException;
+import util.CompileOptions;
+
+import java.util.List;
 
 public interface GeneratedType {
 
-    Program.CompiledClass compile() throws CompilationException;
+    Program.CompiledClass compile(CompileOptions options) throws CompilationException;
+
+    String name();
+    List<GeneratedField> fields();
+    List<GeneratedMethod> methods();
 
     //If this TypeDef can't be made into a GeneratedClass, simply return null.
     static GeneratedType of(TypeDef typeDef) throws CompilationException {
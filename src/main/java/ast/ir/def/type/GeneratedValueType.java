@@ -8,20 +8,21 @@ import ast.ir.helper.NameHelper;
 import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
+import util.CompileOptions;
 import util.ListUtils;
 
 import java.util.List;
 import java.util.Objects;
 
-public record GeneratedValueType(String name, List<GeneratedField> fields, List<GeneratedMethod> methods) implements GeneratedType {
+public record GeneratedValueType(String name, boolean isPlural, List<GeneratedField> fields, List<GeneratedMethod> methods) implements GeneratedType {
 
     public static GeneratedValueType of(TypeDef typeDef) throws CompilationException {
         return new GeneratedValueType(
                 typeDef.name(),
+                typeDef.isPlural(),
                 ListUtils.map(
                         typeDef.fields(),
-                        f -> new GeneratedField(typeDef.isPlural(), f)
+                        GeneratedField::new
                 ),
                 ListUtils.filter(ListUtils.map(
                         typeDef.methods(),
@@ -31,13 +32,13 @@ public record GeneratedValueType(String name, List<GeneratedField> fields, List<
     }
 
     @Override
-    public Program.CompiledClass compile() throws CompilationException {
-        ClassVisitor writer = NameHelper.generateClassWriter(name, false);
+    public Program.CompiledClass compile(CompileOptions options) throws CompilationException {
+        //Plural types need a constructor to make carriers for returning them
+        ClassVisitor writer = NameHelper.generateClassWriter(options, name, isPlural);
         for (GeneratedField field : fields)
             field.compile(writer);
         for (GeneratedMethod method : methods)
-            method.compile(writer);
-        ClassWriter asWriter = writer instanceof ClassWriter w ? w : (ClassWriter) writer.getDelegate();
-        return new Program.CompiledClass(name, asWriter.toByteArray());
+            method.compile(writer, name, options);
+        return new Program.CompiledClass(name, NameHelper.toByteArray(writer));
     }
 }
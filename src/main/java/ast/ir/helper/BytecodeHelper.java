@@ -70,6 +70,22 @@ public class BytecodeHelper {
             //Assumed all others are reference topLevelTypes
             visitor.visitVarInsn(store ? Opcodes.ASTORE :Opcodes.ALOAD, index);
         }
+        //The local has the declared type, not just that of the value stored
+        if (store && !def.isPlural())
+            FrameTracker.localType(visitor, index, def);
+    }
+
+    //The size of what visitVariable() emits, as MethodSplitter counts it, without emitting it
+    public static int variableSize(int index, TypeDef def) {
+        if (def.isPlural()) {
+            int size = 0;
+            for (FieldDef field : def.nonStaticFields()) {
+                size += variableSize(index, field.type());
+                index += field.type().stackSlots();
+            }
+            return size;
+        }
+        return index <= 3 ? 1 : index <= 255 ? 2 : 4;
     }
 
     public static void pushDefaultValue(MethodVisitor jvm, TypeDef def) {
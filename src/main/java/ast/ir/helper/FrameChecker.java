@@ -0,0 +1,313 @@
+package ast.ir.helper;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+import org.objectweb.asm.util.Printer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Checks the frames written by FrameTracker, the way the JVM's verifier does,
+ * but with the class hierarchy of the whole program, so a frame that merged two
+ * references to a type too loose for the code after it is caught when compiling
+ * instead of when the class is loaded. Compiling with options.verifyBytecode()
+ * runs this on every class.
+ *
+ * Each method is checked in one pass, with ASM's SimpleVerifier checking the
+ * operands of each instruction:
+ * - At a frame, the state falling into it must fit the frame, and is then replaced by it.
+ * - At a jump or switch, the state must fit the frame of each target.
+ * - In a try block, the locals must fit the frame of the handler.
+ * - After a GOTO, return, throw or switch, the next instruction must have a frame.
+ * A state fits a frame if each value is a subtype of the frame's, with TOP taking
+ * anything. Like the JVM, an interface type takes any reference.
+ */
+public class FrameChecker {
+
+    private final Hierarchy hierarchy;
+
+    private FrameChecker(Hierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    //Check the frames of every method of the classes, which are all the classes of one program
+    public static void check(List<byte[]> classes) {
+        Map<String, ClassReader> readers = new HashMap<>();
+        for (byte[] bytes : classes) {
+            ClassReader reader = new ClassReader(bytes);
+            readers.put(reader.getClassName(), reader);
+        }
+        FrameChecker checker = new FrameChecker(new Hierarchy(readers));
+        for (ClassReader reader : readers.values()) {
+            ClassNode node = new ClassNode();
+            reader.accept(node, ClassReader.EXPAND_FRAMES);
+            for (MethodNode method : node.methods)
+                if (method.instructions.size() > 0)
+                    checker.check(node, method);
+        }
+    }
+
+    private void check(ClassNode owner, MethodNode method) {
+        Verifier verifier = new Verifier(owner);
+        InsnList instructions = method.instructions;
+        BasicValue returnValue = verifier.newReturnTypeValue(Type.getReturnType(method.desc));
+        //The frame at each frame node, and at the labels just before it
+        Map<AbstractInsnNode, Frame<BasicValue>> frames = new HashMap<>();
+        int index = 0;
+        try {
+            for (index = 0; index < instructions.size(); index++) {
+                if (instructions.get(index) instanceof FrameNode frameNode) {
+                    Frame<BasicValue> frame = frame(owner, method, verifier, frameNode, returnValue);
+                    frames.put(frameNode, frame);
+                    for (AbstractInsnNode before = frameNode.getPrevious(); before instanceof LabelNode || before instanceof LineNumberNode; before = before.getPrevious())
+                        frames.put(before, frame);
+                }
+            }
+
+            Frame<BasicValue> current = initialFrame(owner, method, verifier, returnValue);
+            for (index = 0; index < instructions.size(); index++) {
+                AbstractInsnNode instruction = instructions.get(index);
+                if (instruction instanceof FrameNode) {
+                    Frame<BasicValue> frame = frames.get(instruction);
+                    if (current != null)
+                        fits(verifier, current, frame, true, "falling into a frame");
+                    current = new Frame<>(frame);
+                    continue;
+                }
+                if (instruction.getOpcode() < 0)
+                    continue; //Labels and line numbers
+                if (current == null)
+                    throw new AnalyzerException(instruction, "no frame after an unconditional jump");
+                for (TryCatchBlockNode tryBlock : method.tryCatchBlocks)
+                    if (instructions.indexOf(tryBlock.start) <= index && index < instructions.indexOf(tryBlock.end))
+                        fits(verifier, current, target(frames, tryBlock.handler), false, "in a try block");
+
+                current.execute(instruction, verifier);
+
+                if (instruction instanceof JumpInsnNode jump) {
+                    fits(verifier, current, target(frames, jump.label), true, "at a jump");
+                } else if (instruction instanceof TableSwitchInsnNode tableSwitch) {
+                    fits(verifier, current, target(frames, tableSwitch.dflt), true, "at a switch");
+                    for (LabelNode label : tableSwitch.labels)
+                        fits(verifier, current, target(frames, label), true, "at a switch");
+                } else if (instruction instanceof LookupSwitchInsnNode lookupSwitch) {
+                    fits(verifier, current, target(frames, lookupSwitch.dflt), true, "at a switch");
+                    for (LabelNode label : lookupSwitch.labels)
+                        fits(verifier, current, target(frames, label), true, "at a switch");
+                }
+                if (endsBlock(instruction.getOpcode()))
+                    current = null;
+            }
+        } catch (AnalyzerException | IndexOutOfBoundsException e) {
+            AbstractInsnNode instruction = index < instructions.size() ? instructions.get(index) : null;
+            String at = instruction == null || instruction.getOpcode() < 0 ? "" : " (" + Printer.OPCODES[instruction.getOpcode()] + ")";
+            throw new IllegalStateException("Frames of " + owner.name + "." + method.name + method.desc +
+                    " don't verify at instruction " + index + at + ": " + e.getMessage() + ". Bug in compiler, please report!", e);
+        }
+    }
+
+    private static boolean endsBlock(int opcode) {
+        return opcode == Opcodes.GOTO || opcode == Opcodes.ATHROW || opcode == Opcodes.TABLESWITCH || opcode == Opcodes.LOOKUPSWITCH ||
+                opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN;
+    }
+
+    private static Frame<BasicValue> target(Map<AbstractInsnNode, Frame<BasicValue>> frames, LabelNode label) throws AnalyzerException {
+        Frame<BasicValue> frame = frames.get(label);
+        if (frame == null)
+            throw new AnalyzerException(label, "no frame at a jump target");
+        return frame;
+    }
+
+    //Whether the state can be used where the frame is expected. Handlers only look at the locals.
+    private static void fits(Verifier verifier, Frame<BasicValue> state, Frame<BasicValue> frame, boolean checkStack, String where) throws AnalyzerException {
+        for (int i = 0; i < frame.getLocals(); i++)
+            if (!verifier.fits(state.getLocal(i), frame.getLocal(i)))
+                throw new AnalyzerException(null, "local " + i + " is " + state.getLocal(i) + " " + where + ", but the frame has " + frame.getLocal(i));
+        if (!checkStack)
+            return;
+        if (state.getStackSize() != frame.getStackSize())
+            throw new AnalyzerException(null, "the stack has " + state.getStackSize() + " values " + where + ", but the frame has " + frame.getStackSize());
+        for (int i = 0; i < frame.getStackSize(); i++)
+            if (!verifier.fits(state.getStack(i), frame.getStack(i)))
+                throw new AnalyzerException(null, "stack value " + i + " is " + state.getStack(i) + " " + where + ", but the frame has " + frame.getStack(i));
+    }
+
+    private static Frame<BasicValue> initialFrame(ClassNode owner, MethodNode method, Verifier verifier, BasicValue returnValue) {
+        Frame<BasicValue> frame = new Frame<>(method.maxLocals, method.maxStack);
+        frame.setReturn(returnValue);
+        int local = 0;
+        if ((method.access & Opcodes.ACC_STATIC) == 0)
+            frame.setLocal(local++, verifier.newValue(Type.getObjectType(owner.name)));
+        for (Type arg : Type.getArgumentTypes(method.desc)) {
+            frame.setLocal(local++, verifier.newValue(arg));
+            if (arg.getSize() == 2)
+                frame.setLocal(local++, BasicValue.UNINITIALIZED_VALUE);
+        }
+        while (local < method.maxLocals)
+            frame.setLocal(local++, BasicValue.UNINITIALIZED_VALUE);
+        return frame;
+    }
+
+    //The frame written at a frame node. Frames take longs and doubles as one element.
+    private static Frame<BasicValue> frame(ClassNode owner, MethodNode method, Verifier verifier, FrameNode node, BasicValue returnValue) throws AnalyzerException {
+        Frame<BasicValue> frame = new Frame<>(method.maxLocals, method.maxStack);
+        frame.setReturn(returnValue);
+        int local = 0;
+        for (Object element : node.local) {
+            BasicValue value = value(owner, verifier, node, element);
+            frame.setLocal(local++, value);
+            if (value.getSize() == 2)
+                frame.setLocal(local++, BasicValue.UNINITIALIZED_VALUE);
+        }
+        while (local < method.maxLocals)
+            frame.setLocal(local++, BasicValue.UNINITIALIZED_VALUE);
+        for (Object element : node.stack)
+            frame.push(value(owner, verifier, node, element));
+        return frame;
+    }
+
+    private static BasicValue value(ClassNode owner, Verifier verifier, FrameNode node, Object element) throws AnalyzerException {
+        if (element instanceof String internalName)
+            return verifier.newValue(Type.getObjectType(internalName));
+        if (element instanceof LabelNode label) {
+            //An object made by the NEW after the label, and not constructed yet
+            AbstractInsnNode made = label.getNext();
+            while (made != null && made.getOpcode() < 0)
+                made = made.getNext();
+            if (!(made instanceof TypeInsnNode typeInsn) || made.getOpcode() != Opcodes.NEW)
+                throw new AnalyzerException(node, "uninitialized value whose label isn't at a NEW");
+            return verifier.newValue(Type.getObjectType(typeInsn.desc));
+        }
+        if (element == Opcodes.TOP)
+            return BasicValue.UNINITIALIZED_VALUE;
+        if (element == Opcodes.INTEGER)
+            return BasicValue.INT_VALUE;
+        if (element == Opcodes.FLOAT)
+            return BasicValue.FLOAT_VALUE;
+        if (element == Opcodes.LONG)
+            return BasicValue.LONG_VALUE;
+        if (element == Opcodes.DOUBLE)
+            return BasicValue.DOUBLE_VALUE;
+        if (element == Opcodes.NULL)
+            return verifier.newValue(BasicInterpreter.NULL_TYPE);
+        if (element == Opcodes.UNINITIALIZED_THIS)
+            return verifier.newValue(Type.getObjectType(owner.name));
+        throw new AnalyzerException(node, "unknown frame element " + element);
+    }
+
+    //A SimpleVerifier which gets the class hierarchy from the program instead of loading classes
+    private class Verifier extends SimpleVerifier {
+
+        Verifier(ClassNode owner) {
+            super(Opcodes.ASM9, Type.getObjectType(owner.name), owner.superName == null ? null : Type.getObjectType(owner.superName),
+                    owner.interfaces.stream().map(Type::getObjectType).toList(), (owner.access & Opcodes.ACC_INTERFACE) != 0);
+        }
+
+        boolean fits(BasicValue value, BasicValue expected) {
+            if (expected.getType() == null)
+                return true;
+            return value.getType() != null && isSubTypeOf(value, expected);
+        }
+
+        @Override
+        protected boolean isSubTypeOf(BasicValue value, BasicValue expected) {
+            Type type = value.getType(), expectedType = expected.getType();
+            if (type == null || expectedType == null)
+                return type == expectedType;
+            if (!isReference(expectedType))
+                return type.equals(expectedType);
+            return type.equals(BasicInterpreter.NULL_TYPE) || isReference(type) && isAssignableFrom(expectedType, type);
+        }
+
+        @Override
+        protected boolean isAssignableFrom(Type type, Type other) {
+            if (type.equals(other) || type.getInternalName().equals("java/lang/Object"))
+                return true;
+            if (other.getSort() == Type.ARRAY) {
+                if (type.getSort() != Type.ARRAY)
+                    return type.getInternalName().equals("java/lang/Cloneable") || type.getInternalName().equals("java/io/Serializable");
+                Type element = Type.getType(type.getDescriptor().substring(1)), otherElement = Type.getType(other.getDescriptor().substring(1));
+                if (!isReference(element) || !isReference(otherElement))
+                    return element.equals(otherElement);
+                return isAssignableFrom(element, otherElement);
+            }
+            if (type.getSort() == Type.ARRAY)
+                return false;
+            //The JVM's verifier lets any reference be used as an interface
+            if (isInterface(type))
+                return true;
+            return hierarchy.isSubclass(other.getInternalName(), type.getInternalName());
+        }
+
+        @Override
+        protected boolean isInterface(Type type) {
+            return hierarchy.isInterface(type.getInternalName());
+        }
+
+        @Override
+        protected Type getSuperClass(Type type) {
+            String superName = hierarchy.superName(type.getInternalName()).orElse(null);
+            return superName == null ? null : Type.getObjectType(superName);
+        }
+
+        private static boolean isReference(Type type) {
+            return type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY;
+        }
+    }
+
+    //The classes of the program, and the classes they use that can be loaded.
+    //Classes that are neither are unknown, and taken to fit anywhere.
+    private static class Hierarchy {
+        private final Map<String, ClassReader> generated;
+        private final Map<String, Optional<Class<?>>> loaded = new HashMap<>();
+
+        Hierarchy(Map<String, ClassReader> generated) {
+            this.generated = generated;
+        }
+
+        boolean isInterface(String name) {
+            ClassReader reader = generated.get(name);
+            if (reader != null)
+                return (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+            return load(name).map(Class::isInterface).orElse(true);
+        }
+
+        //The superclass, or empty for Object and for unknown classes
+        Optional<String> superName(String name) {
+            ClassReader reader = generated.get(name);
+            if (reader != null)
+                return Optional.ofNullable(reader.getSuperName());
+            return load(name).map(Class::getSuperclass).map(Type::getInternalName);
+        }
+
+        boolean isSubclass(String name, String superName) {
+            for (String current = name; current != null; current = superName(current).orElse(null)) {
+                if (current.equals(superName))
+                    return true;
+                if (!generated.containsKey(current) && load(current).isEmpty())
+                    return true;
+            }
+            return false;
+        }
+
+        private Optional<Class<?>> load(String name) {
+            return loaded.computeIfAbsent(name, unused -> {
+                try {
+                    return Optional.of(Class.forName(name.replace('/', '.'), false, FrameChecker.class.getClassLoader()));
+                } catch (ClassNotFoundException | LinkageError e) {
+                    return Optional.empty();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,652 @@
+package ast.ir.helper;
+
+import ast.typed.def.field.FieldDef;
+import ast.typed.def.type.TypeDef;
+import org.objectweb.asm.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the stack map frames and the max stack and locals of a method while it's
+ * written, so the ClassWriter doesn't have to compute them afterwards.
+ * The type of every local and stack slot is followed through each instruction, like
+ * ASM's AnalyzerAdapter. Longs and doubles take two slots, the second being TOP.
+ * - At a jump, the state is merged into the state of its target.
+ * - At a label that was jumped to, a frame of the merged state is written.
+ * - Code after a GOTO, return, throw or switch that nothing jumps to is dropped.
+ * The code is written in one pass, so merges can't go backwards. Loop heads need
+ * a frame before their back edge is seen; codegen marks them with loopHead(), saying
+ * which locals are still in scope, so locals of earlier scopes don't end up in it.
+ * Codegen can also give the declared types of locals and of the value an if/else
+ * leaves on the stack, which are better than the Object that merges fall back to.
+ * Hints are static methods taking any MethodVisitor, so they do nothing if the
+ * frames are left to ASM instead (see CompileOptions.asmFrames()). FrameChecker
+ * checks the frames against the whole class hierarchy when verifying bytecode.
+ */
+public class FrameTracker extends MethodVisitor {
+
+    private static final Object TOP = Opcodes.TOP, INTEGER = Opcodes.INTEGER, FLOAT = Opcodes.FLOAT,
+            LONG = Opcodes.LONG, DOUBLE = Opcodes.DOUBLE, NULL = Opcodes.NULL, UNINITIALIZED_THIS = Opcodes.UNINITIALIZED_THIS;
+    private static final String OBJECT = "java/lang/Object";
+
+    private final String owner;
+    //The current state, or null if the current code is unreachable
+    private List<Object> locals, stack;
+    private int maxLocals, maxStack;
+    private boolean visitedCode, visitedMaxs;
+
+    //Merged states jumped to labels that haven't been visited yet
+    private final Map<Label, State> incoming = new HashMap<>();
+    //Frames of visited labels, for backward jumps. Labels visited without a frame map to null.
+    private final Map<Label, State> placed = new HashMap<>();
+    //Labels visited since the last instruction, which get the frame written before the next one
+    private final List<Label> pending = new ArrayList<>();
+    private boolean pendingFrame;
+
+    //Try blocks, and the ones whose start has been visited but not their end
+    private final List<TryBlock> tryBlocks = new ArrayList<>();
+    private final List<TryBlock> openTryBlocks = new ArrayList<>();
+    //The type made by each NEW, by the label placed before it
+    private final Map<Label, String> uninitializedTypes = new HashMap<>();
+
+    //Hints for the next label
+    private int loopHeadLocals = -1, loopHeadKept = -1;
+    //Locals from this one on stay in scope at every loop head. See keepLocals().
+    private int keptFrom = Integer.MAX_VALUE;
+    private List<String> stackTopHint;
+
+    public FrameTracker(String owner, int access, String name, String descriptor, MethodVisitor delegate) {
+        super(Opcodes.ASM9, delegate);
+        this.owner = owner;
+        locals = new ArrayList<>();
+        stack = new ArrayList<>();
+        if ((access & Opcodes.ACC_STATIC) == 0)
+            locals.add(name.equals("<init>") ? UNINITIALIZED_THIS : owner);
+        for (Type arg : Type.getArgumentTypes(descriptor))
+            addDescriptor(locals, arg.getDescriptor());
+        maxLocals = locals.size();
+    }
+
+    //Track the frames of every method of the given class visitor
+    public static ClassVisitor trackingFrames(ClassVisitor writer) {
+        return new ClassVisitor(Opcodes.ASM9, writer) {
+            private String name;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                this.name = name;
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String methodName, String descriptor, String signature, String[] exceptions) {
+                return new FrameTracker(name, access, methodName, descriptor, super.visitMethod(access, methodName, descriptor, signature, exceptions));
+            }
+        };
+    }
+
+    //The next label is the head of a loop. Locals from liveLocals on are out of scope there,
+    //except keptLocal, which is a long (the cost counter), if it's not -1.
+    public static void loopHead(MethodVisitor jvm, int liveLocals, int keptLocal) {
+        if (jvm instanceof FrameTracker tracker) {
+            tracker.loopHeadLocals = liveLocals;
+            tracker.loopHeadKept = keptLocal;
+        }
+    }
+
+    //Locals from the given one on stay in scope at the loop heads after this, for the rest of the method.
+    //For locals that aren't in any scope, like the ones MethodSplitter passes to every helper.
+    public static void keepLocals(MethodVisitor jvm, int from) {
+        if (jvm instanceof FrameTracker tracker)
+            tracker.keptFrom = from;
+    }
+
+    //The value on top of the stack at the next label has the given type
+    public static void stackTop(MethodVisitor jvm, TypeDef type) {
+        if (jvm instanceof FrameTracker tracker) {
+            tracker.stackTopHint = new ArrayList<>();
+            addStackDescriptors(tracker.stackTopHint, type);
+        }
+    }
+
+    //Plural types are on the stack as their fields, in order. (Their descriptors aren't always in that order.)
+    private static void addStackDescriptors(List<String> descriptors, TypeDef type) {
+        if (type.isPlural()) {
+            for (FieldDef field : type.nonStaticFields())
+                addStackDescriptors(descriptors, field.type());
+        } else {
+            descriptors.add(type.getDescriptor().get(0));
+        }
+    }
+
+    //The local just stored to was declared with the given (non-plural) type
+    public static void localType(MethodVisitor jvm, int index, TypeDef type) {
+        if (jvm instanceof FrameTracker tracker && tracker.locals != null && type.getDescriptor().size() == 1)
+            tracker.setLocalType(index, type.getDescriptor().get(0));
+    }
+
+    //The types of the locals and of the stack right now, or null if the code here is unreachable
+    public List<Object> locals() {
+        return locals == null ? null : List.copyOf(locals);
+    }
+    public List<Object> stack() {
+        return stack == null ? null : List.copyOf(stack);
+    }
+
+    @Override
+    public void visitCode() {
+        visitedCode = true;
+        super.visitCode();
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        tryBlocks.add(new TryBlock(start, end, handler, type == null ? "java/lang/Throwable" : type));
+        super.visitTryCatchBlock(start, end, handler, type);
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+        for (TryBlock tryBlock : tryBlocks) {
+            if (tryBlock.end == label)
+                openTryBlocks.remove(tryBlock);
+            if (tryBlock.start == label && locals != null) {
+                openTryBlocks.add(tryBlock);
+                mergeInto(tryBlock.handler, new State(locals, List.of(tryBlock.type)));
+            }
+        }
+        State jumpedFrom = incoming.remove(label);
+        boolean loopHead = loopHeadLocals >= 0;
+        if (locals == null && jumpedFrom == null) {
+            //Unreachable, so there's nothing to write a frame of
+            placed.put(label, null);
+        } else {
+            if (locals == null) {
+                locals = new ArrayList<>(jumpedFrom.locals);
+                stack = new ArrayList<>(jumpedFrom.stack);
+            } else if (jumpedFrom != null) {
+                mergeInto(locals, jumpedFrom.locals, true);
+                mergeInto(stack, jumpedFrom.stack, false);
+            }
+            if (stackTopHint != null) {
+                List<Object> hinted = new ArrayList<>();
+                for (String descriptor : stackTopHint)
+                    addDescriptor(hinted, descriptor);
+                if (hinted.size() > stack.size())
+                    throw new IllegalStateException("Stack type hint is larger than the stack? Bug in compiler, please report!");
+                for (int i = 0; i < hinted.size(); i++)
+                    stack.set(stack.size() - hinted.size() + i, hinted.get(i));
+            }
+            if (loopHead) {
+                for (int i = loopHeadLocals; i < Math.min(locals.size(), keptFrom); i++)
+                    if (loopHeadKept < 0 || i != loopHeadKept && i != loopHeadKept + 1)
+                        locals.set(i, TOP);
+            }
+            if (jumpedFrom != null || loopHead || pendingFrame) {
+                pendingFrame = true;
+                pending.add(label);
+            } else {
+                placed.put(label, null);
+            }
+        }
+        loopHeadLocals = -1;
+        loopHeadKept = -1;
+        stackTopHint = null;
+        super.visitLabel(label);
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        //Frames are computed here, so ones given are ignored
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        if (!reachable())
+            return;
+        super.visitInsn(opcode);
+        switch (opcode) {
+            case Opcodes.NOP -> {}
+            case Opcodes.ACONST_NULL -> push(NULL);
+            case Opcodes.ICONST_M1, Opcodes.ICONST_0, Opcodes.ICONST_1, Opcodes.ICONST_2, Opcodes.ICONST_3,
+                    Opcodes.ICONST_4, Opcodes.ICONST_5 -> push(INTEGER);
+            case Opcodes.LCONST_0, Opcodes.LCONST_1 -> push(LONG, TOP);
+            case Opcodes.FCONST_0, Opcodes.FCONST_1, Opcodes.FCONST_2 -> push(FLOAT);
+            case Opcodes.DCONST_0, Opcodes.DCONST_1 -> push(DOUBLE, TOP);
+            case Opcodes.IALOAD, Opcodes.BALOAD, Opcodes.CALOAD, Opcodes.SALOAD -> { pop(2); push(INTEGER); }
+            case Opcodes.LALOAD, Opcodes.D2L -> { pop(2); push(LONG, TOP); }
+            case Opcodes.FALOAD -> { pop(2); push(FLOAT); }
+            case Opcodes.DALOAD, Opcodes.L2D -> { pop(2); push(DOUBLE, TOP); }
+            case Opcodes.AALOAD -> {
+                pop(1);
+                Object array = pop();
+                if (array instanceof String descriptor && descriptor.startsWith("["))
+                    addDescriptor(stack, descriptor.substring(1));
+                else
+                    push(array == NULL ? NULL : OBJECT);
+            }
+            case Opcodes.IASTORE, Opcodes.BASTORE, Opcodes.CASTORE, Opcodes.SASTORE, Opcodes.FASTORE, Opcodes.AASTORE -> pop(3);
+            case Opcodes.LASTORE, Opcodes.DASTORE -> pop(4);
+            case Opcodes.POP, Opcodes.MONITORENTER, Opcodes.MONITOREXIT -> pop(1);
+            case Opcodes.POP2 -> pop(2);
+            case Opcodes.DUP -> { Object a = pop(); push(a, a); }
+            case Opcodes.DUP_X1 -> { Object a = pop(), b = pop(); push(a, b, a); }
+            case Opcodes.DUP_X2 -> { Object a = pop(), b = pop(), c = pop(); push(a, c, b, a); }
+            case Opcodes.DUP2 -> { Object a = pop(), b = pop(); push(b, a, b, a); }
+            case Opcodes.DUP2_X1 -> { Object a = pop(), b = pop(), c = pop(); push(b, a, c, b, a); }
+            case Opcodes.DUP2_X2 -> { Object a = pop(), b = pop(), c = pop(), d = pop(); push(b, a, d, c, b, a); }
+            case Opcodes.SWAP -> { Object a = pop(), b = pop(); push(a, b); }
+            case Opcodes.IADD, Opcodes.ISUB, Opcodes.IMUL, Opcodes.IDIV, Opcodes.IREM, Opcodes.ISHL, Opcodes.ISHR,
+                    Opcodes.IUSHR, Opcodes.IAND, Opcodes.IOR, Opcodes.IXOR, Opcodes.FCMPL, Opcodes.FCMPG,
+                    Opcodes.L2I, Opcodes.D2I -> { pop(2); push(INTEGER); }
+            case Opcodes.LADD, Opcodes.LSUB, Opcodes.LMUL, Opcodes.LDIV, Opcodes.LREM, Opcodes.LAND, Opcodes.LOR,
+                    Opcodes.LXOR -> { pop(4); push(LONG, TOP); }
+            case Opcodes.LSHL, Opcodes.LSHR, Opcodes.LUSHR -> { pop(3); push(LONG, TOP); }
+            case Opcodes.FADD, Opcodes.FSUB, Opcodes.FMUL, Opcodes.FDIV, Opcodes.FREM, Opcodes.L2F, Opcodes.D2F -> { pop(2); push(FLOAT); }
+            case Opcodes.DADD, Opcodes.DSUB, Opcodes.DMUL, Opcodes.DDIV, Opcodes.DREM -> { pop(4); push(DOUBLE, TOP); }
+            case Opcodes.INEG, Opcodes.I2B, Opcodes.I2C, Opcodes.I2S, Opcodes.F2I, Opcodes.ARRAYLENGTH -> { pop(1); push(INTEGER); }
+            case Opcodes.LNEG -> { pop(2); push(LONG, TOP); }
+            case Opcodes.FNEG, Opcodes.I2F -> { pop(1); push(FLOAT); }
+            case Opcodes.DNEG -> { pop(2); push(DOUBLE, TOP); }
+            case Opcodes.I2L, Opcodes.F2L -> { pop(1); push(LONG, TOP); }
+            case Opcodes.I2D, Opcodes.F2D -> { pop(1); push(DOUBLE, TOP); }
+            case Opcodes.LCMP, Opcodes.DCMPL, Opcodes.DCMPG -> { pop(4); push(INTEGER); }
+            case Opcodes.IRETURN, Opcodes.LRETURN, Opcodes.FRETURN, Opcodes.DRETURN, Opcodes.ARETURN,
+                    Opcodes.RETURN, Opcodes.ATHROW -> unreachable();
+            default -> throw new IllegalStateException("Unexpected opcode " + opcode + " - bug in compiler, please report!");
+        }
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        if (!reachable())
+            return;
+        super.visitIntInsn(opcode, operand);
+        if (opcode == Opcodes.NEWARRAY) {
+            pop(1);
+            push(switch (operand) {
+                case Opcodes.T_BOOLEAN -> "[Z";
+                case Opcodes.T_CHAR -> "[C";
+                case Opcodes.T_FLOAT -> "[F";
+                case Opcodes.T_DOUBLE -> "[D";
+                case Opcodes.T_BYTE -> "[B";
+                case Opcodes.T_SHORT -> "[S";
+                case Opcodes.T_INT -> "[I";
+                case Opcodes.T_LONG -> "[J";
+                default -> throw new IllegalStateException("Unexpected array type " + operand + " - bug in compiler, please report!");
+            });
+        } else {
+            push(INTEGER); //BIPUSH, SIPUSH
+        }
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int varIndex) {
+        if (!reachable())
+            return;
+        super.visitVarInsn(opcode, varIndex);
+        switch (opcode) {
+            case Opcodes.ILOAD -> push(INTEGER);
+            case Opcodes.FLOAD -> push(FLOAT);
+            case Opcodes.LLOAD -> push(LONG, TOP);
+            case Opcodes.DLOAD -> push(DOUBLE, TOP);
+            case Opcodes.ALOAD -> push(locals.get(varIndex));
+            case Opcodes.ISTORE, Opcodes.FSTORE, Opcodes.ASTORE -> setLocal(varIndex, pop());
+            case Opcodes.LSTORE, Opcodes.DSTORE -> { pop(1); setLocal(varIndex, pop()); }
+            default -> throw new IllegalStateException("Unexpected opcode " + opcode + " - bug in compiler, please report!");
+        }
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        if (!reachable())
+            return;
+        if (opcode == Opcodes.NEW) {
+            //Uninitialized values are known by the offset of their NEW, so mark it
+            Label at = new Label();
+            super.visitLabel(at);
+            uninitializedTypes.put(at, type);
+            super.visitTypeInsn(opcode, type);
+            push(at);
+            return;
+        }
+        super.visitTypeInsn(opcode, type);
+        pop(1);
+        switch (opcode) {
+            case Opcodes.ANEWARRAY -> push(type.startsWith("[") ? "[" + type : "[L" + type + ";");
+            case Opcodes.CHECKCAST -> push(type);
+            case Opcodes.INSTANCEOF -> push(INTEGER);
+            default -> throw new IllegalStateException("Unexpected opcode " + opcode + " - bug in compiler, please report!");
+        }
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        if (!reachable())
+            return;
+        super.visitFieldInsn(opcode, owner, name, descriptor);
+        switch (opcode) {
+            case Opcodes.GETSTATIC -> addDescriptor(stack, descriptor);
+            case Opcodes.PUTSTATIC -> pop(Type.getType(descriptor).getSize());
+            case Opcodes.GETFIELD -> { pop(1); addDescriptor(stack, descriptor); }
+            case Opcodes.PUTFIELD -> pop(Type.getType(descriptor).getSize() + 1);
+            default -> throw new IllegalStateException("Unexpected opcode " + opcode + " - bug in compiler, please report!");
+        }
+        updateMaxStack();
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        if (!reachable())
+            return;
+        super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        pop((Type.getArgumentsAndReturnSizes(descriptor) >> 2) - 1);
+        if (opcode != Opcodes.INVOKESTATIC) {
+            Object receiver = pop();
+            if (name.equals("<init>")) {
+                //The receiver is initialized now, everywhere it's been copied to
+                Object initialized = receiver == UNINITIALIZED_THIS ? this.owner : uninitializedTypes.get((Label) receiver);
+                locals.replaceAll(v -> v == receiver ? initialized : v);
+                stack.replaceAll(v -> v == receiver ? initialized : v);
+            }
+        }
+        addDescriptor(stack, Type.getReturnType(descriptor).getDescriptor());
+        updateMaxStack();
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+        if (!reachable())
+            return;
+        super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        pop((Type.getArgumentsAndReturnSizes(descriptor) >> 2) - 1);
+        addDescriptor(stack, Type.getReturnType(descriptor).getDescriptor());
+        updateMaxStack();
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        if (!reachable())
+            return;
+        super.visitJumpInsn(opcode, label);
+        switch (opcode) {
+            case Opcodes.IFEQ, Opcodes.IFNE, Opcodes.IFLT, Opcodes.IFGE, Opcodes.IFGT, Opcodes.IFLE,
+                    Opcodes.IFNULL, Opcodes.IFNONNULL -> pop(1);
+            case Opcodes.IF_ICMPEQ, Opcodes.IF_ICMPNE, Opcodes.IF_ICMPLT, Opcodes.IF_ICMPGE, Opcodes.IF_ICMPGT,
+                    Opcodes.IF_ICMPLE, Opcodes.IF_ACMPEQ, Opcodes.IF_ACMPNE -> pop(2);
+            case Opcodes.GOTO -> {}
+            default -> throw new IllegalStateException("Unexpected opcode " + opcode + " - bug in compiler, please report!");
+        }
+        jumpTo(label);
+        if (opcode == Opcodes.GOTO)
+            unreachable();
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        if (!reachable())
+            return;
+        super.visitLdcInsn(value);
+        if (value instanceof Integer)
+            push(INTEGER);
+        else if (value instanceof Float)
+            push(FLOAT);
+        else if (value instanceof Long)
+            push(LONG, TOP);
+        else if (value instanceof Double)
+            push(DOUBLE, TOP);
+        else if (value instanceof String)
+            push("java/lang/String");
+        else if (value instanceof Type type)
+            push(type.getSort() == Type.METHOD ? "java/lang/invoke/MethodType" : "java/lang/Class");
+        else if (value instanceof Handle)
+            push("java/lang/invoke/MethodHandle");
+        else if (value instanceof ConstantDynamic constant)
+            addDescriptor(stack, constant.getDescriptor());
+        else
+            throw new IllegalStateException("Unexpected constant " + value + " - bug in compiler, please report!");
+        updateMaxStack();
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+        if (!reachable())
+            return;
+        super.visitIincInsn(varIndex, increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        if (!reachable())
+            return;
+        super.visitTableSwitchInsn(min, max, dflt, labels);
+        switchTo(dflt, labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        if (!reachable())
+            return;
+        super.visitLookupSwitchInsn(dflt, keys, labels);
+        switchTo(dflt, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        if (!reachable())
+            return;
+        super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        pop(numDimensions);
+        push(descriptor);
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        visitedMaxs = true;
+        super.visitMaxs(this.maxStack, this.maxLocals);
+    }
+
+    @Override
+    public void visitEnd() {
+        if (visitedCode && !visitedMaxs)
+            visitMaxs(0, 0);
+        if (!incoming.isEmpty())
+            throw new IllegalStateException("Jump to a label that was never visited - bug in compiler, please report!");
+        super.visitEnd();
+    }
+
+    //Called before each instruction. Writes the frame of the labels just visited,
+    //or returns false if the instruction is unreachable, so it should be dropped.
+    private boolean reachable() {
+        if (locals == null)
+            return false;
+        if (pendingFrame) {
+            State frame = new State(locals, stack);
+            for (Label label : pending)
+                placed.put(label, frame);
+            pending.clear();
+            pendingFrame = false;
+            Object[] frameLocals = collapse(locals), frameStack = collapse(stack);
+            super.visitFrame(Opcodes.F_NEW, frameLocals.length, frameLocals, frameStack.length, frameStack);
+        }
+        return true;
+    }
+
+    private void unreachable() {
+        locals = null;
+        stack = null;
+    }
+
+    private void jumpTo(Label label) {
+        if (placed.containsKey(label)) {
+            //Backward jump, which must fit the frame that's already written
+            State frame = placed.get(label);
+            if (frame == null)
+                throw new IllegalStateException("Backward jump to a label without a frame; loop heads should be marked with FrameTracker.loopHead(). Bug in compiler, please report!");
+            if (!fits(locals, frame.locals, true) || !fits(stack, frame.stack, false))
+                throw new IllegalStateException("Backward jump doesn't fit the frame of its target: locals " + locals + ", stack " + stack +
+                        ", expected " + frame.locals + ", " + frame.stack + ". Bug in compiler, please report!");
+        } else {
+            mergeInto(label, new State(locals, stack));
+        }
+    }
+
+    private void switchTo(Label dflt, Label[] labels) {
+        pop(1);
+        jumpTo(dflt);
+        for (Label label : labels)
+            jumpTo(label);
+        unreachable();
+    }
+
+    private void mergeInto(Label label, State state) {
+        State existing = incoming.get(label);
+        if (existing == null) {
+            incoming.put(label, state);
+        } else {
+            List<Object> mergedLocals = new ArrayList<>(existing.locals), mergedStack = new ArrayList<>(existing.stack);
+            mergeInto(mergedLocals, state.locals, true);
+            mergeInto(mergedStack, state.stack, false);
+            incoming.put(label, new State(mergedLocals, mergedStack));
+        }
+    }
+
+    //Merge other into values. Locals missing from either are TOP; stacks must be the same height.
+    private static void mergeInto(List<Object> values, List<Object> other, boolean isLocals) {
+        if (!isLocals && values.size() != other.size())
+            throw new IllegalStateException("Stack heights differ at a merge: " + values + " and " + other + ". Bug in compiler, please report!");
+        while (values.size() < other.size())
+            values.add(TOP);
+        for (int i = 0; i < values.size(); i++)
+            values.set(i, merge(values.get(i), i < other.size() ? other.get(i) : TOP));
+    }
+
+    private static Object merge(Object a, Object b) {
+        if (a.equals(b))
+            return a;
+        if (isReference(a) && b == NULL)
+            return a;
+        if (a == NULL && isReference(b))
+            return b;
+        if (isReference(a) && isReference(b)) {
+            //Without the class hierarchy, Object is the best that's known. Codegen hints do better.
+            String x = (String) a, y = (String) b;
+            int dimensions = 0;
+            while (dimensions < x.length() && dimensions < y.length() && x.charAt(dimensions) == '[' && y.charAt(dimensions) == '[')
+                dimensions++;
+            if (dimensions > 0 && x.charAt(dimensions) == 'L' && y.charAt(dimensions) == 'L')
+                return "[".repeat(dimensions) + "Ljava/lang/Object;";
+            return dimensions > 1 ? "[".repeat(dimensions - 1) + "Ljava/lang/Object;" : OBJECT;
+        }
+        return TOP;
+    }
+
+    //Whether the values can be used where the frame's are expected
+    private static boolean fits(List<Object> values, List<Object> frame, boolean isLocals) {
+        if (isLocals ? values.size() < trimmedSize(frame) : values.size() != frame.size())
+            return false;
+        for (int i = 0; i < frame.size(); i++) {
+            Object expected = frame.get(i), actual = i < values.size() ? values.get(i) : TOP;
+            //References can't be checked without the class hierarchy, so only their kind is
+            boolean fits = expected == TOP || expected.equals(actual) ||
+                    isReference(expected) && (actual == NULL || isReference(actual));
+            if (!fits)
+                return false;
+        }
+        return true;
+    }
+
+    private static int trimmedSize(List<Object> values) {
+        int size = values.size();
+        while (size > 0 && values.get(size - 1) == TOP)
+            size--;
+        return size;
+    }
+
+    private static boolean isReference(Object value) {
+        return value instanceof String;
+    }
+
+    //Frames take longs and doubles as one element, and leave out TOP locals at the end
+    private static Object[] collapse(List<Object> values) {
+        List<Object> result = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            result.add(value);
+            if (value == LONG || value == DOUBLE)
+                i++;
+        }
+        int size = result.size();
+        while (size > 0 && result.get(size - 1) == TOP)
+            size--;
+        return result.subList(0, size).toArray();
+    }
+
+    private void setLocal(int index, Object value) {
+        int size = value == LONG || value == DOUBLE ? 2 : 1;
+        while (locals.size() < index + size)
+            locals.add(TOP);
+        //Overwriting the second half of a long or double breaks it
+        if (index > 0 && (locals.get(index - 1) == LONG || locals.get(index - 1) == DOUBLE))
+            locals.set(index - 1, TOP);
+        locals.set(index, value);
+        if (size == 2)
+            locals.set(index + 1, TOP);
+        maxLocals = Math.max(maxLocals, locals.size());
+        for (TryBlock tryBlock : openTryBlocks)
+            mergeInto(tryBlock.handler, new State(locals, List.of(tryBlock.type)));
+    }
+
+    //Set a local to the type of a descriptor, from a hint
+    private void setLocalType(int index, String descriptor) {
+        List<Object> values = new ArrayList<>(2);
+        addDescriptor(values, descriptor);
+        if (!values.isEmpty())
+            setLocal(index, values.get(0));
+    }
+
+    private static void addDescriptor(List<Object> values, String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'V' -> {}
+            case 'Z', 'C', 'B', 'S', 'I' -> values.add(INTEGER);
+            case 'F' -> values.add(FLOAT);
+            case 'J' -> { values.add(LONG); values.add(TOP); }
+            case 'D' -> { values.add(DOUBLE); values.add(TOP); }
+            case 'L' -> values.add(descriptor.substring(1, descriptor.length() - 1));
+            case '[' -> values.add(descriptor);
+            default -> throw new IllegalStateException("Unexpected descriptor " + descriptor + " - bug in compiler, please report!");
+        }
+    }
+
+    private void push(Object... values) {
+        for (Object value : values)
+            stack.add(value);
+        updateMaxStack();
+    }
+
+    private Object pop() {
+        return stack.remove(stack.size() - 1);
+    }
+
+    private void pop(int slots) {
+        for (int i = 0; i < slots; i++)
+            pop();
+    }
+
+    private void updateMaxStack() {
+        maxStack = Math.max(maxStack, stack.size());
+    }
+
+    private record State(List<Object> locals, List<Object> stack) {
+        private State {
+            locals = List.copyOf(locals);
+            stack = List.copyOf(stack);
+        }
+    }
+
+    private record TryBlock(Label start, Label end, Label handler, String type) {}
+
+}
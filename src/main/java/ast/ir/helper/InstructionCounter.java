@@ -0,0 +1,166 @@
+package ast.ir.helper;
+
+import ast.ir.def.CodeBlock;
+import exceptions.runtime.SnuggleException;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Counts the cost of the code an instance runs, so it can be capped.
+ * Each method adds up its cost in a local, which is flushed into the counter
+ * on the instance's runtime object (see RuntimeHelper), and checked against the cap:
+ * - at loop back edges, once the local has gone over FLUSH_THRESHOLD,
+ * - and whenever the method returns.
+ * The cap can be overshot by at most about FLUSH_THRESHOLD, plus one loop iteration.
+ */
+public class InstructionCounter {
+
+    public static final long FLUSH_THRESHOLD = 1024;
+
+    private static final String REMAINING_FIELD = "remainingInstructions", CAP_FIELD = "instructionCap", CHARGE_METHOD = "charge";
+
+    //Start counting at the beginning of a method
+    public static void start(CodeBlock block, MethodVisitor jvm) {
+        block.env.countCost(true);
+        int counter = block.env.costCounter();
+        jvm.visitInsn(Opcodes.LCONST_0);
+        jvm.visitVarInsn(Opcodes.LSTORE, counter);
+    }
+
+    //Add the cost of a block to the local count
+    public static void add(CodeBlock block, MethodVisitor jvm, long cost) {
+        int counter = block.env.costCounter();
+        if (counter < 0)
+            return;
+        jvm.visitVarInsn(Opcodes.LLOAD, counter);
+        jvm.visitLdcInsn(cost);
+        jvm.visitInsn(Opcodes.LADD);
+        jvm.visitVarInsn(Opcodes.LSTORE, counter);
+    }
+
+    //Flush the local count if it's grown large enough. For loop back edges,
+    //so loops pay a local add per iteration, and a call to charge() only now and then.
+    public static void flushIfOver(CodeBlock block, MethodVisitor jvm) {
+        int counter = block.env.costCounter();
+        if (counter < 0)
+            return;
+        Label skip = new Label();
+        jvm.visitVarInsn(Opcodes.LLOAD, counter);
+        jvm.visitLdcInsn(FLUSH_THRESHOLD);
+        jvm.visitInsn(Opcodes.LCMP);
+        jvm.visitJumpInsn(Opcodes.IFLT, skip);
+        flush(block, jvm);
+        jvm.visitLabel(skip);
+    }
+
+    //Flush the local count into the running instance's counter, and check the cap
+    public static void flush(CodeBlock block, MethodVisitor jvm) {
+        int counter = block.env.costCounter();
+        if (counter < 0)
+            return;
+        jvm.visitVarInsn(Opcodes.LLOAD, counter);
+        jvm.visitMethodInsn(Opcodes.INVOKESTATIC, NameHelper.getRuntimeClassName(), CHARGE_METHOD, "(J)V", false);
+        jvm.visitInsn(Opcodes.LCONST_0);
+        jvm.visitVarInsn(Opcodes.LSTORE, counter);
+    }
+
+    //Add the counter, the cap, and the methods using them to the runtime class.
+    //They're instance fields, since each instance has its own runtime object.
+    //The count is kept as what's left under the cap, so charging reads and writes a single field.
+    public static void generateRuntimeMembers(ClassVisitor runtimeWriter) {
+        String runtime = NameHelper.getRuntimeClassName();
+        runtimeWriter.visitField(Opcodes.ACC_PUBLIC, REMAINING_FIELD, "J", null, null).visitEnd();
+        runtimeWriter.visitField(Opcodes.ACC_PUBLIC, CAP_FIELD, "J", null, null).visitEnd();
+
+        //static void charge(long cost) throws SnuggleException
+        MethodVisitor charge = runtimeWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, CHARGE_METHOD, "(J)V", null, null);
+        charge.visitCode();
+        RuntimeHelper.loadCurrent(charge);
+        charge.visitInsn(Opcodes.DUP);
+        charge.visitFieldInsn(Opcodes.GETFIELD, runtime, REMAINING_FIELD, "J");
+        charge.visitVarInsn(Opcodes.LLOAD, 0);
+        charge.visitInsn(Opcodes.LSUB);
+        charge.visitInsn(Opcodes.DUP2_X1);
+        charge.visitFieldInsn(Opcodes.PUTFIELD, runtime, REMAINING_FIELD, "J");
+        charge.visitInsn(Opcodes.LCONST_0);
+        charge.visitInsn(Opcodes.LCMP);
+        Label underCap = new Label();
+        charge.visitJumpInsn(Opcodes.IFGE, underCap);
+        String exception = Type.getInternalName(SnuggleException.class);
+        charge.visitTypeInsn(Opcodes.NEW, exception);
+        charge.visitInsn(Opcodes.DUP);
+        charge.visitLdcInsn("Exceeded the instruction cap");
+        charge.visitMethodInsn(Opcodes.INVOKESPECIAL, exception, "<init>", "(Ljava/lang/String;)V", false);
+        charge.visitInsn(Opcodes.ATHROW);
+        charge.visitLabel(underCap);
+        charge.visitInsn(Opcodes.RETURN);
+        charge.visitMaxs(0, 0);
+        charge.visitEnd();
+
+        //Getters and setters from SnuggleRuntime, in terms of the cap and what's left under it
+        MethodVisitor getCap = runtimeWriter.visitMethod(Opcodes.ACC_PUBLIC, "getInstructionCap", "()J", null, null);
+        getCap.visitCode();
+        loadField(getCap, CAP_FIELD);
+        getCap.visitInsn(Opcodes.LRETURN);
+        getCap.visitMaxs(0, 0);
+        getCap.visitEnd();
+
+        //remaining += cap - oldCap
+        MethodVisitor setCap = runtimeWriter.visitMethod(Opcodes.ACC_PUBLIC, "setInstructionCap", "(J)V", null, null);
+        setCap.visitCode();
+        setCap.visitVarInsn(Opcodes.ALOAD, 0);
+        loadField(setCap, REMAINING_FIELD);
+        setCap.visitVarInsn(Opcodes.LLOAD, 1);
+        setCap.visitInsn(Opcodes.LADD);
+        loadField(setCap, CAP_FIELD);
+        setCap.visitInsn(Opcodes.LSUB);
+        setCap.visitFieldInsn(Opcodes.PUTFIELD, runtime, REMAINING_FIELD, "J");
+        setCap.visitVarInsn(Opcodes.ALOAD, 0);
+        setCap.visitVarInsn(Opcodes.LLOAD, 1);
+        setCap.visitFieldInsn(Opcodes.PUTFIELD, runtime, CAP_FIELD, "J");
+        setCap.visitInsn(Opcodes.RETURN);
+        setCap.visitMaxs(0, 0);
+        setCap.visitEnd();
+
+        //used = cap - remaining
+        MethodVisitor getUsed = runtimeWriter.visitMethod(Opcodes.ACC_PUBLIC, "getUsedInstructions", "()J", null, null);
+        getUsed.visitCode();
+        loadField(getUsed, CAP_FIELD);
+        loadField(getUsed, REMAINING_FIELD);
+        getUsed.visitInsn(Opcodes.LSUB);
+        getUsed.visitInsn(Opcodes.LRETURN);
+        getUsed.visitMaxs(0, 0);
+        getUsed.visitEnd();
+
+        //remaining = cap - used
+        MethodVisitor setUsed = runtimeWriter.visitMethod(Opcodes.ACC_PUBLIC, "setUsedInstructions", "(J)V", null, null);
+        setUsed.visitCode();
+        setUsed.visitVarInsn(Opcodes.ALOAD, 0);
+        loadField(setUsed, CAP_FIELD);
+        setUsed.visitVarInsn(Opcodes.LLOAD, 1);
+        setUsed.visitInsn(Opcodes.LSUB);
+        setUsed.visitFieldInsn(Opcodes.PUTFIELD, runtime, REMAINING_FIELD, "J");
+        setUsed.visitInsn(Opcodes.RETURN);
+        setUsed.visitMaxs(0, 0);
+        setUsed.visitEnd();
+    }
+
+    //In the runtime's constructor; there's no cap until one is set
+    public static void initRuntimeMembers(MethodVisitor constructor) {
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitLdcInsn(Long.MAX_VALUE);
+        constructor.visitFieldInsn(Opcodes.PUTFIELD, NameHelper.getRuntimeClassName(), CAP_FIELD, "J");
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitLdcInsn(Long.MAX_VALUE);
+        constructor.visitFieldInsn(Opcodes.PUTFIELD, NameHelper.getRuntimeClassName(), REMAINING_FIELD, "J");
+    }
+
+    private static void loadField(MethodVisitor jvm, String field) {
+        jvm.visitVarInsn(Opcodes.ALOAD, 0);
+        jvm.visitFieldInsn(Opcodes.GETFIELD, NameHelper.getRuntimeClassName(), field, "J");
+    }
+
+}
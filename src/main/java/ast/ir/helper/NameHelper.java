@@ -2,6 +2,7 @@ package ast.ir.helper;
 
 import org.objectweb.asm.*;
 import org.objectweb.asm.util.CheckClassAdapter;
+import util.CompileOptions;
 import util.GenericStringUtil;
 import util.ListUtils;
 
@@ -16,21 +17,30 @@ public class NameHelper {
     public static String getFilesClassName() { return "snuggle/Files"; }
     public static String getImportMethodName(String fileName) { return "importFile_" + GenericStringUtil.mangleSlashes(fileName); }
     public static String getImportFieldName(String fileName) { return "hasImported_" + GenericStringUtil.mangleSlashes(fileName); }
-
-    //If ASM throws a cryptic error, enable this to figure out what's wrong
-    public static final boolean DEBUG_BYTECODE_GENERATION = true;
+    public static String getStaticFieldName(String owner, String fieldName) { return "static_" + GenericStringUtil.mangleSlashes(owner) + "$" + GenericStringUtil.mangleSlashes(fieldName); }
 
     //Helper to generate and set up a class writer with the given parameters
-    //Adds a default constructor, assuming the supertype also has a default constructor
-    public static ClassVisitor generateWriter(String name, String supertypeName, boolean defaultConstructor, boolean isInterface, String... interfaces) {
-        ClassVisitor writer = new ClassWriter(ClassWriter.COMPUTE_MAXS + ClassWriter.COMPUTE_FRAMES) {
-            @Override
-            protected String getCommonSuperClass(String type1, String type2) {
-                return "java/lang/Object"; //Cursed
-            }
-        };
-        if (DEBUG_BYTECODE_GENERATION)
-            writer = new CheckClassAdapter(writer);
+    //Adds a default constructor, assuming the supertype also has a default constructor.
+    //If ASM throws a cryptic error, compile with options.verifyBytecode() to figure out what's wrong.
+    //Frames and maxes come from FrameTracker, unless options.asmFrames(), when ASM computes them.
+    public static ClassVisitor generateWriter(CompileOptions options, String name, String supertypeName, boolean defaultConstructor, boolean isInterface, String... interfaces) {
+        ClassVisitor writer;
+        if (options.asmFrames()) {
+            writer = new ClassWriter(ClassWriter.COMPUTE_MAXS + ClassWriter.COMPUTE_FRAMES) {
+                @Override
+                protected String getCommonSuperClass(String type1, String type2) {
+                    return "java/lang/Object"; //Cursed
+                }
+            };
+        } else {
+            writer = new ClassWriter(0);
+        }
+        //Hide the ClassWriter from the CheckClassAdapter, or it checks frames with ASM's CheckFrameAnalyzer,
+        //which rejects returning with values left on the stack. FrameChecker checks them once every class is written.
+        if (options.verifyBytecode())
+            writer = new CheckClassAdapter(new ClassVisitor(Opcodes.ASM9, writer) {});
+        if (!options.asmFrames())
+            writer = FrameTracker.trackingFrames(writer);
         int version = Opcodes.V17; //version 61.0
         int access = Opcodes.ACC_PUBLIC + (isInterface ? Opcodes.ACC_INTERFACE + Opcodes.ACC_ABSTRACT : 0);
         writer.visit(version, access, name, null, supertypeName, interfaces);
@@ -55,19 +65,26 @@ public class NameHelper {
         return writer;
     }
 
-    public static ClassVisitor generateClassWriter(String name, String supertypeName, boolean defaultConstructor, Class<?>... interfaces) {
+    //The bytes of a class from one of the writers above, once it's done
+    public static byte[] toByteArray(ClassVisitor writer) {
+        while (!(writer instanceof ClassWriter))
+            writer = writer.getDelegate();
+        return ((ClassWriter) writer).toByteArray();
+    }
+
+    public static ClassVisitor generateClassWriter(CompileOptions options, String name, String supertypeName, boolean defaultConstructor, Class<?>... interfaces) {
         String[] interfacesMapped = ListUtils.mapArray(interfaces, String.class, org.objectweb.asm.Type::getInternalName);
-        return generateWriter(name, supertypeName, defaultConstructor, false, interfacesMapped);
+        return generateWriter(options, name, supertypeName, defaultConstructor, false, interfacesMapped);
     }
 
-    public static ClassVisitor generateClassWriter(String name, boolean defaultConstructor, Class<?>... interfaces) {
+    public static ClassVisitor generateClassWriter(CompileOptions options, String name, boolean defaultConstructor, Class<?>... interfaces) {
         String[] interfacesMapped = ListUtils.mapArray(interfaces, String.class, org.objectweb.asm.Type::getInternalName);
-        return generateWriter(name, "java/lang/Object", defaultConstructor, false, interfacesMapped);
+        return generateWriter(options, name, "java/lang/Object", defaultConstructor, false, interfacesMapped);
     }
 
-    public static ClassVisitor generateInterfaceWriter(String name, Class<?>... interfaces) {
+    public static ClassVisitor generateInterfaceWriter(CompileOptions options, String name, Class<?>... interfaces) {
         String[] interfacesMapped = ListUtils.mapArray(interfaces, String.class, org.objectweb.asm.Type::getInternalName);
-        return generateWriter(name, "java/lang/Object", false, true, interfacesMapped);
+        return generateWriter(options, name, "java/lang/Object", false, true, interfacesMapped);
     }
 
 }
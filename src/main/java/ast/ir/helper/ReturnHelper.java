@@ -0,0 +1,249 @@
+package ast.ir.helper;
+
+import ast.typed.def.field.FieldDef;
+import ast.typed.def.type.TypeDef;
+import builtin_types.types.numbers.IntegerType;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import util.GenericStringUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Returning plural values from methods. The JVM only returns one value, so a
+ * plural value is returned in one of three ways:
+ * - If it has no fields, nothing is returned.
+ * - If its flattened fields are all primitives, adding up to 64 bits or fewer,
+ *   they're packed into a long.
+ * - Otherwise, it's returned in a new instance of the type's runtime class, the
+ *   "carrier", which has an instance field for each flattened field.
+ * Neither way shares anything between calls, so threads running the same code
+ * can't see each other's return values.
+ * The carrier is allocated by the callee on every return, rather than handed in by
+ * the caller: when the JIT inlines the call, escape analysis removes it, and when it
+ * doesn't, the 32 bytes a complex<f64> takes cost no measurable time against packing
+ * (see PluralReturn in benchmarks.Benchmarks), so a carrier parameter wouldn't be
+ * worth changing every descriptor for.
+ */
+public class ReturnHelper {
+
+    //The descriptor for a method returning the plural type
+    public static String returnDescriptor(TypeDef pluralType) {
+        List<Leaf> leaves = leaves(pluralType);
+        if (leaves.isEmpty())
+            return "V";
+        if (packs(leaves))
+            return "J";
+        return "L" + pluralType.runtimeName() + ";";
+    }
+
+    //The plural value is on the stack; return it from the method.
+    //Locals from tempIndex onwards are free to use.
+    public static void emitReturn(MethodVisitor jvm, TypeDef pluralType, int tempIndex) {
+        List<Leaf> leaves = leaves(pluralType);
+        if (leaves.isEmpty()) {
+            jvm.visitInsn(Opcodes.RETURN);
+        } else if (packs(leaves)) {
+            //Pack from the top of the stack down; the last leaf gets the lowest bits.
+            //Only a single leaf can be 64 bits, so the ones below the top are 1 stack slot.
+            Leaf last = leaves.get(leaves.size() - 1);
+            toBits(jvm, last.descriptor);
+            int offset = bits(last.descriptor);
+            for (int i = leaves.size() - 2; i >= 0; i--) {
+                Leaf leaf = leaves.get(i);
+                jvm.visitInsn(Opcodes.DUP2_X1);
+                jvm.visitInsn(Opcodes.POP2);
+                toBits(jvm, leaf.descriptor);
+                jvm.visitIntInsn(Opcodes.BIPUSH, offset);
+                jvm.visitInsn(Opcodes.LSHL);
+                jvm.visitInsn(Opcodes.LOR);
+                offset += bits(leaf.descriptor);
+            }
+            jvm.visitInsn(Opcodes.LRETURN);
+        } else {
+            //Store the values, then copy them into a new carrier
+            String carrier = pluralType.runtimeName();
+            BytecodeHelper.visitVariable(tempIndex, pluralType, true, jvm);
+            jvm.visitTypeInsn(Opcodes.NEW, carrier);
+            jvm.visitInsn(Opcodes.DUP);
+            jvm.visitMethodInsn(Opcodes.INVOKESPECIAL, carrier, "<init>", "()V", false);
+            int index = tempIndex;
+            for (Leaf leaf : leaves) {
+                jvm.visitInsn(Opcodes.DUP);
+                BytecodeHelper.visitVariable(index, leaf.type, false, jvm);
+                jvm.visitFieldInsn(Opcodes.PUTFIELD, carrier, leaf.fieldName(), leaf.descriptor);
+                index += leaf.type.stackSlots();
+            }
+            jvm.visitInsn(Opcodes.ARETURN);
+        }
+    }
+
+    //A method returning the plural type was just called; unpack its result onto the stack.
+    //If desiredFields is non-empty, only the values of that field are pushed.
+    //Locals from tempIndex onwards are free to use.
+    public static void fetchReturned(MethodVisitor jvm, TypeDef pluralType, List<FieldDef> desiredFields, int tempIndex) {
+        List<Leaf> leaves = leaves(pluralType);
+        if (leaves.isEmpty())
+            return;
+        //Find the leaves of the desired field
+        StringBuilder prefix = new StringBuilder();
+        TypeDef desiredType = pluralType;
+        for (FieldDef field : desiredFields) {
+            if (prefix.length() > 0)
+                prefix.append("$");
+            prefix.append(field.name());
+            desiredType = field.type();
+        }
+        List<Leaf> desired = new ArrayList<>();
+        collectLeaves(desiredType, prefix.toString(), desired);
+
+        if (packs(leaves)) {
+            Map<String, Integer> offsets = new HashMap<>();
+            int offset = 0;
+            for (int i = leaves.size() - 1; i >= 0; i--) {
+                offsets.put(leaves.get(i).name, offset);
+                offset += bits(leaves.get(i).descriptor);
+            }
+            //With one leaf, the packed value can be used directly instead of stored
+            if (desired.size() == 1) {
+                unpack(jvm, desired.get(0), offsets.get(desired.get(0).name));
+            } else {
+                jvm.visitVarInsn(Opcodes.LSTORE, tempIndex);
+                for (Leaf leaf : desired) {
+                    jvm.visitVarInsn(Opcodes.LLOAD, tempIndex);
+                    unpack(jvm, leaf, offsets.get(leaf.name));
+                }
+            }
+        } else {
+            String carrier = pluralType.runtimeName();
+            if (desired.size() == 1) {
+                jvm.visitFieldInsn(Opcodes.GETFIELD, carrier, desired.get(0).fieldName(), desired.get(0).descriptor);
+            } else {
+                jvm.visitVarInsn(Opcodes.ASTORE, tempIndex);
+                for (Leaf leaf : desired) {
+                    jvm.visitVarInsn(Opcodes.ALOAD, tempIndex);
+                    jvm.visitFieldInsn(Opcodes.GETFIELD, carrier, leaf.fieldName(), leaf.descriptor);
+                }
+            }
+        }
+    }
+
+    //A non-plural field somewhere inside a plural type. The name is the path of
+    //field names leading to it, joined with $, as in GeneratedField.
+    private record Leaf(String name, TypeDef type, String descriptor) {
+        String fieldName() {
+            return GenericStringUtil.mangleSlashes(name);
+        }
+    }
+
+    private static List<Leaf> leaves(TypeDef pluralType) {
+        List<Leaf> result = new ArrayList<>();
+        collectLeaves(pluralType, "", result);
+        return result;
+    }
+
+    private static void collectLeaves(TypeDef curType, String namePrefix, List<Leaf> result) {
+        if (curType.isPlural()) {
+            for (FieldDef field : curType.nonStaticFields())
+                collectLeaves(field.type(), namePrefix.isEmpty() ? field.name() : namePrefix + "$" + field.name(), result);
+        } else {
+            result.add(new Leaf(namePrefix, curType, curType.getDescriptor().get(0)));
+        }
+    }
+
+    private static boolean packs(List<Leaf> leaves) {
+        int total = 0;
+        for (Leaf leaf : leaves) {
+            int bits = bits(leaf.descriptor);
+            if (bits == 0)
+                return false;
+            total += bits;
+        }
+        return total <= 64;
+    }
+
+    //Bits needed to hold a value with this descriptor, or 0 if it's a reference
+    private static int bits(String descriptor) {
+        return switch (descriptor) {
+            case "Z" -> 1;
+            case "B" -> 8;
+            case "S", "C" -> 16;
+            case "I", "F" -> 32;
+            case "J", "D" -> 64;
+            default -> 0;
+        };
+    }
+
+    //Value on the stack --> long holding its bits, and zero above them
+    private static void toBits(MethodVisitor jvm, String descriptor) {
+        switch (descriptor) {
+            case "Z" -> jvm.visitInsn(Opcodes.I2L);
+            case "B" -> {
+                BytecodeHelper.u8ToInt(jvm);
+                jvm.visitInsn(Opcodes.I2L);
+            }
+            case "S", "C" -> {
+                BytecodeHelper.u16ToInt(jvm);
+                jvm.visitInsn(Opcodes.I2L);
+            }
+            case "I" -> BytecodeHelper.u32ToLong(jvm);
+            case "F" -> {
+                jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false);
+                BytecodeHelper.u32ToLong(jvm);
+            }
+            case "J" -> {}
+            case "D" -> jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+            default -> throw new IllegalStateException("Packing non-primitive descriptor " + descriptor + "? Bug in compiler, please report!");
+        }
+    }
+
+    private static boolean isUnsigned(TypeDef type) {
+        return type.builtin() instanceof IntegerType i && !i.signed;
+    }
+
+    //Packed long on the stack --> the leaf's value
+    private static void unpack(MethodVisitor jvm, Leaf leaf, int offset) {
+        if (offset > 0) {
+            jvm.visitIntInsn(Opcodes.BIPUSH, offset);
+            jvm.visitInsn(Opcodes.LUSHR);
+        }
+        switch (leaf.descriptor) {
+            case "Z" -> {
+                jvm.visitInsn(Opcodes.L2I);
+                jvm.visitInsn(Opcodes.ICONST_1);
+                jvm.visitInsn(Opcodes.IAND);
+            }
+            //Unsigned values are zero-extended, as they are when pushed as literals
+            case "B" -> {
+                jvm.visitInsn(Opcodes.L2I);
+                if (isUnsigned(leaf.type))
+                    BytecodeHelper.u8ToInt(jvm);
+                else
+                    jvm.visitInsn(Opcodes.I2B);
+            }
+            case "S" -> {
+                jvm.visitInsn(Opcodes.L2I);
+                if (isUnsigned(leaf.type))
+                    BytecodeHelper.u16ToInt(jvm);
+                else
+                    jvm.visitInsn(Opcodes.I2S);
+            }
+            case "C" -> {
+                jvm.visitInsn(Opcodes.L2I);
+                jvm.visitInsn(Opcodes.I2C);
+            }
+            case "I" -> jvm.visitInsn(Opcodes.L2I);
+            case "F" -> {
+                jvm.visitInsn(Opcodes.L2I);
+                jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false);
+            }
+            case "J" -> {}
+            case "D" -> jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false);
+            default -> throw new IllegalStateException("Unpacking non-primitive descriptor " + leaf.descriptor + "? Bug in compiler, please report!");
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package ast.ir.helper;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import runtime.RunningInstance;
+import runtime.SnuggleRuntime;
+
+/**
+ * Finding the state of the running instance.
+ * The classes of a program are loaded once and shared by all its instances, so
+ * nothing an instance changes can live in a static field. Instead, each instance
+ * has an object of the runtime class, which holds its imported files, the static
+ * fields of its types, and its instruction count.
+ * While an instance runs, a RunningInstance pairing the thread with its runtime object
+ * is in a thread local on the runtime class, which generated code reads through current().
+ * Looking in the thread local is too slow for code that needs the runtime object on every
+ * call, like counting instructions, so entering and leaving an instance also put its
+ * RunningInstance in a static field, which current() uses while it's for the current thread.
+ * Only a thread makes RunningInstances for itself, and it updates the field whenever it
+ * changes its thread local, so if the field holds one for the current thread, it's the right one.
+ * current() never writes the field itself: with several threads running, each miss would
+ * take it from another thread, and they'd all keep missing while writing the same cache line.
+ */
+public class RuntimeHelper {
+
+    private static final String CURRENT_FIELD = "CURRENT", LAST_FIELD = "LAST", CURRENT_METHOD = "current";
+    private static final String THREAD_LOCAL = Type.getInternalName(ThreadLocal.class);
+    private static final String THREAD = Type.getInternalName(Thread.class);
+    private static final String RUNNING = Type.getInternalName(RunningInstance.class), RUNNING_DESCRIPTOR = "L" + RUNNING + ";";
+
+    public static String getRuntimeDescriptor() {
+        return "L" + NameHelper.getRuntimeClassName() + ";";
+    }
+
+    //Push the runtime object of the instance running on this thread
+    public static void loadCurrent(MethodVisitor jvm) {
+        jvm.visitMethodInsn(Opcodes.INVOKESTATIC, NameHelper.getRuntimeClassName(), CURRENT_METHOD, "()" + getRuntimeDescriptor(), false);
+    }
+
+    //Make this (local 0) the current runtime object, saving the previous RunningInstance in the given local
+    public static void enter(MethodVisitor jvm, int savedIndex) {
+        String runtime = NameHelper.getRuntimeClassName();
+        jvm.visitFieldInsn(Opcodes.GETSTATIC, runtime, CURRENT_FIELD, "L" + THREAD_LOCAL + ";");
+        jvm.visitInsn(Opcodes.DUP);
+        jvm.visitMethodInsn(Opcodes.INVOKEVIRTUAL, THREAD_LOCAL, "get", "()Ljava/lang/Object;", false);
+        jvm.visitVarInsn(Opcodes.ASTORE, savedIndex);
+        jvm.visitTypeInsn(Opcodes.NEW, RUNNING);
+        jvm.visitInsn(Opcodes.DUP);
+        jvm.visitMethodInsn(Opcodes.INVOKESTATIC, THREAD, "currentThread", "()L" + THREAD + ";", false);
+        jvm.visitVarInsn(Opcodes.ALOAD, 0);
+        jvm.visitMethodInsn(Opcodes.INVOKESPECIAL, RUNNING, "<init>", "(L" + THREAD + ";" + Type.getDescriptor(SnuggleRuntime.class) + ")V", false);
+        jvm.visitInsn(Opcodes.DUP_X1);
+        jvm.visitMethodInsn(Opcodes.INVOKEVIRTUAL, THREAD_LOCAL, "set", "(Ljava/lang/Object;)V", false);
+        jvm.visitFieldInsn(Opcodes.PUTSTATIC, runtime, LAST_FIELD, RUNNING_DESCRIPTOR);
+    }
+
+    //Restore the RunningInstance saved by enter(). Instances can run other instances,
+    //so this isn't necessarily null.
+    public static void exit(MethodVisitor jvm, int savedIndex) {
+        String runtime = NameHelper.getRuntimeClassName();
+        jvm.visitFieldInsn(Opcodes.GETSTATIC, runtime, CURRENT_FIELD, "L" + THREAD_LOCAL + ";");
+        jvm.visitVarInsn(Opcodes.ALOAD, savedIndex);
+        jvm.visitMethodInsn(Opcodes.INVOKEVIRTUAL, THREAD_LOCAL, "set", "(Ljava/lang/Object;)V", false);
+        jvm.visitVarInsn(Opcodes.ALOAD, savedIndex);
+        jvm.visitTypeInsn(Opcodes.CHECKCAST, RUNNING);
+        jvm.visitFieldInsn(Opcodes.PUTSTATIC, runtime, LAST_FIELD, RUNNING_DESCRIPTOR);
+    }
+
+    //Add the thread local and current() to the runtime class
+    public static void generateRuntimeMembers(ClassVisitor runtimeWriter) {
+        String runtime = NameHelper.getRuntimeClassName();
+        runtimeWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, CURRENT_FIELD, "L" + THREAD_LOCAL + ";", null, null).visitEnd();
+        runtimeWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, LAST_FIELD, RUNNING_DESCRIPTOR, null, null).visitEnd();
+
+        MethodVisitor clinit = runtimeWriter.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        clinit.visitTypeInsn(Opcodes.NEW, THREAD_LOCAL);
+        clinit.visitInsn(Opcodes.DUP);
+        clinit.visitMethodInsn(Opcodes.INVOKESPECIAL, THREAD_LOCAL, "<init>", "()V", false);
+        clinit.visitFieldInsn(Opcodes.PUTSTATIC, runtime, CURRENT_FIELD, "L" + THREAD_LOCAL + ";");
+        clinit.visitInsn(Opcodes.RETURN);
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+
+        //static Runtime current()
+        MethodVisitor current = runtimeWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, CURRENT_METHOD, "()" + getRuntimeDescriptor(), null, null);
+        current.visitCode();
+        Label lookUp = new Label(), found = new Label();
+        //The one entered or returned to last, if it's for this thread
+        current.visitFieldInsn(Opcodes.GETSTATIC, runtime, LAST_FIELD, RUNNING_DESCRIPTOR);
+        current.visitInsn(Opcodes.DUP);
+        current.visitVarInsn(Opcodes.ASTORE, 0);
+        current.visitJumpInsn(Opcodes.IFNULL, lookUp);
+        current.visitVarInsn(Opcodes.ALOAD, 0);
+        current.visitFieldInsn(Opcodes.GETFIELD, RUNNING, "thread", "L" + THREAD + ";");
+        current.visitMethodInsn(Opcodes.INVOKESTATIC, THREAD, "currentThread", "()L" + THREAD + ";", false);
+        current.visitJumpInsn(Opcodes.IF_ACMPEQ, found);
+        //Otherwise the thread local's
+        current.visitLabel(lookUp);
+        current.visitFieldInsn(Opcodes.GETSTATIC, runtime, CURRENT_FIELD, "L" + THREAD_LOCAL + ";");
+        current.visitMethodInsn(Opcodes.INVOKEVIRTUAL, THREAD_LOCAL, "get", "()Ljava/lang/Object;", false);
+        current.visitTypeInsn(Opcodes.CHECKCAST, RUNNING);
+        current.visitInsn(Opcodes.DUP);
+        current.visitVarInsn(Opcodes.ASTORE, 0);
+        current.visitJumpInsn(Opcodes.IFNONNULL, found);
+        //Not running an instance, like a lambda kept by Java code and called after run() returned
+        String exception = Type.getInternalName(IllegalStateException.class);
+        current.visitTypeInsn(Opcodes.NEW, exception);
+        current.visitInsn(Opcodes.DUP);
+        current.visitLdcInsn("Snuggle code can only run inside SnuggleInstance.run(), on the thread running it");
+        current.visitMethodInsn(Opcodes.INVOKESPECIAL, exception, "<init>", "(Ljava/lang/String;)V", false);
+        current.visitInsn(Opcodes.ATHROW);
+        current.visitLabel(found);
+        current.visitVarInsn(Opcodes.ALOAD, 0);
+        current.visitFieldInsn(Opcodes.GETFIELD, RUNNING, "runtime", Type.getDescriptor(SnuggleRuntime.class));
+        current.visitTypeInsn(Opcodes.CHECKCAST, runtime);
+        current.visitInsn(Opcodes.ARETURN);
+        current.visitMaxs(0, 0);
+        current.visitEnd();
+    }
+
+}
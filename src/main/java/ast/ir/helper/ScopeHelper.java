@@ -15,7 +15,9 @@ import java.util.Stack;
 public class ScopeHelper {
 
     private final Stack<Integer> indicesStack = new Stack<>();
-    private int curIndex = 0, maxIndex = 0;
+    private int curIndex = 0, maxIndex = 0, reservedIndex = 0;
+    private int costCounterSlot = -1;
+    private boolean countingCost = false;
     private final MapStack<String, Integer> localVariables = new MapStack<>();
 
     public int declare(Loc loc, String name, TypeDef type) {
@@ -52,6 +54,38 @@ public class ScopeHelper {
         return index;
     }
 
+    //Get the number of locals in scope right now
+    public int curIndex() {
+        return curIndex;
+    }
+
+    //Make sure locals from maxIndex on aren't used by the other scope either
+    public void reserveLocalsOf(ScopeHelper other) {
+        maxIndex = Math.max(maxIndex, other.maxIndex);
+        reservedIndex = Math.max(reservedIndex, other.maxIndex);
+    }
+
+    //The locals below this belong to another scope, this one's code is written into,
+    //so they stay in scope all through it. 0 unless reserveLocalsOf() was called.
+    public int reservedIndex() {
+        return reservedIndex;
+    }
+
+    //Set whether the method's cost is counted, in a local that InstructionCounter adds it up in.
+    //The local goes after all the others, since it's only declared once they're all known.
+    public void countCost(boolean count) {
+        if (count && costCounterSlot < 0) {
+            costCounterSlot = maxIndex;
+            maxIndex += 2;
+        }
+        countingCost = count;
+    }
+
+    //The local the method's cost is added up in, or -1 if it's not counted
+    public int costCounter() {
+        return countingCost ? costCounterSlot : -1;
+    }
+
     public void push() {
         indicesStack.push(curIndex);
         localVariables.push();
@@ -13,4 +13,10 @@ public interface Instruction {
     //Get the cost for this operation (not counting inner code blocks)
     long cost() throws CompilationException;
 
+    //The most bytes of bytecode accept() can emit, as MethodSplitter counts them,
+    //or -1 if it can't be known without emitting it
+    default int maxSize() {
+        return -1;
+    }
+
 }
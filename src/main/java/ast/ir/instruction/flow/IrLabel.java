@@ -1,15 +1,28 @@
 package ast.ir.instruction.flow;
 
 import ast.ir.def.CodeBlock;
+import ast.ir.helper.FrameTracker;
 import ast.ir.instruction.Instruction;
+import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
 //Named to avoid conflict with ASM Label class
-public record IrLabel(Label asmLabel) implements Instruction {
+//The rest are hints for FrameTracker: stackTop is the type of the value on top of the stack here,
+//or null if unknown, and liveLocals is how many locals are in scope, if this is a loop head, or -1 otherwise.
+public record IrLabel(Label asmLabel, TypeDef stackTop, int liveLocals) implements Instruction {
+
+    public IrLabel(Label asmLabel) {
+        this(asmLabel, null, -1);
+    }
+
     @Override
     public void accept(CodeBlock block, MethodVisitor jvm) {
+        if (stackTop != null)
+            FrameTracker.stackTop(jvm, stackTop);
+        if (liveLocals >= 0)
+            FrameTracker.loopHead(jvm, Math.max(liveLocals, block.env.reservedIndex()), block.env.costCounter());
         jvm.visitLabel(asmLabel);
     }
 
@@ -17,4 +30,9 @@ public record IrLabel(Label asmLabel) implements Instruction {
     public long cost() {
         return 0;
     }
+
+    @Override
+    public int maxSize() {
+        return 0;
+    }
 }
@@ -1,16 +1,24 @@
 package ast.ir.instruction.flow;
 
 import ast.ir.def.CodeBlock;
+import ast.ir.helper.InstructionCounter;
 import ast.ir.instruction.Instruction;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
-public record Jump(Label label) implements Instruction {
+//backEdge is for jumps back to the start of a loop, where the cost counted so far may be flushed
+public record Jump(Label label, boolean backEdge) implements Instruction {
+
+    public Jump(Label label) {
+        this(label, false);
+    }
 
     @Override
     public void accept(CodeBlock block, MethodVisitor jvm) {
+        if (backEdge)
+            InstructionCounter.flushIfOver(block, jvm);
         jvm.visitJumpInsn(Opcodes.GOTO, label);
     }
 
@@ -18,4 +26,10 @@ public record Jump(Label label) implements Instruction {
     public long cost() {
         return 1;
     }
+
+    @Override
+    public int maxSize() {
+        //A back edge may flush the instruction count too
+        return backEdge ? -1 : 3;
+    }
 }
@@ -18,4 +18,9 @@ public record JumpIfFalse(Label label) implements Instruction {
     public long cost() {
         return 1;
     }
+
+    @Override
+    public int maxSize() {
+        return 3;
+    }
 }
@@ -17,4 +17,9 @@ public record JumpIfTrue(Label label) implements Instruction {
     public long cost() {
         return 1;
     }
+
+    @Override
+    public int maxSize() {
+        return 3;
+    }
 }
@@ -1,6 +1,8 @@
 package ast.ir.instruction.flow;
 
 import ast.ir.def.CodeBlock;
+import ast.ir.helper.InstructionCounter;
+import ast.ir.helper.ReturnHelper;
 import ast.ir.instruction.Instruction;
 import ast.typed.def.method.MethodDef;
 import ast.typed.def.type.TypeDef;
@@ -9,17 +11,14 @@ import builtin_types.types.numbers.FloatType;
 import builtin_types.types.numbers.IntegerType;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
-import util.GenericStringUtil;
-import util.ListUtils;
 
 public record Return(MethodDef methodDef, TypeDef returnType) implements Instruction {
 
     @Override
     public void accept(CodeBlock block, MethodVisitor jvm) {
+        InstructionCounter.flush(block, jvm);
         if (returnType.isPlural()) {
-            //Plural returns need to set some static fields
-            storePluralFieldsRecurse(jvm, returnType, "", returnType);
-            jvm.visitInsn(Opcodes.RETURN);
+            ReturnHelper.emitReturn(jvm, returnType, block.env.maxIndex());
         } else if (returnType.builtin() instanceof IntegerType i) {
             if (i.bits <= 32)
                 jvm.visitInsn(Opcodes.IRETURN);
@@ -36,21 +35,6 @@ public record Return(MethodDef methodDef, TypeDef returnType) implements Instruc
             jvm.visitInsn(Opcodes.ARETURN);
     }
 
-    //Implementation largely the same as in MethodCall instruction
-    private void storePluralFieldsRecurse(MethodVisitor jvm, TypeDef pluralType, String namePrefix, TypeDef curType) {
-        String runtimeName = pluralType.runtimeName();
-        if (curType.isPlural()) {
-            ListUtils.iterBackwards(curType.nonStaticFields(), field -> {
-                if (namePrefix.length() == 0)
-                    storePluralFieldsRecurse(jvm, pluralType, namePrefix + field.name(), field.type());
-                else
-                    storePluralFieldsRecurse(jvm, pluralType, namePrefix + "$" + field.name(), field.type());
-            });
-        } else {
-            jvm.visitFieldInsn(Opcodes.PUTSTATIC, runtimeName, GenericStringUtil.mangleSlashes(namePrefix), curType.getDescriptor().get(0));
-        }
-    }
-
     @Override
     public long cost() {
         return 1 + (returnType.stackSlots() - 1) / 2;
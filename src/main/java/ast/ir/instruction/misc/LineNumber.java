@@ -21,4 +21,9 @@ public record LineNumber(int line) implements Instruction {
     public long cost() {
         return 0; //No cost to this of course
     }
+
+    @Override
+    public int maxSize() {
+        return 0;
+    }
 }
@@ -2,6 +2,7 @@ package ast.ir.instruction.misc;
 
 import ast.ir.def.CodeBlock;
 import ast.ir.helper.NameHelper;
+import ast.ir.helper.RuntimeHelper;
 import ast.ir.instruction.Instruction;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.Label;
@@ -19,13 +20,17 @@ public record RunImport(String fileName) implements Instruction {
         String methodName = NameHelper.getImportMethodName(fileName);
 
         //If the import hasn't been called before, run the import, and set the field
-        //to true indicating it's been called before.
+        //to true indicating it's been called before. The fields are on the runtime
+        //object, since each instance imports the files itself.
+        String runtime = NameHelper.getRuntimeClassName();
         Label afterCall = new Label();
-        jvm.visitFieldInsn(Opcodes.GETSTATIC, filesClass, fieldName, "Z");
+        RuntimeHelper.loadCurrent(jvm);
+        jvm.visitFieldInsn(Opcodes.GETFIELD, runtime, fieldName, "Z");
         jvm.visitInsn(Opcodes.DUP); //dup the variable, we want to return it at the end
         jvm.visitJumpInsn(Opcodes.IFNE, afterCall);
+        RuntimeHelper.loadCurrent(jvm);
         jvm.visitInsn(Opcodes.ICONST_1);
-        jvm.visitFieldInsn(Opcodes.PUTSTATIC, filesClass, fieldName, "Z");
+        jvm.visitFieldInsn(Opcodes.PUTFIELD, runtime, fieldName, "Z");
         jvm.visitMethodInsn(Opcodes.INVOKESTATIC, filesClass, methodName, "()V", false);
         jvm.visitLabel(afterCall);
     }
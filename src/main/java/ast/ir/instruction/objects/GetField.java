@@ -2,6 +2,8 @@ package ast.ir.instruction.objects;
 
 import ast.ir.def.CodeBlock;
 import ast.ir.helper.BytecodeHelper;
+import ast.ir.helper.NameHelper;
+import ast.ir.helper.RuntimeHelper;
 import ast.ir.instruction.Instruction;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.type.TypeDef;
@@ -48,7 +50,13 @@ public record GetField(List<FieldDef> fieldsToFollow) implements Instruction {
                 get(opcode, ownerType, owner, jvm, builtName, innerField.type(), isPlural, maxIndex);
             }
         } else {
-            if (isPlural && opcode != Opcodes.GETSTATIC) {
+            if (opcode == Opcodes.GETSTATIC) {
+                //Static fields are on the running instance's runtime object
+                RuntimeHelper.loadCurrent(jvm);
+                jvm.visitFieldInsn(Opcodes.GETFIELD, NameHelper.getRuntimeClassName(), NameHelper.getStaticFieldName(owner, fieldName), type.getDescriptor().get(0));
+                return;
+            }
+            if (isPlural) {
                 BytecodeHelper.visitVariable(maxIndex, ownerType, false, jvm); //load variable
 //                BytecodeHelper.swap(jvm, type, ownerType); //swap
             }
@@ -1,15 +1,15 @@
 package ast.ir.instruction.objects;
 
 import ast.ir.def.CodeBlock;
+import ast.ir.helper.ReturnHelper;
 import ast.ir.instruction.Instruction;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.method.BytecodeMethodDef;
 import ast.typed.def.method.MethodDef;
+import ast.typed.def.method.SnuggleMethodDef;
 import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
 import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.Opcodes;
-import util.GenericStringUtil;
 
 import java.util.List;
 
@@ -28,40 +28,10 @@ public record MethodCall(boolean isSuperCall, MethodDef methodToCall, List<Field
         if (methodToCall.returnType().isPlural()) {
             //If it's a bytecode method that leaves its return on the stack, no need to fetch plural fields
             if (!(methodToCall instanceof BytecodeMethodDef b) || !b.leavesReturnOnStack())
-                fetchPluralFields(jvm, methodToCall.returnType());
+                ReturnHelper.fetchReturned(jvm, methodToCall.returnType(), desiredFields, block.env.maxIndex());
         }
     }
 
-    private void fetchPluralFields(MethodVisitor jvm, TypeDef pluralType) {
-        StringBuilder namePrefix = new StringBuilder();
-        TypeDef curType = pluralType;
-        for (FieldDef def : desiredFields)
-            namePrefix.append(def.name()).append("$");
-        if (desiredFields.size() > 0) {
-            namePrefix.deleteCharAt(namePrefix.length() - 1);
-            curType = desiredFields.get(desiredFields.size() - 1).type();
-        }
-        fetchPluralFieldsRecurse(jvm, pluralType, namePrefix.toString(), curType);
-    }
-
-    //We want to fetch the fields of this plural type and put them on the stack
-    //However, make sure we only push the fields requested by desiredFields, if desiredFields
-    //is restricting them.
-    private void fetchPluralFieldsRecurse(MethodVisitor jvm, TypeDef pluralType, String namePrefix, TypeDef curType) {
-        String runtimeName = pluralType.runtimeName();
-        if (curType.isPlural()) {
-            for (FieldDef field : curType.nonStaticFields()) {
-                if (namePrefix.length() == 0)
-                    fetchPluralFieldsRecurse(jvm, pluralType, namePrefix + field.name(), field.type());
-                else
-                    fetchPluralFieldsRecurse(jvm, pluralType, namePrefix + "$" + field.name(), field.type());
-            }
-        } else {
-            jvm.visitFieldInsn(Opcodes.GETSTATIC, runtimeName, GenericStringUtil.mangleSlashes(namePrefix), curType.getDescriptor().get(0));
-        }
-    }
-
-
     @Override
     public long cost() throws CompilationException {
         long base = methodToCall instanceof BytecodeMethodDef bytecode ? bytecode.cost().get() : 1;
@@ -70,4 +40,10 @@ public record MethodCall(boolean isSuperCall, MethodDef methodToCall, List<Field
             return base + (methodToCall.returnType().stackSlots() - 1) / 2;
         return base;
     }
+
+    @Override
+    public int maxSize() {
+        //A Snuggle method is called with one invoke. Others write what bytecode they like.
+        return methodToCall instanceof SnuggleMethodDef && !methodToCall.returnType().isPlural() ? 3 : -1;
+    }
 }
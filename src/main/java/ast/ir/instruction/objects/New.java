@@ -22,4 +22,9 @@ public record New(TypeDef typeDef) implements Instruction {
     public long cost() {
         return 1; //Calling the constructor will be the cost.
     }
+
+    @Override
+    public int maxSize() {
+        return 4;
+    }
 }
@@ -2,6 +2,8 @@ package ast.ir.instruction.objects;
 
 import ast.ir.def.CodeBlock;
 import ast.ir.helper.BytecodeHelper;
+import ast.ir.helper.NameHelper;
+import ast.ir.helper.RuntimeHelper;
 import ast.ir.instruction.Instruction;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.type.TypeDef;
@@ -51,7 +53,17 @@ public record SetField(List<FieldDef> fieldsToFollow) implements Instruction {
                 set(opcode, ownerType, owner, jvm, builtName, innerField.type(), isPlural, maxIndex);
             });
         } else {
-            if (isPlural && opcode != Opcodes.PUTSTATIC) {
+            if (opcode == Opcodes.PUTSTATIC) {
+                //Static fields are on the running instance's runtime object
+                RuntimeHelper.loadCurrent(jvm);
+                if (type.stackSlots() == 2)
+                    BytecodeHelper.swapBigSmall(jvm);
+                else
+                    jvm.visitInsn(Opcodes.SWAP);
+                jvm.visitFieldInsn(Opcodes.PUTFIELD, NameHelper.getRuntimeClassName(), NameHelper.getStaticFieldName(owner, fieldName), type.getDescriptor().get(0));
+                return;
+            }
+            if (isPlural) {
                 BytecodeHelper.visitVariable(maxIndex, ownerType, false, jvm); //load variable
                 BytecodeHelper.swap(jvm, type, ownerType); //swap
             }
@@ -24,4 +24,9 @@ public record Dup(TypeDef typeDef) implements Instruction {
     public long cost() {
         return 0;
     }
+
+    @Override
+    public int maxSize() {
+        return 1;
+    }
 }
@@ -33,4 +33,10 @@ public record Pop(TypeDef type) implements Instruction {
         //We trust JIT to combine multiple POP instructions into one.
         return type.stackSlots() == 0 ? 0 : 1; //Cost is marked as 1 because of this trust ^
     }
+
+    @Override
+    public int maxSize() {
+        //At most a pop for each slot
+        return Math.max(type.stackSlots(), 1);
+    }
 }
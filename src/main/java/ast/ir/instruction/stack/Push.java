@@ -106,4 +106,9 @@ public record Push(TypeDef.InstantiationStackFrame cause, Loc loc, Object obj, T
     public long cost() {
         return type.stackSlots() == 0 ? 0 : 1;
     }
+
+    @Override
+    public int maxSize() {
+        return 3;
+    }
 }
@@ -20,4 +20,10 @@ public record StoreInTopLocal(TypeDef typeDef) implements Instruction {
     public long cost() {
         return 1;
     }
+
+    @Override
+    public int maxSize() {
+        //At most a wide store for each slot
+        return 4 * Math.max(typeDef.stackSlots(), 1);
+    }
 }
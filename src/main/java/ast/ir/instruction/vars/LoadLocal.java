@@ -24,4 +24,9 @@ public record LoadLocal(int index, TypeDef type) implements Instruction {
         //Higher cost depending on stack slots used
         return 1 + (type.stackSlots() - 1) / 2;
     }
+
+    @Override
+    public int maxSize() {
+        return BytecodeHelper.variableSize(index, type);
+    }
 }
@@ -22,4 +22,9 @@ public record LoadThis(TypeDef type) implements Instruction {
     public long cost() {
         return 1; //Loading this costs 1
     }
+
+    @Override
+    public int maxSize() {
+        return 1;
+    }
 }
@@ -19,4 +19,9 @@ public record StoreLocal(int index, TypeDef type) implements Instruction {
     public long cost() {
         return 1 + (type.stackSlots() - 1) / 2; //Costs more depending on stack slots
     }
+
+    @Override
+    public int maxSize() {
+        return BytecodeHelper.variableSize(index, type);
+    }
 }
@@ -0,0 +1,829 @@
+package ast.ir.optimize;
+
+import ast.ir.def.CodeBlock;
+import ast.ir.helper.FrameTracker;
+import ast.ir.helper.InstructionCounter;
+import ast.ir.instruction.Instruction;
+import ast.ir.instruction.misc.InnerCodeBlock;
+import ast.ir.instruction.stack.Dup;
+import ast.ir.instruction.vars.StoreLocal;
+import exceptions.compile_time.CompilationException;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import util.CompileOptions;
+import util.ListUtils;
+
+import java.util.*;
+
+/**
+ * Splits methods with more bytecode than CompileOptions.maxMethodSize() into helper methods.
+ * HotSpot doesn't JIT-compile methods over 8000 bytes (HugeMethodLimit), so the top-level
+ * code of a long file, or a long function, would otherwise be interpreted forever.
+ * Most methods are far under that, which a bound from the IR shows, so only the others
+ * are written once just to be measured.
+ * Runs of instructions are moved into private static helpers in the same class, and the
+ * method calls them instead. The blocks nested in the body are looked into as well, so a
+ * single statement over the limit, like a huge loop, has runs of its body split out. A run
+ * only starts and ends where the stack is empty, no jump goes in or out of it, and it has no
+ * return. The stack may also hold a local just stored, which the peephole optimizer keeps
+ * there in place of loading it again; it's popped before the call and loaded again after it.
+ * Helpers keep the method's numbering of locals, so the instructions are written into them
+ * as they are. The locals a run reads come in as parameters, in order, with an int standing
+ * in for each slot between them. The ones it writes that are read after it go out: runs end
+ * where the fewest do, and the first is returned. The others are left in a long[] and an
+ * Object[] made once when the method starts, which come in to each helper after the locals.
+ * If the parameters would take more than the 255 slots the JVM allows, they come in an
+ * Object[] instead, and so do the locals going out.
+ * To find the runs, the body is first written into a FrameTracker, which gives the type of
+ * each local between the instructions.
+ * The top-level code of a file runs once, so a loop in it could only get on-stack replacement,
+ * which compiles all of the surrounding method. With hoistLoops, each loop there goes into a
+ * helper of its own, whatever the size, and the splitting by size fills in around them.
+ */
+public class MethodSplitter {
+
+    //Runs smaller than this aren't worth a call
+    private static final int MIN_RUN_SIZE = 64;
+
+    private final ClassVisitor classWriter;
+    private final String owner, name, descriptor;
+    private final int access;
+
+    public MethodSplitter(ClassVisitor classWriter, String owner, int access, String name, String descriptor) {
+        this.classWriter = classWriter;
+        this.owner = owner;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    //How a method was split: its size before, and how much went into each helper
+    public record Split(int bytes, List<Integer> helperBytes) {
+        @Override
+        public String toString() {
+            return bytes + " bytes, " + helperBytes.stream().mapToInt(i -> i).sum() + " of them moved into " + helperBytes.size() + " helpers";
+        }
+    }
+
+    /**
+     * Write the body of the method, after visitCode() was called on its visitor,
+     * splitting it if it's over the limit. Records on the body whether it was split.
+     */
+    public void writeBody(CodeBlock body, MethodVisitor jvm, CompileOptions options) throws CompilationException {
+        writeBody(body, jvm, options, false);
+    }
+
+    /**
+     * Write the top-level code of a file, which is like writeBody(), except that
+     * the loops in it are hoisted into helpers as well, if the options say so.
+     */
+    public void writeTopLevel(CodeBlock code, MethodVisitor jvm, CompileOptions options) throws CompilationException {
+        writeBody(code, jvm, options, options.hoistLoops());
+    }
+
+    private void writeBody(CodeBlock body, MethodVisitor jvm, CompileOptions options, boolean hoistLoops) throws CompilationException {
+        body.setSplit(null);
+        int limit = options.maxMethodSize();
+        boolean countInstructions = options.countInstructions();
+        //Writing the body just to measure it costs about as much as writing it,
+        //so that's only done when the bound from the IR is over the limit
+        boolean overLimit = false;
+        if (limit > 0 && maxSize(body, countInstructions) > limit) {
+            SizeCounter counter = new SizeCounter();
+            body.writeMethodBytecode(counter, countInstructions);
+            overLimit = counter.size > limit;
+        }
+        if (overLimit || hoistLoops) {
+            //Leave room in each helper for passing locals in and out
+            Recorder recorder = new Recorder(descriptor, access);
+            List<Item> items = new ArrayList<>();
+            flatten(body, items);
+            List<Run> runs = findRuns(body, items, recorder, countInstructions, hoistLoops, overLimit ? limit - limit / 8 : 0);
+            if (!runs.isEmpty()) {
+                writeSplit(body, items, jvm, countInstructions, runs);
+                body.setSplit(new Split(recorder.size, runs.stream().map(Run::size).toList()));
+                return;
+            }
+        }
+        body.writeMethodBytecode(jvm, countInstructions);
+    }
+
+    //A bound on the size of the method's bytecode, from the instructions' maxSize(). Only the
+    //instructions that can't give one are written, into a SizeCounter, each on its own.
+    private static int maxSize(CodeBlock body, boolean countInstructions) throws CompilationException {
+        SizeCounter counter = new SizeCounter();
+        body.writeMethodStart(counter, countInstructions);
+        int size = maxSize(body, body.instructions(), counter);
+        return size + counter.size;
+    }
+
+    private static int maxSize(CodeBlock block, List<Instruction> instructions, SizeCounter counter) throws CompilationException {
+        int size = 0;
+        for (Instruction instruction : instructions) {
+            if (instruction instanceof InnerCodeBlock inner) {
+                //Inner blocks add their cost to the count, like writeJvmBytecode()
+                CodeBlock innerBlock = inner.codeBlock();
+                if (innerBlock.cost() > 0)
+                    InstructionCounter.add(innerBlock, counter, innerBlock.cost());
+                size += maxSize(innerBlock, innerBlock.instructions(), counter);
+                continue;
+            }
+            int max = instruction.maxSize();
+            if (max >= 0)
+                size += max;
+            else
+                instruction.accept(block, counter);
+        }
+        return size;
+    }
+
+    //An instruction of the body or a block nested in it, with the block it's in. A null instruction
+    //stands for the start of a nested block, where its cost is added, like writeJvmBytecode().
+    private record Item(CodeBlock block, Instruction instruction) {
+        void accept(MethodVisitor jvm) throws CompilationException {
+            if (instruction != null)
+                instruction.accept(block, jvm);
+            else if (block.cost() > 0)
+                InstructionCounter.add(block, jvm, block.cost());
+        }
+    }
+
+    private static void flatten(CodeBlock block, List<Item> items) {
+        for (Instruction instruction : block.instructions()) {
+            if (instruction instanceof InnerCodeBlock inner) {
+                items.add(new Item(inner.codeBlock(), null));
+                flatten(inner.codeBlock(), items);
+            } else {
+                items.add(new Item(block, instruction));
+            }
+        }
+    }
+
+    //Items start to end go into a helper, taking the locals in and giving back the locals out.
+    //If a copy of a local is on the stack at the start or end, it's kept, or -1 if not.
+    //Locals out after the first go in the carriers, the long[] in local carrier and the Object[] after it, or -1 if there are none.
+    private record Run(int start, int end, int size, List<Object> entryLocals, List<Integer> in, List<Object> exitLocals, List<Integer> out,
+                       int keptIn, int keptOut, int carrier) {}
+
+    //A jump between two steps, as the lower and higher of the two. It crosses the cuts after lo, up to and including hi.
+    private record Edge(int lo, int hi, boolean backward) {
+        boolean crosses(int cut) {
+            return lo < cut && cut <= hi;
+        }
+    }
+
+    //Loops are hoisted if asked. Other runs are made up to runLimit bytes, or not at all if it's 0.
+    private List<Run> findRuns(CodeBlock body, List<Item> items, Recorder recorder, boolean countInstructions, boolean hoistLoops, int runLimit) throws CompilationException {
+        //Write the body into a tracker, noting what each instruction does and the state after it
+        FrameTracker tracker = new FrameTracker(owner, access, name, descriptor, recorder);
+        recorder.startStep();
+        tracker.visitCode();
+        body.writeMethodStart(tracker, countInstructions);
+        int n = items.size();
+        List<Step> steps = new ArrayList<>(n);
+        List<List<Object>> locals = new ArrayList<>(n + 1);
+        boolean[] canCut = new boolean[n + 1];
+        int[] kept = new int[n + 1];
+        locals.add(tracker.locals());
+        canCut[0] = canCut(tracker, -1);
+        kept[0] = -1;
+        for (int i = 0; i < n; i++) {
+            recorder.startStep();
+            items.get(i).accept(tracker);
+            steps.add(recorder.finishStep());
+            locals.add(tracker.locals());
+            //The peephole optimizer turns a store and a load of the same local in the next statement
+            //into a Dup and a store, so the value stays on the stack between them
+            kept[i + 1] = i >= 1 && items.get(i).instruction() instanceof StoreLocal store && items.get(i - 1).instruction() instanceof Dup ? store.index() : -1;
+            canCut[i + 1] = canCut(tracker, kept[i + 1]);
+        }
+
+        //No jump can go in or out of a run, so a run can only end where the same jumps cross as where it starts.
+        //To compare those quickly, each jump gets a random hash, and each cut the XOR of the ones crossing it.
+        //A run found this way is checked against the jumps themselves too.
+        Map<Label, Integer> labelSteps = new HashMap<>();
+        for (int i = 0; i < n; i++)
+            for (Label label : steps.get(i).labels)
+                labelSteps.put(label, i);
+        List<Edge> edges = new ArrayList<>();
+        long[] crossing = new long[n + 2];
+        int[] crossingCount = new int[n + 2];
+        SplittableRandom random = new SplittableRandom(n);
+        for (int i = 0; i < n; i++) {
+            for (Label target : steps.get(i).targets) {
+                int other = labelSteps.getOrDefault(target, n);
+                Edge edge = new Edge(Math.min(i, other), Math.max(i, other), other <= i);
+                edges.add(edge);
+                long hash = random.nextLong();
+                crossing[edge.lo + 1] ^= hash;
+                crossing[edge.hi + 1] ^= hash;
+                crossingCount[edge.lo + 1]++;
+                crossingCount[edge.hi + 1]--;
+            }
+        }
+        for (int c = 1; c <= n; c++) {
+            crossing[c] ^= crossing[c - 1];
+            crossingCount[c] += crossingCount[c - 1];
+        }
+        //Where the body itself can be cut, outside every jump
+        boolean[] outermost = new boolean[n + 1];
+        for (int c = 0; c <= n; c++)
+            outermost[c] = canCut[c] && crossingCount[c] == 0;
+
+        //The last step reading each local, to know which locals a run writes are read after it
+        Map<Integer, Integer> lastRead = new HashMap<>();
+        for (int i = 0; i < n; i++)
+            for (int local : steps.get(i).reads)
+                lastRead.put(local, i);
+
+        //Each loop is a run of its own. Between them, make each run as long as fits, from the first place one can start.
+        //Among the ends in the second half of that, take the one with the fewest locals going out.
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++)
+            offsets[i + 1] = offsets[i] + steps.get(i).size;
+        List<int[]> loops = hoistLoops ? findLoops(steps, labelSteps, outermost) : List.of();
+        int costCounter = body.env.costCounter();
+        List<Run> runs = new ArrayList<>();
+        int start = 0, nextLoop = 0;
+        while (start < n) {
+            if (nextLoop < loops.size() && loops.get(nextLoop)[0] == start) {
+                int end = loops.get(nextLoop++)[1];
+                runs.add(run(steps, locals, edges, start, end, offsets[end] - offsets[start], costCounter, kept[start], kept[end]));
+                start = end;
+                continue;
+            }
+            int bound = nextLoop < loops.size() ? loops.get(nextLoop)[0] : n;
+            int end = -1;
+            if (canCut[start]) {
+                Set<Integer> loopReads = loopReads(steps, edges, start);
+                Set<Integer> writes = new HashSet<>();
+                int farthest = -1, best = -1, bestOut = 0;
+                for (int i = start; i < bound && !steps.get(i).returns && offsets[i + 1] - offsets[start] <= runLimit; i++) {
+                    writes.addAll(steps.get(i).writes);
+                    if (!canCut[i + 1] || crossing[i + 1] != crossing[start])
+                        continue;
+                    farthest = i + 1;
+                    if (2 * (offsets[i + 1] - offsets[start]) >= runLimit) {
+                        int out = 0;
+                        for (int local : writes)
+                            if (local != costCounter && local != costCounter + 1 && isValue(locals.get(i + 1), local) &&
+                                    (lastRead.getOrDefault(local, -1) > i || loopReads.contains(local)))
+                                out++;
+                        if (best < 0 || out <= bestOut) {
+                            best = i + 1;
+                            bestOut = out;
+                        }
+                    }
+                }
+                end = best >= 0 ? best : farthest;
+                for (Edge edge : edges)
+                    if (end >= 0 && edge.crosses(start) != edge.crosses(end))
+                        end = -1;
+            }
+            if (end < 0) {
+                start++;
+                continue;
+            }
+            if (offsets[end] - offsets[start] >= MIN_RUN_SIZE)
+                runs.add(run(steps, locals, edges, start, end, offsets[end] - offsets[start], costCounter, kept[start], kept[end]));
+            start = end;
+        }
+
+        //Locals going out past the first are carried in two more locals after all of the method's, if the helpers can take them
+        int carrier = recorder.maxLocals;
+        if (carrier + 2 > 255)
+            return runs;
+        return ListUtils.map(runs, run -> run.out.size() <= 1 ? run : new Run(run.start, run.end, run.size, run.entryLocals, run.in,
+                run.exitLocals, run.out, run.keptIn, run.keptOut, carrier));
+    }
+
+    //The loops among the steps, each as the start and end of the smallest run around it, in order.
+    //Loops with a return in them are left alone.
+    private static List<int[]> findLoops(List<Step> steps, Map<Label, Integer> labelSteps, boolean[] outermost) {
+        int n = steps.size();
+        List<int[]> loops = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (Label head : steps.get(i).loopHeads) {
+                int start = labelSteps.getOrDefault(head, 0), end = i + 1;
+                while (start >= 0 && !outermost[start])
+                    start--;
+                while (end <= n && !outermost[end])
+                    end++;
+                if (start < 0 || end > n)
+                    continue;
+                //Merge it with the ones before that it overlaps
+                while (!loops.isEmpty() && loops.get(loops.size() - 1)[1] > start) {
+                    int[] last = loops.remove(loops.size() - 1);
+                    start = Math.min(start, last[0]);
+                    end = Math.max(end, last[1]);
+                }
+                loops.add(new int[] {start, end});
+            }
+        }
+        loops.removeIf(loop -> steps.subList(loop[0], loop[1]).stream().anyMatch(step -> step.returns));
+        return loops;
+    }
+
+    //Whether the method can be cut at the tracker's current state. The stack must be
+    //empty, or only have a copy of the kept local, which can be loaded again.
+    private static boolean canCut(FrameTracker tracker, int kept) {
+        List<Object> locals = tracker.locals(), stack = tracker.stack();
+        if (locals == null)
+            return false;
+        if (!stack.isEmpty() && (kept < 0 || stack.size() != size(locals.get(kept))))
+            return false;
+        //Uninitialized values can't be passed to a method
+        for (Object local : locals)
+            if (local.equals(Opcodes.UNINITIALIZED_THIS) || local instanceof Label)
+                return false;
+        return true;
+    }
+
+    //The locals read in the loops around a cut, which a run starting there is in. What it writes might be read again on the next time around.
+    private static Set<Integer> loopReads(List<Step> steps, List<Edge> edges, int cut) {
+        Set<Integer> reads = new HashSet<>();
+        for (Edge edge : edges)
+            if (edge.backward && edge.crosses(cut))
+                for (int i = edge.lo; i <= edge.hi; i++)
+                    reads.addAll(steps.get(i).reads);
+        return reads;
+    }
+
+    private static Run run(List<Step> steps, List<List<Object>> locals, List<Edge> edges, int start, int end, int size, int costCounter, int keptIn, int keptOut) {
+        Set<Integer> reads = new HashSet<>(), writes = new HashSet<>(), readAfter = loopReads(steps, edges, start);
+        for (int i = start; i < end; i++) {
+            reads.addAll(steps.get(i).reads);
+            writes.addAll(steps.get(i).writes);
+        }
+        for (int i = end; i < steps.size(); i++)
+            readAfter.addAll(steps.get(i).reads);
+        //A kept local is loaded again on each side of the call
+        if (keptIn >= 0)
+            reads.add(keptIn);
+        if (keptOut >= 0)
+            readAfter.add(keptOut);
+        //The helper has its own cost counter, which it flushes before returning
+        if (costCounter >= 0) {
+            reads.removeAll(List.of(costCounter, costCounter + 1));
+            writes.removeAll(List.of(costCounter, costCounter + 1));
+        }
+        List<Object> entry = locals.get(start), exit = locals.get(end);
+        //Locals written and read afterwards go out. They come in too, in case the run doesn't always write them.
+        List<Integer> out = new ArrayList<>();
+        for (int local : writes)
+            if (readAfter.contains(local) && isValue(exit, local))
+                out.add(local);
+        Collections.sort(out);
+        Set<Integer> inSet = new TreeSet<>();
+        for (int local : reads)
+            if (isValue(entry, local))
+                inSet.add(local);
+        for (int local : out)
+            if (isValue(entry, local))
+                inSet.add(local);
+        return new Run(start, end, size, entry, List.copyOf(inSet), exit, out, keptIn, keptOut, -1);
+    }
+
+    private static boolean isValue(List<Object> locals, int index) {
+        if (index >= locals.size())
+            return false;
+        Object type = locals.get(index);
+        return type instanceof String || type.equals(Opcodes.INTEGER) || type.equals(Opcodes.FLOAT) ||
+                type.equals(Opcodes.LONG) || type.equals(Opcodes.DOUBLE) || type.equals(Opcodes.NULL);
+    }
+
+    private void writeSplit(CodeBlock body, List<Item> items, MethodVisitor jvm, boolean countInstructions, List<Run> runs) throws CompilationException {
+        String helperPrefix = (name.equals("<init>") ? "init$" + Integer.toHexString(descriptor.hashCode()) : name) + "$split";
+        body.writeMethodStart(jvm, countInstructions);
+        //Make the carriers, big enough for any of the helpers
+        int carrier = -1, carriedPrimitives = 0, carriedReferences = 0;
+        for (Run run : runs) {
+            if (run.carrier >= 0) {
+                carrier = run.carrier;
+                int primitives = carriedPrimitives(run);
+                carriedPrimitives = Math.max(carriedPrimitives, primitives);
+                carriedReferences = Math.max(carriedReferences, run.out.size() - 1 - primitives);
+            }
+        }
+        if (carrier >= 0) {
+            pushInt(jvm, carriedPrimitives);
+            jvm.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_LONG);
+            jvm.visitVarInsn(Opcodes.ASTORE, carrier);
+            pushInt(jvm, carriedReferences);
+            jvm.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            jvm.visitVarInsn(Opcodes.ASTORE, carrier + 1);
+            FrameTracker.keepLocals(jvm, carrier);
+        }
+        int next = 0;
+        for (int r = 0; r < runs.size(); r++) {
+            Run run = runs.get(r);
+            for (int i = next; i < run.start; i++)
+                items.get(i).accept(jvm);
+            String helperName = helperPrefix + r;
+            String helperDescriptor = helperDescriptor(run);
+            writeHelper(body, items, countInstructions, run, helperName, helperDescriptor);
+
+            //Call it, and store what it gives back
+            if (run.keptIn >= 0)
+                jvm.visitInsn(size(run.entryLocals.get(run.keptIn)) == 2 ? Opcodes.POP2 : Opcodes.POP);
+            if (passesArray(run)) {
+                pushInt(jvm, run.in.size());
+                jvm.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+                for (int i = 0; i < run.in.size(); i++) {
+                    int local = run.in.get(i);
+                    Object type = run.entryLocals.get(local);
+                    jvm.visitInsn(Opcodes.DUP);
+                    pushInt(jvm, i);
+                    jvm.visitVarInsn(opcode(type, Opcodes.ILOAD), local);
+                    box(jvm, type);
+                    jvm.visitInsn(Opcodes.AASTORE);
+                }
+            } else {
+                forEachParam(run, (local, type) -> {
+                    if (type == null)
+                        jvm.visitInsn(Opcodes.ICONST_0);
+                    else
+                        jvm.visitVarInsn(opcode(type, Opcodes.ILOAD), local);
+                });
+            }
+            jvm.visitMethodInsn(Opcodes.INVOKESTATIC, owner, helperName, helperDescriptor, false);
+            if (run.out.size() == 1 || run.carrier >= 0) {
+                int local = run.out.get(0);
+                jvm.visitVarInsn(opcode(run.exitLocals.get(local), Opcodes.ISTORE), local);
+                forEachCarried(run, (carried, index, type) -> {
+                    jvm.visitVarInsn(Opcodes.ALOAD, carried);
+                    pushInt(jvm, index);
+                    if (carried == run.carrier) {
+                        jvm.visitInsn(Opcodes.LALOAD);
+                        fromLong(jvm, type);
+                    } else {
+                        jvm.visitInsn(Opcodes.AALOAD);
+                        unbox(jvm, type);
+                    }
+                    jvm.visitVarInsn(opcode(type, Opcodes.ISTORE), local(run, carried, index));
+                });
+            } else if (run.out.size() > 1) {
+                for (int i = 0; i < run.out.size(); i++) {
+                    int local = run.out.get(i);
+                    Object type = run.exitLocals.get(local);
+                    jvm.visitInsn(Opcodes.DUP);
+                    pushInt(jvm, i);
+                    jvm.visitInsn(Opcodes.AALOAD);
+                    unbox(jvm, type);
+                    jvm.visitVarInsn(opcode(type, Opcodes.ISTORE), local);
+                }
+                jvm.visitInsn(Opcodes.POP);
+            }
+            if (run.keptOut >= 0)
+                jvm.visitVarInsn(opcode(run.exitLocals.get(run.keptOut), Opcodes.ILOAD), run.keptOut);
+            next = run.end;
+        }
+        for (int i = next; i < items.size(); i++)
+            items.get(i).accept(jvm);
+    }
+
+    private void writeHelper(CodeBlock body, List<Item> items, boolean countInstructions, Run run, String helperName, String helperDescriptor) throws CompilationException {
+        MethodVisitor helper = classWriter.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, helperName, helperDescriptor, null, null);
+        helper.visitCode();
+        if (run.carrier >= 0)
+            FrameTracker.keepLocals(helper, run.carrier);
+        if (passesArray(run)) {
+            //Put the locals where the instructions expect them. The array is local 0, so that one goes last.
+            for (int i = run.in.size() - 1; i >= 0; i--) {
+                int local = run.in.get(i);
+                Object type = run.entryLocals.get(local);
+                helper.visitVarInsn(Opcodes.ALOAD, 0);
+                pushInt(helper, i);
+                helper.visitInsn(Opcodes.AALOAD);
+                unbox(helper, type);
+                helper.visitVarInsn(opcode(type, Opcodes.ISTORE), local);
+            }
+        }
+        if (run.keptIn >= 0)
+            helper.visitVarInsn(opcode(run.entryLocals.get(run.keptIn), Opcodes.ILOAD), run.keptIn);
+        if (countInstructions)
+            InstructionCounter.start(body, helper);
+        for (int i = run.start; i < run.end; i++)
+            items.get(i).accept(helper);
+        if (run.keptOut >= 0)
+            helper.visitInsn(size(run.exitLocals.get(run.keptOut)) == 2 ? Opcodes.POP2 : Opcodes.POP);
+        InstructionCounter.flush(body, helper);
+        if (run.out.isEmpty()) {
+            helper.visitInsn(Opcodes.RETURN);
+        } else if (run.out.size() == 1 || run.carrier >= 0) {
+            forEachCarried(run, (carried, index, type) -> {
+                helper.visitVarInsn(Opcodes.ALOAD, carried);
+                pushInt(helper, index);
+                helper.visitVarInsn(opcode(type, Opcodes.ILOAD), local(run, carried, index));
+                if (carried == run.carrier) {
+                    toLong(helper, type);
+                    helper.visitInsn(Opcodes.LASTORE);
+                } else {
+                    helper.visitInsn(Opcodes.AASTORE);
+                }
+            });
+            int local = run.out.get(0);
+            Object type = run.exitLocals.get(local);
+            helper.visitVarInsn(opcode(type, Opcodes.ILOAD), local);
+            helper.visitInsn(opcode(type, Opcodes.IRETURN));
+        } else {
+            pushInt(helper, run.out.size());
+            helper.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            for (int i = 0; i < run.out.size(); i++) {
+                int local = run.out.get(i);
+                Object type = run.exitLocals.get(local);
+                helper.visitInsn(Opcodes.DUP);
+                pushInt(helper, i);
+                helper.visitVarInsn(opcode(type, Opcodes.ILOAD), local);
+                box(helper, type);
+                helper.visitInsn(Opcodes.AASTORE);
+            }
+            helper.visitInsn(Opcodes.ARETURN);
+        }
+        helper.visitMaxs(0, 0);
+        helper.visitEnd();
+    }
+
+    //Parameters cover the locals up to the last one coming in, then the carriers if there are any.
+    //Slots between those get a placeholder int, given as a null type.
+    private static void forEachParam(Run run, ParamConsumer consumer) {
+        int slots = run.carrier >= 0 ? run.carrier : paramSlots(run);
+        for (int local = 0; local < slots; ) {
+            if (run.in.contains(local)) {
+                Object type = run.entryLocals.get(local);
+                consumer.accept(local, type);
+                local += size(type);
+            } else {
+                consumer.accept(local, null);
+                local++;
+            }
+        }
+        if (run.carrier >= 0) {
+            consumer.accept(run.carrier, "[J");
+            consumer.accept(run.carrier + 1, "[Ljava/lang/Object;");
+        }
+    }
+
+    //The locals going out after the first, with the carrier each goes in and its index there
+    private static void forEachCarried(Run run, CarriedConsumer consumer) {
+        int primitives = 0, references = 0;
+        for (Integer local : run.out.subList(1, run.out.size())) {
+            Object type = run.exitLocals.get(local);
+            if (BOXES.containsKey(type))
+                consumer.accept(run.carrier, primitives++, type);
+            else
+                consumer.accept(run.carrier + 1, references++, type);
+        }
+    }
+
+    private static int carriedPrimitives(Run run) {
+        int primitives = 0;
+        for (Integer local : run.out.subList(1, run.out.size()))
+            if (BOXES.containsKey(run.exitLocals.get(local)))
+                primitives++;
+        return primitives;
+    }
+
+    //Which local goes in the given carrier at the given index
+    private static int local(Run run, int carried, int index) {
+        int found = 0;
+        for (Integer local : run.out.subList(1, run.out.size()))
+            if (BOXES.containsKey(run.exitLocals.get(local)) == (carried == run.carrier) && found++ == index)
+                return local;
+        throw new IllegalStateException("No local carried at " + index + ", bug in compiler, please report!");
+    }
+
+    private static int paramSlots(Run run) {
+        if (run.in.isEmpty())
+            return 0;
+        int last = run.in.get(run.in.size() - 1);
+        return last + size(run.entryLocals.get(last));
+    }
+
+    //Methods can't take more than 255 slots of parameters. Past that, the locals come in an Object[] instead.
+    private static boolean passesArray(Run run) {
+        return paramSlots(run) > 255;
+    }
+
+    private interface ParamConsumer {
+        void accept(int local, Object type);
+    }
+
+    private interface CarriedConsumer {
+        void accept(int carried, int index, Object type);
+    }
+
+    private static String helperDescriptor(Run run) {
+        StringBuilder result = new StringBuilder("(");
+        if (passesArray(run))
+            result.append("[Ljava/lang/Object;");
+        else
+            forEachParam(run, (local, type) -> result.append(type == null ? "I" : descriptor(type)));
+        result.append(')');
+        if (run.out.isEmpty())
+            result.append('V');
+        else if (run.out.size() == 1 || run.carrier >= 0)
+            result.append(descriptor(run.exitLocals.get(run.out.get(0))));
+        else
+            result.append("[Ljava/lang/Object;");
+        return result.toString();
+    }
+
+    //The descriptor of a FrameTracker type
+    private static String descriptor(Object type) {
+        if (type instanceof String internalName)
+            return internalName.startsWith("[") ? internalName : "L" + internalName + ";";
+        if (type.equals(Opcodes.INTEGER)) return "I";
+        if (type.equals(Opcodes.FLOAT)) return "F";
+        if (type.equals(Opcodes.LONG)) return "J";
+        if (type.equals(Opcodes.DOUBLE)) return "D";
+        return "Ljava/lang/Object;"; //null
+    }
+
+    private static int size(Object type) {
+        return type.equals(Opcodes.LONG) || type.equals(Opcodes.DOUBLE) ? 2 : 1;
+    }
+
+    //The variant of an int load, store or return opcode for a FrameTracker type
+    private static int opcode(Object type, int intOpcode) {
+        int offset;
+        if (type.equals(Opcodes.INTEGER)) offset = 0;
+        else if (type.equals(Opcodes.LONG)) offset = 1;
+        else if (type.equals(Opcodes.FLOAT)) offset = 2;
+        else if (type.equals(Opcodes.DOUBLE)) offset = 3;
+        else offset = 4;
+        return intOpcode + offset;
+    }
+
+    private static final Map<Object, String> BOXES = Map.of(
+            Opcodes.INTEGER, "java/lang/Integer",
+            Opcodes.LONG, "java/lang/Long",
+            Opcodes.FLOAT, "java/lang/Float",
+            Opcodes.DOUBLE, "java/lang/Double"
+    );
+    private static final Map<Object, String> PRIMITIVES = Map.of(
+            Opcodes.INTEGER, "int",
+            Opcodes.LONG, "long",
+            Opcodes.FLOAT, "float",
+            Opcodes.DOUBLE, "double"
+    );
+
+    private static void box(MethodVisitor jvm, Object type) {
+        String box = BOXES.get(type);
+        if (box != null)
+            jvm.visitMethodInsn(Opcodes.INVOKESTATIC, box, "valueOf", "(" + descriptor(type) + ")L" + box + ";", false);
+    }
+
+    private static void unbox(MethodVisitor jvm, Object type) {
+        String box = BOXES.get(type);
+        if (box != null) {
+            jvm.visitTypeInsn(Opcodes.CHECKCAST, box);
+            jvm.visitMethodInsn(Opcodes.INVOKEVIRTUAL, box, PRIMITIVES.get(type) + "Value", "()" + descriptor(type), false);
+        } else if (type instanceof String internalName && !internalName.equals("java/lang/Object")) {
+            jvm.visitTypeInsn(Opcodes.CHECKCAST, internalName);
+        }
+    }
+
+    //Primitives are carried in a long[] by their bits
+    private static void toLong(MethodVisitor jvm, Object type) {
+        if (type.equals(Opcodes.INTEGER)) {
+            jvm.visitInsn(Opcodes.I2L);
+        } else if (type.equals(Opcodes.FLOAT)) {
+            jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false);
+            jvm.visitInsn(Opcodes.I2L);
+        } else if (type.equals(Opcodes.DOUBLE)) {
+            jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+        }
+    }
+
+    private static void fromLong(MethodVisitor jvm, Object type) {
+        if (type.equals(Opcodes.INTEGER)) {
+            jvm.visitInsn(Opcodes.L2I);
+        } else if (type.equals(Opcodes.FLOAT)) {
+            jvm.visitInsn(Opcodes.L2I);
+            jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false);
+        } else if (type.equals(Opcodes.DOUBLE)) {
+            jvm.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false);
+        }
+    }
+
+    private static void pushInt(MethodVisitor jvm, int value) {
+        if (value <= 5)
+            jvm.visitInsn(Opcodes.ICONST_0 + value);
+        else if (value <= Byte.MAX_VALUE)
+            jvm.visitIntInsn(Opcodes.BIPUSH, value);
+        else
+            jvm.visitIntInsn(Opcodes.SIPUSH, value);
+    }
+
+    //What one instruction of the outermost block does
+    private record Step(int size, Set<Integer> reads, Set<Integer> writes, Set<Label> labels, Set<Label> targets, Set<Label> loopHeads, boolean returns) {}
+
+    //Records the locals read and written, the labels and jump targets, and the size of each
+    //instruction it's given, one instruction at a time. Only sees reachable code, behind a FrameTracker.
+    //A jump to a label already seen, in this instruction or an earlier one, is a loop.
+    private static class Recorder extends SizeCounter {
+        private int startSize;
+        private Set<Integer> reads, writes, written;
+        private Set<Label> labels, targets, loopHeads;
+        private final Set<Label> seen = new HashSet<>();
+        private boolean returns;
+        //How many local slots the method uses, as far as seen
+        private int maxLocals;
+
+        Recorder(String descriptor, int access) {
+            maxLocals = (Type.getArgumentsAndReturnSizes(descriptor) >> 2) - ((access & Opcodes.ACC_STATIC) != 0 ? 1 : 0);
+        }
+
+        void startStep() {
+            startSize = size;
+            reads = new HashSet<>();
+            writes = new HashSet<>();
+            written = new HashSet<>();
+            labels = new HashSet<>();
+            targets = new HashSet<>();
+            loopHeads = new HashSet<>();
+            returns = false;
+        }
+
+        Step finishStep() {
+            return new Step(size - startSize, reads, writes, labels, targets, loopHeads, returns);
+        }
+
+        //A read only counts if it might see a value from before the instruction. It doesn't
+        //after a write to the local with no label between, like for a temporary.
+        private void read(int local) {
+            if (!written.contains(local))
+                reads.add(local);
+        }
+
+        private void write(int local) {
+            writes.add(local);
+            written.add(local);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int varIndex) {
+            super.visitVarInsn(opcode, varIndex);
+            boolean wide = opcode == Opcodes.LLOAD || opcode == Opcodes.DLOAD || opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE;
+            maxLocals = Math.max(maxLocals, varIndex + (wide ? 2 : 1));
+            if (opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD)
+                read(varIndex);
+            else
+                write(varIndex);
+        }
+
+        @Override
+        public void visitIincInsn(int varIndex, int increment) {
+            super.visitIincInsn(varIndex, increment);
+            maxLocals = Math.max(maxLocals, varIndex + 1);
+            read(varIndex);
+            write(varIndex);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            super.visitInsn(opcode);
+            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)
+                returns = true;
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            labels.add(label);
+            seen.add(label);
+            written.clear();
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            super.visitJumpInsn(opcode, label);
+            targets.add(label);
+            if (seen.contains(label))
+                loopHeads.add(label);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+            targets.add(dflt);
+            targets.addAll(List.of(labels));
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+            targets.add(dflt);
+            targets.addAll(List.of(labels));
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            targets.addAll(List.of(start, end, handler));
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package ast.ir.optimize;
+
+import ast.ir.instruction.Instruction;
+import exceptions.compile_time.CompilationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies peephole rules to the instructions of a method as they're emitted,
+ * and counts what they removed. One is shared by all the CodeBlocks of a method.
+ */
+public class PeepholeOptimizer {
+
+    private final List<PeepholeRule> rules;
+    private int removedInstructions, removedBytes;
+
+    public PeepholeOptimizer(List<PeepholeRule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    //An optimizer with the standard rules
+    public static PeepholeOptimizer standard() {
+        return new PeepholeOptimizer(PeepholeRules.STANDARD);
+    }
+
+    /**
+     * Apply the rules to the end of the instructions, which one was just added to,
+     * until none match. Replacements can make more rules match, so they're applied
+     * again after each one. Returns how much the cost of the instructions went down.
+     */
+    public long optimize(ArrayList<Instruction> instructions) throws CompilationException {
+        long removedCost = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (PeepholeRule rule : rules) {
+                PeepholeRule.Replacement replacement = rule.apply(instructions);
+                if (replacement == null)
+                    continue;
+                List<Instruction> removed = instructions.subList(instructions.size() - replacement.count(), instructions.size());
+                for (Instruction i : removed) {
+                    removedCost += i.cost();
+                    removedBytes += bytes(i);
+                }
+                removedInstructions += removed.size();
+                removed.clear();
+                for (Instruction i : replacement.with()) {
+                    instructions.add(i);
+                    removedCost -= i.cost();
+                    removedBytes -= bytes(i);
+                }
+                removedInstructions -= replacement.with().size();
+                changed = true;
+                break;
+            }
+        }
+        return removedCost;
+    }
+
+    //What was removed so far, net of what was added back. Bytes are each instruction's maxSize(),
+    //which is exact for locals, labels and stack operations, and an upper bound for pushes.
+    public Stats stats() {
+        return new Stats(removedInstructions, removedBytes);
+    }
+
+    public record Stats(int removedInstructions, int removedBytes) {}
+
+    //The size of the JVM bytecode for the instruction. It isn't written to find out, since the
+    //block it's in isn't finished. The rules only move instructions whose size is known without that.
+    private static int bytes(Instruction instruction) {
+        return Math.max(instruction.maxSize(), 0);
+    }
+
+}
@@ -0,0 +1,23 @@
+package ast.ir.optimize;
+
+import ast.ir.instruction.Instruction;
+import exceptions.compile_time.CompilationException;
+
+import java.util.List;
+
+/**
+ * A rewrite of a short sequence of instructions into a cheaper one.
+ * See PeepholeRules for the standard ones.
+ */
+public interface PeepholeRule {
+
+    /**
+     * Look at the end of the instructions, right after one was added.
+     * If the rule matches there, return how many of the last instructions
+     * to replace and what with. Otherwise, return null.
+     */
+    Replacement apply(List<Instruction> instructions) throws CompilationException;
+
+    record Replacement(int count, List<Instruction> with) {}
+
+}
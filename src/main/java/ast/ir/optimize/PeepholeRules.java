@@ -0,0 +1,87 @@
+package ast.ir.optimize;
+
+import ast.ir.instruction.Instruction;
+import ast.ir.instruction.flow.IrLabel;
+import ast.ir.instruction.flow.Jump;
+import ast.ir.instruction.stack.Dup;
+import ast.ir.instruction.stack.Pop;
+import ast.ir.instruction.stack.Push;
+import ast.ir.instruction.vars.LoadLocal;
+import ast.ir.instruction.vars.StoreLocal;
+import ast.typed.def.type.TypeDef;
+import builtin_types.types.numbers.IntegerType;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * The standard peephole rules. They only match instructions next to each
+ * other in one block, so nothing can jump between them; labels are
+ * instructions too.
+ */
+public final class PeepholeRules {
+
+    private PeepholeRules() {}
+
+    //Pushing a value and then popping it does nothing.
+    //Comes from literals and variables used as statements.
+    public static final PeepholeRule PUSH_POP = instructions -> {
+        if (last(instructions, 0) instanceof Pop pop) {
+            Instruction before = last(instructions, 1);
+            if (before instanceof Push push && canRemove(push) && same(push.type(), pop.type()) ||
+                before instanceof LoadLocal load && same(load.type(), pop.type()) ||
+                before instanceof Dup dup && same(dup.typeDef(), pop.type()))
+                return new PeepholeRule.Replacement(2, List.of());
+        }
+        return null;
+    };
+
+    //Storing a local and loading it again is the same as duplicating
+    //the value and storing one copy. Comes from declarations.
+    public static final PeepholeRule STORE_LOAD = instructions -> {
+        if (last(instructions, 0) instanceof LoadLocal load && last(instructions, 1) instanceof StoreLocal store &&
+                load.index() == store.index() && same(load.type(), store.type()) && isSingleValue(store.type()))
+            return new PeepholeRule.Replacement(2, List.of(new Dup(store.type()), store));
+        return null;
+    };
+
+    //Duplicating a value, storing one copy, and popping the other is only storing it.
+    //Comes from STORE_LOAD on declarations used as statements.
+    public static final PeepholeRule DUP_STORE_POP = instructions -> {
+        if (last(instructions, 0) instanceof Pop pop && last(instructions, 1) instanceof StoreLocal store &&
+                last(instructions, 2) instanceof Dup dup && same(dup.typeDef(), store.type()) && same(store.type(), pop.type()))
+            return new PeepholeRule.Replacement(3, List.of(store));
+        return null;
+    };
+
+    //Jumping to the label right after the jump does nothing.
+    public static final PeepholeRule JUMP_TO_NEXT = instructions -> {
+        if (last(instructions, 0) instanceof IrLabel label && last(instructions, 1) instanceof Jump jump &&
+                jump.label() == label.asmLabel())
+            return new PeepholeRule.Replacement(2, List.of(label));
+        return null;
+    };
+
+    public static final List<PeepholeRule> STANDARD = List.of(PUSH_POP, STORE_LOAD, DUP_STORE_POP, JUMP_TO_NEXT);
+
+    //The instruction at the given distance from the end, or null if there isn't one
+    private static Instruction last(List<Instruction> instructions, int distance) {
+        int index = instructions.size() - 1 - distance;
+        return index >= 0 ? instructions.get(index) : null;
+    }
+
+    private static boolean same(TypeDef a, TypeDef b) {
+        return a.get() == b.get();
+    }
+
+    //Whether the type is one value on the JVM, which can be duplicated
+    private static boolean isSingleValue(TypeDef type) {
+        return !type.isPlural() && (type.stackSlots() == 1 || type.stackSlots() == 2);
+    }
+
+    //Pushing an out-of-range int literal is a compile error, which needs to stay
+    private static boolean canRemove(Push push) {
+        return !(push.obj() instanceof BigInteger v && push.type().get().builtin() instanceof IntegerType i && !i.fits(v));
+    }
+
+}
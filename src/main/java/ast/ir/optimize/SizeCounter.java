@@ -0,0 +1,84 @@
+package ast.ir.optimize;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Adds up the sizes of the instructions it visits. Constant pool indices
+ * are assumed to fit in one byte, which is the usual case, and switches
+ * are assumed to need no padding.
+ */
+class SizeCounter extends MethodVisitor {
+    int size;
+
+    SizeCounter() {
+        super(Opcodes.ASM9);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        size += 1;
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        size += opcode == Opcodes.SIPUSH ? 3 : 2;
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int varIndex) {
+        size += varIndex <= 3 ? 1 : varIndex <= 255 ? 2 : 4;
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+        size += varIndex <= 255 && increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE ? 3 : 6;
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        size += value instanceof Long || value instanceof Double ? 3 : 2;
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        size += 3;
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        size += 13 + 4 * labels.length;
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        size += 9 + 8 * labels.length;
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        size += 3;
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        size += 4;
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        size += 3;
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        size += opcode == Opcodes.INVOKEINTERFACE ? 5 : 3;
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+        size += 5;
+    }
+}
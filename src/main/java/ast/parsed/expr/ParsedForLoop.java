@@ -0,0 +1,21 @@
+package ast.parsed.expr;
+
+import ast.passes.TypeResolver;
+import ast.type_resolved.expr.TypeResolvedExpr;
+import ast.type_resolved.expr.TypeResolvedForLoop;
+import exceptions.compile_time.CompilationException;
+import lexing.Loc;
+
+/**
+ * The loop of a for loop over a collection, which is in the variable iterableName.
+ * The parser doesn't know the collection's type, so it lowers the loop two ways:
+ * indexing into it, for arrays and Lists, and calling iter() on it, for anything else.
+ * Which one is used gets decided when type checking.
+ */
+public record ParsedForLoop(Loc loc, String iterableName, ParsedExpr indexedLoop, ParsedExpr iteratorLoop) implements ParsedExpr {
+
+    @Override
+    public TypeResolvedExpr resolve(TypeResolver resolver) throws CompilationException {
+        return new TypeResolvedForLoop(loc, iterableName, resolver.lookupTopLevel("std/List", "List"), indexedLoop.resolve(resolver), iteratorLoop.resolve(resolver));
+    }
+}
@@ -0,0 +1,24 @@
+package ast.parsed.expr;
+
+import ast.passes.TypeResolver;
+import ast.type_resolved.expr.TypeResolvedExpr;
+import exceptions.compile_time.CompilationException;
+import lexing.Loc;
+
+/**
+ * An expr which the parser put in several places while lowering something,
+ * like the body of a for loop, which is in each way the loop can be compiled.
+ * It's only resolved once, and every place gets the same TypeResolvedExpr.
+ */
+public record ParsedSharedExpr(ParsedExpr expr) implements ParsedExpr {
+
+    @Override
+    public Loc loc() {
+        return expr.loc();
+    }
+
+    @Override
+    public TypeResolvedExpr resolve(TypeResolver resolver) throws CompilationException {
+        return resolver.resolveOnce(this, () -> expr.resolve(resolver));
+    }
+}
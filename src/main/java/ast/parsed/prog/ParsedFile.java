@@ -1,6 +1,5 @@
 package ast.parsed.prog;
 
-import ast.parsed.def.method.SnuggleParsedMethodDef;
 import ast.parsed.def.type.ParsedTypeDef;
 import ast.parsed.expr.ParsedExpr;
 import ast.parsed.expr.ParsedExtensionMethod;
@@ -10,7 +9,16 @@ import java.util.List;
 
 /**
  * A single file in a program.
+ * Parsed files can be cached and shared between compilations (see TypeResolver),
+ * so they're immutable once created.
  */
 public record ParsedFile(String name, List<ParsedImport> topLevelImports, List<ParsedTypeDef> topLevelTypeDefs, List<ParsedExtensionMethod> topLevelExtensionMethods, List<ParsedExpr> code) {
 
+    public ParsedFile {
+        topLevelImports = List.copyOf(topLevelImports);
+        topLevelTypeDefs = List.copyOf(topLevelTypeDefs);
+        topLevelExtensionMethods = List.copyOf(topLevelExtensionMethods);
+        code = List.copyOf(code);
+    }
+
 }
@@ -16,11 +16,19 @@ import lexing.Lexer;
 import lexing.Loc;
 import lexing.Token;
 import lexing.TokenType;
+import util.IntLiteralData;
 import util.ListUtils;
+import util.throwing_interfaces.ThrowingBiFunction;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static lexing.TokenType.*;
@@ -36,16 +44,78 @@ import static lexing.TokenType.*;
 public class Parser {
 
     /**
-     * Parses all the given files and results in a ParsedAST
+     * Parses all the given files and results in a ParsedAST.
+     * Files are parsed in parallel on the common ForkJoinPool.
      */
     public static ParsedAST parse(Map<String, Lexer> files) throws CompilationException {
+        return parse(files, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses all the given files on the given executor, one task per file.
+     * The resulting files are sorted by name, and if several files have errors,
+     * the error from the first of them is the one reported. This way the
+     * result doesn't depend on how the tasks happened to be scheduled.
+     */
+    public static ParsedAST parse(Map<String, Lexer> files, ExecutorService executor) throws CompilationException {
+        return parseAll(files, executor, (name, lexer) -> parseFile(name, lexer));
+    }
+
+    /**
+     * Lexes and parses all the given source files, in parallel on the common ForkJoinPool.
+     */
+    public static ParsedAST parseSources(Map<String, ? extends CharSequence> files) throws CompilationException {
+        return parseSources(files, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes and parses all the given source files on the given executor.
+     * Lexing is done as part of each file's task. See parse() for the ordering guarantees.
+     */
+    public static ParsedAST parseSources(Map<String, ? extends CharSequence> files, ExecutorService executor) throws CompilationException {
+        return parseAll(files, executor, (name, source) -> parseFile(name, Lexer.compact(name, source)));
+    }
+
+    private static <T> ParsedAST parseAll(Map<String, T> files, ExecutorService executor, ThrowingBiFunction<String, T, ParsedFile, CompilationException> parser) throws CompilationException {
         //Verify that there's a main file
         if (!files.containsKey("main"))
             throw new IllegalArgumentException("Expected main file, but could not find any");
+        List<String> names = new ArrayList<>(files.keySet());
+        names.sort(null);
+        ArrayList<ParsedFile> parsedFiles = new ArrayList<>(names.size());
+        //Not worth the overhead for a single file
+        if (names.size() == 1) {
+            parsedFiles.add(parser.apply(names.get(0), files.get(names.get(0))));
+            return new ParsedAST(parsedFiles);
+        }
         //Parse files
-        ArrayList<ParsedFile> parsedFiles = new ArrayList<>(files.size());
-        for (var file : files.entrySet())
-            parsedFiles.add(new Parser(file.getValue()).parseFile(file.getKey()));
+        List<Future<ParsedFile>> tasks = new ArrayList<>(names.size());
+        for (String name : names) {
+            T file = files.get(name);
+            tasks.add(executor.submit(() -> parser.apply(name, file)));
+        }
+        //Collect results in order. Wait for every task, even after an error,
+        //so that the error we report is always the one from the first file.
+        Throwable firstFailure = null;
+        for (Future<ParsedFile> task : tasks) {
+            try {
+                parsedFiles.add(task.get());
+            } catch (ExecutionException e) {
+                if (firstFailure == null)
+                    firstFailure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing", e);
+            }
+        }
+        if (firstFailure instanceof CompilationException compilationException)
+            throw compilationException;
+        if (firstFailure instanceof RuntimeException runtimeException)
+            throw runtimeException;
+        if (firstFailure instanceof Error error)
+            throw error;
+        if (firstFailure != null)
+            throw new IllegalStateException("Unexpected exception while parsing", firstFailure);
         //Return
         return new ParsedAST(parsedFiles);
     }
@@ -85,10 +155,6 @@ public class Parser {
                 topLevelExtensionMethods.add(topLevelExtensionMethod);
             code.add(e);
         }
-        code.trimToSize();
-        topLevelImports.trimToSize();
-        topLevelTypes.trimToSize();
-        topLevelExtensionMethods.trimToSize();
         return new ParsedFile(fileName, topLevelImports, topLevelTypes, topLevelExtensionMethods, code);
     }
 
@@ -119,18 +185,22 @@ public class Parser {
             boolean pubMember = lexer.consume(PUB);
             //"static fn" or "static var"
             if (lexer.consume(STATIC)) {
-                if (lexer.consume(FN))
-                    methods.add(parseMethod(isClass ? TypeType.CLASS : TypeType.STRUCT, true, typeName.string(), pubMember, typeGenerics, methodGenerics));
+                if (lexer.consume(INLINE))
+                    methods.add(parseInlineMethod(isClass ? TypeType.CLASS : TypeType.STRUCT, true, typeName.string(), pubMember, typeGenerics, methodGenerics));
+                else if (lexer.consume(FN))
+                    methods.add(parseMethod(isClass ? TypeType.CLASS : TypeType.STRUCT, true, false, typeName.string(), pubMember, typeGenerics, methodGenerics));
                 else if (lexer.consume(VAR))
                     fields.add(parseField(isClass, pubMember, true, typeGenerics, methodGenerics));
                 else if (lexer.consume(LEFT_CURLY))
-                    methods.add(new SnuggleParsedMethodDef(lexer.last().loc(), false, true, "#init", 0, List.of(), List.of(), ParsedType.Tuple.UNIT, parseBlock(typeGenerics, methodGenerics)));
+                    methods.add(new SnuggleParsedMethodDef(lexer.last().loc(), false, true, false, "#init", 0, List.of(), List.of(), ParsedType.Tuple.UNIT, parseBlock(typeGenerics, methodGenerics)));
                 else
-                    throw new ParsingException("Expected \"fn\", \"var\", or initializer block after \"static\"", lexer.last().loc());
+                    throw new ParsingException("Expected \"fn\", \"inline\", \"var\", or initializer block after \"static\"", lexer.last().loc());
             }
             //Regular functions/fields (not static)
+            else if (lexer.consume(INLINE))
+                methods.add(parseInlineMethod(isClass ? TypeType.CLASS : TypeType.STRUCT, false, typeName.string(), pubMember, typeGenerics, methodGenerics));
             else if (lexer.consume(FN))
-                methods.add(parseMethod(isClass ? TypeType.CLASS : TypeType.STRUCT, false, typeName.string(), pubMember, typeGenerics, methodGenerics));
+                methods.add(parseMethod(isClass ? TypeType.CLASS : TypeType.STRUCT, false, false, typeName.string(), pubMember, typeGenerics, methodGenerics));
             else if (lexer.consume(VAR))
                 fields.add(parseField(isClass, pubMember, false, typeGenerics, methodGenerics));
             else
@@ -165,10 +235,14 @@ public class Parser {
                 else if (lexer.consume(STATIC)) {
                     if (lexer.consume(VAR))
                         throw new ParsingException("Cannot add fields to enum definition", lexer.last().loc());
+                    else if (lexer.consume(INLINE))
+                        methods.add(parseInlineMethod(TypeType.ENUM, true, typeName, true, typeGenerics, methodGenerics));
                     else if (lexer.consume(FN))
-                        methods.add(parseMethod(TypeType.ENUM, true, typeName, true, typeGenerics, methodGenerics));
+                        methods.add(parseMethod(TypeType.ENUM, true, false, typeName, true, typeGenerics, methodGenerics));
+                } else if (lexer.consume(INLINE)) {
+                    methods.add(parseInlineMethod(TypeType.ENUM, false, typeName, true, typeGenerics, methodGenerics));
                 } else if (lexer.consume(FN)) {
-                    methods.add(parseMethod(TypeType.ENUM, false, typeName, true, typeGenerics, methodGenerics));
+                    methods.add(parseMethod(TypeType.ENUM, false, false, typeName, true, typeGenerics, methodGenerics));
                 } else {
                     throw new ParsingException("Expected function definition after \"pub\" inside enum \"" + typeName + "\"", loc);
                 }
@@ -177,11 +251,15 @@ public class Parser {
             else if (lexer.consume(STATIC)) {
                 if (lexer.consume(VAR))
                     throw new ParsingException("Cannot add fields to enum definition", lexer.last().loc());
+                else if (lexer.consume(INLINE))
+                    methods.add(parseInlineMethod(TypeType.ENUM, true, typeName, false, typeGenerics, methodGenerics));
                 else if (lexer.consume(FN))
-                    methods.add(parseMethod(TypeType.ENUM, true, typeName, false, typeGenerics, methodGenerics));
+                    methods.add(parseMethod(TypeType.ENUM, true, false, typeName, false, typeGenerics, methodGenerics));
             }
+            else if (lexer.consume(INLINE))
+                methods.add(parseInlineMethod(TypeType.ENUM, false, typeName, false, typeGenerics, methodGenerics));
             else if (lexer.consume(FN))
-                methods.add(parseMethod(TypeType.ENUM, false, typeName, false, typeGenerics, methodGenerics));
+                methods.add(parseMethod(TypeType.ENUM, false, false, typeName, false, typeGenerics, methodGenerics));
             else if (lexer.consume(IDENTIFIER)) {
                 String name = lexer.last().string();
                 Loc elemLoc = lexer.last().loc();
@@ -233,12 +311,20 @@ public class Parser {
         CLASS, STRUCT, ENUM
     }
 
+    //"inline" was already consumed
+    private SnuggleParsedMethodDef parseInlineMethod(TypeType typeType, boolean isStatic, String thisTypeName, boolean pub, List<GenericDef> typeGenerics, List<GenericDef> prevMethodGenerics) throws CompilationException {
+        lexer.expect(FN, "Expected \"fn\" after \"inline\"", lexer.last().loc());
+        return parseMethod(typeType, isStatic, true, thisTypeName, pub, typeGenerics, prevMethodGenerics);
+    }
+
     //"fn" was already consumed
-    private SnuggleParsedMethodDef parseMethod(TypeType typeType, boolean isStatic, String thisTypeName, boolean pub, List<GenericDef> typeGenerics, List<GenericDef> prevMethodGenerics) throws CompilationException {
+    private SnuggleParsedMethodDef parseMethod(TypeType typeType, boolean isStatic, boolean inline, String thisTypeName, boolean pub, List<GenericDef> typeGenerics, List<GenericDef> prevMethodGenerics) throws CompilationException {
         if (lexer.consume(NEW)) {
             //Constructor
             if (isStatic)
                 throw new ParsingException("Constructors cannot be static", lexer.last().loc());
+            if (inline)
+                throw new ParsingException("Constructors cannot be inline", lexer.last().loc());
             String methodName = "new";
             Loc methodLoc = lexer.last().loc();
             List<GenericDef> methodGenerics = new ArrayList<>(prevMethodGenerics);
@@ -256,7 +342,7 @@ public class Parser {
             ParsedExpr body = parseExpr(typeGenerics, methodGenerics, false, true);
             List<String> paramNames = ListUtils.map(params, ParsedParam::name);
             List<ParsedType> paramTypes = ListUtils.map(params, ParsedParam::type);
-            return new SnuggleParsedMethodDef(methodLoc, pub, false, methodName, methodGenerics.size(), paramNames, paramTypes, returnType, body);
+            return new SnuggleParsedMethodDef(methodLoc, pub, false, false, methodName, methodGenerics.size(), paramNames, paramTypes, returnType, body);
         } else {
             //Not constructor
 
@@ -271,7 +357,7 @@ public class Parser {
             ParsedExpr body = parseExpr(typeGenerics, methodGenerics, false, true);
             List<String> paramNames = ListUtils.map(params, ParsedParam::name);
             List<ParsedType> paramTypes = ListUtils.map(params, ParsedParam::type);
-            return new SnuggleParsedMethodDef(methodName.loc(), pub, isStatic, methodName.string(), methodGenerics.size(), paramNames, paramTypes, returnType, body);
+            return new SnuggleParsedMethodDef(methodName.loc(), pub, isStatic, inline, methodName.string(), methodGenerics.size(), paramNames, paramTypes, returnType, body);
         }
     }
 
@@ -349,12 +435,17 @@ public class Parser {
         return parseBinary(0, typeGenerics, methodGenerics, canBeDeclaration, isNested);
     }
 
-    private ParsedExpr parseBinary(int precedence, List<GenericDef> typeGenerics, List<GenericDef> methodGenerics, boolean canBeDeclaration, boolean isNested) throws CompilationException {
-        if (precedence >= TOK_TYPES.size())
-            return parseAs(typeGenerics, methodGenerics, canBeDeclaration, isNested);
-        ParsedExpr lhs = parseBinary(precedence + 1, typeGenerics, methodGenerics, canBeDeclaration, isNested);
-        int rhsPrecedence = RIGHT_ASSOCIATIVE.get(precedence) ? precedence : precedence + 1;
-        while (lexer.consume(TOK_TYPES.get(precedence))) {
+    /**
+     * Precedence climbing: parse a unit, then keep folding in binary operators
+     * whose precedence is at least minPrecedence. Only the rhs of an operator
+     * recurses, so a plain literal or variable costs a single call here, no
+     * matter how many precedence levels there are.
+     */
+    private ParsedExpr parseBinary(int minPrecedence, List<GenericDef> typeGenerics, List<GenericDef> methodGenerics, boolean canBeDeclaration, boolean isNested) throws CompilationException {
+        ParsedExpr lhs = parseAs(typeGenerics, methodGenerics, canBeDeclaration, isNested);
+        int precedence;
+        while ((precedence = PRECEDENCE[lexer.peekType().ordinal()]) >= minPrecedence) {
+            lexer.advance();
             TokenType op = lexer.last().type();
             Loc opLoc = lexer.last().loc();
 
@@ -389,6 +480,7 @@ public class Parser {
                 default -> throw new IllegalStateException("parseBinary found invalid token \"" + op.exactStrings[0] + "\". Bug in compiler, please report!");
             };
 
+            int rhsPrecedence = RIGHT_ASSOCIATIVE.get(precedence) ? precedence : precedence + 1;
             ParsedExpr rhs = parseBinary(rhsPrecedence, typeGenerics, methodGenerics, false, true);
             Loc fullLoc = Loc.merge(lhs.loc(), rhs.loc());
 
@@ -612,7 +704,8 @@ public class Parser {
             case    CLASS,
                     STRUCT -> parseClassOrStruct(lexer.last().type() == CLASS, false, typeGenerics, methodGenerics, isNested);
             case ENUM -> parseEnum(false, typeGenerics, methodGenerics, isNested);
-            case FN -> parseFn(false, typeGenerics, methodGenerics, isNested);
+            case FN -> parseFn(false, false, typeGenerics, methodGenerics, isNested);
+            case INLINE -> parseInlineFn(false, typeGenerics, methodGenerics, isNested);
             case PUB -> {
                 if (isNested)
                     throw new ParsingException("Types/functions nested in other expressions cannot be \"pub\"", lexer.last().loc());
@@ -621,8 +714,9 @@ public class Parser {
                     case    CLASS,
                             STRUCT -> parseClassOrStruct(lexer.last().type() == CLASS, true, typeGenerics, methodGenerics, false);
                     case ENUM -> parseEnum(true, typeGenerics, methodGenerics, false);
-                    case FN -> parseFn(true, typeGenerics, methodGenerics, false);
-                    default -> throw new ParsingException("Expected class, struct, enum, or fn after \"pub\"", lexer.last().loc());
+                    case FN -> parseFn(true, false, typeGenerics, methodGenerics, false);
+                    case INLINE -> parseInlineFn(true, typeGenerics, methodGenerics, false);
+                    default -> throw new ParsingException("Expected class, struct, enum, fn, or inline fn after \"pub\"", lexer.last().loc());
                 };
             }
             case VAR -> parseDeclaration(typeGenerics, methodGenerics, canBeDeclaration);
@@ -769,15 +863,62 @@ public class Parser {
         ParsedType varType = parseType(":", lexer.last().loc(), typeGenerics, methodGenerics);
         lexer.expect(IN, "Expected \"in\" after variable in \"for\" loop", forLoc);
         ParsedExpr iteratee = parseExpr(typeGenerics, methodGenerics, false, true);
+        //for x: T in start..end, counting from start up to but not including end
+        ParsedExpr rangeEnd = lexer.consume(RANGE) ? parseExpr(typeGenerics, methodGenerics, false, true) : null;
         ParsedExpr body = parseExpr(typeGenerics, methodGenerics, false, true);
         //Now emit result
+        if (rangeEnd != null)
+            return lowerRangeFor(forLoc, varName, varType, iteratee, rangeEnd, body);
+        String iterableName = "temp$iterable";
+        //The body is in both ways of doing the loop, so only resolve it once
+        ParsedExpr sharedBody = new ParsedSharedExpr(body);
+        //Overall block
+        return new ParsedBlock(forLoc, List.of(
+                //var temp$iterable = b
+                new ParsedDeclaration(forLoc, iterableName, null, iteratee),
+                new ParsedForLoop(forLoc, iterableName,
+                        lowerIndexedFor(forLoc, varName, varType, new ParsedVariable(forLoc, iterableName), sharedBody),
+                        lowerIteratorFor(forLoc, varName, varType, new ParsedVariable(forLoc, iterableName), sharedBody)
+                )
+        ));
+    }
+
+    //Lower a for loop over an indexable collection, like an array or a List, into a counting loop
+    private static ParsedExpr lowerIndexedFor(Loc forLoc, String varName, ParsedType varType, ParsedExpr iterable, ParsedExpr body) {
+        String indexName = "temp$index";
+        return new ParsedBlock(forLoc, List.of(
+                //var temp$index: u32 = 0
+                new ParsedDeclaration(forLoc, indexName, new ParsedType.Basic("u32", List.of()),
+                        new ParsedLiteral(forLoc, new IntLiteralData(BigInteger.ZERO, false, 0))
+                ),
+                //while temp$index < #b, checking the size every time like iter() does, in case the body changes it
+                new ParsedWhile(forLoc,
+                        wrapTruthy(new ParsedMethodCall(forLoc,
+                                new ParsedVariable(forLoc, indexName),
+                                "lt",
+                                List.of(),
+                                List.of(new ParsedMethodCall(forLoc, iterable, "size", List.of(), List.of()))
+                        )),
+                        new ParsedBlock(forLoc, List.of(
+                                //var x: T = b[temp$index]
+                                new ParsedDeclaration(forLoc, varName, varType,
+                                        new ParsedMethodCall(forLoc, iterable, "get", List.of(), List.of(new ParsedVariable(forLoc, indexName)))
+                                ),
+                                incrementLocal(forLoc, indexName),
+                                body
+                        ))
+                )
+        ));
+    }
+
+    //Lower a for loop over anything else into calls to its iterator
+    private static ParsedExpr lowerIteratorFor(Loc forLoc, String varName, ParsedType varType, ParsedExpr iterable, ParsedExpr body) {
         String iterName = "temp$iter";
         String iterValue = "temp$value";
-        //Overall block
         return new ParsedBlock(forLoc, List.of(
                 //var temp$iter = b.iter()
                 new ParsedDeclaration(forLoc, iterName, null,
-                        new ParsedMethodCall(forLoc, iteratee, "iter", List.of(), List.of())
+                        new ParsedMethodCall(forLoc, iterable, "iter", List.of(), List.of())
                 ),
                 //var temp$value: T? = new()
                 new ParsedDeclaration(forLoc, iterValue,
@@ -813,6 +954,46 @@ public class Parser {
         ));
     }
 
+    //Lower a for loop over a range into a counting loop, with the loop variable's type
+    private static ParsedExpr lowerRangeFor(Loc forLoc, String varName, ParsedType varType, ParsedExpr start, ParsedExpr end, ParsedExpr body) {
+        String indexName = "temp$index";
+        String endName = "temp$end";
+        return new ParsedBlock(forLoc, List.of(
+                //var temp$index: T = start
+                new ParsedDeclaration(forLoc, indexName, varType, start),
+                //var temp$end: T = end
+                new ParsedDeclaration(forLoc, endName, varType, end),
+                //while temp$index < temp$end
+                new ParsedWhile(forLoc,
+                        wrapTruthy(new ParsedMethodCall(forLoc,
+                                new ParsedVariable(forLoc, indexName),
+                                "lt",
+                                List.of(),
+                                List.of(new ParsedVariable(forLoc, endName))
+                        )),
+                        new ParsedBlock(forLoc, List.of(
+                                //var x: T = temp$index
+                                new ParsedDeclaration(forLoc, varName, varType, new ParsedVariable(forLoc, indexName)),
+                                incrementLocal(forLoc, indexName),
+                                body
+                        ))
+                )
+        ));
+    }
+
+    //name = name + 1
+    private static ParsedExpr incrementLocal(Loc loc, String name) {
+        return new ParsedAssignment(loc,
+                new ParsedVariable(loc, name),
+                new ParsedMethodCall(loc,
+                        new ParsedVariable(loc, name),
+                        "add",
+                        List.of(),
+                        List.of(new ParsedLiteral(loc, new IntLiteralData(BigInteger.ONE, false, 0)))
+                )
+        );
+    }
+
     //"{" has already been parsed
     private ParsedExpr parseBlock(List<GenericDef> typeGenerics, List<GenericDef> methodGenerics) throws CompilationException {
         Loc loc = lexer.last().loc();
@@ -844,7 +1025,13 @@ public class Parser {
         return new ParsedDeclaration(Loc.merge(varLoc, rhs.loc()), varName, annotatedType, rhs);
     }
 
-    private ParsedExpr parseFn(boolean pub, List<GenericDef> typeGenerics, List<GenericDef> methodGenerics, boolean isNested) throws CompilationException {
+    //"inline" was already consumed
+    private ParsedExpr parseInlineFn(boolean pub, List<GenericDef> typeGenerics, List<GenericDef> methodGenerics, boolean isNested) throws CompilationException {
+        lexer.expect(FN, "Expected \"fn\" after \"inline\"", lexer.last().loc());
+        return parseFn(pub, true, typeGenerics, methodGenerics, isNested);
+    }
+
+    private ParsedExpr parseFn(boolean pub, boolean inline, List<GenericDef> typeGenerics, List<GenericDef> methodGenerics, boolean isNested) throws CompilationException {
         Loc fnLoc = lexer.last().loc();
         Token nameTok = lexer.expect(IDENTIFIER, "Expected function name after \"fn\"", fnLoc);
         List<GenericDef> newGenerics = parseGenerics();
@@ -855,7 +1042,7 @@ public class Parser {
         ParsedType resultType = lexer.consume(COLON) ? parseType(":", lexer.last().loc(), typeGenerics, methodGenerics) : ParsedType.Tuple.UNIT;
         //Generate the method def
         SnuggleParsedMethodDef parsedMethodDef = new SnuggleParsedMethodDef(
-                fnLoc, pub, true,
+                fnLoc, pub, true, inline,
                 //Name depends on whether this was an extension function or not
                 params.size() > 0 && params.get(0).name.equals("this") ? nameTok.string() : "invoke",
                 newGenerics.size(),
@@ -922,10 +1109,13 @@ public class Parser {
      * Binary operator precedence and associativity
      */
 
-    private static final ArrayList<TokenType[]> TOK_TYPES = new ArrayList<>();
+    //Precedence of each token type, indexed by ordinal. -1 if it's not a binary operator.
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+    //Whether each precedence level is right associative
     private static final ArrayList<Boolean> RIGHT_ASSOCIATIVE = new ArrayList<>();
 
     static {
+        Arrays.fill(PRECEDENCE, -1);
         register(false, OR);
         register(false, AND);
         register(false, EQUAL, NOT_EQUAL);
@@ -935,8 +1125,11 @@ public class Parser {
         register(true, POWER); //a ** b ** c == a ** (b ** c)
     }
 
+    //Registers a new precedence level, binding tighter than all the previous ones
     private static void register(boolean rightAssociative, TokenType... tokenTypes) {
-        TOK_TYPES.add(tokenTypes);
+        int level = RIGHT_ASSOCIATIVE.size();
+        for (TokenType tokenType : tokenTypes)
+            PRECEDENCE[tokenType.ordinal()] = level;
         RIGHT_ASSOCIATIVE.add(rightAssociative);
     }
 
@@ -2,11 +2,13 @@ package ast.passes;
 
 import ast.passes.typeinference.TypeInferenceContext;
 import ast.type_resolved.ResolvedType;
+import ast.type_resolved.def.type.TypeResolvedClassDef;
 import ast.type_resolved.def.type.TypeResolvedTypeDef;
 import ast.type_resolved.expr.TypeResolvedExpr;
 import ast.type_resolved.expr.TypeResolvedExtensionMethod;
 import ast.typed.def.method.MethodDef;
 import ast.typed.def.method.SnuggleMethodDef;
+import ast.typed.def.type.FuncImplTypeDef;
 import ast.typed.def.type.FuncTypeDef;
 import ast.typed.def.type.IndirectTypeDef;
 import ast.typed.def.type.TupleTypeDef;
@@ -38,53 +40,66 @@ public class TypeChecker {
         this.ast = ast;
     }
 
-    private final Stack<MapStack<String, TypeDef>> scopeVariables = new Stack<>();
-    private final Stack<Boolean> isLambdaEnv = new Stack<>();
-    private final Stack<Stack<List<MethodDef>>> extensionMethods = new Stack<>();
-    private final Stack<LateInit<TypeDef, CompilationException>> desiredReturnTypes = new Stack<>();
-    private final Stack<Set<TypeDef>> attemptedReturnTypes = new Stack<>();
+    //The scope stacks. Each thread checking code has its own.
+    private static class Scopes {
+        private final Stack<MapStack<String, TypeDef>> scopeVariables = new Stack<>();
+        private final Stack<Boolean> isLambdaEnv = new Stack<>();
+        private final MultiMapStack<ExtensionKey, MethodDef> extensionMethods = new MultiMapStack<>();
+        private final Stack<LateInit<TypeDef, CompilationException>> desiredReturnTypes = new Stack<>();
+        private final Stack<Set<TypeDef>> attemptedReturnTypes = new Stack<>();
+    }
+    private final ThreadLocal<Scopes> scopes = ThreadLocal.withInitial(Scopes::new);
 
     public void push() {
-        scopeVariables.peek().push();
-        extensionMethods.peek().push(new ArrayList<>());
+        Scopes scopes = this.scopes.get();
+        scopes.scopeVariables.peek().push();
+        scopes.extensionMethods.push();
     }
     public void pushNewEnv(boolean isLambda, LateInit<TypeDef, CompilationException> desiredReturnType) {
-        scopeVariables.push(new MapStack<>());
-        isLambdaEnv.push(isLambda);
-        extensionMethods.push(new Stack<>());
-        extensionMethods.peek().add(new ArrayList<>());
-        desiredReturnTypes.push(desiredReturnType);
-        attemptedReturnTypes.push(isLambda ? new HashSet<>() : null);
+        Scopes scopes = this.scopes.get();
+        scopes.scopeVariables.push(new MapStack<>());
+        scopes.isLambdaEnv.push(isLambda);
+        scopes.extensionMethods.push();
+        scopes.desiredReturnTypes.push(desiredReturnType);
+        scopes.attemptedReturnTypes.push(isLambda ? new HashSet<>() : null);
     }
     public void pop() {
-        scopeVariables.peek().pop();
-        extensionMethods.peek().pop();
+        Scopes scopes = this.scopes.get();
+        scopes.scopeVariables.peek().pop();
+        scopes.extensionMethods.pop();
     }
     public void popEnv() {
-        scopeVariables.pop();
-        isLambdaEnv.pop();
-        extensionMethods.pop();
-        desiredReturnTypes.pop();
-        attemptedReturnTypes.pop();
+        Scopes scopes = this.scopes.get();
+        scopes.scopeVariables.pop();
+        scopes.isLambdaEnv.pop();
+        scopes.extensionMethods.pop();
+        scopes.desiredReturnTypes.pop();
+        scopes.attemptedReturnTypes.pop();
     }
     public MapStack<String, TypeDef> peekEnv() {
-        return scopeVariables.peek();
+        return scopes.get().scopeVariables.peek();
     }
     public void declare(Loc loc, String name, TypeDef type) throws CompilationException {
-        TypeDef prevType = scopeVariables.peek().putIfAbsent(name, type);
+        TypeDef prevType = peekEnv().putIfAbsent(name, type);
         if (prevType != null)
             throw new AlreadyDeclaredException("Variable \"" + name + "\" is already declared in this scope!", loc);
     }
     //Returns null if the variable was not found
     public TypeDef lookup(String name) { //throws CompilationException {
-        return scopeVariables.peek().get(name);
+        return peekEnv().get(name);
     }
     public boolean isLambda() {
-        return isLambdaEnv.peek();
+        return scopes.get().isLambdaEnv.peek();
     }
     public void addExtensionMethod(SnuggleMethodDef extensionMethod) {
-        extensionMethods.peek().peek().add(extensionMethod);
+        scopes.get().extensionMethods.add(new ExtensionKey(extensionMethod.name(), extensionMethod.numParams()), extensionMethod);
+    }
+    //The extension methods currently in scope with the given name and number of params (including the receiver),
+    //from the outermost scope to the innermost
+    public List<MethodDef> getExtensionMethods(String name, int numParams) {
+        return scopes.get().extensionMethods.get(new ExtensionKey(name, numParams));
     }
+    private record ExtensionKey(String name, int numParams) {}
     public void importExtensionMethods(String fileName, boolean importNonPub, TypeDef.InstantiationStackFrame cause) throws CompilationException {
         for (TypeResolvedExtensionMethod extensionMethod : ast.files().get(fileName).topLevelExtensionMethods()) {
             //If the method is pub, or we're importing non-pub things, then add it:
@@ -96,22 +111,78 @@ public class TypeChecker {
         }
     }
     public LateInit<TypeDef, CompilationException> getDesiredReturnType() {
-        return desiredReturnTypes.peek();
+        return scopes.get().desiredReturnTypes.peek();
     }
     public Set<TypeDef> getAttemptedReturnTypes() {
-        return attemptedReturnTypes.peek();
+        return scopes.get().attemptedReturnTypes.peek();
+    }
+
+    //The mappings of the types which some class in the program extends
+    private final LateInit<Set<Integer>, RuntimeException> extendedTypeHeads = new LateInit<>(this::findExtendedTypeHeads);
+
+    private Set<Integer> findExtendedTypeHeads() {
+        Set<Integer> extended = new HashSet<>();
+        for (TypeResolvedTypeDef typeDef : ast.typeDefs())
+            if (typeDef instanceof TypeResolvedClassDef classDef && classDef.supertype() != null)
+                extended.add(classDef.supertype().index());
+        return extended;
     }
 
-    //A cache for mapping (ResolvedType indices, generics) -> TypeDef
-    private final Map<Integer, LinkedHashMap<List<TypeDef>, TypeDef>> cache = new HashMap<>();
-    private final Map<List<TypeDef>, TypeDef> tupleCache = new HashMap<>();
-    private final Map<List<TypeDef>, Map<TypeDef, TypeDef>> funcCache = new HashMap<>();
+    //Whether any class in the program extends the type with this mapping, which tells
+    //whether a value of that type is always exactly that type at runtime
+    public boolean isExtended(int typeHead) {
+        return extendedTypeHeads.get().contains(typeHead);
+    }
+
+    //Instantiated types, by key
+    private final Map<TypeKey, TypeDef> instances = new HashMap<>();
+    //The instantiated types of each ResolvedType index, in the order they were made
+    private final Map<Integer, List<TypeDef>> instancesByIndex = new HashMap<>();
     //The set of all TypeDefs created here
     private final List<TypeDef> allTypeDefs = new ArrayList<>();
+    //The lambda impls registered so far, so a lambda checked again in the same way gets the same impl
+    private final Map<Object, FuncImplTypeDef> lambdaImpls = new HashMap<>();
+
+    //Interned ids of types. Each distinct type (after get()) gets a small id the first
+    //time it's part of a key, so keys are arrays of ints instead of lists of TypeDefs,
+    //which are slower to hash and compare since they go through IndirectTypeDefs.
+    private final Map<TypeDef, Integer> typeIds = new HashMap<>();
+
+    private int typeId(TypeDef type) {
+        return typeIds.computeIfAbsent(type.get(), unused -> typeIds.size());
+    }
+
+    //The first int says what kind of type this is: the ResolvedType index of a basic type,
+    //or one of the negative tags below. The rest are the type ids of its generics.
+    private static final int TUPLE_TAG = -1, FUNC_TAG = -2;
+    private static final class TypeKey {
+        private final int[] ids;
+        private final int hash;
+        private TypeKey(int[] ids) {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TypeKey other && hash == other.hash && Arrays.equals(ids, other.ids);
+        }
+    }
+
+    private TypeKey key(int tag, List<TypeDef> typeDefs) {
+        int[] ids = new int[typeDefs.size() + 1];
+        ids[0] = tag;
+        for (int i = 0; i < typeDefs.size(); i++)
+            ids[i + 1] = typeId(typeDefs.get(i));
+        return new TypeKey(ids);
+    }
 
     public Collection<TypeDef> getAllInstantiated(ResolvedType.Basic basic) {
-        Map<List<TypeDef>, TypeDef> cached = cache.get(basic.index());
-        return cached == null ? List.of() : cached.values();
+        List<TypeDef> instantiated = instancesByIndex.get(basic.index());
+        return instantiated == null ? List.of() : instantiated;
     }
 
     //Converts from ResolvedType to TypeDef.
@@ -119,22 +190,29 @@ public class TypeChecker {
         if (resolvedType instanceof ResolvedType.Basic basic) {
             //Convert the generics and check if we've cached this already.
             //If we have, return that value.
-            List<TypeDef> convertedGenerics = ListUtils.map(basic.generics(), g -> getOrInstantiate(g, typeGenerics, methodGenerics, instantiationLoc, cause));
-            Map<List<TypeDef>, TypeDef> tMap = cache.get(basic.index());
-            if (tMap != null) {
-                TypeDef t = tMap.get(convertedGenerics);
-                if (t != null)
-                    return t;
+            List<ResolvedType> generics = basic.generics();
+            TypeDef[] converted = new TypeDef[generics.size()];
+            int[] ids = new int[generics.size() + 1];
+            ids[0] = basic.index();
+            for (int i = 0; i < converted.length; i++) {
+                converted[i] = getOrInstantiate(generics.get(i), typeGenerics, methodGenerics, instantiationLoc, cause);
+                ids[i + 1] = typeId(converted[i]);
             }
+            TypeKey key = new TypeKey(ids);
+            TypeDef t = instances.get(key);
+            if (t != null)
+                return t;
             //We haven't cached this yet, so let's compute and cache it.
             //Create the new type, but as an indirect. This adds a layer of indirection
             //to avoid problems in recursion.
             IndirectTypeDef resultType = new IndirectTypeDef();
+            List<TypeDef> convertedGenerics = new ArrayList<>(Arrays.asList(converted));
 
             //Only save this type if NONE of the elements are unknown generics.
             if (!ListUtils.any(convertedGenerics, TypeInferenceContext::containsUnknownGeneric)) {
                 allTypeDefs.add(resultType);
-                cache.computeIfAbsent(basic.index(), x -> new LinkedHashMap<>()).put(convertedGenerics, resultType);
+                instancesByIndex.computeIfAbsent(basic.index(), x -> new ArrayList<>()).add(resultType);
+                instances.put(key, resultType);
             }
             TypeResolvedTypeDef resolved = ast.typeDefs().get(basic.index());
             TypeDef instantiated;
@@ -167,21 +245,27 @@ public class TypeChecker {
     }
 
     public TypeDef getTuple(List<TypeDef> typeDefs) {
-        return tupleCache.computeIfAbsent(typeDefs, t -> {
-            TypeDef res = new TupleTypeDef(t);
+        TypeKey key = key(TUPLE_TAG, typeDefs);
+        TypeDef res = instances.get(key);
+        if (res == null) {
+            res = new TupleTypeDef(typeDefs);
             if (!ListUtils.any(res.generics(), TypeInferenceContext::containsUnknownGeneric))
                 allTypeDefs.add(res);
-            return res;
-        });
+            instances.put(key, res);
+        }
+        return res;
     }
 
     public TypeDef getFunc(List<TypeDef> paramTypes, TypeDef resultType) {
-        return funcCache.computeIfAbsent(paramTypes, unused -> new HashMap<>()).computeIfAbsent(resultType, unused -> {
-            TypeDef res = new FuncTypeDef(this, paramTypes, resultType);
+        TypeKey key = key(FUNC_TAG, ListUtils.join(List.of(resultType), paramTypes));
+        TypeDef res = instances.get(key);
+        if (res == null) {
+            res = new FuncTypeDef(this, paramTypes, resultType);
             if (!ListUtils.any(res.generics(), TypeInferenceContext::containsUnknownGeneric))
                 allTypeDefs.add(res);
-            return res;
-        });
+            instances.put(key, res);
+        }
+        return res;
     }
 
     public TypeDef getBasicBuiltin(BuiltinType type) {
@@ -195,20 +279,19 @@ public class TypeChecker {
     public TypeDef getGenericBuiltin(BuiltinType type, List<TypeDef> convertedGenerics, Loc instantiationLoc, TypeDef.InstantiationStackFrame cause) {
         //Similarly structured to above method getOrInstantiate()
         int index = ast.builtinIds().get(type);
-        //Convert the generics and check if we've cached this already.
+        //Check if we've cached this already.
         //If we have, return that value.
-        Map<List<TypeDef>, TypeDef> tMap = cache.get(index);
-        if (tMap != null) {
-            TypeDef t = tMap.get(convertedGenerics);
-            if (t != null)
-                return t;
-        }
+        TypeKey key = key(index, convertedGenerics);
+        TypeDef t = instances.get(key);
+        if (t != null)
+            return t;
         //We haven't cached this yet, so let's compute and cache it.
         //Create the new type, but as an indirect. This adds a layer of indirection
         //to avoid problems in recursion.
         IndirectTypeDef resultType = new IndirectTypeDef();
         allTypeDefs.add(resultType);
-        cache.computeIfAbsent(index, x -> new LinkedHashMap<>()).put(convertedGenerics, resultType);
+        instancesByIndex.computeIfAbsent(index, x -> new ArrayList<>()).add(resultType);
+        instances.put(key, resultType);
         TypeDef instantiated = ast.typeDefs().get(index).instantiate(resultType, this, index, convertedGenerics, instantiationLoc, cause);
         resultType.fill(instantiated);
         //And return
@@ -219,6 +302,16 @@ public class TypeChecker {
         allTypeDefs.add(completedTypeDef);
     }
 
+    //Register the impl of a lambda, unless the same lambda was already checked the same way,
+    //like when a body is checked again. Returns the impl to use.
+    public FuncImplTypeDef registerLambda(FuncImplTypeDef impl) {
+        FuncImplTypeDef existing = lambdaImpls.putIfAbsent(impl.identity(), impl);
+        if (existing != null)
+            return existing;
+        allTypeDefs.add(impl);
+        return impl;
+    }
+
 
     /**
      * Method to fully convert a TypeResolvedAST into a TypedAST.
@@ -248,10 +341,28 @@ public class TypeChecker {
         //the end of the list.
         for (int i = 0; i < checker.allTypeDefs.size(); i++)
             checker.allTypeDefs.get(i).checkCode();
+        checker.numberLambdas();
         //Return the result
         return new TypedAST(checker.allTypeDefs, typedFiles);
     }
 
+    /**
+     * Number the lambda impls of each func type, now that all of them exist.
+     * They're numbered in order of where their lambdas are, rather than the order
+     * they were made in, so a lambda's class keeps its name when code elsewhere changes.
+     */
+    private void numberLambdas() {
+        Map<String, List<FuncImplTypeDef>> implsByFunc = new HashMap<>();
+        for (TypeDef typeDef : allTypeDefs)
+            if (typeDef instanceof FuncImplTypeDef impl)
+                implsByFunc.computeIfAbsent(impl.funcToImplement().name(), unused -> new ArrayList<>()).add(impl);
+        for (List<FuncImplTypeDef> impls : implsByFunc.values()) {
+            impls.sort(FuncImplTypeDef.SOURCE_ORDER);
+            for (int i = 0; i < impls.size(); i++)
+                impls.get(i).number(i);
+        }
+    }
+
 
     private record BestMethodFinder(TypeChecker checker, Loc loc, TypeDef currentType, TypeResolvedExpr typeResolvedReceiver, TypedExpr typedReceiver, TypeDef receiverType, String methodName, ArrayList<TypeResolvedExpr> args, List<TypeDef> genericArgs, List<TypeDef> typeGenerics, List<TypeDef> methodGenerics, boolean isCallStatic, boolean isSuperCall, TypeDef expectedReturnType, TypeDef.InstantiationStackFrame cause,
                                     //First step: find a list of potentially matching methods we can call.
@@ -283,7 +394,8 @@ public class TypeChecker {
             //Mutable
             TypeDef receiverType = receiverType();
 
-            //Get the list of all methods on the type to look through
+            //Get the list of methods on the type to look through.
+            //Only the ones with a matching name, arity, and staticness can possibly apply, so look those up directly.
             List<MethodDef> methodsToCheck;
             if (isSuperCall) {
                 TypeDef def = receiverType;
@@ -291,9 +403,9 @@ public class TypeChecker {
                 if (receiverType == null)
                     throw new IllegalStateException("Cannot use super, as this type has no supertype? Bug in compiler, please report!");
                 def = receiverType;
-                methodsToCheck = def.methods();
+                methodsToCheck = def.methodTable().get(methodName, args.size(), isCallStatic);
             } else {
-                methodsToCheck = receiverType.getAllMethods();
+                methodsToCheck = receiverType.getAllMethods(methodName, args.size(), isCallStatic);
             }
 
             //Is this a "special" call?
@@ -310,7 +422,8 @@ public class TypeChecker {
             if (output != null) return output;
             //Finally, extension methods. Call was non-special.
             //We pass true as the second parameter, and checkMethods() handles the differences itself.
-            List<MethodDef> extensions = ListUtils.join(ListUtils.join(checker.extensionMethods));
+            //The receiver is passed as the first param, so look for one more param than the call has
+            List<MethodDef> extensions = checker.getExtensionMethods(methodName, args.size() + 1);
             checkMethods(extensions, true);
             output = getResultingBestMethodInfo(true); //we should error now if nothing was found
             if (output != null) return output;
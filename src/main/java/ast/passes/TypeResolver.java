@@ -15,10 +15,10 @@ import builtin_types.reflect.ReflectedBuiltin;
 import exceptions.compile_time.CompilationException;
 import exceptions.compile_time.DuplicateNamesException;
 import exceptions.compile_time.ImportException;
-import lexing.Lexer;
 import lexing.Loc;
 import util.ListUtils;
 import util.MapStack;
+import util.throwing_interfaces.ThrowingSupplier;
 
 import java.util.*;
 
@@ -47,6 +47,9 @@ public class TypeResolver {
     //when we come across an import expression.
     private final Map<String, Map<String, Integer>> snuggleTopLevelTypeDefs;
 
+    //Results of resolveOnce(), by the parsed node they came from.
+    private final Map<Object, Object> resolvedOnce = new IdentityHashMap<>();
+
     /**
      * The big method that does it all - converts a ParsedAST into a TypeResolvedAST.
      */
@@ -63,13 +66,10 @@ public class TypeResolver {
         Set<String> fileNames = new HashSet<>(ListUtils.map(parsedAST.files(), ParsedFile::name));
 
         //Insert the snuggle-defined files into the ParsedAST
-        for (Map.Entry<String, String> snuggleFile : builtinTypes.getSnuggleFiles().entrySet()) {
-            String name = snuggleFile.getKey();
+        for (String name : builtinTypes.getSnuggleFiles().keySet()) {
             //Add it to the AST, if there isn't already a file with that name
             if (!fileNames.contains(name)) {
-                String source = snuggleFile.getValue();
-                ParsedFile parsed = Parser.parseFile(name, new Lexer(name, source));
-                parsedAST.files().add(parsed);
+                parsedAST.files().add(builtinTypes.getParsedFile(name));
             }
         }
 
@@ -155,6 +155,25 @@ public class TypeResolver {
         return allTypeDefs.size() - 1;
     }
 
+    /**
+     * Some parsed nodes are resolved more than once, like an extension method,
+     * which is resolved both where it appears in the code and as a top-level
+     * extension method of its file. Those need to resolve to the same object
+     * every time. The results are kept here, and not in the parsed nodes,
+     * because parsed files can be shared between compilations (see
+     * parseSnuggleFile()), and must not hold on to anything from one of them.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T resolveOnce(Object parsed, ThrowingSupplier<T, CompilationException> resolve) throws CompilationException {
+        //Not computeIfAbsent(), since resolving can recursively resolve other nodes
+        T result = (T) resolvedOnce.get(parsed);
+        if (result == null) {
+            result = resolve.get();
+            resolvedOnce.put(parsed, result);
+        }
+        return result;
+    }
+
     public void push() {
         currentMappings.push();
     }
@@ -208,6 +227,13 @@ public class TypeResolver {
         return allTypeDefsInverse.get(typeDef);
     }
 
+    //The mapping of a top-level type in the given file, whether or not it's imported here.
+    //Null if there's no such file or type.
+    public Integer lookupTopLevel(String fileName, String typeName) {
+        Map<String, Integer> fileMapping = snuggleTopLevelTypeDefs.get(fileName);
+        return fileMapping == null ? null : fileMapping.get(typeName);
+    }
+
     //Return a ResolvedType for the type if it exists
     //otherwise, return null
     public ResolvedType tryGetBasicType(String typeName) {
@@ -2,6 +2,8 @@ package ast.passes.typeinference;
 
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.method.MethodDef;
+import ast.typed.def.type.MethodTable;
+import ast.typed.def.type.SubtypeDisplay;
 import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
 
@@ -10,6 +12,8 @@ import java.util.Set;
 
 public record UnknownGenericType(int index) implements TypeDef {
 
+    private static final MethodTable EMPTY_METHOD_TABLE = new MethodTable(List.of());
+
     @Override
     public List<TypeDef> generics() {
         throw new IllegalStateException("Unknown generic typedefs do not implement methods");
@@ -72,6 +76,17 @@ public record UnknownGenericType(int index) implements TypeDef {
         throw new IllegalStateException("Unknown generic typedefs do not implement methods");
     }
 
+    @Override
+    public MethodTable methodTable() {
+        return EMPTY_METHOD_TABLE;
+    }
+
+    @Override
+    public SubtypeDisplay subtypeDisplay() {
+        //Unknown generics have no supertypes, and no subtypes but themselves
+        return SubtypeDisplay.root(this);
+    }
+
     @Override
     public List<String> getDescriptor() {
         return List.of(name());
@@ -15,7 +15,7 @@ import util.ListUtils;
 
 import java.util.List;
 
-public record SnuggleTypeResolvedMethodDef(Loc loc, boolean pub, boolean isStatic, String name, int numGenerics, List<String> paramNames, List<ResolvedType> paramTypes, ResolvedType returnType, TypeResolvedExpr body) implements TypeResolvedMethodDef {
+public record SnuggleTypeResolvedMethodDef(Loc loc, boolean pub, boolean isStatic, boolean inline, String name, int numGenerics, List<String> paramNames, List<ResolvedType> paramTypes, ResolvedType returnType, TypeResolvedExpr body) implements TypeResolvedMethodDef {
 
     //Same as in other topLevelTypes. Error if there's a violation.
     public void verifyGenericCounts(GenericVerifier verifier) throws CompilationException {
@@ -52,7 +52,7 @@ public record SnuggleTypeResolvedMethodDef(Loc loc, boolean pub, boolean isStati
             }
         });
 
-        return new SnuggleMethodDef(loc, pub, name, disambiguationIndex, numGenerics, isStatic, false, owningType, paramNames.size(), paramNames, newParamTypes, newReturnType, typedBody);
+        return new SnuggleMethodDef(loc, pub, name, disambiguationIndex, numGenerics, isStatic, inline, owningType, paramNames.size(), paramNames, newParamTypes, newReturnType, typedBody);
     }
 
     public SnuggleMethodDef instantiateType(List<? extends TypeResolvedMethodDef> allMethods, TypeDef currentType, TypeChecker checker, List<TypeDef> typeGenerics, TypeDef.InstantiationStackFrame cause) {
@@ -173,7 +173,7 @@ public record TypeResolvedEnumDef(Loc loc, String name, boolean nested, List<Typ
                 }),
                 //Static initializer, which fills all the fields
                 List.of(new BytecodeMethodDef("#init", true, currentType, List.of(), checker.getTuple(List.of()), true,
-                        v -> staticInitBlockLazy.get().writeJvmBytecode(v),
+                        (b, d, v) -> staticInitBlockLazy.get().writeJvmBytecodeInto(b, v),
                         new LateInit<>(() -> staticInitBlockLazy.get().cost()) //Custom cost
                 )),
                 //.index(), which does literally nothing at runtime lol, just converts between topLevelTypes
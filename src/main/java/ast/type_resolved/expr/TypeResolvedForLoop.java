@@ -0,0 +1,54 @@
+package ast.type_resolved.expr;
+
+import ast.passes.GenericVerifier;
+import ast.passes.TypeChecker;
+import ast.typed.def.type.ClassDef;
+import ast.typed.def.type.TypeDef;
+import ast.typed.expr.TypedExpr;
+import builtin_types.types.ArrayType;
+import exceptions.compile_time.CompilationException;
+import lexing.Loc;
+
+import java.util.List;
+
+/**
+ * See ParsedForLoop. Arrays and std Lists are looped over by indexing, which doesn't
+ * allocate an iterator closure, or an Option per element. Anything else goes through
+ * its iter() method. listTypeHead is the mapping of std List, or null if it isn't
+ * part of the program.
+ */
+public record TypeResolvedForLoop(Loc loc, String iterableName, Integer listTypeHead, TypeResolvedExpr indexedLoop, TypeResolvedExpr iteratorLoop) implements TypeResolvedExpr {
+
+    @Override
+    public void verifyGenericArgCounts(GenericVerifier verifier) throws CompilationException {
+        indexedLoop.verifyGenericArgCounts(verifier);
+        iteratorLoop.verifyGenericArgCounts(verifier);
+    }
+
+    @Override
+    public TypedExpr infer(TypeDef currentType, TypeChecker checker, List<TypeDef> typeGenerics, List<TypeDef> methodGenerics, TypeDef.InstantiationStackFrame cause) throws CompilationException {
+        return chooseLoop(checker).infer(currentType, checker, typeGenerics, methodGenerics, cause);
+    }
+
+    @Override
+    public TypedExpr check(TypeDef currentType, TypeChecker checker, List<TypeDef> typeGenerics, List<TypeDef> methodGenerics, TypeDef expected, TypeDef.InstantiationStackFrame cause) throws CompilationException {
+        return chooseLoop(checker).check(currentType, checker, typeGenerics, methodGenerics, expected, cause);
+    }
+
+    private TypeResolvedExpr chooseLoop(TypeChecker checker) {
+        TypeDef iterableType = checker.lookup(iterableName);
+        if (iterableType == null)
+            throw new IllegalStateException("For loop's iterable variable wasn't declared? Bug in compiler, please report!");
+        return canIndex(iterableType.get(), checker) ? indexedLoop : iteratorLoop;
+    }
+
+    //Whether the type's size() and get() visit the same elements as its iter(), in the same order.
+    //A List variable could hold a subclass which overrides iter(), so Lists only count when no class
+    //in the program extends List, which means the object is always exactly a List.
+    private boolean canIndex(TypeDef type, TypeChecker checker) {
+        if (type.builtin() == ArrayType.INSTANCE)
+            return true;
+        return listTypeHead != null && type instanceof ClassDef classDef &&
+                classDef.getTypeHeadId() == listTypeHead && !checker.isExtended(listTypeHead);
+    }
+}
@@ -97,12 +97,12 @@ public record TypeResolvedLambda(Loc loc, List<String> paramNames, TypeResolvedE
                         }
                     }));
             //Create the impl type def and fill in the indirect
-            FuncImplTypeDef implDef = new FuncImplTypeDef(checker, funcTypeDef, generatedSnuggleMethod);
+            FuncImplTypeDef implDef = new FuncImplTypeDef(checker, funcTypeDef, generatedSnuggleMethod, loc, currentType, methodGenerics);
             indirect.fill(implDef);
             //Now check the snuggle method body, and also remove any redundant closure fields
             implDef.finalizeImpl(checker);
-            //Register the type def
-            checker.registerTypeDef(implDef);
+            //Register the type def, or use the one registered when this was checked before
+            implDef = checker.registerLambda(implDef);
             //Construct it
             MethodDef constructor = ListUtils.find(implDef.methods(), MethodDef::isConstructor);
             List<TypedExpr> args = ListUtils.map(implDef.fields(), f ->
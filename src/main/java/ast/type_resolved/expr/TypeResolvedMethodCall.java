@@ -7,6 +7,8 @@ import ast.passes.GenericVerifier;
 import ast.passes.TypeChecker;
 import ast.type_resolved.ResolvedType;
 import ast.typed.def.method.MethodDef;
+import ast.typed.def.method.SnuggleMethodDef;
+import ast.typed.def.type.ClassDef;
 import ast.typed.expr.TypedExpr;
 import ast.typed.expr.TypedMethodCall;
 import lexing.Loc;
@@ -46,7 +48,7 @@ public record TypeResolvedMethodCall(Loc loc, TypeResolvedExpr receiver, String
         //Create the call
         TypedMethodCall call = new TypedMethodCall(loc, typedReceiver, matchingMethod, typedArgs, matchingMethod.returnType());
         //Const fold
-        return matchingMethod.constantFold(call);
+        return constantFold(checker, matchingMethod, call);
     }
 
     @Override
@@ -70,7 +72,7 @@ public record TypeResolvedMethodCall(Loc loc, TypeResolvedExpr receiver, String
         TypedMethodCall call = new TypedMethodCall(loc, typedReceiver, matchingMethod, typedArgs, matchingMethod.returnType());
 
         //Const fold
-        TypedExpr res = matchingMethod.constantFold(call);
+        TypedExpr res = constantFold(checker, matchingMethod, call);
         if (res instanceof TypedLiteral typedLiteral) {
             //Pull type upwards if necessary; reasoning is explained in TypedLiteral
             return typedLiteral.pullTypeUpwards(expected);
@@ -78,5 +80,14 @@ public record TypeResolvedMethodCall(Loc loc, TypeResolvedExpr receiver, String
         return res;
     }
 
+    //A value of a class type which no class extends is always exactly that class at
+    //runtime, so calls to the class's own methods on it can be inlined
+    private static TypedExpr constantFold(TypeChecker checker, MethodDef matchingMethod, TypedMethodCall call) {
+        if (matchingMethod instanceof SnuggleMethodDef snuggleMethod &&
+                snuggleMethod.owningType().get() instanceof ClassDef classDef &&
+                !checker.isExtended(classDef.getTypeHeadId()))
+            return snuggleMethod.constantFoldExact(call);
+        return matchingMethod.constantFold(call);
+    }
 
-}
\ No newline at end of file
+}
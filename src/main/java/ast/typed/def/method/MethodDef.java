@@ -45,7 +45,8 @@ public interface MethodDef {
     default boolean isConstructor() { return name().equals("new"); }
 
     default String getDescriptor() {
-        String returnTypeDescriptor = isConstructor() ? "V" : returnType().getReturnTypeDescriptor();
+        //Constructors of plural types return the new value, others return nothing
+        String returnTypeDescriptor = isConstructor() && !owningType().isPlural() ? "V" : returnType().getReturnTypeDescriptor();
 
         StringBuilder b = new StringBuilder("(");
         if (owningType().get() instanceof StructDef structDef && !isConstructor() && !isStatic()) //Add "this" if necessary
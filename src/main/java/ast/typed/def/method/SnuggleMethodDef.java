@@ -4,10 +4,7 @@ import ast.ir.def.CodeBlock;
 import ast.ir.instruction.flow.Return;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.type.TypeDef;
-import ast.typed.expr.TypedExpr;
-import ast.typed.expr.TypedLiteral;
-import ast.typed.expr.TypedMethodCall;
-import ast.typed.expr.TypedStaticMethodCall;
+import ast.typed.expr.*;
 import exceptions.compile_time.CompilationException;
 import lexing.Loc;
 import org.objectweb.asm.MethodVisitor;
@@ -60,22 +57,104 @@ public record SnuggleMethodDef(Loc loc, boolean pub, String name, int disambigua
         //ACTUALLY NO, SINCE RECEIVER/ARGS COULD HAVE SIDE EFFECTS
 //        if (body.tryGet(b -> b) instanceof TypedLiteral literalBody)
 //            return literalBody;
-        if (!inline) return call;
-        //TODO: Add inlining
+        //Methods on plural types are never virtual, so calls to them can be inlined
+        if (owningType.isPlural() && !isConstructor())
+            return new TypedInlineCall(call.loc(), this, ListUtils.join(List.of(call.receiver()), call.args()), call, call.type());
         return call;
     }
 
+    /**
+     * Like constantFold, for a call whose receiver is known to be exactly the
+     * owning type at runtime, like when no class in the program extends it.
+     * Then the call isn't really virtual, so it can be inlined like calls to
+     * methods on plural types.
+     */
+    public TypedExpr constantFoldExact(TypedMethodCall call) {
+        if (isStatic || isConstructor())
+            return constantFold(call);
+        return new TypedInlineCall(call.loc(), this, ListUtils.join(List.of(call.receiver()), call.args()), call, call.type());
+    }
+
     @Override
     public TypedExpr constantFold(TypedStaticMethodCall call) {
         if (!isStatic) throw new IllegalStateException("Calling non-static method statically? Bug in compiler, please report");
         //If the body is just a literal, then constant fold the method call into that literal. (Also no args allowed, since those could have side effects)
         if (body.tryGet(List.of(), b -> b) instanceof TypedLiteral literalBody && paramNames.size() == 0)
             return literalBody;
-        if (!inline) return call;
-        //TODO: Add inlining
+        if (!isConstructor())
+            return new TypedInlineCall(call.loc(), this, call.args(), call, call.type());
         return call;
     }
 
+    //The most nodes the body of a method can have for calls to it to be inlined,
+    //when it's not marked inline. Enough for accessors and small operators.
+    private static final int MAX_AUTO_INLINE_SIZE = 32;
+
+    /**
+     * The body to compile in place of a call to this method, or null if the
+     * call should stay a call. Methods marked inline are inlined whenever
+     * possible, others only if their body is tiny. Only valid once the body
+     * is type-checked.
+     */
+    public TypedExpr inlineBody() {
+        if (numGenerics != 0)
+            return null;
+        TypedExpr b = body.getAlreadyFilled(List.of());
+        //The body has to leave the same thing on the stack as a call would
+        if (b.type().get() != returnType().get())
+            return null;
+        int size = inlineSize(b);
+        if (size < 0 || !inline && size > MAX_AUTO_INLINE_SIZE)
+            return null;
+        return b;
+    }
+
+    //The number of nodes in the expression, or -1 if it can't be inlined.
+    //Returns and super calls refer to the method they're written in, so they can't.
+    private static int inlineSize(TypedExpr e) {
+        if (e instanceof TypedLiteral || e instanceof TypedVariable)
+            return 1;
+        if (e instanceof TypedFieldAccess f)
+            return f.lhs() == null ? 1 : inlineSize(1, List.of(f.lhs()));
+        if (e instanceof TypedMethodCall c)
+            return inlineSize(1, ListUtils.join(List.of(c.receiver()), c.args()));
+        if (e instanceof TypedStaticMethodCall c)
+            return inlineSize(1, c.args());
+        if (e instanceof TypedInlineCall c)
+            return inlineSize(1, c.args());
+        if (e instanceof TypedConstructor c)
+            return inlineSize(1, c.args());
+        if (e instanceof TypedStructConstructor c)
+            return inlineSize(1, c.values());
+        if (e instanceof TypedBlock b)
+            return inlineSize(1, b.exprs());
+        if (e instanceof TypedDeclaration d)
+            return inlineSize(1, List.of(d.rhs()));
+        if (e instanceof TypedAssignment a)
+            return inlineSize(1, List.of(a.lhs(), a.rhs()));
+        if (e instanceof TypedAugmentedFieldAssignment a)
+            return inlineSize(1, List.of(a.lhs(), a.rhs()));
+        if (e instanceof TypedCast c)
+            return inlineSize(1, List.of(c.lhs()));
+        if (e instanceof TypedLogicalBinOp op)
+            return inlineSize(1, List.of(op.lhs(), op.rhs()));
+        if (e instanceof TypedIf i)
+            return inlineSize(1, List.of(i.cond(), i.ifTrue(), i.ifFalse()));
+        if (e instanceof TypedWhile w)
+            return inlineSize(1, List.of(w.cond(), w.body()));
+        return -1;
+    }
+
+    private static int inlineSize(int size, List<TypedExpr> children) {
+        for (TypedExpr child : children) {
+            int childSize = inlineSize(child);
+            if (childSize < 0)
+                return -1;
+            size += childSize;
+        }
+        return size;
+    }
+
     //Compile this method into a CodeBlock and return it
     public CodeBlock compileToCodeBlock() throws CompilationException {
         CodeBlock block = new CodeBlock(this);
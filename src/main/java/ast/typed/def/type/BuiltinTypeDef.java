@@ -1,5 +1,6 @@
 package ast.typed.def.type;
 
+import ast.ir.helper.ReturnHelper;
 import ast.passes.TypeChecker;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.method.MethodDef;
@@ -10,8 +11,8 @@ import builtin_types.types.numbers.IntLiteralType;
 import builtin_types.types.numbers.IntegerType;
 import exceptions.compile_time.CompilationException;
 import lexing.Loc;
+import util.LateInit;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -27,7 +28,9 @@ public class BuiltinTypeDef implements TypeDef, FromTypeHead {
     private final Set<TypeDef> typeCheckingSupertypes;
     private final TypeDef inheritanceSupertype;
     private final List<FieldDef> fields;
-    private final ArrayList<MethodDef> methods;
+    private final MethodTable methods;
+    private final LateInit<String, RuntimeException> pluralReturnDescriptor = new LateInit<>(() -> ReturnHelper.returnDescriptor(this));
+    private final LateInit<SubtypeDisplay, CompilationException> subtypeDisplay = new LateInit<>(() -> SubtypeDisplay.of(this));
 
     public BuiltinTypeDef(BuiltinType builtinType, int typeHeadId, List<TypeDef> generics, TypeChecker checker, Loc instantiationLoc, TypeDef.InstantiationStackFrame cause) {
         this.builtin = builtinType;
@@ -46,7 +49,7 @@ public class BuiltinTypeDef implements TypeDef, FromTypeHead {
         this.typeCheckingSupertypes = builtinType.getTypeCheckingSupertypes(checker, generics);
         this.inheritanceSupertype = builtinType.getInheritanceSupertype(checker, generics);
         this.fields = builtinType.getFields(checker, generics, instantiationLoc, cause);
-        this.methods = new ArrayList<>(builtinType.getMethods(checker, generics, instantiationLoc, cause));
+        this.methods = new MethodTable(builtinType.getMethods(checker, generics, instantiationLoc, cause));
     }
 
     @Override
@@ -87,7 +90,7 @@ public class BuiltinTypeDef implements TypeDef, FromTypeHead {
 
     @Override
     public void checkCode() throws CompilationException {
-        for (MethodDef m : methods)
+        for (MethodDef m : methods.methods())
             m.checkCode();
         //No code to check here
     }
@@ -135,6 +138,8 @@ public class BuiltinTypeDef implements TypeDef, FromTypeHead {
 
     @Override
     public String getReturnTypeDescriptor() {
+        if (isPlural) //Plural builtins are returned like other plural types
+            return pluralReturnDescriptor.get();
         if (returnDescriptor == null)
             throw new IllegalStateException("Should never be asking " + name + " for descriptor.");
         return returnDescriptor;
@@ -162,9 +167,19 @@ public class BuiltinTypeDef implements TypeDef, FromTypeHead {
 
     @Override
     public List<MethodDef> methods() {
+        return methods.methods();
+    }
+
+    @Override
+    public MethodTable methodTable() {
         return methods;
     }
 
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return subtypeDisplay.get();
+    }
+
     @Override
     public void addMethod(MethodDef newMethod) {
         methods.add(newMethod);
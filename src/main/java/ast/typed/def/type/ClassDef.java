@@ -6,7 +6,6 @@ import exceptions.compile_time.CompilationException;
 import lexing.Loc;
 import util.LateInit;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -17,7 +16,8 @@ public class ClassDef implements TypeDef, FromTypeHead {
     private final LateInit<TypeDef, CompilationException> supertype;
     private final List<TypeDef> generics;
     private final List<FieldDef> fields;
-    private final ArrayList<MethodDef> methods;
+    private final MethodTable methods;
+    private final LateInit<SubtypeDisplay, CompilationException> subtypeDisplay = new LateInit<>(() -> SubtypeDisplay.of(this));
     private final int typeHeadId;
 
     public ClassDef(Loc loc, String name, LateInit<TypeDef, CompilationException> supertype, int typeHeadId, List<TypeDef> generics, List<FieldDef> fields, List<MethodDef> methods) {
@@ -27,7 +27,7 @@ public class ClassDef implements TypeDef, FromTypeHead {
         this.typeHeadId = typeHeadId;
         this.generics = generics;
         this.fields = fields;
-        this.methods = new ArrayList<>(methods);
+        this.methods = new MethodTable(methods);
     }
 
     @Override
@@ -40,8 +40,9 @@ public class ClassDef implements TypeDef, FromTypeHead {
         supertype.get();
         for (FieldDef field : fields)
             field.checkCode();
-        for (MethodDef method : methods)
-            method.checkCode();
+        //Not an enhanced for loop, since checking a method can instantiate generic methods, adding them to the end
+        for (int i = 0; i < methods.methods().size(); i++)
+            methods.methods().get(i).checkCode();
     }
 
     @Override
@@ -106,9 +107,19 @@ public class ClassDef implements TypeDef, FromTypeHead {
 
     @Override
     public List<MethodDef> methods() {
+        return methods.methods();
+    }
+
+    @Override
+    public MethodTable methodTable() {
         return methods;
     }
 
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return subtypeDisplay.get();
+    }
+
     @Override
     public void addMethod(MethodDef newMethod) {
         methods.add(newMethod);
@@ -4,8 +4,8 @@ import ast.typed.def.field.FieldDef;
 import ast.typed.def.method.MethodDef;
 import exceptions.compile_time.CompilationException;
 import lexing.Loc;
+import util.LateInit;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -14,7 +14,8 @@ public class EnumDef implements TypeDef {
     public final Loc loc;
     public final int numElements;
     private final String name, descriptor;
-    private final ArrayList<MethodDef> methods;
+    private final MethodTable methods;
+    private final LateInit<SubtypeDisplay, CompilationException> subtypeDisplay = new LateInit<>(() -> SubtypeDisplay.of(this));
     private final List<FieldDef> fields;
 
     public EnumDef(Loc loc, String name, int numElements, List<FieldDef> fieldDefs, List<MethodDef> methodDefs) {
@@ -22,7 +23,7 @@ public class EnumDef implements TypeDef {
         this.name = name;
         this.numElements = numElements;
         this.fields = fieldDefs;
-        this.methods = new ArrayList<>(methodDefs);
+        this.methods = new MethodTable(methodDefs);
 
         if (numElements > 1 << 16)
             descriptor = "I";
@@ -39,8 +40,9 @@ public class EnumDef implements TypeDef {
 
     @Override
     public void checkCode() throws CompilationException {
-        for (MethodDef methodDef : methods)
-            methodDef.checkCode();
+        //Not an enhanced for loop, since checking a method can instantiate generic methods, adding them to the end
+        for (int i = 0; i < methods.methods().size(); i++)
+            methods.methods().get(i).checkCode();
         //TODO: Check static code...
     }
 
@@ -96,9 +98,19 @@ public class EnumDef implements TypeDef {
 
     @Override
     public List<MethodDef> methods() {
+        return methods.methods();
+    }
+
+    @Override
+    public MethodTable methodTable() {
         return methods;
     }
 
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return subtypeDisplay.get();
+    }
+
     @Override
     public void addMethod(MethodDef newMethod) {
         methods.add(newMethod);
@@ -9,6 +9,7 @@ import ast.typed.def.field.FieldDef;
 import ast.typed.def.method.*;
 import ast.typed.expr.TypedExpr;
 import exceptions.compile_time.CompilationException;
+import lexing.Loc;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import util.LateInit;
@@ -20,22 +21,58 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class FuncImplTypeDef implements TypeDef {
 
     private final FuncTypeDef funcToImplement;
-    private final String name, runtimeName, descriptor;
-    private final ArrayList<MethodDef> methods;
+    //Where the lambda is, and what it was checked in: the type, and the method's generics
+    private final Loc loc;
+    private final String context;
+    //Set by number(), once type checking knows all the impls
+    private String name, runtimeName, descriptor;
+    private final MethodTable methods;
+    private final LateInit<SubtypeDisplay, CompilationException> subtypeDisplay = new LateInit<>(() -> SubtypeDisplay.of(this));
     private final ArrayList<FieldDef> fields;
 
-    public FuncImplTypeDef(TypeChecker checker, FuncTypeDef funcToImplement, SnuggleMethodDef generatedMethod) {
+    public FuncImplTypeDef(TypeChecker checker, FuncTypeDef funcToImplement, SnuggleMethodDef generatedMethod, Loc loc, TypeDef currentType, List<TypeDef> methodGenerics) {
         this.funcToImplement = funcToImplement;
-        name = "Impl_" + funcToImplement.implIndex.getAndIncrement();
-        runtimeName = "lambdas/" + funcToImplement.name() + "/" + name;
-        descriptor = "L" + runtimeName + ";";
+        this.loc = loc;
+        this.context = (currentType == null ? "" : currentType.name()) + ListUtils.map(methodGenerics, TypeDef::name);
         //Create initial fields
         fields = new ArrayList<>();
         for (Map.Entry<String, TypeDef> entry : checker.peekEnv().getFlattenedMap().entrySet())
             fields.add(new BuiltinFieldDef(entry.getKey(), this, entry.getValue(), false));
         //Add generated method (we add the constructor later)
-        methods = new ArrayList<>(2);
-        methods.add(generatedMethod);
+        methods = new MethodTable(List.of(generatedMethod));
+    }
+
+    //Orders impls by where their lambdas are, so numbering doesn't depend on which were checked first.
+    //Ties can't happen: a lambda checked the same way twice is registered once. See identity().
+    public static final Comparator<FuncImplTypeDef> SOURCE_ORDER = Comparator
+            .comparing((FuncImplTypeDef impl) -> impl.loc.fileName())
+            .thenComparingInt(impl -> impl.loc.startLine())
+            .thenComparingInt(impl -> impl.loc.startColumn())
+            .thenComparing(impl -> impl.context);
+
+    public FuncTypeDef funcToImplement() {
+        return funcToImplement;
+    }
+
+    //What makes two impls the same: the same lambda, checked against the same func type in the same context,
+    //capturing the same fields. Only valid after finalizeImpl().
+    private record Identity(Loc loc, String context, TypeDef func, List<String> fieldNames, List<TypeDef> fieldTypes) {}
+
+    public Object identity() {
+        return new Identity(loc, context, funcToImplement.get(), ListUtils.map(fields, FieldDef::name), ListUtils.map(fields, f -> f.type().get()));
+    }
+
+    //Names this impl the index'th of its func type
+    public void number(int index) {
+        name = "Impl_" + index;
+        runtimeName = "lambdas/" + funcToImplement.name() + "/" + name;
+        descriptor = "L" + runtimeName + ";";
+    }
+
+    private String numbered(String value) {
+        if (value == null)
+            throw new IllegalStateException("Lambda impl at " + loc + " used before it was numbered? Bug in compiler, please report");
+        return value;
     }
 
     @Override
@@ -48,17 +85,17 @@ public class FuncImplTypeDef implements TypeDef {
         //Check the method body
         checkCode();
         //Find out which fields were actually used
-        TypedExpr body = ((SnuggleMethodDef) methods.get(0)).body().get(List.of());
+        TypedExpr body = ((SnuggleMethodDef) methods.methods().get(0)).body().get(List.of());
         Set<String> necessaryClosureFields = new HashSet<>();
         //Remove all unused closure fields
         body.findAllThisFieldAccesses(necessaryClosureFields);
         fields.removeIf(x -> !necessaryClosureFields.contains(x.name()));
         //Generate the constructor
         TypeDef unitType = checker.getTuple(List.of());
-        LateInit<String, RuntimeException> descriptor = new LateInit<>(() -> methods.get(1).getDescriptor());
+        LateInit<String, RuntimeException> descriptor = new LateInit<>(() -> methods.methods().get(1).getDescriptor());
         methods.add(new CustomMethodDef("new", false, this, ListUtils.map(fields, FieldDef::type), unitType, (isSuperCall, block, desiredFields, jvm) -> {
             //Just call the constructor lol
-            jvm.visitMethodInsn(Opcodes.INVOKESPECIAL, runtimeName, "<init>", descriptor.get(), false);
+            jvm.visitMethodInsn(Opcodes.INVOKESPECIAL, runtimeName(), "<init>", descriptor.get(), false);
         }, classWriter -> {
             MethodVisitor methodWriter = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", descriptor.get(), null, null);
             methodWriter.visitCode();
@@ -85,12 +122,12 @@ public class FuncImplTypeDef implements TypeDef {
 
     @Override
     public String name() {
-        return name;
+        return numbered(name);
     }
 
     @Override
     public String runtimeName() {
-        return runtimeName;
+        return numbered(runtimeName);
     }
 
     @Override
@@ -130,9 +167,19 @@ public class FuncImplTypeDef implements TypeDef {
 
     @Override
     public List<MethodDef> methods() {
+        return methods.methods();
+    }
+
+    @Override
+    public MethodTable methodTable() {
         return methods;
     }
 
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return subtypeDisplay.get();
+    }
+
     @Override
     public void addMethod(MethodDef newMethod) {
         throw new IllegalStateException("Should not ever add method on function impl? Bug in compiler, please report");
@@ -140,17 +187,17 @@ public class FuncImplTypeDef implements TypeDef {
 
     @Override
     public List<String> getDescriptor() {
-        return List.of(descriptor);
+        return List.of(numbered(descriptor));
     }
 
     @Override
     public String getReturnTypeDescriptor() {
-        return descriptor;
+        return numbered(descriptor);
     }
 
     @Override
     public void checkCode() throws CompilationException {
-        methods.get(0).checkCode(); //Check the method...
+        methods.methods().get(0).checkCode(); //Check the method...
     }
 
 }
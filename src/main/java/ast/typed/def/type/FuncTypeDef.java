@@ -7,19 +7,19 @@ import ast.typed.def.method.InterfaceMethodDef;
 import builtin_types.types.ObjType;
 import exceptions.compile_time.CompilationException;
 import util.GenericStringUtil;
+import util.LateInit;
 import util.ListUtils;
 
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class FuncTypeDef implements TypeDef {
 
-    public AtomicInteger implIndex = new AtomicInteger();
     public final List<TypeDef> paramTypes;
     public final TypeDef resultType;
     private final String name, runtimeName, descriptor;
-    private final List<MethodDef> methods;
+    private final MethodTable methods;
+    private final LateInit<SubtypeDisplay, CompilationException> subtypeDisplay = new LateInit<>(() -> SubtypeDisplay.of(this));
     private final TypeDef supertype;
 
     public FuncTypeDef(TypeChecker checker, List<TypeDef> paramTypes, TypeDef resultType) {
@@ -27,14 +27,14 @@ public class FuncTypeDef implements TypeDef {
         name = GenericStringUtil.instantiateName("Func_", paramTypes) + "_to_" + resultType.name();
         runtimeName = "lambdas/" + name + "/base";
         descriptor = "L" + runtimeName + ";";
-        methods = List.of(new InterfaceMethodDef(
+        methods = new MethodTable(List.of(new InterfaceMethodDef(
                 "invoke",
                 0,
                 false,
                 this,
                 paramTypes,
                 resultType
-        ));
+        )));
         this.paramTypes = paramTypes;
         this.resultType = resultType;
     }
@@ -46,7 +46,7 @@ public class FuncTypeDef implements TypeDef {
 
     @Override
     public void checkCode() throws CompilationException {
-        for (MethodDef method : methods)
+        for (MethodDef method : methods.methods())
             method.checkCode();
     }
 
@@ -97,9 +97,19 @@ public class FuncTypeDef implements TypeDef {
 
     @Override
     public List<MethodDef> methods() {
+        return methods.methods();
+    }
+
+    @Override
+    public MethodTable methodTable() {
         return methods;
     }
 
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return subtypeDisplay.get();
+    }
+
     @Override
     public void addMethod(MethodDef newMethod) {
         throw new IllegalStateException("Tried to add method to FuncTypeDef? bug in compiler, please report");
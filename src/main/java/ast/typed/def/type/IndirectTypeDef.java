@@ -34,9 +34,13 @@ public class IndirectTypeDef implements TypeDef {
 
     @Override
     public TypeDef get() {
-        TypeDef cur = this;
-        while (cur instanceof IndirectTypeDef ind)
-            cur = ind.check();
+        TypeDef cur = check();
+        if (cur instanceof IndirectTypeDef) {
+            while (cur instanceof IndirectTypeDef ind)
+                cur = ind.check();
+            //Collapse the chain, so it only needs to be walked once
+            other = cur;
+        }
         return cur;
     }
 
@@ -129,6 +133,16 @@ public class IndirectTypeDef implements TypeDef {
         check().addMethod(newMethod);
     }
 
+    @Override
+    public MethodTable methodTable() {
+        return check().methodTable();
+    }
+
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return check().subtypeDisplay();
+    }
+
     @Override
     public int hashCode() {
         return check().hashCode();
@@ -0,0 +1,127 @@
+package ast.typed.def.type;
+
+import ast.typed.def.method.MethodDef;
+
+import java.util.*;
+
+/**
+ * The methods declared on a TypeDef.
+ *
+ * Besides the plain list, keeps an index from (name, number of params, static)
+ * to the methods with that key, so overload resolution doesn't need to scan
+ * every method of the type at every call site. The index is built the first
+ * time it's needed, and kept up to date as methods are added (for example,
+ * when generic methods are instantiated).
+ *
+ * Also caches the type's full method table, including inherited methods,
+ * like a vtable. See TypeDef.getAllMethods().
+ */
+public class MethodTable {
+
+    private final ArrayList<MethodDef> methods;
+    private Map<Key, List<MethodDef>> index; //Null until the first lookup
+    private int modCount; //Incremented whenever a method is added
+
+    //The cached full method table, and what it was computed from.
+    //It's out of date if a method was added here since, or if the supertype's
+    //table is a different list than before, meaning it was recomputed.
+    private List<MethodDef> allMethods;
+    private List<MethodDef> allMethodsSupertypeMethods;
+    private int allMethodsModCount;
+    private Map<Key, List<MethodDef>> allMethodsIndex; //Null until the first lookup
+
+    public MethodTable(List<MethodDef> methods) {
+        this.methods = new ArrayList<>(methods);
+    }
+
+    //The methods, in the order they were added
+    public List<MethodDef> methods() {
+        return methods;
+    }
+
+    public void add(MethodDef newMethod) {
+        methods.add(newMethod);
+        modCount++;
+        if (index != null)
+            addToIndex(index, newMethod);
+    }
+
+    /**
+     * Get the methods with the given name, number of params, and staticness,
+     * in the order they were added. The result is a snapshot, so it's safe
+     * to keep using while more methods are added.
+     */
+    public List<MethodDef> get(String name, int numParams, boolean isStatic) {
+        if (index == null) {
+            index = new HashMap<>();
+            for (MethodDef method : methods)
+                addToIndex(index, method);
+        }
+        List<MethodDef> result = index.get(new Key(name, numParams, isStatic));
+        return result == null ? List.of() : List.copyOf(result);
+    }
+
+    /**
+     * Get all methods, including the inherited ones. The supertype's methods are
+     * the result of getAllMethods() on the supertype, or null if there is none.
+     * The result is cached until a method is added here or in a supertype, and is
+     * unmodifiable.
+     */
+    public List<MethodDef> allMethods(List<MethodDef> supertypeMethods) {
+        if (allMethods == null || allMethodsModCount != modCount || allMethodsSupertypeMethods != supertypeMethods) {
+            allMethods = computeAllMethods(supertypeMethods);
+            allMethodsSupertypeMethods = supertypeMethods;
+            allMethodsModCount = modCount;
+            allMethodsIndex = null;
+        }
+        return allMethods;
+    }
+
+    /**
+     * Same as filtering allMethods() by name, number of params, and staticness,
+     * but uses an index over the cached table.
+     */
+    public List<MethodDef> allMethods(List<MethodDef> supertypeMethods, String name, int numParams, boolean isStatic) {
+        List<MethodDef> all = allMethods(supertypeMethods);
+        if (allMethodsIndex == null) {
+            allMethodsIndex = new HashMap<>();
+            for (MethodDef method : all)
+                addToIndex(allMethodsIndex, method);
+        }
+        List<MethodDef> result = allMethodsIndex.get(new Key(name, numParams, isStatic));
+        return result == null ? List.of() : Collections.unmodifiableList(result);
+    }
+
+    private List<MethodDef> computeAllMethods(List<MethodDef> supertypeMethods) {
+        //If there's no supertype, it's just this type's methods
+        if (supertypeMethods == null)
+            return List.copyOf(methods);
+        //Get my methods
+        List<MethodDef> myMethods = new ArrayList<>(methods);
+
+        //Add all non-duplicate methods from supertypeMethods into myMethods
+        //Methods being duplicates or not is dependent on getSignature()
+        Set<MethodDef.Signature> seenMethods = new HashSet<>();
+        for (MethodDef def : myMethods) {
+            MethodDef.Signature sig = def.getSignature();
+            if (sig != null)
+                seenMethods.add(sig);
+        }
+        for (MethodDef def : supertypeMethods) {
+            if (def.isStatic()) continue;
+            if (def.isConstructor()) continue;
+            MethodDef.Signature sig = def.getSignature();
+            if (sig == null) continue;
+            if (seenMethods.add(sig)) //if adding the signature is successful:
+                myMethods.add(def);
+        }
+        return Collections.unmodifiableList(myMethods);
+    }
+
+    private static void addToIndex(Map<Key, List<MethodDef>> index, MethodDef method) {
+        index.computeIfAbsent(new Key(method.name(), method.numParams(), method.isStatic()), k -> new ArrayList<>(1)).add(method);
+    }
+
+    private record Key(String name, int numParams, boolean isStatic) {}
+
+}
@@ -1,22 +1,25 @@
 package ast.typed.def.type;
 
+import ast.ir.helper.ReturnHelper;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.method.MethodDef;
 import exceptions.compile_time.CompilationException;
 import lexing.Loc;
+import util.LateInit;
 import util.ListUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
 public class StructDef implements TypeDef, FromTypeHead {
 
     public final Loc loc;
-    private final String name, returnTypeDescriptor;
+    private final String name;
+    private final LateInit<String, RuntimeException> returnTypeDescriptor = new LateInit<>(() -> ReturnHelper.returnDescriptor(this));
     private final List<String> descriptor;
     private final List<FieldDef> fields;
-    private final ArrayList<MethodDef> methods;
+    private final MethodTable methods;
+    private final LateInit<SubtypeDisplay, CompilationException> subtypeDisplay = new LateInit<>(() -> SubtypeDisplay.of(this));
     private final List<TypeDef> generics;
     private final int typeHeadId;
     private final int stackSlots;
@@ -25,20 +28,20 @@ public class StructDef implements TypeDef, FromTypeHead {
         this.loc = loc;
         this.name = "snuggle/" + loc.fileName() + "/" + name;
         this.fields = fields;
-        this.methods = new ArrayList<>(methods);
+        this.methods = new MethodTable(methods);
         this.typeHeadId = typeHeadId;
         this.generics = generics;
         this.stackSlots = fields.stream().filter(f -> !f.isStatic()).map(f -> f.type().stackSlots()).reduce(Integer::sum).orElse(0);
         this.descriptor = ListUtils.join(ListUtils.map(nonStaticFields(), f -> f.type().getDescriptor()));
-        this.returnTypeDescriptor = "V";
     }
 
     @Override
     public void checkCode() throws CompilationException {
         for (FieldDef field : fields)
             field.checkCode();
-        for (MethodDef method : methods)
-            method.checkCode();
+        //Not an enhanced for loop, since checking a method can instantiate generic methods, adding them to the end
+        for (int i = 0; i < methods.methods().size(); i++)
+            methods.methods().get(i).checkCode();
     }
 
     @Override
@@ -98,9 +101,19 @@ public class StructDef implements TypeDef, FromTypeHead {
 
     @Override
     public List<MethodDef> methods() {
+        return methods.methods();
+    }
+
+    @Override
+    public MethodTable methodTable() {
         return methods;
     }
 
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return subtypeDisplay.get();
+    }
+
     @Override
     public void addMethod(MethodDef newMethod) {
         methods.add(newMethod);
@@ -113,7 +126,7 @@ public class StructDef implements TypeDef, FromTypeHead {
 
     @Override
     public String getReturnTypeDescriptor() {
-        return returnTypeDescriptor;
+        return returnTypeDescriptor.get();
     }
 
     @Override
@@ -0,0 +1,83 @@
+package ast.typed.def.type;
+
+import exceptions.compile_time.CompilationException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * All the supertypes of a TypeDef, precomputed so isSubtype() doesn't
+ * need to walk typeCheckingSupertypes() every time.
+ *
+ * Most types have at most one type-checking supertype, so their supertypes
+ * form a chain going up to a root. Those types keep the chain as an array
+ * indexed by depth, with the root at 0 and the type itself at the end. Then
+ * "is T a supertype of this?" is only "is T at index depth(T) of the chain?".
+ *
+ * Some builtins have several supertypes, like int literals, which are
+ * subtypes of every int type. Those, and anything below them, keep the
+ * set of all their supertypes instead.
+ */
+public final class SubtypeDisplay {
+
+    //Exactly one of these is non-null
+    private final TypeDef[] chain;
+    private final Set<TypeDef> supertypes;
+
+    private SubtypeDisplay(TypeDef[] chain, Set<TypeDef> supertypes) {
+        this.chain = chain;
+        this.supertypes = supertypes;
+    }
+
+    /**
+     * Compute the display of a type, from the displays of its supertypes.
+     * The type should not be an IndirectTypeDef.
+     */
+    public static SubtypeDisplay of(TypeDef type) throws CompilationException {
+        Set<TypeDef> direct = type.typeCheckingSupertypes();
+        if (direct.isEmpty())
+            return root(type);
+        if (direct.size() == 1) {
+            SubtypeDisplay parent = direct.iterator().next().subtypeDisplay();
+            if (parent.chain != null) {
+                TypeDef[] chain = Arrays.copyOf(parent.chain, parent.chain.length + 1);
+                chain[parent.chain.length] = type;
+                return new SubtypeDisplay(chain, null);
+            }
+        }
+        Set<TypeDef> all = Collections.newSetFromMap(new IdentityHashMap<>());
+        all.add(type);
+        for (TypeDef supertype : direct) {
+            SubtypeDisplay display = supertype.subtypeDisplay();
+            if (display.chain != null)
+                Collections.addAll(all, display.chain);
+            else
+                all.addAll(display.supertypes);
+        }
+        return new SubtypeDisplay(null, all);
+    }
+
+    //A display for a type with no supertypes
+    public static SubtypeDisplay root(TypeDef type) {
+        return new SubtypeDisplay(new TypeDef[] {type}, null);
+    }
+
+    /**
+     * Whether the other type is this type or one of its supertypes.
+     */
+    public boolean hasSupertype(TypeDef other) throws CompilationException {
+        other = other.get();
+        if (supertypes != null)
+            return supertypes.contains(other);
+        //Types in a chain only have supertypes in a chain, so if the
+        //other one isn't in a chain, it's not one of ours
+        TypeDef[] otherChain = other.subtypeDisplay().chain;
+        if (otherChain == null)
+            return false;
+        int depth = otherChain.length - 1;
+        return depth < chain.length && chain[depth] == other;
+    }
+
+}
@@ -1,13 +1,14 @@
 package ast.typed.def.type;
 
+import ast.ir.helper.ReturnHelper;
 import ast.typed.def.field.BuiltinFieldDef;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.method.MethodDef;
 import exceptions.compile_time.CompilationException;
 import util.GenericStringUtil;
+import util.LateInit;
 import util.ListUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -18,7 +19,9 @@ public class TupleTypeDef implements TypeDef {
     private final List<String> descriptor;
     private final int stackSlots;
     private final List<FieldDef> fields;
-    private final ArrayList<MethodDef> methods;
+    private final MethodTable methods;
+    private final LateInit<String, RuntimeException> returnTypeDescriptor = new LateInit<>(() -> ReturnHelper.returnDescriptor(this));
+    private final LateInit<SubtypeDisplay, CompilationException> subtypeDisplay = new LateInit<>(() -> SubtypeDisplay.of(this));
 
     public TupleTypeDef(List<TypeDef> elements) {
         elementTypes = elements;
@@ -27,7 +30,7 @@ public class TupleTypeDef implements TypeDef {
         stackSlots = elements.stream().map(TypeDef::stackSlots).reduce(Integer::sum).orElse(0);
         fields = ListUtils.mapIndexed(elements, (e, i) ->
                 new BuiltinFieldDef("v" + i, this, e, false));
-        methods = new ArrayList<>(0);
+        methods = new MethodTable(List.of());
         descriptor = ListUtils.join(ListUtils.map(nonStaticFields(), f -> f.type().getDescriptor()));
     }
 
@@ -83,9 +86,19 @@ public class TupleTypeDef implements TypeDef {
 
     @Override
     public List<MethodDef> methods() {
+        return methods.methods();
+    }
+
+    @Override
+    public MethodTable methodTable() {
         return methods;
     }
 
+    @Override
+    public SubtypeDisplay subtypeDisplay() throws CompilationException {
+        return subtypeDisplay.get();
+    }
+
     @Override
     public void addMethod(MethodDef newMethod) {
         methods.add(newMethod);
@@ -98,7 +111,7 @@ public class TupleTypeDef implements TypeDef {
 
     @Override
     public String getReturnTypeDescriptor() {
-        return "V";
+        return returnTypeDescriptor.get();
     }
 
     @Override
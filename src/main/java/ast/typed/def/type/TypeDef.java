@@ -21,11 +21,13 @@ public interface TypeDef {
     int stackSlots(); //The number of stack slots this takes up on the jvm. Usually 1, except in doubles, longs, or plural topLevelTypes.
     Set<TypeDef> typeCheckingSupertypes() throws CompilationException; //The supertypes of this type, when used for the purpose of type-checking.
     TypeDef inheritanceSupertype() throws CompilationException; //The supertype from which this can inherit methods. Null for topLevelTypes that don't inherit.
+    SubtypeDisplay subtypeDisplay() throws CompilationException; //All the supertypes of this type, for quick isSubtype() checks.
     List<FieldDef> fields(); //The fields of this type. In the case of plural topLevelTypes, describes the sub-topLevelTypes inside this.
     default List<FieldDef> nonStaticFields() {return ListUtils.filter(fields(), f -> !f.isStatic());} //The non-static fields of this type
 
     List<MethodDef> methods(); //The methods of this type.
     void addMethod(MethodDef newMethod); //Add a new method to the type
+    MethodTable methodTable(); //The methods of this type, indexed for lookup by name.
     List<String> getDescriptor(); //The descriptor(s) of this type when not a return type. Multiple descriptors when isPlural().
     String getReturnTypeDescriptor(); //The descriptor of this type when it is a return type.
 
@@ -76,36 +78,22 @@ public interface TypeDef {
     //Default helpful methods
     default boolean isSubtype(TypeDef other) throws CompilationException {
         if (this.get() == other.get()) return true;
-        for (TypeDef supertype : typeCheckingSupertypes())
-            if (supertype.isSubtype(other))
-                return true;
-        return false;
+        return subtypeDisplay().hasSupertype(other);
     }
 
     //Gets all methods, including the inherited ones.
+    //The result is cached in the method table, and recomputed only once a method
+    //is added to this type or one of its supertypes. It's unmodifiable.
     default List<MethodDef> getAllMethods() throws CompilationException {
         TypeDef trueSupertype = inheritanceSupertype();
-        //If there's no supertype, just return this object's methods
-        if (trueSupertype == null)
-            return methods();
-        //If there is a supertype, grab its methods recursively
-        List<? extends MethodDef> supertypeMethods = trueSupertype.getAllMethods();
-        //Get my methods
-        List<MethodDef> myMethods = new ArrayList<>(methods());
-
-        //Add all non-duplicate methods from supertypeMethods into myMethods
-        //Methods being duplicates or not is dependent on getSignature()
-        Set<MethodDef.Signature> seenMethods = new HashSet<>(ListUtils.filter(ListUtils.map(myMethods, MethodDef::getSignature), Objects::nonNull));
-        for (MethodDef def : supertypeMethods) {
-            if (def.isStatic()) continue;
-            if (def.isConstructor()) continue;
-            MethodDef.Signature sig = def.getSignature();
-            if (sig == null) continue;
-            if (seenMethods.add(sig)) //if adding the signature is successful:
-                myMethods.add(def);
-        }
-        //Return myMethods in the end
-        return myMethods;
+        return methodTable().allMethods(trueSupertype == null ? null : trueSupertype.getAllMethods());
+    }
+
+    //Gets the methods, including the inherited ones, with the given name, number of params, and staticness.
+    //Gives the same methods in the same order as filtering getAllMethods() would, but uses an index.
+    default List<MethodDef> getAllMethods(String name, int numParams, boolean isStatic) throws CompilationException {
+        TypeDef trueSupertype = inheritanceSupertype();
+        return methodTable().allMethods(trueSupertype == null ? null : trueSupertype.getAllMethods(), name, numParams, isStatic);
     }
 
 }
@@ -1,7 +1,6 @@
 package ast.typed.expr;
 
 import ast.ir.def.CodeBlock;
-import ast.ir.instruction.stack.Pop;
 import ast.ir.instruction.stack.Push;
 import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
@@ -21,12 +20,18 @@ public record TypedBlock(Loc loc, List<TypedExpr> exprs, TypeDef type) implement
     @Override
     public void compile(CodeBlock code, DesiredFieldNode desired) throws CompilationException {
         code.env.push();
-        for (int i = 0; i < exprs.size() - 1; i++) { //For all exprs but the last, compile and pop
-            exprs.get(i).compile(code, null);
-            code.emit(new Pop(exprs.get(i).type().get()));
-        }
+        for (int i = 0; i < exprs.size() - 1; i++) //For all exprs but the last, compile and pop
+            exprs.get(i).compileAndPop(code);
         exprs.get(exprs.size() - 1).compile(code, desired); //For last, don't pop, instead leave it on stack
         code.env.pop();
     }
 
+    @Override
+    public void compileAndPop(CodeBlock code) throws CompilationException {
+        code.env.push();
+        for (TypedExpr expr : exprs) //The last one is popped too
+            expr.compileAndPop(code);
+        code.env.pop();
+    }
+
 }
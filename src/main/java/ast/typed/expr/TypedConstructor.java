@@ -6,6 +6,7 @@ import ast.ir.instruction.misc.LineNumber;
 import ast.ir.instruction.objects.New;
 import ast.typed.def.method.MethodDef;
 import ast.typed.def.type.TypeDef;
+import builtin_types.types.OptionType;
 import exceptions.compile_time.CompilationException;
 import lexing.Loc;
 
@@ -32,4 +33,16 @@ public record TypedConstructor(Loc loc, TypeDef type, MethodDef method, List<Typ
         block.emit(new LineNumber(loc.startLine()));
         block.emit(new MethodCall(false, method, DesiredFieldNode.toList(desiredFields)));
     }
+
+    @Override
+    public void compileAndPop(CodeBlock block) throws CompilationException {
+        //Making an Option does nothing besides wrapping the value, so if it's
+        //unused, only the value needs compiling. Other constructors could do anything.
+        if (type.builtin() == OptionType.INSTANCE) {
+            for (TypedExpr arg : args)
+                arg.compileAndPop(block);
+        } else {
+            TypedExpr.super.compileAndPop(block);
+        }
+    }
 }
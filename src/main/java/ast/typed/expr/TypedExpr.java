@@ -1,6 +1,7 @@
 package ast.typed.expr;
 
 import ast.ir.def.CodeBlock;
+import ast.ir.instruction.stack.Pop;
 import ast.typed.def.field.FieldDef;
 import ast.typed.def.type.TypeDef;
 import exceptions.compile_time.CompilationException;
@@ -23,12 +24,12 @@ public interface TypedExpr {
     //Once this finishes, all examples of "this.something" inside this expr will have been added to the set.
     void findAllThisFieldAccesses(Set<String> setToFill);
 
-    //Compiles and then pops the result off the stack
-//    default void compileAndPop(Compiler compiler, ScopeHelper env, MethodVisitor visitor) throws CompilationException {
-//        compile(compiler, env, visitor);
-//        TypeDef def = compiler.getTypeDef(type());
-//        BytecodeHelper.pop(def, visitor);
-//    }
+    //Compiles and then pops the result off the stack. Used when the result is unused,
+    //so exprs can override this to not compute the result in the first place.
+    default void compileAndPop(CodeBlock block) throws CompilationException {
+        compile(block, null);
+        block.emit(new Pop(type().get()));
+    }
 
 
 
@@ -17,7 +17,7 @@ public record TypedFieldAccess(Loc loc, TypedExpr lhs, FieldDef field, TypeDef t
     public void findAllThisFieldAccesses(Set<String> setToFill) {
         if (lhs instanceof TypedVariable v && v.name().equals("this"))
             setToFill.add(field.name());
-        else
+        else if (lhs != null) //Static fields use nothing from this
             lhs.findAllThisFieldAccesses(setToFill);
     }
 
@@ -46,6 +46,32 @@ public record TypedIf(Loc loc, TypedExpr cond, TypedExpr ifTrue, TypedExpr ifFal
         ifFalse.compile(falseBlock, desiredFields); //Compile ifFalse (into the false block)
         code.emit(new InnerCodeBlock(falseBlock));
 
-        code.emit(new IrLabel(endLabel)); //End
+        code.emit(new IrLabel(endLabel, type, -1)); //End, with either branch's result on the stack
+    }
+
+    @Override
+    public void compileAndPop(CodeBlock code) throws CompilationException {
+        Label ifFalseLabel = new Label();
+        Label endLabel = new Label();
+
+        cond.compile(code, null); //First, since it can declare variables the branches use
+        CodeBlock trueBlock = new CodeBlock(code);
+        CodeBlock falseBlock = new CodeBlock(code);
+        ifTrue.compileAndPop(trueBlock);
+        ifFalse.compileAndPop(falseBlock);
+
+        if (falseBlock.isEmpty()) {
+            //Usually an if without an else, so the false branch was only an empty Option.
+            //Skip straight to the end instead.
+            code.emit(new JumpIfFalse(endLabel));
+            code.emit(new InnerCodeBlock(trueBlock));
+        } else {
+            code.emit(new JumpIfFalse(ifFalseLabel));
+            trueBlock.emit(new Jump(endLabel));
+            code.emit(new InnerCodeBlock(trueBlock));
+            code.emit(new IrLabel(ifFalseLabel));
+            code.emit(new InnerCodeBlock(falseBlock));
+        }
+        code.emit(new IrLabel(endLabel));
     }
 }
@@ -0,0 +1,62 @@
+package ast.typed.expr;
+
+import ast.ir.def.CodeBlock;
+import ast.ir.instruction.misc.LineNumber;
+import ast.ir.instruction.vars.StoreLocal;
+import ast.typed.def.method.SnuggleMethodDef;
+import ast.typed.def.type.TypeDef;
+import exceptions.compile_time.CompilationException;
+import lexing.Loc;
+import util.ListUtils;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A call to a non-virtual SnuggleMethodDef, which may be compiled by inlining
+ * the method's body instead of calling it. The args include the receiver, if
+ * the method is non-static.
+ *
+ * Whether to inline is decided when compiling, since the body of the method
+ * may not be type-checked yet when the call is. If it's not inlined, the
+ * original call is compiled instead.
+ */
+public record TypedInlineCall(Loc loc, SnuggleMethodDef method, List<TypedExpr> args, TypedExpr call, TypeDef type) implements TypedExpr {
+
+    @Override
+    public void findAllThisFieldAccesses(Set<String> setToFill) {
+        call.findAllThisFieldAccesses(setToFill);
+    }
+
+    @Override
+    public void compile(CodeBlock code, DesiredFieldNode desiredFields) throws CompilationException {
+        TypedExpr body = method.inlineBody();
+        if (body == null || !code.canInline(method)) {
+            call.compile(code, desiredFields);
+            return;
+        }
+        //Compile the args in order, in the caller's scope, like for a call
+        for (TypedExpr arg : args)
+            arg.compile(code, null);
+        code.emit(new LineNumber(loc.startLine()));
+
+        //Bind them to new locals with the names of the params. The last arg is on top of the stack, so store it first.
+        List<String> paramNames = method.paramNames();
+        List<TypeDef> paramTypes = method.paramTypes();
+        if (!method.isStatic()) {
+            paramNames = ListUtils.join(List.of("this"), paramNames);
+            paramTypes = ListUtils.join(List.of(method.owningType()), paramTypes);
+        }
+        code.startInlining(method);
+        code.env.push();
+        int[] indices = new int[paramNames.size()];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = code.env.declare(loc, paramNames.get(i), paramTypes.get(i));
+        for (int i = indices.length - 1; i >= 0; i--)
+            code.emit(new StoreLocal(indices[i], paramTypes.get(i).get()));
+        //Compile the body in place of the call
+        body.compile(code, desiredFields);
+        code.env.pop();
+        code.finishInlining();
+    }
+}
@@ -35,7 +35,7 @@ public record TypedWhile(Loc loc, TypedExpr cond, TypedExpr body, TypeDef type)
             throw new IllegalStateException("Options of non-reference topLevelTypes not yet implemented!");
         new TypedConstructor(loc, type, constructorDef, List.of()).compile(code, null);
 
-        code.emit(new IrLabel(condLabel)); //Emit cond label
+        code.emit(new IrLabel(condLabel, type, code.env.curIndex())); //Emit cond label, with the "result" on the stack
 
         //Compile everything that happens multiple times into their own CodeBlocks
         CodeBlock condBlock = new CodeBlock(code);
@@ -47,9 +47,31 @@ public record TypedWhile(Loc loc, TypedExpr cond, TypedExpr body, TypeDef type)
 
         bodyBlock.emit(new Pop(type)); //Pop the "result"
         body.compile(bodyBlock, null); //Compile body into the body block
-        bodyBlock.emit(new Jump(condLabel)); //Jump to the start (inside the body block)
+        bodyBlock.emit(new Jump(condLabel, true)); //Jump to the start (inside the body block)
         code.emit(new InnerCodeBlock(bodyBlock)); //Emit the body block
 
         code.emit(new IrLabel(endLabel)); //End label
     }
+
+    //When the result is unused, there's no need for the Option holding the last iteration's
+    //result, or for the body to produce one.
+    @Override
+    public void compileAndPop(CodeBlock code) throws CompilationException {
+        Label condLabel = new Label();
+        Label endLabel = new Label();
+        code.emit(new IrLabel(condLabel, null, code.env.curIndex()));
+
+        CodeBlock condBlock = new CodeBlock(code);
+        CodeBlock bodyBlock = new CodeBlock(code);
+
+        cond.compile(condBlock, null);
+        condBlock.emit(new JumpIfFalse(endLabel));
+        code.emit(new InnerCodeBlock(condBlock));
+
+        body.compileAndPop(bodyBlock); //The body is wrapped in an Option, which doesn't get made either
+        bodyBlock.emit(new Jump(condLabel, true));
+        code.emit(new InnerCodeBlock(bodyBlock));
+
+        code.emit(new IrLabel(endLabel));
+    }
 }
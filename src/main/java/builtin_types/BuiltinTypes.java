@@ -1,5 +1,7 @@
 package builtin_types;
 
+import ast.parsed.prog.ParsedFile;
+import ast.passes.Parser;
 import builtin_types.reflect.Reflector;
 import builtin_types.types.*;
 import builtin_types.types.numbers.FloatLiteralType;
@@ -7,10 +9,11 @@ import builtin_types.types.numbers.FloatType;
 import builtin_types.types.numbers.IntLiteralType;
 import builtin_types.types.numbers.IntegerType;
 import builtin_types.types.reflected.SystemType;
-import util.IOUtil;
+import exceptions.compile_time.CompilationException;
+import lexing.Lexer;
 
-import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Contains a set of builtin topLevelTypes which will be accessible from
@@ -21,6 +24,10 @@ public class BuiltinTypes {
 
     private final Set<BuiltinType> registeredTypes = Collections.newSetFromMap(new IdentityHashMap<>());
     private final Map<String, String> registeredSnuggleFiles = new HashMap<>();
+    //Parsed forms of the snuggle files, made the first time a compilation needs them and shared by the
+    //compilations after it. This is safe because ParsedFiles are never modified after parsing, and hold
+    //no state from the compilations that use them. They go away with this BuiltinTypes.
+    private final Map<String, ParsedFile> parsedSnuggleFiles = new ConcurrentHashMap<>();
     private final List<String> autoImports = new ArrayList<>();
 
     private BuiltinTypes() {}
@@ -36,6 +43,7 @@ public class BuiltinTypes {
 
     public BuiltinTypes addFile(String fileName, String snuggleSourceCode) {
         registeredSnuggleFiles.put(fileName, snuggleSourceCode);
+        parsedSnuggleFiles.remove(fileName);
         return this;
     }
 
@@ -51,6 +59,7 @@ public class BuiltinTypes {
 
     public BuiltinTypes removeFile(String fileName) {
         registeredSnuggleFiles.remove(fileName);
+        parsedSnuggleFiles.remove(fileName);
         return this;
     }
 
@@ -103,21 +112,15 @@ public class BuiltinTypes {
     }
 
     private BuiltinTypes addStandardLibrary() {
-        try {
-            Path p = Path.of(Thread.currentThread().getContextClassLoader().getResource("std").toURI());
-            IOUtil.applyRecursive(p, path -> {
-                String name = "std/" + p.relativize(path);
-                if (!name.endsWith(".snuggle"))
-                    throw new IllegalStateException("Files in standard library should end with .snuggle, but got \"" + name + "\"");
-                addFile(name.substring(0, name.length() - ".snuggle".length()), IOUtil.getResource(name));
-                //Auto-import extensions
-                if (name.startsWith("std/extensions/"))
-                    autoImport(name);
-            });
-            return this;
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed to import standard library for snuggle", e);
-        }
+        StandardLibrary.sources().forEach((name, source) -> {
+            addFile(name, source);
+            //Auto-import extensions
+            if (name.startsWith("std/extensions/"))
+                autoImport(name);
+        });
+        //The standard library is the same for every instance, so it's only parsed once
+        parsedSnuggleFiles.putAll(StandardLibrary.parsedFiles());
+        return this;
     }
 
     public Collection<BuiltinType> getBuiltins() {
@@ -128,6 +131,25 @@ public class BuiltinTypes {
         return registeredSnuggleFiles;
     }
 
+    /**
+     * Get the parsed form of one of the snuggle files, parsing
+     * it if this is the first time it's needed.
+     */
+    public ParsedFile getParsedFile(String fileName) throws CompilationException {
+        ParsedFile parsed = parsedSnuggleFiles.get(fileName);
+        if (parsed == null) {
+            String source = registeredSnuggleFiles.get(fileName);
+            if (source == null)
+                throw new IllegalArgumentException("No snuggle file named \"" + fileName + "\" was added");
+            //Another thread may parse the same file at the same time; keep whichever finishes first
+            parsed = Parser.parseFile(fileName, Lexer.compact(fileName, source));
+            ParsedFile existing = parsedSnuggleFiles.putIfAbsent(fileName, parsed);
+            if (existing != null)
+                parsed = existing;
+        }
+        return parsed;
+    }
+
     public List<String> getAutoImports() {
         return autoImports;
     }
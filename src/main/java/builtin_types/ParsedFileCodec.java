@@ -0,0 +1,241 @@
+package builtin_types;
+
+import ast.parsed.prog.ParsedFile;
+import lexing.Loc;
+import util.Fraction;
+import util.IntLiteralData;
+import util.Mutable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Writes and reads ParsedFiles in a compact binary form, for the standard library bundle.
+ * Parsed nodes are all records, so a record is written as its class and then its components,
+ * and read back through its canonical constructor. Besides records, the only things in a
+ * parsed tree are lists, Mutables, and literal values. Strings and class names are written
+ * once and referred to by index after that, and Locs, which are most of a tree, get their
+ * own short form. A record, list or Mutable that's in the tree twice is read back as one
+ * object too, since TypeResolver looks type definitions up by identity.
+ *
+ * This is much faster to read than Java serialization, which would also need every parsed
+ * node to be Serializable. Both sides are the same build's classes, so there's no versioning
+ * beyond the bundle's.
+ */
+final class ParsedFileCodec {
+
+    private ParsedFileCodec() {}
+
+    private static final int NULL = 0, STRING = 1, STRING_REF = 2, TRUE = 3, FALSE = 4, INT = 5, FLOAT = 6, DOUBLE = 7,
+            BIG_INTEGER = 8, FRACTION = 9, LIST = 10, MUTABLE = 11, LOC = 12, RECORD = 13, RECORD_REF = 14, OBJECT_REF = 15;
+
+    static final class Writer {
+        private final DataOutput out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Class<?>, Integer> classes = new HashMap<>();
+        //Records, lists and Mutables already written, numbered in the order they were finished
+        private final Map<Object, Integer> objects = new IdentityHashMap<>();
+
+        Writer(DataOutput out) {
+            this.out = out;
+        }
+
+        void writeFile(ParsedFile file) throws IOException {
+            write(file);
+        }
+
+        private void write(Object value) throws IOException {
+            Integer written = objects.get(value);
+            if (written != null) {
+                out.writeByte(OBJECT_REF);
+                out.writeInt(written);
+                return;
+            }
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String string) {
+                writeString(string);
+            } else if (value instanceof Boolean bool) {
+                out.writeByte(bool ? TRUE : FALSE);
+            } else if (value instanceof Integer integer) {
+                out.writeByte(INT);
+                out.writeInt(integer);
+            } else if (value instanceof Float f) {
+                out.writeByte(FLOAT);
+                out.writeFloat(f);
+            } else if (value instanceof Double d) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(d);
+            } else if (value instanceof BigInteger bigInteger) {
+                out.writeByte(BIG_INTEGER);
+                writeBigInteger(bigInteger);
+            } else if (value instanceof Fraction fraction) {
+                out.writeByte(FRACTION);
+                writeBigInteger(fraction.numerator);
+                writeBigInteger(fraction.denominator);
+            } else if (value instanceof List<?> list) {
+                out.writeByte(LIST);
+                out.writeInt(list.size());
+                for (Object element : list)
+                    write(element);
+                objects.put(list, objects.size());
+            } else if (value instanceof Mutable<?> mutable) {
+                out.writeByte(MUTABLE);
+                write(mutable.v);
+                objects.put(mutable, objects.size());
+            } else if (value instanceof Loc loc) {
+                out.writeByte(LOC);
+                writeString(loc.fileName());
+                out.writeInt(loc.startLine());
+                out.writeInt(loc.startColumn());
+                out.writeInt(loc.endLine());
+                out.writeInt(loc.endColumn());
+            } else if (value instanceof Record record) {
+                Integer index = classes.get(record.getClass());
+                if (index == null) {
+                    classes.put(record.getClass(), classes.size());
+                    out.writeByte(RECORD);
+                    out.writeUTF(record.getClass().getName());
+                } else {
+                    out.writeByte(RECORD_REF);
+                    out.writeInt(index);
+                }
+                for (RecordComponent component : record.getClass().getRecordComponents()) {
+                    try {
+                        component.getAccessor().setAccessible(true);
+                        write(component.getAccessor().invoke(record));
+                    } catch (IllegalAccessException | InvocationTargetException e) {
+                        throw new IllegalStateException("Failed to read " + component + " of parsed " + record.getClass(), e);
+                    }
+                }
+                objects.put(record, objects.size());
+            } else {
+                throw new IllegalStateException("Unexpected " + value.getClass() + " in parsed file");
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index == null) {
+                strings.put(string, strings.size());
+                out.writeByte(STRING);
+                out.writeUTF(string);
+            } else {
+                out.writeByte(STRING_REF);
+                out.writeInt(index);
+            }
+        }
+
+        private void writeBigInteger(BigInteger value) throws IOException {
+            byte[] bytes = value.toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static final class Reader {
+        private final DataInput in;
+        private final List<String> strings = new ArrayList<>();
+        private final List<RecordType> classes = new ArrayList<>();
+        private final List<Object> objects = new ArrayList<>();
+
+        private record RecordType(Constructor<?> constructor, int components) {}
+
+        Reader(DataInput in) {
+            this.in = in;
+        }
+
+        ParsedFile readFile() throws IOException {
+            if (read() instanceof ParsedFile file)
+                return file;
+            throw new IOException("Expected a parsed file");
+        }
+
+        private Object read() throws IOException {
+            int tag = in.readByte();
+            return switch (tag) {
+                case NULL -> null;
+                case STRING, STRING_REF -> readString(tag);
+                case TRUE -> true;
+                case FALSE -> false;
+                case INT -> in.readInt();
+                case FLOAT -> in.readFloat();
+                case DOUBLE -> in.readDouble();
+                case BIG_INTEGER -> readBigInteger();
+                case FRACTION -> new Fraction(readBigInteger(), readBigInteger());
+                case LIST -> {
+                    Object[] elements = new Object[in.readInt()];
+                    for (int i = 0; i < elements.length; i++)
+                        elements[i] = read();
+                    yield finish(Collections.unmodifiableList(Arrays.asList(elements)));
+                }
+                case MUTABLE -> finish(new Mutable<>(read()));
+                case LOC -> new Loc(readString(in.readByte()), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                case RECORD -> {
+                    RecordType type = recordType(in.readUTF());
+                    classes.add(type);
+                    yield readRecord(type);
+                }
+                case RECORD_REF -> readRecord(classes.get(in.readInt()));
+                case OBJECT_REF -> objects.get(in.readInt());
+                default -> throw new IOException("Unknown tag " + tag + " in parsed file");
+            };
+        }
+
+        private Object finish(Object object) {
+            objects.add(object);
+            return object;
+        }
+
+        private String readString(int tag) throws IOException {
+            if (tag == STRING_REF)
+                return strings.get(in.readInt());
+            if (tag != STRING)
+                throw new IOException("Expected a string in parsed file, got tag " + tag);
+            String string = in.readUTF();
+            strings.add(string);
+            return string;
+        }
+
+        private BigInteger readBigInteger() throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new BigInteger(bytes);
+        }
+
+        private Object readRecord(RecordType type) throws IOException {
+            Object[] args = new Object[type.components];
+            for (int i = 0; i < args.length; i++)
+                args[i] = read();
+            try {
+                return finish(type.constructor.newInstance(args));
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                throw new IOException("Failed to create " + type.constructor.getDeclaringClass() + " from parsed file", e);
+            }
+        }
+
+        private static RecordType recordType(String name) throws IOException {
+            try {
+                Class<?> clazz = Class.forName(name, false, ParsedFileCodec.class.getClassLoader());
+                if (!clazz.isRecord() || !clazz.getPackageName().startsWith("ast.parsed") && clazz != IntLiteralData.class)
+                    throw new IOException("Unexpected class " + name + " in parsed file");
+                RecordComponent[] components = clazz.getRecordComponents();
+                Class<?>[] types = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++)
+                    types[i] = components[i].getType();
+                Constructor<?> constructor = clazz.getDeclaredConstructor(types);
+                constructor.setAccessible(true);
+                return new RecordType(constructor, components.length);
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                throw new IOException("Unknown record " + name + " in parsed file", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package builtin_types;
+
+import ast.parsed.prog.ParsedAST;
+import ast.parsed.prog.ParsedFile;
+import ast.passes.GenericVerifier;
+import ast.passes.Parser;
+import ast.passes.TypeChecker;
+import ast.passes.TypeResolver;
+import ast.type_resolved.prog.TypeResolvedAST;
+import exceptions.compile_time.CompilationException;
+import lexing.Lexer;
+import util.IOUtil;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The standard library, found in resources/std.
+ *
+ * The build packs all of it into a single bundle resource, holding both
+ * the sources and their parsed forms, so it can be loaded with one resource
+ * read and without lexing or parsing anything. Walking the std directory
+ * only works when resources are plain files, not when running from a jar,
+ * so it's only used as a fallback when there's no bundle (like running
+ * from an IDE without the maven build), and then the files are parsed.
+ *
+ * Parsed files are written with ParsedFileCodec. The bundle is made by the
+ * build of the same classes that read it, so the formats always match.
+ * Resolving and later steps still happen in each compilation, since they
+ * depend on the BuiltinTypes in use.
+ */
+public class StandardLibrary {
+
+    public static final String BUNDLE_RESOURCE = "std.bundle";
+
+    private static final int MAGIC = 0x534E5354; //"SNST"
+    private static final int VERSION = 2;
+
+    //The contents of a bundle. Both maps are by file name without the .snuggle extension.
+    public record Bundle(Map<String, String> sources, Map<String, ParsedFile> parsedFiles) {}
+
+    //Loaded once per process, since it doesn't change
+    private static Bundle bundle;
+
+    private StandardLibrary() {}
+
+    public static Map<String, String> sources() {
+        return bundle().sources();
+    }
+
+    public static Map<String, ParsedFile> parsedFiles() {
+        return bundle().parsedFiles();
+    }
+
+    private static synchronized Bundle bundle() {
+        if (bundle == null) {
+            try {
+                URL resource = Thread.currentThread().getContextClassLoader().getResource(BUNDLE_RESOURCE);
+                if (resource != null) {
+                    try (InputStream in = resource.openStream()) {
+                        bundle = readBundle(in);
+                    }
+                } else {
+                    URL std = Thread.currentThread().getContextClassLoader().getResource("std");
+                    if (std == null)
+                        throw new IllegalStateException("Neither " + BUNDLE_RESOURCE + " nor the std directory could be found in resources");
+                    Map<String, String> sources = readDirectory(Path.of(std.toURI()));
+                    bundle = new Bundle(sources, parse(sources));
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to import standard library for snuggle", e);
+            }
+        }
+        return bundle;
+    }
+
+    public static Map<String, ParsedFile> parse(Map<String, String> sources) throws CompilationException {
+        Map<String, ParsedFile> result = new TreeMap<>();
+        for (Map.Entry<String, String> file : sources.entrySet())
+            result.put(file.getKey(), Parser.parseFile(file.getKey(), Lexer.compact(file.getKey(), file.getValue())));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Read the std library sources from a directory on disk.
+     * The directory is the one called "std", and names are
+     * relative to its parent, like "std/List".
+     */
+    public static Map<String, String> readDirectory(Path std) {
+        Map<String, String> result = new TreeMap<>();
+        IOUtil.applyRecursive(std, path -> {
+            String name = "std/" + std.relativize(path).toString().replace(File.separatorChar, '/');
+            if (!name.endsWith(".snuggle"))
+                throw new IllegalStateException("Files in standard library should end with .snuggle, but got \"" + name + "\"");
+            try {
+                result.put(name.substring(0, name.length() - ".snuggle".length()), Files.readString(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read standard library file \"" + name + "\"", e);
+            }
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    public static Bundle readBundle(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a standard library bundle");
+        int version = data.readInt();
+        if (version != VERSION)
+            throw new IOException("Standard library bundle has version " + version + ", expected " + VERSION);
+        int count = data.readInt();
+        Map<String, String> sources = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = data.readUTF();
+            byte[] source = new byte[data.readInt()];
+            data.readFully(source);
+            sources.put(name, new String(source, StandardCharsets.UTF_8));
+        }
+        Map<String, ParsedFile> parsedFiles = new TreeMap<>();
+        ParsedFileCodec.Reader reader = new ParsedFileCodec.Reader(data);
+        for (int i = 0; i < count; i++) {
+            ParsedFile file = reader.readFile();
+            parsedFiles.put(file.name(), file);
+        }
+        if (!parsedFiles.keySet().equals(sources.keySet()))
+            throw new IOException("Standard library bundle has parsed files " + parsedFiles.keySet() + " for sources " + sources.keySet());
+        return new Bundle(Collections.unmodifiableMap(sources), Collections.unmodifiableMap(parsedFiles));
+    }
+
+    public static void writeBundle(Bundle bundle, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(bundle.sources().size());
+        for (Map.Entry<String, String> file : new TreeMap<>(bundle.sources()).entrySet()) {
+            byte[] source = file.getValue().getBytes(StandardCharsets.UTF_8);
+            data.writeUTF(file.getKey());
+            data.writeInt(source.length);
+            data.write(source);
+        }
+        ParsedFileCodec.Writer writer = new ParsedFileCodec.Writer(data);
+        for (ParsedFile file : new TreeMap<>(bundle.parsedFiles()).values())
+            writer.writeFile(file);
+        data.flush();
+    }
+
+    /**
+     * Run by the maven build, after resources are copied.
+     * Arguments are the std directory and the bundle file to write.
+     * Before writing, the standard library is parsed, resolved and
+     * type checked, so a broken std fails the build instead of the
+     * first compile that uses it.
+     */
+    public static void main(String[] args) throws IOException, CompilationException {
+        if (args.length != 2)
+            throw new IllegalArgumentException("Expected arguments: <std directory> <output bundle>");
+        Map<String, String> std = readDirectory(Path.of(args[0]));
+        //Use exactly the sources being bundled, not whatever std is on the classpath, like an old bundle
+        Bundle built = new Bundle(std, parse(std));
+        synchronized (StandardLibrary.class) {
+            bundle = built;
+        }
+        verify(std);
+
+        Path output = Path.of(args[1]);
+        try (OutputStream out = Files.newOutputStream(output)) {
+            writeBundle(built, out);
+        }
+        try (InputStream in = Files.newInputStream(output)) {
+            if (!readBundle(in).sources().equals(std))
+                throw new IllegalStateException("Standard library bundle did not read back the same sources");
+        }
+        System.out.println("Wrote standard library bundle with " + std.size() + " files to " + output);
+    }
+
+    private static void verify(Map<String, String> std) throws CompilationException {
+        //Import every std file from an otherwise empty program, and check it
+        StringBuilder main = new StringBuilder();
+        for (String name : std.keySet())
+            main.append("import \"").append(name).append("\"\n");
+        BuiltinTypes types = BuiltinTypes.standard();
+        ParsedAST parsedAST = Parser.parseSources(Map.of("main", main.toString()));
+        TypeResolvedAST typeResolvedAST = TypeResolver.resolve(types, parsedAST);
+        GenericVerifier.verifyGenerics(typeResolvedAST);
+        TypeChecker.type(typeResolvedAST);
+    }
+
+}
@@ -1,15 +1,11 @@
 package lexing;
 
 import exceptions.compile_time.CompilationException;
-import exceptions.compile_time.LexingException;
 import exceptions.compile_time.ParsingException;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.io.StringReader;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.io.UncheckedIOException;
 
 /**
  * The Lexer can be separated out into its own
@@ -17,47 +13,23 @@ import java.util.regex.Pattern;
  * a steady stream of Tokens. The ast.passes.Parser and Compiler
  * are linked together because we don't want to deal
  * with a large AST data structure.
+ *
+ * Tokens either come straight from the source, lexed on the fly,
+ * or from an already lexed TokenBuffer. With a TokenBuffer, Token
+ * objects are only created when they're asked for; checking or
+ * consuming a token by its type doesn't need one.
  */
 public class Lexer {
 
-    //If we declare that the longest text object allowed is some characters
-    //Then we can use scanner horizon with the regex
-    private static final Pattern REGEX = Pattern.compile(
-            //Single line comments
-            "//.*" + "|" +
-            //Multi line comments
-            "/\\*(\\*(?!/)|[^*])*\\*/" + "|" + //https://stackoverflow.com/questions/16160190/regular-expression-to-find-c-style-block-comments
-            //Unique 2-character operators and ASSIGN variants, ^^, &&, ||, ^^=
-            "(?:&&|\\|\\||\\^\\^)=?" + "|" +
-            //Assign variants for bit shifts, <<= and >>=
-            ">>=|<<=" + "|" +
-            //Other 2-character symbols, .. :: -> =>
-            "\\.\\.|::|->|=>" + "|" +
-            //1-character operators and versions with = after
-            //ex. + and +=, < and <=, ! and !=, = and ==, even though these are very different situations
-            "[-+*/%=&|^><!]=?" + "|" +
-            //Other punctuation, () [] {} . : ; ? # ~
-            "[()\\[\\]{}.:;,?#~]" + "|" +
-            //Number literals
-            "\\d+(?:(\\.\\d+(?:f32|f64)?)|(?:i8|u8|i16|u16|i32|u32|i64|u64|f32|f64)?)?" + "|" +
-            //Identifiers
-            "[a-zA-Z_]\\w*" + "|" +
-            //String literals
-            "\"(?:\\\\.|[^\\\\\"])*+\"" + "|" +
-            //Newlines
-            "\n" + "|" +
-            //Anything else
-            "."
-    );
-    private static final int MAX_TOKEN_CHARS = 1024;
-
-    //The reader and the scanner
-    private final PushbackReader reader;
-    private final Scanner scanner;
-    private int line = 1; //"line 1" is the first line, generally speaking.
-    private int col = 0; //column 0 is the first character
     public final String fileName; //used for error reporting, so we know which file a lexing error occurred in
 
+    //Exactly one of these is non-null, depending on where the tokens come from
+    private final TokenScanner scanner;
+    private final TokenBuffer buffer;
+    //When reading from a buffer, the indices of next and last in it
+    private int nextIndex = 0;
+    private int lastIndex = -1;
+
     //The next token, if known.
     //When we peek(), if the next is unknown (null), we calculate it.
     //If it is known, then we just return it.
@@ -65,54 +37,83 @@ public class Lexer {
     private Token next;
     //The token before next.
     //We set this to next when we advance.
+    //When reading from a buffer, this may be null until someone asks for it.
     private Token last;
 
     //File methodName
-    public Lexer(String fileName, Reader reader) {
-        this.reader = new PushbackReader(reader);
-        this.scanner = new Scanner(reader);
+    public Lexer(String fileName, CharSequence code) {
         this.fileName = fileName;
+        this.scanner = new TokenScanner(fileName, code);
+        this.buffer = null;
+    }
+
+    public Lexer(String fileName, Reader reader) {
+        this(fileName, readAll(reader));
+    }
+
+    public Lexer(TokenBuffer buffer) {
+        this.fileName = buffer.fileName;
+        this.scanner = null;
+        this.buffer = buffer;
     }
 
-    public Lexer(String fileName, String code) {
-        this(fileName, new StringReader(code));
+    //Lex the whole file up front into a TokenBuffer, and read from that
+    public static Lexer compact(String fileName, CharSequence code) throws CompilationException {
+        return new Lexer(TokenBuffer.lex(fileName, code));
+    }
+
+    private static String readAll(Reader reader) {
+        try {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1)
+                builder.append(buffer, 0, read);
+            return builder.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read source code for lexing", e);
+        }
     }
 
     public boolean isDone() throws CompilationException {
-        return peek().type() == TokenType.EOF;
+        return peekType() == TokenType.EOF;
     }
 
     public Token peek() throws CompilationException {
-        while (next == null) {
-            String res = scanner.findWithinHorizon(REGEX, 0);
-            if (res == null) {
-                try {
-                    int nextChar = reader.read();
-                    if (nextChar == -1)
-                        return next = new Token(new Loc(fileName, line, 0, line, 0), TokenType.EOF, null);
-
-                    throw new LexingException("Unexpected character \"" + nextChar + "\" on line " + line, new Loc(fileName, line, col, line, col + 1));
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to read next token during lexing error", e);
-                }
+        if (next == null) {
+            if (buffer != null) {
+                next = buffer.token(nextIndex);
+            } else {
+                TokenType type = scanner.scan();
+                next = scanner.token(type);
             }
-            if (res.contains("\n")) {
-                String[] substrings = res.split("\n", -1);
-                line += substrings.length - 1;
-                col = substrings[substrings.length - 1].length();
-                continue;
-            }
-            next = Token.of(fileName, res, line, col);
-            col += res.length();
         }
         return next;
     }
 
+    //Type of the next token, without creating it if we don't need to
+    public TokenType peekType() throws CompilationException {
+        if (buffer != null)
+            return buffer.type(nextIndex);
+        return peek().type();
+    }
+
     public Token last() {
+        if (last == null && lastIndex != -1)
+            last = buffer.token(lastIndex);
         return last;
     }
 
     public void advance() throws CompilationException {
+        if (buffer != null) {
+            //EOF repeats forever, like when lexing on the fly
+            lastIndex = nextIndex;
+            if (nextIndex < buffer.size() - 1)
+                nextIndex++;
+            last = next;
+            next = null;
+            return;
+        }
         if (next == null) peek();
         last = next;
         next = null;
@@ -121,24 +122,23 @@ public class Lexer {
 
     public Token take() throws CompilationException {
         advance();
-        return last;
+        return last();
     }
 
     public boolean check(TokenType type) throws CompilationException {
-        if (peek() == null) return false;
-        return peek().type() == type;
+        return peekType() == type;
     }
     public boolean check(TokenType... types) throws CompilationException {
-        if (peek() == null) return false;
+        TokenType nextType = peekType();
         for (TokenType type : types)
-            if (peek().type() == type)
+            if (nextType == type)
                 return true;
         return false;
     }
     public boolean checkBetween(TokenType first, TokenType last) throws CompilationException {
         if (first.ordinal() > last.ordinal()) throw new IllegalArgumentException("checkBetween args must have first <= last");
-        if (peek() == null) return false;
-        return peek().type().ordinal() >= first.ordinal() && peek().type().ordinal() <= last.ordinal();
+        int ordinal = peekType().ordinal();
+        return ordinal >= first.ordinal() && ordinal <= last.ordinal();
     }
     public boolean consume(TokenType type) throws CompilationException {
         boolean x = check(type);
@@ -0,0 +1,37 @@
+package lexing;
+
+/**
+ * Packs a position in a source file (line, column) into a single long,
+ * so large numbers of positions can be stored without a Loc object for each.
+ * The file isn't part of it: every position in a TokenBuffer is in the same
+ * file, which the buffer holds, so there's no table of file names to keep
+ * around or run out of.
+ *
+ * Layout, from high bits to low: 32 bits line, 32 bits column.
+ */
+public final class PackedLoc {
+
+    private PackedLoc() {}
+
+    private static final int COLUMN_BITS = 32;
+    private static final long COLUMN_MASK = (1L << COLUMN_BITS) - 1;
+
+    public static long pack(int line, int column) {
+        return (long) line << COLUMN_BITS | (column & COLUMN_MASK);
+    }
+
+    public static int line(long packed) {
+        return (int) (packed >>> COLUMN_BITS);
+    }
+
+    public static int column(long packed) {
+        return (int) (packed & COLUMN_MASK);
+    }
+
+    //Unpack into a Loc in the given file, for a token of the given length on a single line
+    public static Loc toLoc(String fileName, long packed, int length) {
+        int line = line(packed), column = column(packed);
+        return new Loc(fileName, line, column, line, column + length);
+    }
+
+}
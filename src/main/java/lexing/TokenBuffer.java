@@ -0,0 +1,106 @@
+package lexing;
+
+import exceptions.compile_time.CompilationException;
+
+import java.util.Arrays;
+
+/**
+ * A compact, fully lexed form of a file's tokens.
+ * Rather than a Token object (with a Loc and a boxed value) for each
+ * token, the tokens are stored as parallel arrays of their type, their
+ * range in the source, and their packed position (see PackedLoc).
+ * Token, Loc, and value objects are only created when someone asks for them.
+ *
+ * A Lexer can be created over a TokenBuffer, so the Parser can read either
+ * a TokenBuffer or a stream of tokens lexed on the fly.
+ */
+public final class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    public final String fileName;
+    private final CharSequence src;
+
+    //The token data. The last token is always EOF.
+    private int size = 0;
+    private int[] types, offsets, lengths;
+    private long[] positions;
+
+    private TokenBuffer(String fileName, CharSequence src) {
+        this.fileName = fileName;
+        this.src = src;
+        //Rough guess at the token count, to avoid most resizing
+        int capacity = Math.max(16, src.length() / 8);
+        types = new int[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        positions = new long[capacity];
+    }
+
+    /**
+     * Lex the entire source into a TokenBuffer.
+     */
+    public static TokenBuffer lex(String fileName, CharSequence src) throws CompilationException {
+        TokenBuffer buffer = new TokenBuffer(fileName, src);
+        TokenScanner scanner = new TokenScanner(buffer.fileName, src);
+        TokenType type;
+        do {
+            type = scanner.scan();
+            buffer.add(type, scanner.tokenStart, scanner.tokenEnd - scanner.tokenStart, PackedLoc.pack(scanner.tokenLine, scanner.tokenCol));
+        } while (type != TokenType.EOF);
+        return buffer;
+    }
+
+    private void add(TokenType type, int offset, int length, long position) {
+        if (size == types.length) {
+            int newCapacity = size * 2;
+            types = Arrays.copyOf(types, newCapacity);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+            positions = Arrays.copyOf(positions, newCapacity);
+        }
+        types[size] = type.ordinal();
+        offsets[size] = offset;
+        lengths[size] = length;
+        positions[size] = position;
+        size++;
+    }
+
+    //Number of tokens, including the final EOF
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    //Offset of the token's first character in the source
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    //Number of source characters the token covers
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    //The token's position, packed with PackedLoc
+    public long position(int index) {
+        return positions[index];
+    }
+
+    public Loc loc(int index) {
+        return PackedLoc.toLoc(fileName, positions[index], lengths[index]);
+    }
+
+    public Object value(int index) {
+        int offset = offsets[index];
+        return TokenScanner.value(src, type(index), offset, offset + lengths[index]);
+    }
+
+    public Token token(int index) {
+        return new Token(loc(index), type(index), value(index));
+    }
+
+}
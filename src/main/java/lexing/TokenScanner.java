@@ -0,0 +1,433 @@
+package lexing;
+
+import exceptions.compile_time.CompilationException;
+import exceptions.compile_time.LexingException;
+import util.Fraction;
+import util.IntLiteralData;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static lexing.TokenType.*;
+
+/**
+ * The state machine behind the Lexer and TokenBuffer.
+ * Walks over the source characters directly, and reports each token
+ * as a type plus a range of the source, without creating any objects.
+ * Whitespace and comments are skipped, and keywords are recognized
+ * in place. The values of literals and identifiers are only decoded
+ * from the source when someone asks for them, through value().
+ */
+final class TokenScanner {
+
+    //The source code and our position in it
+    private final CharSequence src;
+    private final String fileName;
+    private int pos = 0; //index of the next unread character
+    private int line = 1; //"line 1" is the first line, generally speaking.
+    private int col = 0; //column 0 is the first character
+
+    //Outputs of the most recent scan()
+    int tokenStart, tokenEnd; //range of the source that the token covers
+    int tokenLine, tokenCol; //position of the token's first character
+
+    TokenScanner(String fileName, CharSequence src) {
+        this.src = src;
+        this.fileName = fileName;
+    }
+
+    //Scan the next token, skipping any whitespace and comments before it.
+    //Returns its type, and fills in the token fields above.
+    TokenType scan() throws CompilationException {
+        int length = src.length();
+        while (pos < length) {
+            char c = src.charAt(pos);
+            //Newlines
+            if (c == '\n') {
+                pos++;
+                line++;
+                col = 0;
+                continue;
+            }
+            //Other line terminators are skipped without moving the column
+            if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                pos++;
+                continue;
+            }
+            //Comments
+            if (c == '/' && pos + 1 < length) {
+                char c1 = src.charAt(pos + 1);
+                if (c1 == '/') {
+                    skipLineComment();
+                    continue;
+                }
+                if (c1 == '*' && skipBlockComment())
+                    continue;
+            }
+            //Number literals, identifiers and keywords, string literals
+            if (isDigit(c)) {
+                int end = scanNumber();
+                return emit(end, isFloat(src, pos, end) ? FLOAT_LITERAL : INT_LITERAL);
+            }
+            if (isIdentifierStart(c))
+                return scanIdentifier();
+            if (c == '"')
+                return emit(scanString(), STRING_LITERAL);
+            //Symbols
+            TokenType symbol = scanSymbol(c);
+            if (symbol != null)
+                return symbol;
+            //Whitespace
+            int codePoint = Character.codePointAt(src, pos);
+            int charCount = Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint)) {
+                pos += charCount;
+                col += charCount;
+                continue;
+            }
+            //Anything else is an error
+            String text = src.subSequence(pos, pos + charCount).toString();
+            throw new LexingException("Encountered invalid token \"" + text + "\"", new Loc(fileName, line, col, line, col + charCount));
+        }
+        tokenStart = tokenEnd = pos;
+        tokenLine = line;
+        tokenCol = 0;
+        return EOF;
+    }
+
+    //The most recently scanned token, as a Token object
+    Token token(TokenType type) {
+        Loc loc = new Loc(fileName, tokenLine, tokenCol, tokenLine, tokenCol + (tokenEnd - tokenStart));
+        return new Token(loc, type, value(src, type, tokenStart, tokenEnd));
+    }
+
+    //Record a token running from pos to end, and move past it
+    private TokenType emit(int end, TokenType type) {
+        tokenStart = pos;
+        tokenEnd = end;
+        tokenLine = line;
+        tokenCol = col;
+        col += end - pos;
+        pos = end;
+        return type;
+    }
+
+    //The "//" is at pos. Comment runs until the next line terminator.
+    private void skipLineComment() {
+        int start = pos;
+        int length = src.length();
+        pos += 2;
+        while (pos < length && !isLineTerminator(src.charAt(pos)))
+            pos++;
+        col += pos - start;
+    }
+
+    //The "/*" is at pos. If the comment is unterminated, returns false
+    //without consuming anything, so the "/" is lexed as a symbol instead.
+    private boolean skipBlockComment() {
+        int length = src.length();
+        int i = pos + 2;
+        int newlines = 0;
+        int lastNewline = -1;
+        while (i + 1 < length) {
+            char c = src.charAt(i);
+            if (c == '*' && src.charAt(i + 1) == '/') {
+                int end = i + 2;
+                if (newlines > 0) {
+                    line += newlines;
+                    col = end - lastNewline - 1;
+                } else {
+                    col += end - pos;
+                }
+                pos = end;
+                return true;
+            }
+            if (c == '\n') {
+                newlines++;
+                lastNewline = i;
+            }
+            i++;
+        }
+        return false;
+    }
+
+    //Digits, then either a fractional part with optional f32/f64, or an optional type suffix.
+    //Returns the end of the number.
+    private int scanNumber() {
+        int i = numberDigitsEnd(src, pos);
+        return i + suffixLength(src, i, isFractional(src, pos, i));
+    }
+
+    //Identifiers, keywords, and bool literals
+    private TokenType scanIdentifier() {
+        int length = src.length();
+        int i = pos + 1;
+        while (i < length && isIdentifierPart(src.charAt(i)))
+            i++;
+        Keyword keyword = findKeyword(src, pos, i);
+        return emit(i, keyword == null ? IDENTIFIER : keyword.type);
+    }
+
+    //The quote is at pos. Returns the end of the string literal.
+    private int scanString() throws CompilationException {
+        int length = src.length();
+        //Escapes are only reported once we know the literal is terminated,
+        //so an unmatched quote takes priority.
+        int badEscape = -1;
+        int i = pos + 1;
+        while (true) {
+            if (i >= length)
+                throw new LexingException("Encountered unmatched quote", new Loc(fileName, line, col, line, col + 1));
+            char c = src.charAt(i);
+            if (c == '"')
+                break;
+            if (c == '\n')
+                throw new LexingException("String literals cannot span multiple lines", new Loc(fileName, line, col, line, col + 1));
+            if (c == '\\') {
+                if (i + 1 >= length || isLineTerminator(src.charAt(i + 1)))
+                    throw new LexingException("Encountered unmatched quote", new Loc(fileName, line, col, line, col + 1));
+                if (badEscape == -1 && escape(src.charAt(i + 1)) == 0)
+                    badEscape = i + 1;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        int end = i + 1;
+        if (badEscape != -1)
+            throw new LexingException("Illegal escape character \"\\" + src.charAt(badEscape) + "\"", new Loc(fileName, line, col, line, col + (end - pos)));
+        return end;
+    }
+
+    //Punctuation and operators. Longer operators win over their prefixes.
+    //Returns null if c does not begin a symbol.
+    private TokenType scanSymbol(char c) {
+        char c1 = charAt(pos + 1);
+        char c2 = charAt(pos + 2);
+        return switch (c) {
+            case '&' -> c1 == '&' ? (c2 == '=' ? symbol(BITWISE_AND_ASSIGN, 3) : symbol(BITWISE_AND, 2)) : assignable(AND, AND_ASSIGN, c1);
+            case '|' -> c1 == '|' ? (c2 == '=' ? symbol(BITWISE_OR_ASSIGN, 3) : symbol(BITWISE_OR, 2)) : assignable(OR, OR_ASSIGN, c1);
+            case '^' -> c1 == '^' ? (c2 == '=' ? symbol(BITWISE_XOR_ASSIGN, 3) : symbol(BITWISE_XOR, 2)) : assignable(POWER, POWER_ASSIGN, c1);
+            case '>' -> c1 == '>' && c2 == '=' ? symbol(RIGHT_SHIFT_ASSIGN, 3) : assignable(GREATER, GREATER_EQUAL, c1);
+            case '<' -> c1 == '<' && c2 == '=' ? symbol(LEFT_SHIFT_ASSIGN, 3) : assignable(LESS, LESS_EQUAL, c1);
+            case '-' -> c1 == '>' ? symbol(ARROW, 2) : assignable(MINUS, MINUS_ASSIGN, c1);
+            case '=' -> c1 == '>' ? symbol(ARROW, 2) : assignable(ASSIGN, EQUAL, c1);
+            case '.' -> c1 == '.' ? symbol(RANGE, 2) : symbol(DOT, 1);
+            case ':' -> c1 == ':' ? symbol(DOUBLE_COLON, 2) : symbol(COLON, 1);
+            case '+' -> assignable(PLUS, PLUS_ASSIGN, c1);
+            case '*' -> assignable(STAR, TIMES_ASSIGN, c1);
+            case '/' -> assignable(SLASH, DIVIDE_ASSIGN, c1);
+            case '%' -> assignable(PERCENT, MODULO_ASSIGN, c1);
+            case '!' -> assignable(NOT, NOT_EQUAL, c1);
+            case '(' -> symbol(LEFT_PAREN, 1);
+            case ')' -> symbol(RIGHT_PAREN, 1);
+            case '[' -> symbol(LEFT_SQUARE, 1);
+            case ']' -> symbol(RIGHT_SQUARE, 1);
+            case '{' -> symbol(LEFT_CURLY, 1);
+            case '}' -> symbol(RIGHT_CURLY, 1);
+            case ';' -> symbol(SEMICOLON, 1);
+            case ',' -> symbol(COMMA, 1);
+            case '?' -> symbol(QUESTION_MARK, 1);
+            case '#' -> symbol(HASHTAG, 1);
+            case '~' -> symbol(BITWISE_NOT, 1);
+            default -> null;
+        };
+    }
+
+    //1-character operator, or its 2-character version with = after
+    private TokenType assignable(TokenType plain, TokenType withEquals, char c1) {
+        return c1 == '=' ? symbol(withEquals, 2) : symbol(plain, 1);
+    }
+
+    private TokenType symbol(TokenType type, int length) {
+        return emit(pos + length, type);
+    }
+
+    //0 if out of bounds
+    private char charAt(int index) {
+        return index < src.length() ? src.charAt(index) : 0;
+    }
+
+    /**
+     *
+     *
+     * DECODING VALUES
+     *
+     *
+     */
+
+    //Decode the value of a token of the given type covering src[start, end).
+    //The token is assumed to have been produced by scan(), so it's well-formed.
+    static Object value(CharSequence src, TokenType type, int start, int end) {
+        return switch (type) {
+            case IDENTIFIER -> src.subSequence(start, end).toString();
+            case BOOL_LITERAL -> src.charAt(start) == 't';
+            case STRING_LITERAL -> stringValue(src, start, end);
+            case INT_LITERAL, FLOAT_LITERAL -> numberValue(src, start, end);
+            default -> null;
+        };
+    }
+
+    private static String stringValue(CharSequence src, int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start - 2);
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = src.charAt(i);
+            if (c == '\\')
+                builder.append(escape(src.charAt(++i)));
+            else
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static Object numberValue(CharSequence src, int start, int end) {
+        int digitsEnd = numberDigitsEnd(src, start);
+        String digits = src.subSequence(start, digitsEnd).toString();
+        if (digitsEnd == end) {
+            if (isFractional(src, start, digitsEnd))
+                return Fraction.parseFraction(digits);
+            return new IntLiteralData(new BigInteger(digits), false, 0);
+        }
+        char suffixKind = src.charAt(digitsEnd);
+        int bits = end - digitsEnd == 2 ? 8 : (src.charAt(digitsEnd + 1) - '0') * 10 + (src.charAt(digitsEnd + 2) - '0');
+        if (suffixKind == 'f')
+            return bits == 32 ? (Object) Float.parseFloat(digits) : (Object) Double.parseDouble(digits);
+        return new IntLiteralData(new BigInteger(digits), suffixKind == 'i', bits);
+    }
+
+    //The character that "\c" stands for, or 0 if it's not a valid escape
+    private static char escape(char c) {
+        return switch (c) {
+            case '\\' -> '\\';
+            case 'n' -> '\n';
+            case 't' -> '\t';
+            case 'r' -> '\r';
+            case '"' -> '"';
+            default -> 0;
+        };
+    }
+
+    /**
+     *
+     *
+     * NUMBER HELPERS
+     *
+     *
+     */
+
+    //End of the digits of a number starting at start, including any fractional part
+    private static int numberDigitsEnd(CharSequence src, int start) {
+        int i = skipDigits(src, start);
+        if (i + 1 < src.length() && src.charAt(i) == '.' && isDigit(src.charAt(i + 1)))
+            i = skipDigits(src, i + 1);
+        return i;
+    }
+
+    private static int skipDigits(CharSequence src, int i) {
+        int length = src.length();
+        while (i < length && isDigit(src.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static boolean isFractional(CharSequence src, int start, int digitsEnd) {
+        for (int i = start; i < digitsEnd; i++)
+            if (src.charAt(i) == '.')
+                return true;
+        return false;
+    }
+
+    private static boolean isFloat(CharSequence src, int start, int end) {
+        int digitsEnd = numberDigitsEnd(src, start);
+        return digitsEnd < end && src.charAt(digitsEnd) == 'f' || isFractional(src, start, digitsEnd);
+    }
+
+    //Returns the length of the type suffix (i32, u8, f64, ...) starting at index i, or 0 if there isn't one.
+    //After a fractional part, only f32 and f64 are allowed.
+    private static int suffixLength(CharSequence src, int i, boolean floatOnly) {
+        int length = src.length();
+        char kind = i < length ? src.charAt(i) : 0;
+        if (kind != 'f' && (floatOnly || kind != 'i' && kind != 'u'))
+            return 0;
+        char a = i + 1 < length ? src.charAt(i + 1) : 0;
+        char b = i + 2 < length ? src.charAt(i + 2) : 0;
+        if (a == '3' && b == '2' || a == '6' && b == '4')
+            return 3;
+        if (kind != 'f' && a == '8')
+            return 2;
+        if (kind != 'f' && a == '1' && b == '6')
+            return 3;
+        return 0;
+    }
+
+    /**
+     *
+     *
+     * CHARACTER CLASSES AND KEYWORDS
+     *
+     *
+     */
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    //Keywords, bucketed by their first character, so
+    //identifiers can be checked against them in place.
+    private record Keyword(String text, TokenType type) {}
+
+    private static final Keyword[][] KEYWORDS = new Keyword[128][];
+
+    static {
+        List<Keyword> keywords = new ArrayList<>();
+        for (TokenType type : TokenType.values())
+            for (String alias : type.exactStrings)
+                if (isIdentifierStart(alias.charAt(0)))
+                    keywords.add(new Keyword(alias, type));
+        keywords.add(new Keyword("true", BOOL_LITERAL));
+        keywords.add(new Keyword("false", BOOL_LITERAL));
+        for (Keyword keyword : keywords) {
+            char first = keyword.text.charAt(0);
+            Keyword[] bucket = KEYWORDS[first];
+            if (bucket == null) {
+                bucket = new Keyword[] {keyword};
+            } else {
+                bucket = Arrays.copyOf(bucket, bucket.length + 1);
+                bucket[bucket.length - 1] = keyword;
+            }
+            KEYWORDS[first] = bucket;
+        }
+    }
+
+    private static Keyword findKeyword(CharSequence src, int start, int end) {
+        Keyword[] bucket = KEYWORDS[src.charAt(start)];
+        if (bucket == null)
+            return null;
+        outer:
+        for (Keyword keyword : bucket) {
+            String text = keyword.text;
+            if (text.length() != end - start)
+                continue;
+            for (int i = 1; i < text.length(); i++)
+                if (text.charAt(i) != src.charAt(start + i))
+                    continue outer;
+            return keyword;
+        }
+        return null;
+    }
+
+}
@@ -92,6 +92,7 @@ public enum TokenType {
     VAR("var"),
     NEW("new"),
     STATIC("static"),
+    INLINE("inline"),
 
     PUB("pub"),
     IMPORT("import"),
@@ -0,0 +1,75 @@
+package runtime;
+
+import ast.ir.def.Program;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.TraceClassVisitor;
+import util.CompileOptions;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiled Snuggle code, with its classes loaded.
+ * Makes any number of instances, which share the classes, so each new one
+ * doesn't pay for defining them, or for the JIT to warm them up again.
+ * Each instance has its own runtime object holding its state, so instances
+ * can run on different threads at the same time.
+ */
+public class LoadedProgram {
+
+    //The class loader that holds all the generatedClasses for this program
+    private final InstanceLoader loader;
+    private final Constructor<? extends SnuggleRuntime> runtimeConstructor;
+//    private ErrorHelper errorHelper;
+
+    public LoadedProgram(Program.CompileResult compileResult) {
+        this(compileResult, CompileOptions.PRODUCTION);
+    }
+
+    //If options.traceBytecode(), each class is printed as it's loaded
+    public LoadedProgram(Program.CompileResult compileResult, CompileOptions options) {
+        loader = new InstanceLoader(options.traceBytecode());
+//        errorHelper = new ErrorHelper(compileResult, loader);
+
+        for (Program.CompiledClass otherClass : compileResult.otherClasses()) {
+            loader.defineClass(otherClass.bytes());
+        }
+        try {
+            runtimeConstructor = loader.defineClass(compileResult.runtime().bytes()).asSubclass(SnuggleRuntime.class).getConstructor();
+        } catch (Exception impossible) {
+            throw new IllegalStateException("Runtime always has default constructor, bug in compiler, please report!");
+        }
+    }
+
+    /**
+     * A new instance of the program, which hasn't run yet. Its imports,
+     * static fields and instruction count are separate from every other instance.
+     */
+    public SnuggleInstance newInstance() {
+        try {
+            return new SnuggleInstance(runtimeConstructor.newInstance());
+        } catch (Exception impossible) {
+            throw new IllegalStateException("Failed to construct runtime, bug in compiler, please report!", impossible);
+        }
+    }
+
+    //Just exposes a protected method for us
+    private static class InstanceLoader extends ClassLoader {
+        private static final AtomicInteger nextId = new AtomicInteger();
+        private final boolean trace;
+        private InstanceLoader(boolean trace) {
+            super(
+                    "SnuggleLoader" + nextId.getAndIncrement(),
+                    getSystemClassLoader()
+            );
+            this.trace = trace;
+        }
+
+        private Class<?> defineClass(byte[] bytes) {
+            if (trace)
+                new ClassReader(bytes).accept(new TraceClassVisitor(new PrintWriter(System.err)), ClassReader.SKIP_DEBUG);
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package runtime;
+
+/**
+ * Which runtime object a thread is running, for generated code to find it.
+ * See RuntimeHelper: the runtime class keeps the last one entered or returned to
+ * in a static field, which is only good for the thread in it. Both fields are final,
+ * so a thread reading one written by another sees the pair it was made with.
+ */
+public final class RunningInstance {
+
+    public final Thread thread;
+    public final SnuggleRuntime runtime;
+
+    public RunningInstance(Thread thread, SnuggleRuntime runtime) {
+        this.thread = thread;
+        this.runtime = runtime;
+    }
+
+}
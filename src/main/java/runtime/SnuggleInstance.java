@@ -2,40 +2,29 @@ package runtime;
 
 import ast.ir.def.Program;
 import exceptions.runtime.SnuggleException;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.util.TraceClassVisitor;
-
-import java.io.PrintWriter;
-import java.util.concurrent.atomic.AtomicInteger;
+import util.CompileOptions;
 
 /**
  * An instance of some compiled Snuggle code.
  * Encapsulates the concept of compiling and running said code.
+ * Instances made by the same LoadedProgram share its classes, but nothing else.
  */
 public class SnuggleInstance {
 
-    //Jank temporary testing thing; instruction counter
-    public static long INSTRUCTIONS = 0;
-
     //Generated by compiler
-    private SnuggleRuntime runtime;
-
-    //The class loader that holds all the generatedClasses for this instance
-    private InstanceLoader loader;
-//    private ErrorHelper errorHelper;
+    private final SnuggleRuntime runtime;
 
+    //Loads the classes just for this instance. To make many instances, use a LoadedProgram.
     public SnuggleInstance(Program.CompileResult compileResult) {
-        loader = new InstanceLoader();
-//        errorHelper = new ErrorHelper(compileResult, loader);
+        this(compileResult, CompileOptions.PRODUCTION);
+    }
 
-        for (Program.CompiledClass otherClass : compileResult.otherClasses()) {
-            loader.defineClass(otherClass.bytes());
-        }
-        try {
-            runtime = (SnuggleRuntime) loader.defineClass(compileResult.runtime().bytes()).getConstructor().newInstance();
-        } catch (Exception impossible) {
-            throw new IllegalStateException("Runtime always has default constructor, bug in compiler, please report!");
-        }
+    public SnuggleInstance(Program.CompileResult compileResult, CompileOptions options) {
+        this(new LoadedProgram(compileResult, options).newInstance().runtime);
+    }
+
+    SnuggleInstance(SnuggleRuntime runtime) {
+        this.runtime = runtime;
     }
 
     /**
@@ -54,19 +43,24 @@ public class SnuggleInstance {
 //        }
     }
 
-    //Just exposes a protected method for us
-    private static class InstanceLoader extends ClassLoader {
-        private static final AtomicInteger nextId = new AtomicInteger();
-        private InstanceLoader() {
-            super(
-                    "SnuggleLoader" + nextId.getAndIncrement(),
-                    getSystemClassLoader()
-            );
-        }
+    /**
+     * Cap the instructions this instance can run, counting the ones it ran
+     * already. Running more throws a SnuggleException.
+     */
+    public void setInstructionCap(long cap) {
+        runtime.setInstructionCap(cap);
+    }
+
+    public long getInstructionCap() {
+        return runtime.getInstructionCap();
+    }
+
+    //The instructions this instance has run, over all calls to run()
+    public long getUsedInstructions() {
+        return runtime.getUsedInstructions();
+    }
 
-        private Class<?> defineClass(byte[] bytes) {
-            new ClassReader(bytes).accept(new TraceClassVisitor(new PrintWriter(System.err)), ClassReader.SKIP_DEBUG);
-            return defineClass(null, bytes, 0, bytes.length);
-        }
+    public void setUsedInstructions(long instructions) {
+        runtime.setUsedInstructions(instructions);
     }
 }
@@ -13,14 +13,15 @@ public interface SnuggleRuntime {
     //Run the code
     void run() throws SnuggleException;
 
-//    //Instruction cap
-//    void setInstructionCap(long cap);
-//    long getInstructionCap();
-//
-//    //Used instructions
-//    void setUsedInstructions(long instructions);
-//    long getUsedInstructions();
-//
+    //Instruction cap. When the count of used instructions goes over it, the
+    //code throws a SnuggleException. Not exact; see InstructionCounter.
+    void setInstructionCap(long cap);
+    long getInstructionCap();
+
+    //Used instructions, counted for this instance only
+    void setUsedInstructions(long instructions);
+    long getUsedInstructions();
+
 //    //Memory
 //    void recountMemory();
 //    void setMemoryCap(long cap);
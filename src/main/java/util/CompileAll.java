@@ -11,16 +11,16 @@ import ast.typed.def.type.TypeDef;
 import ast.typed.prog.TypedAST;
 import builtin_types.BuiltinTypes;
 import exceptions.compile_time.CompilationException;
-import lexing.Lexer;
+import runtime.LoadedProgram;
 import runtime.SnuggleInstance;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Helper class that performs all the compilation steps from start to finish.
+ * Without CompileOptions, it uses CompileOptions.PRODUCTION.
  */
 public class CompileAll {
 
@@ -29,44 +29,95 @@ public class CompileAll {
      * Values are source code.
      */
     public static SnuggleInstance compileAllToInstance(BuiltinTypes types, Map<String, String> files) throws CompilationException {
-        //1. Create the lexers
-        Map<String, Lexer> lexers = new HashMap<>();
-        for (var file : files.entrySet())
-            lexers.put(file.getKey(), new Lexer(file.getKey(), file.getValue()));
-        //2. Parse to ParsedAST
-        ParsedAST parsedAST = Parser.parse(lexers);
-        System.out.println(parsedAST);
-        //3. Resolve topLevelTypes to TypeResolvedAST
-        TypeResolvedAST typeResolvedAST = TypeResolver.resolve(types, parsedAST);
-        System.out.println(typeResolvedAST);
-        //4. Verify generics
-        GenericVerifier.verifyGenerics(typeResolvedAST);
-        //5. Type check to TypedAST
-        TypedAST typedAST = TypeChecker.type(typeResolvedAST);
-        for (TypeDef d : typedAST.typeDefs())
-            System.out.println(d);
-        //6. Compile to instance and return
-        return Program.of(typedAST).compileToInstance();
+        return compileAllToInstance(types, files, CompileOptions.PRODUCTION);
+    }
+
+    public static SnuggleInstance compileAllToInstance(BuiltinTypes types, Map<String, String> files, CompileOptions options) throws CompilationException {
+        return compileAllToLoadedProgram(types, files, options).newInstance();
+    }
+
+    public static LoadedProgram compileAllToLoadedProgram(BuiltinTypes types, Map<String, String> files, CompileOptions options) throws CompilationException {
+        Timer timer = new Timer(options);
+        Program program = compileAllToProgram(types, files, options, timer);
+        //6. Compile to a loaded program and return
+        LoadedProgram result = program.compileToLoadedProgram(options);
+        timer.step("Generating and loading classes");
+        printSplits(program, options);
+        return result;
     }
 
     public static void compileAllToJar(File targetFile, BuiltinTypes types, Map<String, String> files) throws CompilationException, IOException {
-        //1. Create the lexers
-        Map<String, Lexer> lexers = new HashMap<>();
-        for (var file : files.entrySet())
-            lexers.put(file.getKey(), new Lexer(file.getKey(), file.getValue()));
-        //2. Parse to ParsedAST
-        ParsedAST parsedAST = Parser.parse(lexers);
-        System.out.println(parsedAST);
+        compileAllToJar(targetFile, types, files, CompileOptions.PRODUCTION);
+    }
+
+    public static void compileAllToJar(File targetFile, BuiltinTypes types, Map<String, String> files, CompileOptions options) throws CompilationException, IOException {
+        Timer timer = new Timer(options);
+        Program program = compileAllToProgram(types, files, options, timer);
+        //6. Compile to jar
+        program.compileToJar(targetFile, options);
+        timer.step("Generating classes and writing jar");
+        printSplits(program, options);
+    }
+
+    private static Program compileAllToProgram(BuiltinTypes types, Map<String, String> files, CompileOptions options, Timer timer) throws CompilationException {
+        //1. Lex and 2. parse to ParsedAST, one file per task
+        ParsedAST parsedAST = Parser.parseSources(files);
+        timer.step("Parsing");
+        if (options.dumpAsts()) {
+            System.out.println(parsedAST);
+            timer.skip();
+        }
         //3. Resolve topLevelTypes to TypeResolvedAST
         TypeResolvedAST typeResolvedAST = TypeResolver.resolve(types, parsedAST);
+        timer.step("Resolving types");
+        if (options.dumpAsts()) {
+            System.out.println(typeResolvedAST);
+            timer.skip();
+        }
         //4. Verify generics
         GenericVerifier.verifyGenerics(typeResolvedAST);
+        timer.step("Verifying generics");
         //5. Type check to TypedAST
         TypedAST typedAST = TypeChecker.type(typeResolvedAST);
-//        for (TypeDef d : typedAST.topLevelTypeDefs())
-//            System.out.println(d);
-        //6. Compile to instance and return
-        Program.of(typedAST).compileToJar(targetFile);
+        timer.step("Type checking");
+        if (options.dumpAsts()) {
+            for (TypeDef d : typedAST.typeDefs())
+                System.out.println(d);
+            timer.skip();
+        }
+        //IR
+        Program program = Program.of(typedAST);
+        timer.step("Generating IR");
+        return program;
+    }
+
+    //Prints the methods that were split for being too large, if options.printTimings()
+    private static void printSplits(Program program, CompileOptions options) {
+        if (options.printTimings())
+            program.splitMethods().forEach((method, split) -> System.out.println("Split " + method + ": " + split));
+    }
+
+    //Prints the time each step took, if options.printTimings()
+    private static class Timer {
+        private final boolean enabled;
+        private long last = System.nanoTime();
+
+        private Timer(CompileOptions options) {
+            this.enabled = options.printTimings();
+        }
+
+        private void step(String name) {
+            if (!enabled)
+                return;
+            long now = System.nanoTime();
+            System.out.println(name + " took " + (now - last) / 1000000 + " ms");
+            last = now;
+        }
+
+        //Don't count the time since the last step, like time spent dumping
+        private void skip() {
+            last = System.nanoTime();
+        }
     }
 
 }
@@ -0,0 +1,81 @@
+package util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Everything the compiler can do besides compiling: checking and printing
+ * what it makes, timing itself, and what it runs in parallel. Only
+ * countInstructions, maxMethodSize and hoistLoops change the compiled code.
+ * Compiling without options uses PRODUCTION.
+ *
+ * Each option is a field with its PRODUCTION value, an accessor, and a wither
+ * that copies the rest, so adding one doesn't touch the others.
+ */
+public final class CompileOptions implements Cloneable {
+
+    //HotSpot doesn't JIT-compile methods with more bytecode than this
+    public static final int HUGE_METHOD_LIMIT = 8000;
+
+    //Check each generated class with ASM's CheckClassAdapter as it's written, and its frames with FrameChecker after
+    private boolean verifyBytecode = false;
+    //Print each generated class to System.err as it's loaded
+    private boolean traceBytecode = false;
+    //Print the ParsedAST, the TypeResolvedAST and every TypeDef to System.out
+    private boolean dumpAsts = false;
+    //Print how long each step of compiling took, and which methods were split, to System.out
+    private boolean printTimings = false;
+    //Count instructions, so the instruction cap works. See InstructionCounter.
+    private boolean countInstructions = true;
+    //Have ASM compute frames and maxes instead of FrameTracker, to cross-check it when a class fails to verify.
+    //Off in both presets, so FrameChecker and the JVM's verifier check FrameTracker on every class in the tests.
+    private boolean asmFrames = false;
+    //Split methods with more bytecode than this into helpers, or never if 0. See MethodSplitter.
+    private int maxMethodSize = HUGE_METHOD_LIMIT;
+    //Move each loop in the top-level code of a file into a helper, so it's JIT-compiled on its own.
+    //Off in both presets, since no benchmark has shown it to help yet, and it costs an extra pass.
+    private boolean hoistLoops = false;
+    //Generate classes in parallel on this, or one at a time if null
+    private ExecutorService executor = ForkJoinPool.commonPool();
+
+    private CompileOptions() {}
+
+    //Checks and prints nothing, but still counts instructions. Used when no options are given.
+    public static final CompileOptions PRODUCTION = new CompileOptions();
+    //Checks and prints everything, for working on the compiler. Never the default; ask for it.
+    public static final CompileOptions DEBUG = PRODUCTION.with(o -> {
+        o.verifyBytecode = true;
+        o.traceBytecode = true;
+        o.dumpAsts = true;
+        o.printTimings = true;
+    });
+
+    public boolean verifyBytecode() { return verifyBytecode; }
+    public boolean traceBytecode() { return traceBytecode; }
+    public boolean dumpAsts() { return dumpAsts; }
+    public boolean printTimings() { return printTimings; }
+    public boolean countInstructions() { return countInstructions; }
+    public boolean asmFrames() { return asmFrames; }
+    public int maxMethodSize() { return maxMethodSize; }
+    public boolean hoistLoops() { return hoistLoops; }
+    public ExecutorService executor() { return executor; }
+
+    public CompileOptions withCountInstructions(boolean countInstructions) { return with(o -> o.countInstructions = countInstructions); }
+    public CompileOptions withAsmFrames(boolean asmFrames) { return with(o -> o.asmFrames = asmFrames); }
+    public CompileOptions withMaxMethodSize(int maxMethodSize) { return with(o -> o.maxMethodSize = maxMethodSize); }
+    public CompileOptions withHoistLoops(boolean hoistLoops) { return with(o -> o.hoistLoops = hoistLoops); }
+    public CompileOptions withExecutor(ExecutorService executor) { return with(o -> o.executor = executor); }
+
+    //A copy of these options, with the changes made to it. Options are never changed once they've been handed out.
+    private CompileOptions with(Consumer<CompileOptions> changes) {
+        try {
+            CompileOptions copy = (CompileOptions) clone();
+            changes.accept(copy);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("CompileOptions is Cloneable", e);
+        }
+    }
+
+}
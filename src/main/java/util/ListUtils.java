@@ -7,6 +7,7 @@ import util.throwing_interfaces.ThrowingFunction;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.function.Function;
 
 public class ListUtils {
 
@@ -130,6 +131,44 @@ public class ListUtils {
             list.set(i, output.get(i));
     }
 
+    /**
+     * Sort the list so that every element comes after the elements it depends on, in time
+     * linear in the number of elements and dependencies. Otherwise, elements keep their
+     * original order. Elements are matched by the identity of their key, so dependencies
+     * can be different objects standing for the same element. Dependencies whose keys
+     * aren't in the list are ignored.
+     */
+    public static <T, E extends Throwable> void topologicalSort(List<T> list, Function<T, Object> key, ThrowingFunction<T, Collection<? extends T>, E> dependencies) throws E {
+        Map<Object, T> byKey = new IdentityHashMap<>();
+        for (T elem : list)
+            byKey.putIfAbsent(key.apply(elem), elem);
+        //Elements mapped to false are being visited, and true are done
+        Map<T, Boolean> visited = new IdentityHashMap<>();
+        List<T> output = new ArrayList<>(list.size());
+        for (T elem : list)
+            visitTopological(elem, key, dependencies, byKey, visited, output);
+        if (output.size() != list.size())
+            throw new IllegalStateException("Failure in sort algorithm, bug in compiler, please report!");
+        for (int i = 0; i < list.size(); i++)
+            list.set(i, output.get(i));
+    }
+
+    private static <T, E extends Throwable> void visitTopological(T elem, Function<T, Object> key, ThrowingFunction<T, Collection<? extends T>, E> dependencies, Map<Object, T> byKey, Map<T, Boolean> visited, List<T> output) throws E {
+        Boolean done = visited.putIfAbsent(elem, false);
+        if (done != null) {
+            if (!done)
+                throw new IllegalStateException("Cycle in topological sort, bug in compiler, please report!");
+            return;
+        }
+        for (T dependency : dependencies.apply(elem)) {
+            T inList = byKey.get(key.apply(dependency));
+            if (inList != null)
+                visitTopological(inList, key, dependencies, byKey, visited, output);
+        }
+        visited.put(elem, true);
+        output.add(elem);
+    }
+
 
     /**
      * Generate a map from a given list, where the keys are chosen by the given function.
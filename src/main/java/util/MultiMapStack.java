@@ -0,0 +1,50 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stack of scopes, where each scope can map a key to several values.
+ * Looking up a key gives the values from every scope on the stack, oldest
+ * first, without flattening the scopes.
+ *
+ * Values can only be added to the top scope, so the values for a key are
+ * kept in one list, in the order they were added. Popping a scope removes
+ * the values added since it was pushed, from the ends of those lists.
+ */
+public class MultiMapStack<K, V> {
+
+    private final Map<K, List<V>> values = new HashMap<>();
+    //The keys of the values added, in order, so they can be removed when popping
+    private final List<K> added = new ArrayList<>();
+    //For each scope, the size of added when it was pushed
+    private final List<Integer> scopeStarts = new ArrayList<>();
+
+    public void push() {
+        scopeStarts.add(added.size());
+    }
+
+    public void pop() {
+        int start = scopeStarts.remove(scopeStarts.size() - 1);
+        while (added.size() > start) {
+            List<V> list = values.get(added.remove(added.size() - 1));
+            list.remove(list.size() - 1);
+        }
+    }
+
+    public void add(K key, V value) {
+        if (scopeStarts.isEmpty())
+            throw new IllegalStateException("Adding to a MultiMapStack with no scopes");
+        values.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+        added.add(key);
+    }
+
+    //A snapshot of the values for the key, in the order they were added
+    public List<V> get(K key) {
+        List<V> result = values.get(key);
+        return result == null ? List.of() : List.copyOf(result);
+    }
+
+}
@@ -0,0 +1,274 @@
+import exceptions.compile_time.CompilationException;
+import exceptions.compile_time.LexingException;
+import lexing.Lexer;
+import lexing.Loc;
+import lexing.PackedLoc;
+import lexing.Token;
+import lexing.TokenBuffer;
+import lexing.TokenType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import util.Fraction;
+import util.IntLiteralData;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential tests between the Lexer, in both its streaming and
+ * compact TokenBuffer modes, and the regex-based lexer it replaced,
+ * which is kept here as a reference.
+ */
+public class LexerTests {
+
+    static Stream<Path> sourceFiles() throws IOException {
+        List<Path> result = new ArrayList<>();
+        for (String root : List.of("src/test/resources/case", "src/main/resources/std"))
+            try (Stream<Path> walk = Files.walk(Path.of(root))) {
+                walk.filter(Files::isRegularFile).sorted().forEach(result::add);
+            }
+        return result.stream();
+    }
+
+    @ParameterizedTest(name = ParameterizedTest.ARGUMENTS_PLACEHOLDER)
+    @MethodSource("sourceFiles")
+    public void testSourceFiles(Path file) throws IOException, CompilationException {
+        assertSameTokens(file.toString(), Files.readString(file));
+    }
+
+    @ParameterizedTest(name = "[{index}] {0}")
+    @ValueSource(strings = {
+            "",
+            "a+=b-=c*=d/=e%=f^=g&=h|=i",
+            "a&&b||c^^d &&= ||= ^^= <<= >>= << >> <= >= == != ! = =>->",
+            "x..y a::b a.b; a:b, c? #d ~e (f)[g]{h}",
+            "1 1i8 2u8 3i16 4u16 5i32 6u32 7i64 8u64 9f32 10f64 11i128 12i 13u",
+            "1.5 2.25f32 3.125f64 4.5i32 5. 6..7 8.x 123456789012345678901234567890",
+            "true false truthy as is asx var vars fn fnord this super _under_score x1",
+            "\"hello\" \"esc\\n\\t\\r\\\\\\\"apes\" \"\"",
+            "a // comment\nb /* block */ c /* multi\nline\ncomment */ d",
+            "a /* unterminated\nb",
+            "a /***/ b /* ** / * */ c /*/ d */ e",
+            "x\r\ny\r\n\tz",
+            "  \t  a\n\n\n   b",
+    })
+    public void testSnippets(String code) throws CompilationException {
+        assertSameTokens("main", code);
+    }
+
+    @Test
+    public void testInvalidTokens() {
+        for (String code : List.of("a @ b", "x\n  $", "\"unterminated", "\"bad \\q escape\"", "\"trailing backslash\\"))
+            assertSameError(code);
+    }
+
+    @Test
+    public void testReader() throws CompilationException {
+        String code = "var x: i32 = 10\nSystem.print(x)";
+        assertSameTokens(lex(new Lexer("main", code)), lex(new Lexer("main", new StringReader(code))));
+    }
+
+    @Test
+    public void testPackedLoc() {
+        long packed = PackedLoc.pack(123456, 7890);
+        assertEquals(new Loc("some/file", 123456, 7890, 123456, 7895), PackedLoc.toLoc("some/file", packed, 5));
+        long large = PackedLoc.pack(Integer.MAX_VALUE, Integer.MAX_VALUE - 1);
+        assertEquals(Integer.MAX_VALUE, PackedLoc.line(large));
+        assertEquals(Integer.MAX_VALUE - 1, PackedLoc.column(large));
+    }
+
+    @Test
+    public void testManyFileNames() throws CompilationException {
+        //File names aren't interned anywhere, so lexing any number of distinct files keeps working
+        for (int i = 0; i < 70000; i++)
+            assertEquals("file" + i, TokenBuffer.lex("file" + i, "x").loc(0).fileName());
+    }
+
+    @Test
+    public void testCompactLast() throws CompilationException {
+        Lexer lexer = Lexer.compact("main", "var x = 1");
+        assertTrue(lexer.consume(TokenType.VAR));
+        assertEquals(new Loc("main", 1, 0, 1, 3), lexer.last().loc());
+        assertEquals("x", lexer.expect(TokenType.IDENTIFIER, "").string());
+        assertEquals("x", lexer.last().string());
+        assertTrue(lexer.consume(TokenType.ASSIGN));
+        assertTrue(lexer.consume(TokenType.INT_LITERAL));
+        assertTrue(lexer.isDone());
+        lexer.advance();
+        assertTrue(lexer.isDone());
+        assertEquals(TokenType.EOF, lexer.last().type());
+    }
+
+    private static void assertSameTokens(String fileName, String code) throws CompilationException {
+        List<Token> expected = lex(new RegexLexer(fileName, code));
+        assertSameTokens(expected, lex(new Lexer(fileName, code)));
+        assertSameTokens(expected, lex(Lexer.compact(fileName, code)));
+    }
+
+    private static void assertSameTokens(List<Token> expected, List<Token> actual) {
+        assertEquals(expected.size(), actual.size(), () -> "Token counts differ:\n" + expected + "\n" + actual);
+        for (int i = 0; i < expected.size(); i++) {
+            Token e = expected.get(i), a = actual.get(i);
+            assertEquals(e.type(), a.type(), "Token " + i);
+            assertEquals(e.loc(), a.loc(), "Token " + i + ", " + e.type());
+            if (e.value() instanceof Fraction f)
+                assertEquals(0, f.compareTo((Fraction) a.value()), "Token " + i);
+            else
+                assertEquals(e.value(), a.value(), "Token " + i);
+        }
+    }
+
+    private static void assertSameError(String code) {
+        LexingException expected = assertThrows(LexingException.class, () -> lex(new RegexLexer("main", code)));
+        LexingException actual = assertThrows(LexingException.class, () -> lex(new Lexer("main", code)));
+        assertEquals(expected.loc, actual.loc, code);
+        actual = assertThrows(LexingException.class, () -> lex(Lexer.compact("main", code)));
+        assertEquals(expected.loc, actual.loc, code);
+    }
+
+    private static List<Token> lex(Lexer lexer) throws CompilationException {
+        List<Token> result = new ArrayList<>();
+        while (!lexer.isDone())
+            result.add(lexer.take());
+        result.add(lexer.peek());
+        return result;
+    }
+
+    private static List<Token> lex(RegexLexer lexer) throws CompilationException {
+        List<Token> result = new ArrayList<>();
+        Token token;
+        do {
+            token = lexer.next();
+            result.add(token);
+        } while (token.type() != TokenType.EOF);
+        return result;
+    }
+
+    /**
+     * The original Scanner + regex lexer, used as the reference.
+     */
+    private static class RegexLexer {
+
+        private static final Pattern REGEX = Pattern.compile(
+                "//.*" + "|" +
+                "/\\*(\\*(?!/)|[^*])*\\*/" + "|" +
+                "(?:&&|\\|\\||\\^\\^)=?" + "|" +
+                ">>=|<<=" + "|" +
+                "\\.\\.|::|->|=>" + "|" +
+                "[-+*/%=&|^><!]=?" + "|" +
+                "[()\\[\\]{}.:;,?#~]" + "|" +
+                "\\d+(?:(\\.\\d+(?:f32|f64)?)|(?:i8|u8|i16|u16|i32|u32|i64|u64|f32|f64)?)?" + "|" +
+                "[a-zA-Z_]\\w*" + "|" +
+                "\"(?:\\\\.|[^\\\\\"])*+\"" + "|" +
+                "\n" + "|" +
+                "."
+        );
+        private static final Pattern WORD_REGEX = Pattern.compile("[a-zA-Z_]\\w*");
+        private static final Map<String, TokenType> BASIC_TOKENS = new HashMap<>();
+
+        static {
+            for (TokenType type : TokenType.values())
+                for (String alias : type.exactStrings)
+                    BASIC_TOKENS.put(alias, type);
+        }
+
+        private final Scanner scanner;
+        private final String fileName;
+        private int line = 1;
+        private int col = 0;
+
+        private RegexLexer(String fileName, String code) {
+            this.scanner = new Scanner(code);
+            this.fileName = fileName;
+        }
+
+        private Token next() throws CompilationException {
+            Token next = null;
+            while (next == null) {
+                String res = scanner.findWithinHorizon(REGEX, 0);
+                if (res == null)
+                    return new Token(new Loc(fileName, line, 0, line, 0), TokenType.EOF, null);
+                if (res.contains("\n")) {
+                    String[] substrings = res.split("\n", -1);
+                    line += substrings.length - 1;
+                    col = substrings[substrings.length - 1].length();
+                    continue;
+                }
+                next = of(res);
+                col += res.length();
+            }
+            return next;
+        }
+
+        private Token of(String text) throws CompilationException {
+            if (text.isBlank() || text.startsWith("//") || text.startsWith("/*"))
+                return null;
+            Loc loc = new Loc(fileName, line, col, line, col + text.length());
+            if (text.equals("true") || text.equals("false"))
+                return new Token(loc, TokenType.BOOL_LITERAL, Boolean.parseBoolean(text));
+            if (BASIC_TOKENS.containsKey(text))
+                return new Token(loc, BASIC_TOKENS.get(text), null);
+
+            if (Character.isDigit(text.charAt(0))) {
+                boolean floatAnnotated = text.indexOf('f') != -1;
+                if (floatAnnotated || text.indexOf('.') != -1) {
+                    if (floatAnnotated) {
+                        String withoutEnding = text.substring(0, text.length() - 3);
+                        if (text.endsWith("f32"))
+                            return new Token(loc, TokenType.FLOAT_LITERAL, Float.parseFloat(withoutEnding));
+                        return new Token(loc, TokenType.FLOAT_LITERAL, Double.parseDouble(withoutEnding));
+                    }
+                    return new Token(loc, TokenType.FLOAT_LITERAL, Fraction.parseFraction(text));
+                }
+                int index = text.indexOf('i');
+                boolean signed = index != -1;
+                if (signed || (index = text.indexOf('u')) != -1)
+                    return new Token(loc, TokenType.INT_LITERAL, new IntLiteralData(new BigInteger(text.substring(0, index)), signed, Integer.parseInt(text.substring(index + 1))));
+                return new Token(loc, TokenType.INT_LITERAL, new IntLiteralData(new BigInteger(text), false, 0));
+            }
+
+            if (WORD_REGEX.matcher(text).matches())
+                return new Token(loc, TokenType.IDENTIFIER, text);
+
+            if (text.startsWith("\"")) {
+                if (text.length() == 1 || !text.endsWith("\""))
+                    throw new LexingException("Encountered unmatched quote", loc);
+                StringBuilder builder = new StringBuilder();
+                for (int i = 1; i < text.length() - 1; i++) {
+                    char c = text.charAt(i);
+                    if (c == '\\') {
+                        char next = text.charAt(++i);
+                        builder.append(switch (next) {
+                            case '\\' -> '\\';
+                            case 'n' -> '\n';
+                            case 't' -> '\t';
+                            case 'r' -> '\r';
+                            case '"' -> '"';
+                            default -> throw new LexingException("Illegal escape character \"\\" + next + "\"", loc);
+                        });
+                    } else {
+                        builder.append(c);
+                    }
+                }
+                return new Token(loc, TokenType.STRING_LITERAL, builder.toString());
+            }
+
+            throw new LexingException("Encountered invalid token \"" + text + "\"", loc);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+import ast.parsed.expr.*;
+import ast.parsed.prog.ParsedAST;
+import ast.parsed.prog.ParsedFile;
+import ast.passes.Parser;
+import ast.passes.TypeResolver;
+import ast.type_resolved.prog.TypeResolvedAST;
+import builtin_types.BuiltinTypes;
+import exceptions.compile_time.CompilationException;
+import exceptions.compile_time.ParsingException;
+import lexing.Lexer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParserTests {
+
+    @Test
+    public void testParallelParseOrder() throws CompilationException {
+        Map<String, String> files = new HashMap<>();
+        for (int i = 0; i < 50; i++)
+            files.put("file" + i, "pub class C" + i + " { pub fn new() super() }\nSystem.print(" + i + ")");
+        files.put("main", "import \"file3\"");
+        ParsedAST ast = Parser.parseSources(files);
+        List<String> names = ast.files().stream().map(ParsedFile::name).toList();
+        assertEquals(files.keySet().stream().sorted().toList(), names);
+    }
+
+    @Test
+    public void testParallelParseFirstError() throws InterruptedException {
+        Map<String, String> files = new HashMap<>();
+        for (int i = 10; i < 60; i++)
+            files.put("file" + i, i % 7 == 0 ? "var x = )" : "var x = " + i);
+        files.put("main", "import \"file10\"");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int attempt = 0; attempt < 20; attempt++) {
+                ParsingException e = assertThrows(ParsingException.class, () -> Parser.parseSources(files, executor));
+                assertEquals("file14", e.loc.fileName());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSnuggleFileCache() throws CompilationException {
+        String source = "pub class Cached { pub fn new() super() }";
+        BuiltinTypes types = BuiltinTypes.standard().addFile("cached", source);
+        ParsedFile first = types.getParsedFile("cached");
+        assertSame(first, types.getParsedFile("cached"));
+        assertThrows(UnsupportedOperationException.class, () -> first.code().clear());
+        //Other instances have their own, but share the standard library
+        assertNotSame(first, BuiltinTypes.standard().addFile("cached", source).getParsedFile("cached"));
+        assertSame(types.getParsedFile("std/List"), BuiltinTypes.standard().getParsedFile("std/List"));
+        //Changing the file throws away the old parse
+        types.addFile("cached", source + "\nSystem.print(1)");
+        assertNotSame(first, types.getParsedFile("cached"));
+    }
+
+    @Test
+    public void testSnuggleFileCacheGoesWithBuiltinTypes() throws CompilationException {
+        //Files added by an embedder are only kept as long as the BuiltinTypes they were added to
+        BuiltinTypes types = BuiltinTypes.standard().addFile("dropped", "pub fn dropped(): i32 1");
+        WeakReference<ParsedFile> parsed = new WeakReference<>(types.getParsedFile("dropped"));
+        types = null;
+        for (int i = 0; i < 10 && parsed.get() != null; i++)
+            System.gc();
+        assertNull(parsed.get());
+    }
+
+    @Test
+    public void testSnuggleFileCacheDoesNotRetainCompilations() throws CompilationException {
+        //Cached files are shared by every compilation, so resolving one must not leave anything from it behind
+        String source = "pub class Retained { pub fn new() super() pub fn get(): i32 5 }\npub fn twice(this: i32): i32 this * 2";
+        BuiltinTypes types = BuiltinTypes.standard().addFile("retained", source);
+        TypeResolvedAST ast = TypeResolver.resolve(types, Parser.parseSources(Map.of("main", "import \"retained\"\nnew Retained().get().twice()")));
+        WeakReference<Object> resolved = new WeakReference<>(ast.typeDefs());
+        ast = null;
+        for (int i = 0; i < 10 && resolved.get() != null; i++)
+            System.gc();
+        assertNull(resolved.get());
+    }
+
+    @Test
+    public void testBinaryPrecedence() throws CompilationException {
+        assertParsesTo("a + b * c - d", "(sub (add a (mul b c)) d)");
+        assertParsesTo("a ^ b ^ c * d", "(mul (pow a (pow b c)) d)");
+        assertParsesTo("a < b + c == d", "(eq (lt a (add b c)) d)");
+        assertParsesTo("a << b + c >> d", "(shr (shl a (add b c)) d)");
+        assertParsesTo("a != b & c | d", "(or (and (not (eq a b)) c) d)");
+        assertParsesTo("a && b || c ^^ d", "(bxor (bor (band a b) c) d)");
+        assertParsesTo("-a as i32 % b", "(rem (cast (neg a)) b)");
+        assertParsesTo("a - (b - c) - d", "(sub (sub a (sub b c)) d)");
+    }
+
+    private static void assertParsesTo(String code, String expected) throws CompilationException {
+        ParsedFile file = Parser.parseFile("main", new Lexer("main", code));
+        assertEquals(1, file.code().size());
+        assertEquals(expected, render(file.code().get(0)));
+    }
+
+    //Render an expression tree as an s-expression, with && and || unwrapped from their truthy calls
+    private static String render(ParsedExpr expr) {
+        if (expr instanceof ParsedVariable v)
+            return v.name();
+        if (expr instanceof ParsedParenExpr p)
+            return render(p.inside());
+        if (expr instanceof ParsedCast c)
+            return "(cast " + render(c.lhs()) + ")";
+        if (expr instanceof ParsedLogicalBinOp op)
+            return "(" + (op.and() ? "and" : "or") + " " + render(((ParsedMethodCall) op.lhs()).receiver()) + " " + render(((ParsedMethodCall) op.rhs()).receiver()) + ")";
+        if (expr instanceof ParsedMethodCall call) {
+            String args = call.args().stream().map(a -> " " + render(a)).collect(Collectors.joining());
+            return "(" + call.methodName() + " " + render(call.receiver()) + args + ")";
+        }
+        throw new IllegalArgumentException("Unexpected expression " + expr);
+    }
+
+}
@@ -0,0 +1,513 @@
+import ast.ir.def.Program;
+import ast.ir.helper.InstructionCounter;
+import ast.ir.optimize.MethodSplitter;
+import ast.ir.optimize.PeepholeOptimizer;
+import ast.passes.GenericVerifier;
+import ast.passes.Parser;
+import ast.passes.TypeChecker;
+import ast.passes.TypeResolver;
+import ast.type_resolved.prog.TypeResolvedAST;
+import builtin_types.BuiltinTypes;
+import exceptions.compile_time.CompilationException;
+import exceptions.runtime.SnuggleException;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import runtime.LoadedProgram;
+import runtime.SnuggleInstance;
+import util.CompileOptions;
+import util.ListUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the IR: the Program made from a typed AST, and what's done to it
+ * before it becomes bytecode.
+ */
+public class ProgramTests {
+
+    @Test
+    public void testPeepholeOptimizer() throws CompilationException, SnuggleException {
+        Program program = program("""
+                fn f(x: i32): i32 {
+                    var y = x + 1
+                    var z = y * 2
+                    z
+                }
+                var a: i32 = 5
+                a
+                a
+                Test.assertEquals(12, f(a))
+                """);
+        Map<String, PeepholeOptimizer.Stats> stats = program.peepholeStats();
+        //Each declaration loses its load and pop, and the two statements lose their load and pop
+        PeepholeOptimizer.Stats main = stats.get("file main");
+        assertNotNull(main, stats.toString());
+        assertTrue(main.removedInstructions() >= 6, main.toString());
+        assertTrue(main.removedBytes() >= 6, main.toString());
+        System.out.println(stats);
+        //The removed instructions must not change what it does
+        program.compileToInstance().run();
+    }
+
+    @Test
+    public void testInstructionCap() throws CompilationException, SnuggleException {
+        Program forever = program("""
+                var i: i32 = 0
+                while true i = i + 1
+                """);
+        SnuggleInstance instance = forever.compileToInstance();
+        instance.setInstructionCap(1000000);
+        SnuggleException e = assertThrows(SnuggleException.class, instance::run);
+        assertTrue(e.getMessage().contains("instruction cap"), e.getMessage());
+        //Counts are flushed now and then, so the cap is overshot by a little
+        long used = instance.getUsedInstructions();
+        assertTrue(used > 1000000 && used < 1000000 + 2 * InstructionCounter.FLUSH_THRESHOLD, "used " + used);
+
+        //Recursion counts too, and each instance counts separately
+        String fib = """
+                fn fib(n: i32): i32 if n < 2 n else fib(n - 1) + fib(n - 2)
+                Test.assertEquals(6765, fib(20))
+                """;
+        SnuggleInstance first = program(fib).compileToInstance();
+        SnuggleInstance second = program(fib).compileToInstance();
+        first.run();
+        assertTrue(first.getUsedInstructions() > 20000, "used " + first.getUsedInstructions());
+        assertEquals(0, second.getUsedInstructions());
+        //Changing the cap doesn't change the count, and the other way around
+        long firstUsed = first.getUsedInstructions();
+        first.setInstructionCap(firstUsed + 1000);
+        assertEquals(firstUsed, first.getUsedInstructions());
+        first.setUsedInstructions(5);
+        assertEquals(5, first.getUsedInstructions());
+        assertEquals(firstUsed + 1000, first.getInstructionCap());
+        second.setInstructionCap(1000);
+        assertThrows(SnuggleException.class, second::run);
+
+        //Uncounted code ignores the cap
+        SnuggleInstance uncounted = program(fib).compileToInstance(CompileOptions.DEBUG.withCountInstructions(false));
+        uncounted.setInstructionCap(0);
+        uncounted.run();
+        assertEquals(0, uncounted.getUsedInstructions());
+    }
+
+    @Test
+    public void testInstancesOfLoadedProgram() throws Exception {
+        LoadedProgram loaded = program("""
+                class Counter {
+                    static var count: i32
+                }
+                var i: i32 = 0
+                while i < 1000 {
+                    Counter.count = Counter.count + 1
+                    i = i + 1
+                }
+                Test.assertEquals(1000, Counter.count)
+                """).compileToLoadedProgram(CompileOptions.DEBUG);
+        //Each instance has its own static fields and count, even when running at the same time
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> used = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                used.add(executor.submit(() -> {
+                    SnuggleInstance instance = loaded.newInstance();
+                    instance.run();
+                    return instance.getUsedInstructions();
+                }));
+            }
+            long first = used.get(0).get();
+            for (Future<Long> f : used)
+                assertEquals(first, f.get());
+        } finally {
+            executor.shutdown();
+        }
+        //But running the same instance again keeps its state, so the count goes to 2000
+        SnuggleInstance instance = loaded.newInstance();
+        instance.run();
+        assertThrows(AssertionError.class, instance::run);
+    }
+
+    @Test
+    public void testLambdaCalledAfterRun() throws Exception {
+        //A lambda Java kept can't find an instance to run in once run() returns, and says so
+        SnuggleInstance instance = program("""
+                class Counter {
+                    static var count: i32
+                }
+                var f: () -> i32 = () -> Counter.count
+                Test.keep(f)
+                Test.assertEquals(0, f())
+                """).compileToInstance(CompileOptions.DEBUG);
+        instance.run();
+        Object kept = TestBindings.kept;
+        TestBindings.kept = null;
+        Method invoke = ListUtils.find(List.of(kept.getClass().getMethods()), m -> m.getName().equals("invoke"));
+        InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> invoke.invoke(kept));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    public void testParallelClassGenerationIsDeterministic() throws Exception {
+        StringBuilder main = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            main.append("class C").append(i).append(" { fn new() super() fn get(): i32 ").append(i).append(" }\n");
+            main.append("struct S").append(i).append(" { var x: i32 var y: f64 }\n");
+            main.append("Test.assertEquals(").append(i).append(", new C").append(i).append("().get())\n");
+        }
+        //Sequential, then in parallel a few times, in the same jar entry order with the same bytes
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Map<String, byte[]> sequential = jarEntries(program(main.toString()), CompileOptions.PRODUCTION.withExecutor(null));
+            for (int i = 0; i < 5; i++) {
+                Map<String, byte[]> parallel = jarEntries(program(main.toString()), CompileOptions.PRODUCTION.withExecutor(executor));
+                assertEquals(List.copyOf(sequential.keySet()), List.copyOf(parallel.keySet()));
+                for (String name : sequential.keySet())
+                    assertArrayEquals(sequential.get(name), parallel.get(name), name);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        program(main.toString()).compileToInstance(CompileOptions.PRODUCTION).run();
+    }
+
+    @Test
+    public void testFramesFromIr() throws CompilationException, SnuggleException {
+        //Merges of locals and stack values of different types, loops, and code after returns
+        String main = """
+                class Animal {
+                    fn new() super()
+                    fn legs(): i32 4
+                }
+                class Bird : Animal {
+                    fn new() super()
+                    fn legs(): i32 2
+                }
+                class Snake : Animal {
+                    fn new() super()
+                    fn legs(): i32 0
+                }
+                fn pick(i: i32): Animal {
+                    if i % 3 == 0 return new Snake()
+                    if i % 3 == 1 new Bird() else new Animal()
+                }
+                fn firstOver(limit: u64): u64? {
+                    var i = 0u64
+                    while i < 100 {
+                        if i * i > limit return new u64?(i)
+                        i += 1
+                    }
+                    new u64?()
+                }
+                var animal: Animal = new Bird()
+                var legs: i32 = 0
+                var total: i32 = 0
+                var big = 0i64
+                var scale = 1.5f64
+                var i: i32 = 0
+                while i < 9 {
+                    legs += animal.legs()
+                    animal = pick(i)
+                    var j: i32 = 0
+                    while j < i {
+                        var inner: Animal = if j % 2 == 0 new Bird() else new Snake()
+                        total += inner.legs()
+                        big += 3
+                        scale *= 1.0
+                        j += 1
+                    }
+                    i += 1
+                }
+                Test.assertEquals(2 + 0 + 2 + 4 + 0 + 2 + 4 + 0 + 2, legs)
+                Test.assertEquals(40, total)
+                Test.assertEquals(108i64, big)
+                Test.assertEquals(5u64, firstOver(20).get())
+                Test.assertFalse(firstOver(1000000).bool())
+                """;
+        //FrameTracker knows animal is always an Animal, from its declared type
+        program(main).compileToInstance(CompileOptions.DEBUG).run();
+        //ASM merges the Bird it starts as with the Animal it's set to in the loop into Object,
+        //since the classes being generated can't be loaded to find a common superclass.
+        //FrameChecker catches that when compiling, and without it the JVM does when loading.
+        IllegalStateException checked = assertThrows(IllegalStateException.class, () -> program(main).compileToInstance(CompileOptions.DEBUG.withAsmFrames(true)));
+        assertTrue(checked.getMessage().contains("snuggle/main/Animal"), checked.getMessage());
+        assertThrows(VerifyError.class, () -> program(main).compileToInstance(CompileOptions.PRODUCTION.withAsmFrames(true)).run());
+    }
+
+    @Test
+    public void testMethodSplitting() throws CompilationException, SnuggleException {
+        //Long top-level code and long methods, with locals of every kind of type going in and out of the helpers
+        StringBuilder main = new StringBuilder("""
+                class Counter {
+                    var n: i32
+                    fn new() { super(); this.n = 0; }
+                    fn bump(by: i32) { this.n = this.n + by; }
+                    fn many(k: i32): i64 {
+                        var sum: i64 = 0
+                """);
+        for (int i = 0; i < 40; i++)
+            main.append("        sum = sum + ").append(i).append("\n        this.n = this.n + k\n");
+        main.append("""
+                        sum
+                    }
+                }
+                struct Pair {
+                    var a: i64
+                    var b: f64
+                }
+                fn crunch(x: i32): i32 {
+                    var acc: i32 = x
+                    if x < 0 { return x + 1; }
+                """);
+        int acc = 5;
+        for (int i = 0; i < 100; i++) {
+            main.append("    acc = acc * 3 % 1000 + ").append(i).append('\n');
+            acc = acc * 3 % 1000 + i;
+        }
+        main.append("""
+                    acc
+                }
+                var total: i32 = 0
+                var big: i64 = 1
+                var ratio: f64 = 0.5
+                var name: Str = ""
+                var counter = new Counter()
+                var pair = new Pair { 1, 2.0 }
+                """);
+        int total = 0, counted = 0;
+        long big = 1;
+        double ratio = 0.5;
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            main.append("total = total + ").append(i).append('\n');
+            total += i;
+            main.append("big = big * 3 % 1000000007 + ").append(i).append('\n');
+            big = big * 3 % 1000000007 + i;
+            main.append("if total % 7 == 0 { ratio = ratio + 1.0; } else { name = name + \"y\"; }\n");
+            if (total % 7 == 0) ratio += 1; else name.append('y');
+            main.append("counter.bump(").append(i).append(")\n");
+            counted += i;
+            main.append("var tmp").append(i).append(": i32 = total + ").append(i).append('\n');
+            main.append("pair = new Pair { pair.a + 1, pair.b + ratio }\n");
+        }
+        main.append("Test.assertEquals(").append(total).append(", total)\n");
+        main.append("Test.assertEquals(").append(big).append("i64, big)\n");
+        main.append("Test.assertEquals(\"").append(name).append("\", name)\n");
+        main.append("Test.assertEquals(").append(counted).append(", counter.n)\n");
+        main.append("Test.assertEquals(101i64, pair.a)\n");
+        main.append("Test.assertEquals(").append(total + 99).append(", tmp99)\n");
+        main.append("Test.assertEquals(").append(acc).append(", crunch(5))\n");
+        main.append("Test.assertEquals(-1, crunch(-2))\n");
+        main.append("Test.assertEquals(780i64, counter.many(2))\n");
+        main.append("Test.assertEquals(").append(counted + 80).append(", counter.n)\n");
+
+        Program program = program(main.toString());
+        SnuggleInstance split = program.compileToInstance(CompileOptions.DEBUG.withMaxMethodSize(600));
+        Map<String, MethodSplitter.Split> splits = program.splitMethods();
+        System.out.println(splits);
+        for (String method : List.of("file main", "snuggle/main/crunch.invoke", "snuggle/main/Counter.many"))
+            assertTrue(splits.containsKey(method), method + " wasn't split: " + splits);
+        split.run();
+        //Splitting doesn't change what's counted
+        Program unsplit = program(main.toString());
+        SnuggleInstance whole = unsplit.compileToInstance(CompileOptions.DEBUG.withMaxMethodSize(0).withHoistLoops(false));
+        assertEquals(Map.of(), unsplit.splitMethods());
+        whole.run();
+        assertEquals(whole.getUsedInstructions(), split.getUsedInstructions());
+    }
+
+    @Test
+    public void testSplittingInsideLoop() throws Exception {
+        //One loop over the limit, in a function and in the top-level code, changing several locals of different types
+        StringBuilder body = new StringBuilder();
+        int a = 1;
+        long b = 2;
+        double c = 0.5;
+        for (int i = 0; i < 60; i++) {
+            body.append("        a = a * 7 % 1009 + ").append(i).append('\n');
+            body.append("        b = b * 3 % 1000003 + ").append(i).append('\n');
+            body.append("        c = c + 0.25\n");
+            a = a * 7 % 1009 + i;
+            b = b * 3 % 1000003 + i;
+            c += 0.25;
+        }
+        String main = """
+                fn loop(n: i32): i64 {
+                    var a: i32 = 1
+                    var b: i64 = 2
+                    var c: f64 = 0.5
+                    var i: i32 = 0
+                    while i < n {
+                %s        i = i + 1
+                    }
+                    b
+                }
+                var a: i32 = 1
+                var b: i64 = 2
+                var c: f64 = 0.5
+                var i: i32 = 0
+                while i < 1 {
+                %s    i = i + 1
+                }
+                Test.assertEquals(%d, a)
+                Test.assertEquals(%di64, b)
+                Test.assertEquals(%s, c)
+                Test.assertEquals(%di64, loop(1))
+                """.formatted(body, body.toString().replace("        ", "    "), a, b, c, b);
+        Program program = program(main);
+        SnuggleInstance split = program.compileToInstance(CompileOptions.DEBUG.withMaxMethodSize(600));
+        for (String method : List.of("file main", "snuggle/main/loop.invoke"))
+            assertTrue(program.splitMethods().containsKey(method), method + " wasn't split: " + program.splitMethods());
+        split.run();
+        //The locals going out of the helpers aren't boxed
+        Map<String, byte[]> classes = jarEntries(program(main), CompileOptions.PRODUCTION.withMaxMethodSize(600));
+        for (Map.Entry<String, byte[]> entry : classes.entrySet())
+            assertFalse(new String(entry.getValue(), java.nio.charset.StandardCharsets.ISO_8859_1).contains("valueOf"), entry.getKey());
+        //Splitting doesn't change what's counted
+        SnuggleInstance whole = program(main).compileToInstance(CompileOptions.DEBUG.withMaxMethodSize(0));
+        whole.run();
+        assertEquals(whole.getUsedInstructions(), split.getUsedInstructions());
+    }
+
+    @Test
+    public void testLoopHoisting() throws CompilationException, SnuggleException {
+        //Top-level loops, one giving a result and one not, using and changing the variables around them
+        String main = """
+                import "std/List"
+                var total: i32 = 0
+                var big: i64 = 1
+                var name: Str = ""
+                var list: List<i32> = new()
+                var i: i32 = 0
+                while i < 50 {
+                    total = total + i
+                    big = big * 3 % 1000000007
+                    list += i
+                    i = i + 1
+                }
+                var last = while i > 40 {
+                    i = i - 1
+                    name = name + "x"
+                    i
+                }
+                Test.assertEquals(1225, total)
+                Test.assertEquals(710104287i64, big)
+                Test.assertEquals(50u32, list.size())
+                Test.assertEquals("xxxxxxxxxx", name)
+                Test.assertEquals(40, *last)
+                """;
+        Program program = program(main);
+        SnuggleInstance hoisted = program.compileToInstance(CompileOptions.DEBUG.withHoistLoops(true));
+        MethodSplitter.Split split = program.splitMethods().get("file main");
+        assertNotNull(split, "loops weren't hoisted: " + program.splitMethods());
+        assertEquals(2, split.helperBytes().size());
+        hoisted.run();
+        //Hoisting doesn't change what's counted
+        Program inline = program(main);
+        SnuggleInstance whole = inline.compileToInstance(CompileOptions.DEBUG.withHoistLoops(false));
+        assertFalse(inline.splitMethods().containsKey("file main"));
+        whole.run();
+        assertEquals(whole.getUsedInstructions(), hoisted.getUsedInstructions());
+    }
+
+    @Test
+    public void testDevirtualizedCalls() throws Exception {
+        StringBuilder sum = new StringBuilder("x");
+        for (int i = 1; i <= 12; i++)
+            sum.append(" + x * ").append(i);
+        String main = """
+                import "std/List"
+                import "std/Box"
+                inline fn marked(x: i32): i32 %s
+                fn unmarked(x: i32): i32 %s
+                var list = new List<i32>()
+                list += 1
+                list += 2
+                var box = new Box<i32>(5)
+                Test.assertEquals(2u32, list.size())
+                Test.assertEquals(2u32, #list)
+                Test.assertEquals(5, box.get())
+                box.set(6)
+                Test.assertEquals(6, *box)
+                Test.assertEquals(79, marked(1))
+                Test.assertEquals(79, unmarked(1))
+                """.formatted(sum, sum);
+        //Nothing extends List or Box, so their methods are inlined like a struct's would be
+        program(main).compileToInstance(CompileOptions.DEBUG).run();
+        List<String> calls = topLevelCalls(program(main));
+        for (String call : List.of("snuggle/std/List/List(i32).size", "snuggle/std/Box/Box(i32).get", "snuggle/std/Box/Box(i32).set", "snuggle/main/marked.invoke"))
+            assertFalse(calls.contains(call), call + " was called: " + calls);
+        //Methods too big to inline on their own are still called, unless they're marked inline
+        assertTrue(calls.contains("snuggle/main/unmarked.invoke"), "unmarked wasn't called: " + calls);
+
+        //Once a class extends Box, a Box could be that class, so calls to Box's methods stay virtual
+        String extended = main + """
+                class Counter : Box<i32> {
+                    pub fn new() super(0)
+                }
+                """;
+        program(extended).compileToInstance(CompileOptions.DEBUG).run();
+        calls = topLevelCalls(program(extended));
+        assertTrue(calls.contains("snuggle/std/Box/Box(i32).get"), "Box.get wasn't called: " + calls);
+        assertFalse(calls.contains("snuggle/std/List/List(i32).size"), "List.size was called: " + calls);
+    }
+
+    //The owner and name of each method called in the top-level code of the main file, in order
+    private static List<String> topLevelCalls(Program program) throws Exception {
+        List<String> calls = new ArrayList<>();
+        byte[] files = jarEntries(program, CompileOptions.PRODUCTION).get("snuggle/Files.class");
+        new ClassReader(files).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!name.equals("importFile_main"))
+                    return null;
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                        calls.add(owner + "." + name);
+                    }
+                };
+            }
+        }, 0);
+        return calls;
+    }
+
+    private static Map<String, byte[]> jarEntries(Program program, CompileOptions options) throws Exception {
+        File jar = File.createTempFile("snuggle", ".jar");
+        try {
+            program.compileToJar(jar, options);
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            try (JarInputStream in = new JarInputStream(new FileInputStream(jar))) {
+                for (JarEntry entry = in.getNextJarEntry(); entry != null; entry = in.getNextJarEntry())
+                    entries.put(entry.getName(), in.readAllBytes());
+            }
+            return entries;
+        } finally {
+            jar.delete();
+        }
+    }
+
+    private static Program program(String main) throws CompilationException {
+        BuiltinTypes types = BuiltinTypes.standard();
+        types.reflectType(TestBindings.class);
+        TypeResolvedAST typeResolvedAST = TypeResolver.resolve(types, Parser.parseSources(Map.of("main", main)));
+        GenericVerifier.verifyGenerics(typeResolvedAST);
+        return Program.of(TypeChecker.type(typeResolvedAST));
+    }
+
+}
@@ -1,5 +1,6 @@
 import builtin_types.BuiltinTypes;
 import exceptions.compile_time.CompilationException;
+import exceptions.compile_time.NoSuitableMethodException;
 import exceptions.compile_time.ParsingException;
 import exceptions.compile_time.TooManyMethodsException;
 import exceptions.compile_time.TypeCheckingException;
@@ -9,6 +10,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import runtime.SnuggleInstance;
 import util.CompileAll;
+import util.CompileOptions;
 
 import java.io.File;
 import java.io.IOException;
@@ -18,8 +20,13 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -247,6 +254,99 @@ public class SnuggleTests {
                 """);
     }
 
+    @Test
+    public void testForLoopIndexedAndRanges() throws CompilationException, SnuggleException {
+        test("""
+                import "std/List"
+                
+                //Arrays
+                var arr = new Array<i32>(4)
+                arr[0] = 1
+                arr[1] = 2
+                arr[2] = 3
+                arr[3] = 4
+                var sum: i32 = 0
+                for x: i32 in arr sum = sum + x
+                Test.assertEquals(10, sum)
+                
+                //Arrays of plural types
+                var pairs = new Array<(i32, i32)>(2)
+                pairs[0] = (1, 2)
+                pairs[1] = (3, 4)
+                sum = 0
+                for p: (i32, i32) in pairs sum = sum + p.v0 * p.v1
+                Test.assertEquals(14, sum)
+                
+                //Lists, which see elements added during the loop, like their iter() does
+                var list = new List<i32>()
+                list += 1
+                list += 2
+                var seen: i32 = 0
+                for x: i32 in list {
+                    var next = x + 2
+                    if x < 4 list += next
+                    seen = seen + 1
+                }
+                Test.assertEquals(5, seen)
+                Test.assertEquals(5, list.size())
+                
+                //Ranges, which don't include the end, and evaluate the end once
+                sum = 0
+                var end: i32 = 5
+                for i: i32 in 1..end {
+                    sum = sum + i
+                    end = 100
+                }
+                Test.assertEquals(10, sum)
+                for i: u64 in 10..10 sum = 0
+                Test.assertEquals(10, sum)
+                
+                //Nested loops
+                var count: i32 = 0
+                for i: i32 in 0..3
+                    for x: i32 in arr
+                        for y: i32 in list
+                            count = count + 1
+                Test.assertEquals(60, count)
+                
+                //The loop's value is still an Option of the body's value
+                var last = for x: i32 in arr "looped"
+                Test.assertTrue(last.isPresent())
+                """);
+    }
+
+    @Test
+    public void testForLoopOverListSubclass() throws CompilationException, SnuggleException {
+        //A List variable can hold a subclass, whose iter() must still be used
+        test("""
+                import "std/List"
+                import "std/Box"
+                
+                class Reversed: List<i32> {
+                    fn new() super()
+                    fn iter(): () -> i32? {
+                        var i: Box<u32> = new(#this);
+                        () -> {
+                            if *i == 0
+                                new()
+                            else {
+                                *i -= 1
+                                new(this[*i])
+                            }
+                        }
+                    }
+                }
+                
+                var list: List<i32> = new Reversed()
+                list += 1
+                list += 2
+                list += 3
+                var last: i32 = 0
+                for x: i32 in list last = x
+                Test.assertEquals(1, last)
+                """);
+    }
+
     @Test
     public void testSillyBindOperator() throws CompilationException, SnuggleException {
         test("""
@@ -298,6 +398,66 @@ public class SnuggleTests {
                 """);
     }
 
+    @Test
+    public void testExtensionMethodScopes() throws CompilationException, SnuggleException {
+        test("""
+                fn twice(this: i32): i32 this * 2
+                fn plus(this: i32, x: i32): i32 this + x
+                fn plus(this: i32, x: i32, y: i32): i32 this + x + y
+                var n: i32 = 5
+                Test.assertEquals(10, n.twice())
+                Test.assertEquals(6, n.plus(1))
+                Test.assertEquals(8, n.plus(1, 2))
+                {
+                    fn thrice(this: i32): i32 this * 3
+                    Test.assertEquals(15, n.thrice())
+                    Test.assertEquals(30, n.twice().thrice())
+                }
+                var f: i32 -> i32 = x -> {
+                    fn half(this: i32): i32 this / 2
+                    x.twice().half()
+                }
+                Test.assertEquals(7, f(7))
+                """);
+        assertThrows(NoSuitableMethodException.class, () -> test("""
+                {
+                    fn thrice(this: i32): i32 this * 3
+                }
+                var n: i32 = 5
+                n.thrice()
+                """));
+    }
+
+    @Test
+    public void testInlining() throws CompilationException, SnuggleException {
+        test("""
+                import "std/Box"
+                import "std/complex"
+                fn sub(a: i32, b: i32): i32 a - b
+                fn next(counter: Box<i32>): i32 { counter.set(counter.get() + 1) }
+                fn fact(x: i32): i32 if x == 0 1 else x * fact(x - 1)
+                fn swap(x: i32, y: i32): (i32, i32) (y, x)
+                
+                //Args are evaluated in order, once each
+                var counter = new Box<i32>(0)
+                Test.assertEquals(-1, sub(next(counter), next(counter)))
+                Test.assertEquals(2, counter.get())
+                //Params shadow the caller's variables, and don't change them
+                var a: i32 = 10
+                var b: i32 = 3
+                Test.assertEquals(-7, sub(b, a))
+                Test.assertEquals(10, a)
+                //Recursive methods still work
+                Test.assertEquals(120, fact(5))
+                //Plural results, and picking one of their fields
+                Test.assertEquals(3, swap(a, b).v0)
+                var c: complex<i32> = new {1, 2}
+                var d = c * c + c
+                Test.assertEquals(-2, d.real)
+                Test.assertEquals(6, (c * c + c).imag)
+                """);
+    }
+
     @Test
     public void testEvent() throws CompilationException, SnuggleException {
         test("""
@@ -864,6 +1024,48 @@ public class SnuggleTests {
                 """);
     }
 
+    @Test
+    public void testSubclassDeclaredFirst() throws CompilationException, SnuggleException {
+        test("""
+                class D: C { fn new() super() fn d(): i32 4 }
+                class C: B<i32> { fn new() super() }
+                class B<T>: A { fn new() super() fn b(): i32 2 }
+                class A { fn new() super() fn a(): i32 1 }
+                var d = new D()
+                Test.assertEquals(7, d.a() + d.b() + d.d())
+                var a: A = d
+                Test.assertEquals(1, a.a())
+                """);
+    }
+
+    @Test
+    public void testIsSubtypeHierarchy() throws CompilationException, SnuggleException {
+        test("""
+                class A { fn new() super() }
+                class B: A { fn new() super() }
+                class C: B { fn new() super() }
+                class D: A { fn new() super() }
+                class E: D { fn new() super() }
+                class Box<T>: C { fn new() super() }
+
+                Test.assertTrue(is C A)
+                Test.assertTrue(is C B)
+                Test.assertTrue(is C Obj)
+                Test.assertTrue(is E A)
+                Test.assertFalse(is E B)
+                Test.assertFalse(is C D)
+                Test.assertFalse(is A C)
+                Test.assertFalse(is D E)
+                Test.assertTrue(is Box<i32> B)
+                Test.assertFalse(is Box<i32> Box<i64>)
+                Test.assertFalse(is Box<i32> E)
+                Test.assertFalse(is C Str)
+                Test.assertFalse(is i32 A)
+                var f: i32 -> i32 = x -> x
+                var g: Obj = f
+                """);
+    }
+
     @Test
     public void testBitShifts() throws CompilationException, SnuggleException {
         test("""
@@ -1100,6 +1302,97 @@ public class SnuggleTests {
                 """));
     }
 
+    @Test
+    public void testUnusedLoopAndIfResults() throws CompilationException, SnuggleException {
+        test("""
+                import "std/complex"
+                var i: i32 = 0
+                var sum: i32 = 0
+                //Plural body, whose value is unused
+                var c: complex<i32> = new {0, 0}
+                while i < 5 {
+                    i = i + 1
+                    sum = sum + i
+                    c = c + 1
+                    c
+                }
+                Test.assertEquals(5, i)
+                Test.assertEquals(15, sum)
+                Test.assertEquals(5, c.real)
+                //Ifs without an else, with and without a value
+                if i == 5 sum = 0
+                Test.assertEquals(0, sum)
+                if i == 6 { sum = 1 c }
+                Test.assertEquals(0, sum)
+                //Ifs with an else, nested in blocks
+                {
+                    if i > 3 { sum = 2 } else { sum = 3 }
+                    if i < 3 { sum = sum + 10 c } else { c }
+                }
+                Test.assertEquals(2, sum)
+                //The value is still there when it's used
+                var j: i32 = 0
+                var last = while j < 3 {
+                    j = j + 1
+                    "loop ran"
+                }
+                Test.assertTrue(last.isPresent())
+                var notLast = if j > 5 "if ran"
+                Test.assertFalse(notLast.isPresent())
+                """);
+    }
+
+    @Test
+    public void testPluralReturnsOnManyThreads() throws Exception {
+        BuiltinTypes types = BuiltinTypes.standard();
+        types.reflectType(TestBindings.class);
+        SnuggleInstance instance = CompileAll.compileAllToInstance(types, Map.of("main", """
+                struct Small { var a: i32 var b: i32 }
+                struct Mixed { var flag: bool var b: i8 var f: f32 var c: u16 }
+                struct Big { var a: i64 var b: i64 var s: Str }
+                //The returns stop these from being inlined
+                fn small(i: i32): Small { return new Small { i, i * 2 } }
+                fn mixed(b: i8, f: f32, c: u16): Mixed { return new Mixed { b < 0, b, f, c } }
+                fn big(i: i64): Big { return new Big { i, i * 3, "big" } }
+                fn tuple(i: i32, f: f64): (i32, f64) { return (i, f) }
+                fn maybe(i: i64, present: bool): i64? { if present return new(i) else return new() }
+                var i: i32 = 0
+                var l: i64 = 0
+                var d: f64 = 0
+                var c: u16 = 65000
+                while i < 20000 {
+                    var s = small(i)
+                    Test.assertEquals(i, s.a)
+                    Test.assertEquals(i * 2, s.b)
+                    var m = mixed(-5, 1.5, c)
+                    Test.assertTrue(m.flag)
+                    Test.assertEquals(-5, m.b)
+                    Test.assertEquals(1.5, m.f)
+                    Test.assertEquals(c, m.c)
+                    var b = big(l)
+                    Test.assertEquals(l * 3, b.b)
+                    Test.assertEquals(l, b.a)
+                    Test.assertEquals(d, tuple(i, d).v1)
+                    Test.assertEquals(l, maybe(l, true).get())
+                    Test.assertFalse(maybe(l, false).isPresent())
+                    i = i + 1
+                    l = l + 1
+                    d = d + 0.5
+                }
+                """));
+        //Threads running the same code at once must not see each other's return values
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int i = 0; i < 32; i++)
+                runs.add(executor.submit(() -> { instance.run(); return null; }));
+            for (Future<?> run : runs)
+                run.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testOption() {
         assertThrows(SnuggleException.class, () -> test("""
@@ -1209,6 +1502,36 @@ public class SnuggleTests {
                 """);
     }
 
+    @Test
+    public void testInheritedOverloads() throws CompilationException, SnuggleException {
+        test("""
+                class A {
+                    fn new() super()
+                    fn f(): i32 1
+                    fn f(x: i32): i32 x + 10
+                    fn g(x: i32, y: i32): i32 x * y
+                    static fn h(): i32 5
+                }
+                class B: A {
+                    fn new() super()
+                    fn f(): i32 2
+                    fn f(x: i32): i32 super.f(x) + 100
+                }
+                class C: B {
+                    fn new() super()
+                    fn g(x: i32, y: i32): i32 x - y
+                }
+                var c = new C()
+                Test.assertEquals(2, c.f())
+                Test.assertEquals(115, c.f(5))
+                Test.assertEquals(-2, c.g(3, 5))
+                Test.assertEquals(5, A.h())
+                var a: A = new B()
+                Test.assertEquals(2, a.f())
+                Test.assertEquals(12, a.g(3, 4))
+                """);
+    }
+
     @Test
     public void testMultipleCallable() {
         assertThrows(TooManyMethodsException.class, () -> test("""
@@ -1334,18 +1657,16 @@ public class SnuggleTests {
         types.reflectType(TestBindings.class);
         try {
             var before = System.nanoTime();
-            var instance = CompileAll.compileAllToInstance(types, files);
+            var instance = CompileAll.compileAllToInstance(types, files, CompileOptions.DEBUG);
             var after = System.nanoTime();
             System.out.println("Compilation took " + (after - before) / 1000000 + " ms");
             before = after;
-            SnuggleInstance.INSTRUCTIONS = 0;
             instance.run();
             after = System.nanoTime();
             System.out.println("Running took " + (after - before) / 1000000 + " ms");
-            System.out.println("Cost was " + SnuggleInstance.INSTRUCTIONS);
-            SnuggleInstance.INSTRUCTIONS = 0; //reset just in case
+            System.out.println("Cost was " + instance.getUsedInstructions());
             if (export != null)
-                CompileAll.compileAllToJar(export, types, files);
+                CompileAll.compileAllToJar(export, types, files, CompileOptions.DEBUG);
         } catch (CompilationException | SnuggleException | RuntimeException e) {
             // propagate exceptions
             throw e;
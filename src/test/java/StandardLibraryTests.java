@@ -0,0 +1,51 @@
+import ast.parsed.expr.ParsedTypeDefExpr;
+import ast.parsed.prog.ParsedFile;
+import builtin_types.StandardLibrary;
+import exceptions.compile_time.CompilationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StandardLibraryTests {
+
+    @Test
+    public void testBundleMatchesSources() throws CompilationException {
+        assertNotNull(Thread.currentThread().getContextClassLoader().getResource(StandardLibrary.BUNDLE_RESOURCE), "Bundle should be generated by the build");
+        Map<String, String> sources = StandardLibrary.readDirectory(Path.of("src/main/resources/std"));
+        assertEquals(sources, StandardLibrary.sources());
+        assertSameParse(StandardLibrary.parse(sources), StandardLibrary.parsedFiles());
+    }
+
+    @Test
+    public void testBundleRoundTrip() throws IOException, CompilationException {
+        Map<String, String> sources = Map.of("std/a", "", "std/nested/b", "pub class B { pub fn new() super() }\n// \u00fcn\u00efc\u00f6d\u00e9\n", "std/c", "var x: f64 = 1.5\n".repeat(10000));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StandardLibrary.writeBundle(new StandardLibrary.Bundle(sources, StandardLibrary.parse(sources)), out);
+        StandardLibrary.Bundle read = StandardLibrary.readBundle(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(sources, read.sources());
+        assertSameParse(StandardLibrary.parse(sources), read.parsedFiles());
+        //A type definition is in both the code and the file's list of them, and has to stay one object
+        ParsedFile b = read.parsedFiles().get("std/nested/b");
+        assertSame(b.topLevelTypeDefs().get(0), ((ParsedTypeDefExpr) b.code().get(0)).typeDef());
+        assertThrows(IOException.class, () -> StandardLibrary.readBundle(new ByteArrayInputStream(new byte[] {1, 2, 3, 4})));
+    }
+
+    //Imports hold a Mutable, which has no equals(), so compare everything else
+    private static void assertSameParse(Map<String, ParsedFile> expected, Map<String, ParsedFile> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((name, file) -> {
+            ParsedFile other = actual.get(name);
+            assertEquals(file.topLevelTypeDefs(), other.topLevelTypeDefs(), name);
+            assertEquals(file.topLevelExtensionMethods(), other.topLevelExtensionMethods(), name);
+            assertEquals(file.topLevelImports().size(), other.topLevelImports().size(), name);
+            assertEquals(file.code().size(), other.code().size(), name);
+        });
+    }
+
+}
@@ -74,4 +74,11 @@ public class TestBindings {
     public static byte[] hex(String s) {
         return HexFormat.of().parseHex(s);
     }
+
+    //Something Snuggle code handed to Java, for tests to use after it's run
+    public static Object kept;
+
+    public static void keep(Object o) {
+        kept = o;
+    }
 }
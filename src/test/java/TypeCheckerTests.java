@@ -0,0 +1,88 @@
+import ast.ir.def.Program;
+import ast.passes.GenericVerifier;
+import ast.passes.Parser;
+import ast.passes.TypeChecker;
+import ast.passes.TypeResolver;
+import ast.type_resolved.prog.TypeResolvedAST;
+import ast.typed.def.type.FuncImplTypeDef;
+import ast.typed.prog.TypedAST;
+import builtin_types.BuiltinTypes;
+import exceptions.compile_time.CompilationException;
+import exceptions.runtime.SnuggleException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for how the TypeChecker names lambda impls. Programs are type checked
+ * several times, and must produce the same TypeDefs in the same order every
+ * time, with the same lambda names, then run correctly.
+ */
+public class TypeCheckerTests {
+
+    @Test
+    public void testLambdaNamesStable() throws CompilationException, SnuggleException {
+        //Classes that use each other, generic methods and types from the standard library
+        StringBuilder main = new StringBuilder("import \"std/List\"\nimport \"std/Box\"\n");
+        int classes = 20;
+        for (int i = 0; i < classes; i++) {
+            main.append("class C").append(i).append(" {\n");
+            main.append("    fn new() super()\n");
+            main.append("    fn id<T>(x: T): T x\n");
+            main.append("    fn work(n: i32): i32 {\n");
+            main.append("        var list = new List<i32>()\n");
+            main.append("        list += this.id(n)\n");
+            main.append("        var box = new Box<i32>(list[0u32])\n");
+            main.append("        var f: i32 -> i32 = x -> x + ").append(i).append("\n");
+            if (i > 0)
+                main.append("        f(box.v) + new C").append(i - 1).append("().work(n)\n");
+            else
+                main.append("        f(box.v)\n");
+            main.append("    }\n");
+            main.append("}\n");
+        }
+        main.append("Test.assertEquals(").append(classes * (classes - 1) / 2 + classes).append(", new C").append(classes - 1).append("().work(1))\n");
+        Map<String, String> files = Map.of("main", main.toString());
+        TypedAST typedAST = typeCheck(files);
+        List<String> expectedNames = names(typedAST);
+        for (int i = 0; i < 3; i++)
+            assertEquals(expectedNames, names(typeCheck(files)));
+        Program.of(typedAST).compileToInstance().run();
+    }
+
+    @Test
+    public void testLambdaRegisteredOnce() throws CompilationException, SnuggleException {
+        //The same lambda in the same context is one impl, however many times it's checked
+        String main = """
+                class Adder {
+                    fn new() super()
+                    fn twice(x: i32, f: i32 -> i32): i32 f(f(x))
+                    fn addTwo<T>(x: i32): i32 this.twice(x, y -> y + 1)
+                }
+                var adder = new Adder()
+                Test.assertEquals(3, adder.addTwo::<i32>(1))
+                Test.assertEquals(4, adder.addTwo::<i32>(2))
+                Test.assertEquals(5, adder.addTwo::<i64>(3))
+                """;
+        TypedAST typedAST = typeCheck(Map.of("main", main));
+        //One for each instantiation of addOne
+        assertEquals(2, typedAST.typeDefs().stream().filter(t -> t instanceof FuncImplTypeDef).count());
+        Program.of(typedAST).compileToInstance().run();
+    }
+
+    //Lambda impls by their full runtime name, since the short one is only unique within their func type
+    private static List<String> names(TypedAST typedAST) {
+        return typedAST.typeDefs().stream().map(t -> t instanceof FuncImplTypeDef ? t.runtimeName() : t.name()).toList();
+    }
+
+    private static TypedAST typeCheck(Map<String, String> files) throws CompilationException {
+        BuiltinTypes types = BuiltinTypes.standard().reflectType(TestBindings.class);
+        TypeResolvedAST typeResolvedAST = TypeResolver.resolve(types, Parser.parseSources(files));
+        GenericVerifier.verifyGenerics(typeResolvedAST);
+        return TypeChecker.type(typeResolvedAST);
+    }
+
+}
@@ -5,6 +5,7 @@ import exceptions.compile_time.CompilationException;
 import exceptions.runtime.SnuggleException;
 import runtime.SnuggleInstance;
 import util.CompileAll;
+import util.CompileOptions;
 
 import java.io.File;
 import java.util.Map;
@@ -31,18 +32,16 @@ public class AOCRunner {
     public static void test(BuiltinTypes types, Map<String, String> files, File export) throws CompilationException, SnuggleException {
         try {
             var before = System.nanoTime();
-            var instance = CompileAll.compileAllToInstance(types, files);
+            var instance = CompileAll.compileAllToInstance(types, files, CompileOptions.DEBUG);
             var after = System.nanoTime();
             System.out.println("Compilation took " + (after - before) / 1000000 + " ms");
             before = after;
-            SnuggleInstance.INSTRUCTIONS = 0;
             instance.run();
             after = System.nanoTime();
             System.out.println("Running took " + (after - before) / 1000000 + " ms");
-            System.out.println("Cost was " + SnuggleInstance.INSTRUCTIONS);
-            SnuggleInstance.INSTRUCTIONS = 0; //reset just in case
+            System.out.println("Cost was " + instance.getUsedInstructions());
             if (export != null)
-                CompileAll.compileAllToJar(export, types, files);
+                CompileAll.compileAllToJar(export, types, files, CompileOptions.DEBUG);
         } catch (CompilationException | SnuggleException | RuntimeException e) {
             // propagate exceptions
             throw e;
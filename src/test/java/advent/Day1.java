@@ -5,8 +5,15 @@ import static advent.AOCRunner.*;
 public class Day1 {
 
     public static void main(String[] args) throws Exception {
+        String code = code();
+        System.out.println(code);
+        test(code);
+    }
+
+    //The program, with the puzzle input in it
+    public static String code() {
         String inputFormatted = puzzleInput.replace("\n", "\\n");
-        String code = "var input = \"" + inputFormatted + "\"" +
+        return "var input = \"" + inputFormatted + "\"" +
                 """
                 import "std/List"
                 
@@ -115,8 +122,6 @@ public class Day1 {
                 System.print(sum2)
                 
                 """;
-        System.out.println(code);
-        test(code);
     }
 
     private static final String miniInput = """
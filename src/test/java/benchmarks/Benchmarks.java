@@ -0,0 +1,561 @@
+package benchmarks;
+
+import advent.Day1;
+import ast.ir.def.Program;
+import ast.passes.GenericVerifier;
+import ast.passes.Parser;
+import ast.passes.TypeChecker;
+import ast.passes.TypeResolver;
+import ast.type_resolved.prog.TypeResolvedAST;
+import ast.typed.def.type.TypeDef;
+import ast.typed.prog.TypedAST;
+import builtin_types.BuiltinTypes;
+import exceptions.compile_time.CompilationException;
+import lexing.Lexer;
+import runtime.LoadedProgram;
+import runtime.SnuggleInstance;
+import util.CompileAll;
+import util.CompileOptions;
+import util.ListUtils;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The benchmarks whose numbers are cited by the changes they measured, sharing
+ * the helpers at the bottom to compile and time programs. Run main() with the
+ * names of the benchmarks to run, or with none to list them; results are printed.
+ * Programs are compiled with CompileOptions.PRODUCTION unless a benchmark
+ * compares options, and only running is timed unless it says otherwise.
+ */
+public class Benchmarks {
+
+    private static final Map<String, Task> BENCHMARKS = new LinkedHashMap<>();
+    static {
+        BENCHMARKS.put("Parser", Benchmarks::parser);
+        BENCHMARKS.put("MethodLookup", Benchmarks::methodLookup);
+        BENCHMARKS.put("Codegen", Benchmarks::codegen);
+        BENCHMARKS.put("Inlining", Benchmarks::inlining);
+        BENCHMARKS.put("ForLoop", Benchmarks::forLoop);
+        BENCHMARKS.put("PluralReturn", Benchmarks::pluralReturn);
+        BENCHMARKS.put("InstructionCounting", Benchmarks::instructionCounting);
+        BENCHMARKS.put("LoadedProgram", Benchmarks::loadedProgram);
+        BENCHMARKS.put("CompileOptions", Benchmarks::compileOptions);
+        BENCHMARKS.put("ClassGeneration", Benchmarks::classGeneration);
+        BENCHMARKS.put("FrameComputation", Benchmarks::frameComputation);
+        BENCHMARKS.put("HugeMethod", Benchmarks::hugeMethod);
+        BENCHMARKS.put("Day1", Benchmarks::day1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0)
+            System.out.println("Benchmarks: " + String.join(", ", BENCHMARKS.keySet()));
+        for (String name : args) {
+            Task benchmark = BENCHMARKS.get(name);
+            if (benchmark == null)
+                throw new IllegalArgumentException("No benchmark \"" + name + "\", expected one of " + BENCHMARKS.keySet());
+            System.out.println("== " + name);
+            benchmark.run();
+        }
+    }
+
+    //Parsing long flat expressions, and deeply nested ones. Only parsing is timed.
+    private static void parser() throws Exception {
+        //a0 + a1 * a2 - a3 * a4 + ...
+        StringBuilder flat = new StringBuilder("var x = a0");
+        for (int i = 1; i < 200_000; i++)
+            flat.append(i % 2 == 0 ? " + a" : " * a").append(i);
+        //a0 + (a1 * (a2 + (a3 * ...)))
+        int depth = 150;
+        StringBuilder nested = new StringBuilder("var x = ");
+        for (int i = 0; i < depth; i++)
+            nested.append("a").append(i).append(i % 2 == 0 ? " + (" : " * (");
+        nested.append("b").append(")".repeat(depth));
+        String nestedFile = (nested + "\n").repeat(200);
+
+        //Warm up, then measure
+        for (int i = 0; i < 10; i++) {
+            parse(flat);
+            parse(nestedFile);
+        }
+        int iterations = 20;
+        long flatTime = nanos(() -> { for (int i = 0; i < iterations; i++) parse(flat); });
+        long nestedTime = nanos(() -> { for (int i = 0; i < iterations; i++) parse(nestedFile); });
+        System.out.println("Long flat expression took " + flatTime / 1000 / iterations + " us per parse");
+        System.out.println("Deeply nested expressions took " + nestedTime / 1000 / iterations + " us per parse");
+    }
+
+    private static void parse(CharSequence code) throws CompilationException {
+        Parser.parseFile("main", Lexer.compact("main", code));
+    }
+
+    //Type checking a deep class hierarchy, whose leaf class is used at many call sites,
+    //calling methods inherited from every level. Only type checking is timed.
+    private static void methodLookup() throws Exception {
+        int levels = 20, methodsPerLevel = 5, callSites = 5000;
+        StringBuilder code = new StringBuilder();
+        for (int level = 0; level < levels; level++) {
+            code.append("class L").append(level);
+            if (level > 0)
+                code.append(": L").append(level - 1);
+            code.append(" {\n    fn new() super()\n");
+            for (int m = 0; m < methodsPerLevel; m++)
+                code.append("    fn m").append(level).append("_").append(m).append("(x: i32): i32 x + ").append(m).append("\n");
+            //Every level also overrides a shared method, so override filtering has work to do
+            code.append("    fn shared(x: i32): i32 x * ").append(level).append("\n");
+            code.append("}\n");
+        }
+        code.append("var leaf = new L").append(levels - 1).append("()\nvar total: i32 = 0\n");
+        for (int i = 0; i < callSites; i++) {
+            code.append("total = total + leaf.m").append(i % levels).append("_").append(i % methodsPerLevel).append("(").append(i).append(")");
+            code.append(" + leaf.shared(").append(i).append(")\n");
+        }
+        String main = code.toString();
+
+        //Warm up, then measure
+        for (int i = 0; i < 5; i++)
+            typeCheck(main);
+        int iterations = 10;
+        long time = millis(() -> { for (int i = 0; i < iterations; i++) typeCheck(main); });
+        System.out.println(levels + " levels, " + callSites * 2 + " calls: type checking took " + time / iterations + " ms per compile");
+    }
+
+    //Program.of() on programs with more and more types, and the topological sort of
+    //the types it does against the insertion sort it used to do
+    private static void codegen() throws Exception {
+        //Warm up
+        for (int i = 0; i < 3; i++)
+            codegen(200, false);
+        for (int chains = 100; chains <= 1600; chains *= 2)
+            codegen(chains, true);
+    }
+
+    private static void codegen(int chains, boolean print) throws Exception {
+        int depth = 5;
+        StringBuilder code = new StringBuilder();
+        for (int c = 0; c < chains; c++) {
+            //Declare subclasses before their supertypes, so the sort has work to do
+            for (int d = depth - 1; d >= 0; d--) {
+                code.append("class C").append(c).append("_").append(d);
+                if (d > 0)
+                    code.append(": C").append(c).append("_").append(d - 1);
+                code.append(" { fn new() super() fn f(): i32 ").append(d).append(" }\n");
+            }
+            code.append("new C").append(c).append("_").append(depth - 1).append("().f()\n");
+        }
+        TypedAST typedAST = typeCheck(code.toString());
+        long insertion = nanos(() -> ListUtils.insertionSort(new ArrayList<>(typedAST.typeDefs()), (a, b) -> {
+            if (a.isSubtype(b))
+                return 1;
+            if (b.isSubtype(a))
+                return -1;
+            return 0;
+        }));
+        long topological = nanos(() -> ListUtils.topologicalSort(new ArrayList<>(typedAST.typeDefs()), TypeDef::get, TypeDef::typeCheckingSupertypes));
+        long program = millis(() -> Program.of(typedAST));
+        if (print)
+            System.out.println(typedAST.typeDefs().size() + " types: insertion sort " + insertion / 1000 + " us, topological sort " +
+                    topological / 1000 + " us, Program.of " + program + " ms");
+    }
+
+    //Mandelbrot-style complex<f32> arithmetic from std, which goes through small operator
+    //methods, against the same arithmetic written out by hand on f32 locals
+    private static void inlining() throws Exception {
+        SnuggleInstance complex = compile("""
+                import "std/complex"
+                var i: i32 = 0
+                var z: complex<f32> = new {0, 0}
+                var c: complex<f32> = new {0.25, 0.5}
+                while i < 10000000 {
+                    z = z * z + c
+                    if z.len2() > 4 z = new {0, 0}
+                    i = i + 1
+                }
+                System.print(z.real)
+                """, CompileOptions.PRODUCTION);
+        SnuggleInstance handWritten = compile("""
+                var i: i32 = 0
+                var zr: f32 = 0
+                var zi: f32 = 0
+                var cr: f32 = 0.25
+                var ci: f32 = 0.5
+                while i < 10000000 {
+                    var r = zr * zr - zi * zi + cr
+                    zi = zr * zi + zi * zr + ci
+                    zr = r
+                    if zr * zr + zi * zi > 4 {
+                        zr = 0
+                        zi = 0
+                    }
+                    i = i + 1
+                }
+                System.print(zr)
+                """, CompileOptions.PRODUCTION);
+        for (int round = 0; round < 5; round++)
+            System.out.println("complex<f32>: " + run(complex) + " ms, hand-written: " + run(handWritten) + " ms");
+    }
+
+    //For loops over a List, which are compiled into indexing loops, against the same
+    //loops going through the iterator closure from iter(), and against a range loop
+    private static void forLoop() throws Exception {
+        String setup = """
+                import "std/List"
+                //Makes an iterator usable in a for loop, which then goes through the iterator protocol
+                pub fn iter<T>(this: () -> T?): () -> T? this
+                var list = new List<i32>()
+                var i: i32 = 0
+                while i < 1000 {
+                    list += i
+                    i = i + 1
+                }
+                var sum: i32 = 0
+                var round: i32 = 0
+                while round < 10000 {
+                    for x: i32 in %s sum = sum + x
+                    round = round + 1
+                }
+                System.print(sum)
+                """;
+        SnuggleInstance indexed = compile(setup.formatted("list"), CompileOptions.PRODUCTION);
+        SnuggleInstance iterator = compile(setup.formatted("list.iter()"), CompileOptions.PRODUCTION);
+        SnuggleInstance range = compile(setup.formatted("0..1000"), CompileOptions.PRODUCTION);
+        for (int round = 0; round < 5; round++)
+            System.out.println("List, indexed: " + run(indexed) + " ms, List, iterator: " + run(iterator) + " ms, range: " + run(range) + " ms");
+    }
+
+    //A function returning complex<f64>, which is over 64 bits and so comes back in a new
+    //carrier, against the same function on complex<f32>, which is packed into a long.
+    //The function is long enough not to be inlined by the compiler, and with more
+    //padding, not by the JIT either. Also prints what each call allocates.
+    private static void pluralReturn() throws Exception {
+        int calls = 20000000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int padding : new int[] {2, 6}) {
+            for (String type : new String[] {"f32", "f64"}) {
+                SnuggleInstance instance = compile("""
+                        import "std/complex"
+                        fn step(z: complex<%1$s>, c: complex<%1$s>): complex<%1$s> {
+                            var w = z * z + c
+                        %2$s    if w.len2() > 4 w = new {0, 0}
+                            w
+                        }
+                        var i: i32 = 0
+                        var z: complex<%1$s> = new {0, 0}
+                        var c: complex<%1$s> = new {0.25, 0.5}
+                        while i < %3$d {
+                            z = step(z, c)
+                            i = i + 1
+                        }
+                        """.formatted(type, "    w = w * new {1, 0}\n".repeat(padding), calls), CompileOptions.PRODUCTION);
+                for (int round = 0; round < 5; round++) {
+                    long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+                    long time = run(instance);
+                    long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+                    System.out.println("complex<" + type + ">, padding " + padding + ": " + time + " ms, " + bytes / calls + " bytes per call");
+                }
+            }
+        }
+    }
+
+    //Code that counts the instructions it runs, so it can be capped, against the same code
+    //compiled without counting. Covers a loop and recursive calls, which are where the count is flushed.
+    private static void instructionCounting() throws Exception {
+        String loopCode = """
+                var i: i32 = 0
+                var sum: i32 = 0
+                while i < 100000000 {
+                    if i % 3 == 0 sum = sum + i
+                    i = i + 1
+                }
+                System.print(sum)
+                """;
+        String callsCode = """
+                fn fib(n: i32): i32 if n < 2 n else fib(n - 1) + fib(n - 2)
+                System.print(fib(32))
+                """;
+        CompileOptions uncounted = CompileOptions.PRODUCTION.withCountInstructions(false);
+        SnuggleInstance loop = compile(loopCode, CompileOptions.PRODUCTION), uncountedLoop = compile(loopCode, uncounted);
+        SnuggleInstance calls = compile(callsCode, CompileOptions.PRODUCTION), uncountedCalls = compile(callsCode, uncounted);
+        for (int round = 0; round < 5; round++)
+            System.out.println("loop: " + run(loop) + " ms, uncounted: " + run(uncountedLoop) + " ms; " +
+                    "calls: " + run(calls) + " ms, uncounted: " + run(uncountedCalls) + " ms");
+        System.out.println("Counted " + loop.getUsedInstructions() + " and " + calls.getUsedInstructions() + " instructions");
+    }
+
+    //Many short executions of one script: compiling and loading it for every execution, against
+    //making new instances of one LoadedProgram, on one thread and on several. Compiling is timed too.
+    private static void loadedProgram() throws Exception {
+        Map<String, String> script = Map.of("main", """
+                class Counter {
+                    static var count: i32
+                }
+                fn fib(n: i32): i32 if n < 2 n else fib(n - 1) + fib(n - 2)
+                var i: i32 = 0
+                while i < 20 {
+                    Counter.count = Counter.count + fib(i)
+                    i = i + 1
+                }
+                """);
+        int executions = 200, threads = 8;
+        for (int round = 0; round < 5; round++) {
+            long loadEach = millis(() -> {
+                for (int i = 0; i < executions; i++)
+                    CompileAll.compileAllToLoadedProgram(BuiltinTypes.standard(), script, CompileOptions.PRODUCTION).newInstance().run();
+            });
+            long loadOnce = millis(() -> {
+                LoadedProgram loaded = CompileAll.compileAllToLoadedProgram(BuiltinTypes.standard(), script, CompileOptions.PRODUCTION);
+                for (int i = 0; i < executions; i++)
+                    loaded.newInstance().run();
+            });
+            long loadOnceThreaded = millis(() -> {
+                LoadedProgram shared = CompileAll.compileAllToLoadedProgram(BuiltinTypes.standard(), script, CompileOptions.PRODUCTION);
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < executions; i++)
+                    futures.add(executor.submit(() -> { shared.newInstance().run(); return null; }));
+                for (Future<?> future : futures)
+                    future.get();
+                executor.shutdown();
+            });
+            System.out.println(executions + " executions, compiling and loading each time: " + loadEach + " ms, loading once: " + loadOnce +
+                    " ms, loading once on " + threads + " threads: " + loadOnceThreaded + " ms");
+        }
+    }
+
+    //Compiling and loading the same code with CompileOptions.DEBUG, which verifies, traces,
+    //dumps and times, against CompileOptions.PRODUCTION, which does none of it. What's printed
+    //is thrown away, so this only counts the cost of producing it, not of a terminal showing it.
+    private static void compileOptions() throws Exception {
+        String main = """
+                import "std/List"
+
+                struct Point {
+                    var x: i32
+                    var y: i32
+                    fn add(other: Point): Point new Point { x + other.x, y + other.y }
+                }
+
+                class Shape {
+                    var points: List<Point>
+                    fn new() { super(); this.points = new(); }
+                    fn add(p: Point) { this.points += p; }
+                    fn sum(): Point {
+                        var total = new Point { 0, 0 }
+                        for p: Point in this.points total = total.add(p)
+                        total
+                    }
+                }
+
+                fn fib(n: i32): i32 if n < 2 n else fib(n - 1) + fib(n - 2)
+
+                var shape = new Shape()
+                for i: i32 in 0..10 shape.add(new Point { i, fib(i) })
+                var words: List<Str> = new()
+                words += "cat"
+                words += "plant"
+                var joined = ""
+                for w: Str in words joined += w
+                System.print(shape.sum().y)
+                System.print(joined)
+                """;
+        PrintStream out = System.out, err = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        try {
+            System.setOut(discard);
+            System.setErr(discard);
+            for (int round = 0; round < 10; round++) {
+                long debug = millis(() -> compile(main, CompileOptions.DEBUG));
+                long production = millis(() -> compile(main, CompileOptions.PRODUCTION));
+                out.println("debug: " + debug + " ms, production: " + production + " ms");
+            }
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+
+    //Generating the classes of a program with many classes, one at a time against in
+    //parallel on the common ForkJoinPool. Only generating the classes into a jar is timed.
+    private static void classGeneration() throws Exception {
+        int classes = 300;
+        StringBuilder main = new StringBuilder();
+        for (int i = 0; i < classes; i++) {
+            main.append("""
+                    class C%d {
+                        fn new() super()
+                        fn work(n: i32): i32 {
+                            var total: i32 = 0
+                            var i: i32 = 0
+                            while i < n {
+                                if i %% 3 == 0 total = total + i * %d
+                                else if i %% 5 == 0 total = total - i
+                                else total = total + i * 2
+                                i = i + 1
+                            }
+                            total
+                        }
+                        fn more(a: i32, b: i32): i32 if a > b this.work(a) else this.work(b) + a
+                    }
+                    new C%d().more(1, 2)
+                    """.formatted(i, i, i));
+        }
+        CompileOptions sequential = CompileOptions.PRODUCTION.withExecutor(null);
+        CompileOptions parallel = CompileOptions.PRODUCTION.withExecutor(ForkJoinPool.commonPool());
+        for (int round = 0; round < 10; round++) {
+            long sequentialTime = jar(program(main.toString()), sequential).millis();
+            long parallelTime = jar(program(main.toString()), parallel).millis();
+            System.out.println(classes + " classes, one at a time: " + sequentialTime + " ms, in parallel on " +
+                    ForkJoinPool.commonPool().getParallelism() + " threads: " + parallelTime + " ms");
+        }
+    }
+
+    //Generating classes with frames and maxes from FrameTracker, against having ASM compute
+    //them with COMPUTE_FRAMES, on large methods full of branches and loops, where computing
+    //frames afterwards costs the most. Only generating the classes into a jar is timed.
+    private static void frameComputation() throws Exception {
+        int classes = 40, branches = 150;
+        StringBuilder main = new StringBuilder();
+        for (int i = 0; i < classes; i++) {
+            StringBuilder body = new StringBuilder();
+            for (int j = 0; j < branches; j++) {
+                body.append("""
+                                if total %% %d == 0 { total = total + %d; }
+                                else if i < %d { var k: i32 = 0; while k < i { total = total + k; k = k + 1; }; }
+                                else { total = total - 1; }
+                        """.formatted(j % 7 + 2, j, j));
+            }
+            main.append("""
+                    class C%d {
+                        fn new() super()
+                        fn work(n: i32): i32 {
+                            var total: i32 = 0
+                            var i: i32 = 0
+                            while i < n {
+                    %s
+                                i = i + 1
+                            }
+                            total
+                        }
+                    }
+                    new C%d().work(1)
+                    """.formatted(i, body, i));
+        }
+        CompileOptions tracked = CompileOptions.PRODUCTION.withExecutor(null);
+        CompileOptions computed = tracked.withAsmFrames(true);
+        long bestTracked = Long.MAX_VALUE, bestComputed = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            Jar trackedJar = jar(program(main.toString()), tracked);
+            Jar computedJar = jar(program(main.toString()), computed);
+            bestTracked = Math.min(bestTracked, trackedJar.millis());
+            bestComputed = Math.min(bestComputed, computedJar.millis());
+            System.out.println(classes + " classes of " + branches + " branches, frames from FrameTracker: " + trackedJar.millis() + " ms (" + trackedJar.bytes() +
+                    " byte jar), from ASM's COMPUTE_FRAMES: " + computedJar.millis() + " ms (" + computedJar.bytes() + " byte jar)");
+        }
+        System.out.println("Best: FrameTracker " + bestTracked + " ms, COMPUTE_FRAMES " + bestComputed + " ms");
+    }
+
+    //Calling a function with more than 8000 bytes of bytecode, which HotSpot won't
+    //JIT-compile, left whole against split into helpers by MethodSplitter
+    private static void hugeMethod() throws Exception {
+        int statements = 1500, calls = 200000;
+        StringBuilder main = new StringBuilder("fn mix(x: i32): i32 {\n    var a: i32 = x\n    var b: i32 = x + 1\n");
+        for (int i = 0; i < statements; i++)
+            main.append(i % 2 == 0 ? "    a = a * 31 + b % " + (i + 7) + "\n" : "    b = b + a / 3 - " + i + "\n");
+        main.append("""
+                    a + b
+                }
+                var i: i32 = 0
+                var total: i32 = 0
+                while i < %d {
+                    total = total + mix(i)
+                    i = i + 1
+                }
+                """.formatted(calls));
+        for (int round = 0; round < 5; round++) {
+            long whole = run(compile(main.toString(), CompileOptions.PRODUCTION.withMaxMethodSize(0)));
+            long split = run(compile(main.toString(), CompileOptions.PRODUCTION));
+            System.out.println(statements + " statements, " + calls + " calls, whole: " + whole + " ms, split: " + split + " ms");
+        }
+    }
+
+    //Advent of Code day 1 with its top-level loops left in the file's method, against hoisted
+    //into methods of their own. Each round compiles both again, so neither starts out JIT-compiled.
+    private static void day1() throws Exception {
+        Map<String, String> files = Map.of("main", Day1.code());
+        int rounds = 10;
+        long bestInline = Long.MAX_VALUE, bestHoisted = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long inline = run(compile(files, CompileOptions.PRODUCTION));
+            long hoisted = run(compile(files, CompileOptions.PRODUCTION.withHoistLoops(true)));
+            bestInline = Math.min(bestInline, inline);
+            bestHoisted = Math.min(bestHoisted, hoisted);
+            System.out.println("Round " + round + ", inline: " + inline + " ms, hoisted: " + hoisted + " ms");
+        }
+        System.out.println("Best of " + rounds + ", inline: " + bestInline + " ms, hoisted: " + bestHoisted + " ms");
+    }
+
+    //Helpers
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    //Parse, resolve and type check a program made of one main file, for timing the steps after
+    private static TypedAST typeCheck(String main) throws CompilationException {
+        TypeResolvedAST typeResolvedAST = TypeResolver.resolve(BuiltinTypes.standard(), Parser.parseSources(Map.of("main", main)));
+        GenericVerifier.verifyGenerics(typeResolvedAST);
+        return TypeChecker.type(typeResolvedAST);
+    }
+
+    private static Program program(String main) throws CompilationException {
+        return Program.of(typeCheck(main));
+    }
+
+    private static SnuggleInstance compile(String main, CompileOptions options) throws CompilationException {
+        return compile(Map.of("main", main), options);
+    }
+
+    private static SnuggleInstance compile(Map<String, String> files, CompileOptions options) throws CompilationException {
+        return CompileAll.compileAllToInstance(BuiltinTypes.standard(), files, options);
+    }
+
+    //How long running the instance takes, in ms
+    private static long run(SnuggleInstance instance) throws Exception {
+        return millis(instance::run);
+    }
+
+    //How long writing the program to a jar takes, not counting collecting the garbage left before, and how big the jar is
+    private static Jar jar(Program program, CompileOptions options) throws Exception {
+        File jar = File.createTempFile("snuggle", ".jar");
+        try {
+            System.gc();
+            long millis = millis(() -> program.compileToJar(jar, options));
+            return new Jar(millis, jar.length());
+        } finally {
+            jar.delete();
+        }
+    }
+
+    private record Jar(long millis, long bytes) {}
+
+    private static long millis(Task task) throws Exception {
+        return nanos(task) / 1000000;
+    }
+
+    private static long nanos(Task task) throws Exception {
+        long before = System.nanoTime();
+        task.run();
+        return System.nanoTime() - before;
+    }
+
+}